@@ -0,0 +1,163 @@
+package com.dmmflipper;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Market payloads the benchmarks run on: synthetic wiki-format responses of any size, or the
+ * responses saved under {@code src/jmh/resources/payloads} by {@code gradlew recordPayloads}.
+ * <p>
+ * Synthetic markets are seeded, so every run and every benchmark sees the same prices: log-uniform
+ * from 10 GP to 100M GP, margins of -1% to 8%, trades up to an hour old and the buy limits the
+ * catalogue actually uses.
+ */
+final class Fixtures
+{
+	static final String RECORDED = "recorded";
+	// Trade times of synthetic markets are spread over the hour before this
+	static final long SYNTHETIC_NOW = 1_700_000_000L;
+
+	private static final int[] LIMITS = {8, 40, 70, 100, 125, 500, 1000, 2000, 6000, 10000, 13000, 18000, 25000};
+
+	final byte[] latest;
+	final byte[] volumes;
+	final byte[] mapping;
+
+	private Fixtures(byte[] latest, byte[] volumes, byte[] mapping)
+	{
+		this.latest = latest;
+		this.volumes = volumes;
+		this.mapping = mapping;
+	}
+
+	/**
+	 * @param fixture an item count for a synthetic market, or {@link #RECORDED}
+	 */
+	static Fixtures load(String fixture) throws IOException
+	{
+		if (RECORDED.equals(fixture))
+		{
+			return new Fixtures(resource("latest"), resource("24h"), resource("mapping"));
+		}
+
+		int items = Integer.parseInt(fixture);
+		return new Fixtures(syntheticLatest(items), syntheticVolumes(items), syntheticMapping(items));
+	}
+
+	static Reader reader(byte[] payload)
+	{
+		return new InputStreamReader(new ByteArrayInputStream(payload), StandardCharsets.UTF_8);
+	}
+
+	PriceFeed latestFeed() throws IOException
+	{
+		return PriceFeed.read(reader(latest));
+	}
+
+	PriceFeed volumeFeed() throws IOException
+	{
+		return PriceFeed.read(reader(volumes));
+	}
+
+	ItemCatalogue items() throws IOException
+	{
+		return ItemCatalogue.read(reader(mapping));
+	}
+
+	/**
+	 * Newest trade time in the /latest payload (epoch seconds), the "now" to scan recorded markets at
+	 */
+	long newestTrade() throws IOException
+	{
+		PriceFeed feed = latestFeed();
+		long newest = 0;
+		for (int row = 0; row < feed.size(); row++)
+		{
+			newest = Math.max(newest, Math.max(feed.highTime(row), feed.lowTime(row)));
+		}
+		return newest;
+	}
+
+	private static byte[] resource(String name) throws IOException
+	{
+		try (InputStream in = Fixtures.class.getResourceAsStream("/payloads/" + name + ".json"))
+		{
+			if (in == null)
+			{
+				throw new IOException("No recorded " + name + ".json; run gradlew recordPayloads first");
+			}
+
+			return in.readAllBytes();
+		}
+	}
+
+	private static byte[] syntheticLatest(int items)
+	{
+		Random random = new Random(items);
+		StringBuilder json = new StringBuilder(items * 96).append("{\"data\":{");
+		for (int id = 1; id <= items; id++)
+		{
+			int low = price(random);
+			int high = (int) Math.min(Integer.MAX_VALUE, low * (0.99 + random.nextDouble() * 0.09));
+			if (id > 1)
+			{
+				json.append(',');
+			}
+			json.append('"').append(id).append("\":{\"high\":").append(high)
+				.append(",\"highTime\":").append(SYNTHETIC_NOW - random.nextInt(3600))
+				.append(",\"low\":").append(low)
+				.append(",\"lowTime\":").append(SYNTHETIC_NOW - random.nextInt(3600)).append('}');
+		}
+		return json.append("}}").toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] syntheticVolumes(int items)
+	{
+		Random random = new Random(-items);
+		StringBuilder json = new StringBuilder(items * 112).append("{\"data\":{");
+		for (int id = 1; id <= items; id++)
+		{
+			int avgLow = price(random);
+			if (id > 1)
+			{
+				json.append(',');
+			}
+			json.append('"').append(id).append("\":{\"avgHighPrice\":").append(avgLow + avgLow / 20)
+				.append(",\"highPriceVolume\":").append(random.nextInt(50_000))
+				.append(",\"avgLowPrice\":").append(avgLow)
+				.append(",\"lowPriceVolume\":").append(random.nextInt(50_000)).append('}');
+		}
+		return json.append("}}").toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] syntheticMapping(int items)
+	{
+		Random random = new Random(items * 31L);
+		StringBuilder json = new StringBuilder(items * 160).append('[');
+		for (int id = 1; id <= items; id++)
+		{
+			if (id > 1)
+			{
+				json.append(',');
+			}
+			json.append("{\"id\":").append(id)
+				.append(",\"name\":\"Item ").append(id)
+				.append("\",\"examine\":\"Synthetic item ").append(id)
+				.append(".\",\"members\":").append(random.nextBoolean())
+				.append(",\"limit\":").append(LIMITS[random.nextInt(LIMITS.length)])
+				.append(",\"value\":").append(random.nextInt(100_000))
+				.append(",\"icon\":\"Item ").append(id).append(".png\"}");
+		}
+		return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static int price(Random random)
+	{
+		return (int) Math.pow(10, 1 + random.nextDouble() * 7);
+	}
+}
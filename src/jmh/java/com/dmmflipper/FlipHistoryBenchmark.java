@@ -0,0 +1,58 @@
+package com.dmmflipper;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The totals the panel reads from {@link FlipHistory} on every repaint, over a session's worth and
+ * a long-running client's worth of completed flips spread across a few hundred items.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FlipHistoryBenchmark
+{
+	private static final int ITEMS = 300;
+
+	@Param({"100", "10000"})
+	private int flips;
+
+	private FlipHistory history;
+
+	@Setup
+	public void setUp()
+	{
+		Random random = new Random(flips);
+		history = new FlipHistory();
+		for (int i = 0; i < flips; i++)
+		{
+			int itemId = 1 + random.nextInt(ITEMS);
+			int buy = 100 + random.nextInt(100_000);
+			int sell = buy + random.nextInt(buy / 10 + 1);
+			int quantity = 1 + random.nextInt(1000);
+			int tax = Math.min((int) (sell * 0.01), 5_000_000);
+			history.addCompletedFlip(new FlipHistory.CompletedFlip(itemId, "Item " + itemId, buy, sell, quantity,
+				(sell - buy - tax) * quantity, i, tax * quantity));
+		}
+	}
+
+	@Benchmark
+	public int totalProfit()
+	{
+		return history.getTotalProfit();
+	}
+
+	@Benchmark
+	public int totalFlips()
+	{
+		return history.getTotalFlips();
+	}
+}
@@ -0,0 +1,52 @@
+package com.dmmflipper;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A buy fill followed by a sale of the same size, the steady state of bulk flipping one item, with
+ * a few lots and with as many as a book keeps already open. The cost should not depend on how many lots are open.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class LotBookBenchmark
+{
+	@Param({"10", "256"})
+	private int openLots;
+
+	@Param({"FIFO", "LIFO"})
+	private LotMatching matching;
+
+	private final LotBook book = new LotBook();
+	private long matchedQuantity;
+	private final LotBook.MatchListener listener = (buyPrice, sellPrice, quantity) -> matchedQuantity += quantity;
+	private int price;
+
+	@Setup
+	public void setUp()
+	{
+		for (int i = 0; i < openLots; i++)
+		{
+			book.bought(1_000 + i, 100, 0);
+		}
+	}
+
+	@Benchmark
+	public long buyThenSell()
+	{
+		price = (price + 1) & 1023;
+		book.bought(1_000 + price, 100, 0);
+		// Two partial sales, so a lot is split before it is used up
+		book.sold(1_100 + price, 40, 0, matching, listener);
+		book.sold(1_100 + price, 60, 0, matching, listener);
+		return matchedQuantity;
+	}
+}
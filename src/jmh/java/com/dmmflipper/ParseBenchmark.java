@@ -0,0 +1,62 @@
+package com.dmmflipper;
+
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Parsing a response body the way {@code fetchPricesFromEndpoint} does: streamed from UTF-8 bytes
+ * into a {@link PriceFeed}. The catalogue parse of {@link ItemMappingCache} is included for scale:
+ * {@code mapping} reads the {@link ItemCatalogue} the plugin keeps, {@code mappingObjects} the
+ * {@link ItemInfo} array it used to.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ParseBenchmark
+{
+	@Param({"4000", "40000"})
+	private String fixture;
+
+	private Fixtures payloads;
+	private Gson gson;
+
+	@Setup
+	public void setUp() throws IOException
+	{
+		payloads = Fixtures.load(fixture);
+		gson = new Gson();
+	}
+
+	@Benchmark
+	public PriceFeed latest() throws IOException
+	{
+		return PriceFeed.read(Fixtures.reader(payloads.latest));
+	}
+
+	@Benchmark
+	public PriceFeed volumes() throws IOException
+	{
+		return PriceFeed.read(Fixtures.reader(payloads.volumes));
+	}
+
+	@Benchmark
+	public ItemCatalogue mapping() throws IOException
+	{
+		return ItemCatalogue.read(Fixtures.reader(payloads.mapping));
+	}
+
+	@Benchmark
+	public ItemInfo[] mappingObjects()
+	{
+		return gson.fromJson(Fixtures.reader(payloads.mapping), ItemInfo[].class);
+	}
+}
@@ -0,0 +1,88 @@
+package com.dmmflipper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Ranking every item of a fixture market: the engine's {@link TopK} over primitive score columns
+ * against sorting {@link FlipOpportunity} objects with the comparator the tabs used to sort by
+ * (profit, then ROI). {@code k} is the page the panel shows and the whole market.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RankingBenchmark
+{
+	private static final Comparator<FlipOpportunity> PROFIT_THEN_ROI = Comparator
+		.comparingInt(FlipOpportunity::getProfit)
+		.thenComparingDouble(FlipOpportunity::getRoi)
+		.reversed();
+
+	@Param({"4000", "40000"})
+	private String fixture;
+
+	@Param({"50", "all"})
+	private String k;
+
+	private PriceSnapshot market;
+	private double[] score;
+	private double[] tiebreak;
+	private List<FlipOpportunity> opportunities;
+	private int limit;
+
+	@Setup
+	public void setUp() throws IOException
+	{
+		Fixtures payloads = Fixtures.load(fixture);
+		market = PriceSnapshot.build(PriceSnapshot.EMPTY, payloads.latestFeed(), payloads.volumeFeed(), 1, 0);
+		limit = "all".equals(k) ? market.slotCount() : Integer.parseInt(k);
+
+		Random random = new Random(market.slotCount());
+		score = new double[market.slotCount()];
+		tiebreak = new double[market.slotCount()];
+		opportunities = new ArrayList<>(market.slotCount());
+		for (int slot = 0; slot < market.slotCount(); slot++)
+		{
+			int buy = market.low(slot);
+			int sell = market.high(slot);
+			int tax = Math.min((int) (sell * 0.01), 5_000_000);
+			int profit = sell - buy - tax;
+			double roi = buy > 0 ? profit * 100.0 / buy : 0;
+			score[slot] = profit;
+			tiebreak[slot] = roi;
+			opportunities.add(new FlipOpportunity(market.itemId(slot), "Item " + market.itemId(slot), buy, sell, profit,
+				roi, tax, 1 + random.nextInt(10_000), 0, market.lowVolume(slot), market.highVolume(slot), "unknown", true));
+		}
+	}
+
+	@Benchmark
+	public int[] topK()
+	{
+		TopK top = new TopK(limit, score, tiebreak, market);
+		for (int slot = 0; slot < market.slotCount(); slot++)
+		{
+			top.offer(slot);
+		}
+		return top.sorted();
+	}
+
+	@Benchmark
+	public List<FlipOpportunity> comparatorSort()
+	{
+		List<FlipOpportunity> sorted = new ArrayList<>(opportunities);
+		sorted.sort(PROFIT_THEN_ROI);
+		return sorted.subList(0, Math.min(limit, sorted.size()));
+	}
+}
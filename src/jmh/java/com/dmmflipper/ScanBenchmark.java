@@ -0,0 +1,173 @@
+package com.dmmflipper;
+
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import okhttp3.OkHttpClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Each tab's calculate method, and all four tabs at once, on a {@link PriceApiClient} holding a
+ * fixture market. What a call costs depends on what happened since the last one, so {@code mode}
+ * picks the situation:
+ * <ul>
+ * <li>{@code unchanged}: the panel asking again with no new snapshot, answered from the views</li>
+ * <li>{@code refresh}: a new snapshot with 1% of the items changed, the usual /latest poll</li>
+ * <li>{@code rebuild}: a full pass, forced by stepping the clock back (as after a mapping reload)</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ScanBenchmark
+{
+	private static final double CHANGED_FRACTION = 0.01;
+
+	@Param({"4000", "40000"})
+	private String fixture;
+
+	@Param({"unchanged", "refresh", "rebuild"})
+	private String mode;
+
+	private final SteppedClock clock = new SteppedClock();
+	private final DMMFlipperConfig config = new DMMFlipperConfig()
+	{
+	};
+	private PriceApiClient client;
+	// Two snapshots on one slot table, differing in CHANGED_FRACTION of the items
+	private PriceSnapshot[] markets;
+	private long published;
+
+	@Setup
+	public void setUp() throws IOException
+	{
+		Fixtures payloads = Fixtures.load(fixture);
+		PriceFeed latest = payloads.latestFeed();
+		PriceFeed volumes = payloads.volumeFeed();
+
+		client = new PriceApiClient(new OkHttpClient(), new Gson());
+		client.setClock(clock);
+		client.setRecordHistory(false);
+		client.setScanParallelism(1);
+		client.installItemMapping(payloads.items());
+
+		PriceSnapshot first = PriceSnapshot.build(PriceSnapshot.EMPTY, latest, volumes, 1, 0);
+		PriceSnapshot second = PriceSnapshot.build(first, changed(latest), volumes, 2, 0);
+		markets = new PriceSnapshot[]{first, second};
+		clock.seconds = payloads.newestTrade();
+		client.replay(first);
+
+		// Register every tab's view so later calls are incremental
+		client.calculateAllOpportunities(config);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		client.shutdown();
+	}
+
+	@Setup(Level.Invocation)
+	public void advance()
+	{
+		if ("refresh".equals(mode))
+		{
+			// Alternating between the two keeps every diff at the changed items
+			client.replay(markets[(int) (++published & 1)]);
+		}
+		else if ("rebuild".equals(mode))
+		{
+			clock.seconds--;
+		}
+	}
+
+	@Benchmark
+	public List<FlipOpportunity> bestMargin()
+	{
+		return client.calculateOpportunities(config.minProfit(), config.minROI(), config.maxROI(), config.maxAge(), config.budget());
+	}
+
+	@Benchmark
+	public List<FlipOpportunity> bulk()
+	{
+		return client.calculateBulkOpportunities(config.minProfit(), config.minROI(), config.maxROI(), config.maxAge(), config.budget(), 1000);
+	}
+
+	@Benchmark
+	public List<FlipOpportunity> activeFlipping()
+	{
+		return client.calculateActiveFlippingOpportunities(config.minProfit(), 25000, config.maxAge(), config.budget());
+	}
+
+	@Benchmark
+	public List<FlipOpportunity> overnight()
+	{
+		return client.calculateOvernightOpportunities(config.minProfit(), config.minROI(), config.maxROI(), config.maxAge(), config.budget());
+	}
+
+	@Benchmark
+	public PriceApiClient.TabOpportunities allTabs()
+	{
+		return client.calculateAllOpportunities(config, 50);
+	}
+
+	/**
+	 * Copy of {@code feed} with {@link #CHANGED_FRACTION} of the rows moved by a few GP
+	 */
+	private static PriceFeed changed(PriceFeed feed)
+	{
+		Random random = new Random(feed.size());
+		PriceFeed copy = new PriceFeed();
+		for (int row = 0; row < feed.size(); row++)
+		{
+			int delta = random.nextDouble() < CHANGED_FRACTION ? 1 + random.nextInt(5) : 0;
+			copy.add(feed.itemId(row), feed.high(row) + delta, feed.low(row), feed.highTime(row) + delta,
+				feed.lowTime(row), feed.highVolume(row), feed.lowVolume(row));
+		}
+		return copy;
+	}
+
+	private static final class SteppedClock extends Clock
+	{
+		private volatile long seconds;
+
+		@Override
+		public long millis()
+		{
+			return seconds * 1000;
+		}
+
+		@Override
+		public Instant instant()
+		{
+			return Instant.ofEpochSecond(seconds);
+		}
+
+		@Override
+		public ZoneId getZone()
+		{
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone)
+		{
+			return Clock.fixed(instant(), zone);
+		}
+	}
+}
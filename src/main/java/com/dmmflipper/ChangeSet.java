@@ -0,0 +1,90 @@
+package com.dmmflipper;
+
+import java.util.BitSet;
+import lombok.Getter;
+
+/**
+ * Items whose prices, trade times, volumes or trend differ between two snapshots.
+ */
+public final class ChangeSet
+{
+	static final ChangeSet NONE = new ChangeSet(0, 0, new BitSet(), new int[0]);
+
+	@Getter
+	private final long fromVersion;
+
+	@Getter
+	private final long toVersion;
+
+	private final BitSet slots;
+	private final int[] itemIds;
+
+	private ChangeSet(long fromVersion, long toVersion, BitSet slots, int[] itemIds)
+	{
+		this.fromVersion = fromVersion;
+		this.toVersion = toVersion;
+		this.slots = slots;
+		this.itemIds = itemIds;
+	}
+
+	/**
+	 * Compares {@code to} against {@code from} slot by slot. Both snapshots share one
+	 * append-only slot table, so a slot means the same item in each.
+	 */
+	static ChangeSet between(PriceSnapshot from, PriceSnapshot to)
+	{
+		BitSet slots = new BitSet(to.slotCount());
+		int common = Math.min(from.slotCount(), to.slotCount());
+
+		for (int slot = 0; slot < common; slot++)
+		{
+			if (from.isPresent(slot) != to.isPresent(slot)
+				|| from.high(slot) != to.high(slot)
+				|| from.low(slot) != to.low(slot)
+				|| from.highTime(slot) != to.highTime(slot)
+				|| from.lowTime(slot) != to.lowTime(slot)
+				|| from.highVolume(slot) != to.highVolume(slot)
+				|| from.lowVolume(slot) != to.lowVolume(slot)
+				|| from.trend(slot) != to.trend(slot))
+			{
+				slots.set(slot);
+			}
+		}
+
+		// Slots added since 'from' are new items
+		for (int slot = common; slot < to.slotCount(); slot++)
+		{
+			if (to.isPresent(slot))
+			{
+				slots.set(slot);
+			}
+		}
+
+		int[] itemIds = new int[slots.cardinality()];
+		int i = 0;
+		for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1))
+		{
+			itemIds[i++] = to.itemId(slot);
+		}
+
+		return new ChangeSet(from.getVersion(), to.getVersion(), slots, itemIds);
+	}
+
+	/**
+	 * Slots of the changed items, in the slot numbering of the 'to' snapshot
+	 */
+	BitSet slots()
+	{
+		return slots;
+	}
+
+	public int[] getChangedItemIds()
+	{
+		return itemIds.clone();
+	}
+
+	public int size()
+	{
+		return itemIds.length;
+	}
+}
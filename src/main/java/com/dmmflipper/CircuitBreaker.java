@@ -0,0 +1,104 @@
+package com.dmmflipper;
+
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Stops requests to the wiki API while it is struggling, so an outage isn't made worse by every
+ * client retrying into it.
+ * <p>
+ * After {@link #FAILURE_THRESHOLD} failed requests in a row the breaker opens and requests fail
+ * without touching the network. Once the cool-down has passed a single trial request is let
+ * through (half-open): success closes the breaker, failure opens it again for twice as long, up to
+ * {@link #MAX_COOLDOWN_MILLIS}.
+ * <p>
+ * Called from OkHttp's callback threads and the executor, so every method is synchronized.
+ */
+@Slf4j
+final class CircuitBreaker
+{
+	static final int FAILURE_THRESHOLD = 5;
+	static final long BASE_COOLDOWN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+	static final long MAX_COOLDOWN_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+	enum State
+	{
+		CLOSED,
+		OPEN,
+		HALF_OPEN
+	}
+
+	private State state = State.CLOSED;
+	private int failures;
+	private long cooldownMillis = BASE_COOLDOWN_MILLIS;
+	private long openUntil;
+
+	/**
+	 * Whether a request may go out now. In the half-open state only the first caller gets through.
+	 */
+	synchronized boolean tryAcquire(long now)
+	{
+		if (state == State.CLOSED)
+		{
+			return true;
+		}
+		if (state == State.OPEN && now >= openUntil)
+		{
+			state = State.HALF_OPEN;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * The server answered; a 4xx counts too, as it says nothing about the API's health
+	 */
+	synchronized void onSuccess()
+	{
+		if (state != State.CLOSED)
+		{
+			log.info("Wiki API is answering again, resuming requests");
+		}
+		state = State.CLOSED;
+		failures = 0;
+		cooldownMillis = BASE_COOLDOWN_MILLIS;
+	}
+
+	/**
+	 * A request failed in a way worth backing off from: no answer, a timeout, a 429 or 5xx, or a cut-off body
+	 */
+	synchronized void onFailure(long now)
+	{
+		failures++;
+		if (state == State.HALF_OPEN)
+		{
+			cooldownMillis = Math.min(cooldownMillis * 2, MAX_COOLDOWN_MILLIS);
+			open(now);
+		}
+		else if (state == State.CLOSED && failures >= FAILURE_THRESHOLD)
+		{
+			open(now);
+		}
+	}
+
+	synchronized State getState()
+	{
+		return state;
+	}
+
+	/**
+	 * When the next trial request may go out; only meaningful while open
+	 */
+	synchronized long getOpenUntil()
+	{
+		return openUntil;
+	}
+
+	private void open(long now)
+	{
+		state = State.OPEN;
+		openUntil = now + cooldownMillis;
+		log.warn("Wiki API failed {} requests in a row, pausing requests for {}s", failures,
+			TimeUnit.MILLISECONDS.toSeconds(cooldownMillis));
+	}
+}
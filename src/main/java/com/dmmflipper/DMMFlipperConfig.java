@@ -82,4 +82,66 @@ public interface DMMFlipperConfig extends Config
 	{
 		return 10;
 	}
+
+	@ConfigItem(
+		keyName = "lotMatching",
+		name = "Flip Matching",
+		description = "Which earlier buy a sale is matched against when recording flips"
+	)
+	default LotMatching lotMatching()
+	{
+		return LotMatching.FIFO;
+	}
+
+	@ConfigItem(
+		keyName = "scanParallelism",
+		name = "Scan Threads",
+		description = "Threads used to scan large markets for opportunities (1 = no extra threads)"
+	)
+	@Range(min = 1, max = 8)
+	default int scanParallelism()
+	{
+		return 1;
+	}
+
+	@ConfigItem(
+		keyName = "recordHistory",
+		name = "Record Price History",
+		description = "Keep every price refresh on disk (compacted to hourly after a week, dropped after 180 days)"
+	)
+	default boolean recordHistory()
+	{
+		return true;
+	}
+
+	@ConfigItem(
+		keyName = "liveServer",
+		name = "Live Server",
+		description = "Push offers, opportunities and prices to the webapp over 127.0.0.1 instead of writing offers.json"
+	)
+	default boolean liveServer()
+	{
+		return false;
+	}
+
+	@ConfigItem(
+		keyName = "liveServerPort",
+		name = "Live Server Port",
+		description = "Port the webapp connects to, at http://127.0.0.1:<port>/events"
+	)
+	@Range(min = 1024, max = 65535)
+	default int liveServerPort()
+	{
+		return 8537;
+	}
+
+	@ConfigItem(
+		keyName = "customStrategies",
+		name = "Custom Strategies",
+		description = "One strategy per line, e.g. 'Cheap Movers: filter = buyPrice <= 50000 && volume >= 200; score = profit * log(volume + 1)'"
+	)
+	default String customStrategies()
+	{
+		return "";
+	}
 }
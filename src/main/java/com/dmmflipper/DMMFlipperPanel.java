@@ -8,8 +8,11 @@ import net.runelite.client.util.QuantityFormatter;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 @Slf4j
 public class DMMFlipperPanel extends PluginPanel
@@ -23,6 +26,16 @@ public class DMMFlipperPanel extends PluginPanel
 	private final JButton refreshButton;
 	private final JLabel sessionProfitLabel;
 	private final JLabel totalProfitLabel;
+	private final JLabel feedStatusLabel;
+	// Keeps the price age current while the panel is showing
+	private final Timer feedStatusTimer = new Timer(1000, e -> updateFeedStatus());
+	private final PipelineMetrics metrics;
+	private final JLabel metricsHeader = new JLabel();
+	private final JTextArea metricsText = new JTextArea();
+	private final JScrollPane metricsScroll = new JScrollPane(metricsText);
+	// Repaints the metrics while the debug section is open and the panel is showing
+	private final Timer metricsTimer = new Timer(1000, e -> updateMetrics());
+	private boolean metricsExpanded;
 
 	public DMMFlipperPanel(DMMFlipperPlugin plugin, PriceApiClient priceApiClient, 
 						   GEOfferTracker geOfferTracker, FlipHistory flipHistory)
@@ -32,6 +45,7 @@ public class DMMFlipperPanel extends PluginPanel
 		this.priceApiClient = priceApiClient;
 		this.geOfferTracker = geOfferTracker;
 		this.flipHistory = flipHistory;
+		this.metrics = priceApiClient.getMetrics();
 
 		setLayout(new BorderLayout());
 		setBackground(ColorScheme.DARK_GRAY_COLOR);
@@ -41,7 +55,7 @@ public class DMMFlipperPanel extends PluginPanel
 		headerPanel.setBackground(ColorScheme.DARKER_GRAY_COLOR);
 		headerPanel.setBorder(new EmptyBorder(10, 10, 10, 10));
 
-		JPanel titlePanel = new JPanel(new GridLayout(3, 1));
+		JPanel titlePanel = new JPanel(new GridLayout(4, 1));
 		titlePanel.setBackground(ColorScheme.DARKER_GRAY_COLOR);
 
 		JLabel titleLabel = new JLabel("DMM Flipper - Active Offers");
@@ -56,9 +70,13 @@ public class DMMFlipperPanel extends PluginPanel
 		totalProfitLabel.setForeground(Color.CYAN);
 		totalProfitLabel.setFont(new Font("Arial", Font.PLAIN, 11));
 
+		feedStatusLabel = new JLabel();
+		feedStatusLabel.setFont(new Font("Arial", Font.PLAIN, 11));
+
 		titlePanel.add(titleLabel);
 		titlePanel.add(sessionProfitLabel);
 		titlePanel.add(totalProfitLabel);
+		titlePanel.add(feedStatusLabel);
 
 		headerPanel.add(titlePanel, BorderLayout.WEST);
 
@@ -81,9 +99,158 @@ public class DMMFlipperPanel extends PluginPanel
 		// Store reference for updates
 		this.offersPanel = offersPanel;
 
+		// Debug section, collapsed until clicked
+		add(createMetricsSection(), BorderLayout.SOUTH);
+
 		// Initial load
 		updateOfferDisplay();
 		updateProfitLabels();
+		updateFeedStatus();
+	}
+
+	@Override
+	public void onActivate()
+	{
+		plugin.setPanelVisible(true);
+		updateFeedStatus();
+		feedStatusTimer.start();
+		if (metricsExpanded)
+		{
+			metricsTimer.start();
+		}
+	}
+
+	@Override
+	public void onDeactivate()
+	{
+		plugin.setPanelVisible(false);
+		feedStatusTimer.stop();
+		metricsTimer.stop();
+	}
+
+	private void updateFeedStatus()
+	{
+		PriceApiClient.FeedStatus status = priceApiClient.getFeedStatus();
+		String age = formatAge(status.getAgeSeconds());
+		switch (status.getState())
+		{
+			case LIVE:
+				feedStatusLabel.setText("Prices: live, " + age + " old");
+				feedStatusLabel.setForeground(Color.GREEN);
+				break;
+			case STALE:
+				feedStatusLabel.setText("Prices: stale, " + age + " old, retrying");
+				feedStatusLabel.setForeground(Color.ORANGE);
+				break;
+			case OFFLINE:
+				feedStatusLabel.setText(status.getAgeSeconds() < 0
+					? "Wiki API down, retry in " + formatAge(status.getRetryInSeconds())
+					: "Wiki API down, showing " + age + " old prices");
+				feedStatusLabel.setForeground(Color.RED);
+				break;
+			default:
+				feedStatusLabel.setText("Prices: loading...");
+				feedStatusLabel.setForeground(Color.LIGHT_GRAY);
+		}
+		String failures = status.getFailedRefreshes() > 0 ? status.getFailedRefreshes() + " failed refreshes in a row" : null;
+		feedStatusLabel.setToolTipText(status.getState() == PriceApiClient.FeedState.OFFLINE
+			? "Next request in " + formatAge(status.getRetryInSeconds()) + (failures != null ? "; " + failures : "")
+			: failures);
+	}
+
+	private static String formatAge(long seconds)
+	{
+		if (seconds < 60)
+		{
+			return Math.max(0, seconds) + "s";
+		}
+		if (seconds < 3600)
+		{
+			return seconds / 60 + "m";
+		}
+		return seconds / 3600 + "h";
+	}
+
+	private JPanel createMetricsSection()
+	{
+		JPanel section = new JPanel(new BorderLayout());
+		section.setBackground(ColorScheme.DARKER_GRAY_COLOR);
+		section.setBorder(new EmptyBorder(5, 10, 5, 10));
+
+		metricsHeader.setForeground(Color.LIGHT_GRAY);
+		metricsHeader.setFont(new Font("Arial", Font.BOLD, 11));
+		metricsHeader.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
+		metricsHeader.addMouseListener(new MouseAdapter()
+		{
+			@Override
+			public void mouseClicked(MouseEvent e)
+			{
+				setMetricsExpanded(!metricsExpanded);
+			}
+		});
+
+		metricsText.setEditable(false);
+		metricsText.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 10));
+		metricsText.setForeground(Color.LIGHT_GRAY);
+		metricsText.setBackground(ColorScheme.DARKER_GRAY_COLOR);
+		metricsScroll.setPreferredSize(new Dimension(0, 250));
+
+		section.add(metricsHeader, BorderLayout.NORTH);
+		section.add(metricsScroll, BorderLayout.CENTER);
+		setMetricsExpanded(false);
+		return section;
+	}
+
+	private void setMetricsExpanded(boolean expanded)
+	{
+		metricsExpanded = expanded;
+		metricsHeader.setText((expanded ? "\u25BE" : "\u25B8") + " Pipeline metrics");
+		metricsScroll.setVisible(expanded);
+		if (expanded)
+		{
+			updateMetrics();
+			metricsTimer.start();
+		}
+		else
+		{
+			metricsTimer.stop();
+		}
+		revalidate();
+	}
+
+	/**
+	 * Timers in ms, then histograms, counters and gauges; one entry per two lines to fit the panel
+	 */
+	private void updateMetrics()
+	{
+		StringBuilder text = new StringBuilder();
+		for (Map.Entry<String, PipelineMetrics.Summary> timer : metrics.getTimers().entrySet())
+		{
+			appendSummary(text, timer.getKey(), timer.getValue(), "%.1f", " ms");
+		}
+		for (Map.Entry<String, PipelineMetrics.Summary> histogram : metrics.getHistograms().entrySet())
+		{
+			appendSummary(text, histogram.getKey(), histogram.getValue(), "%.0f", "");
+		}
+		for (Map.Entry<String, Long> counter : metrics.getCounters().entrySet())
+		{
+			text.append(counter.getKey()).append("\n  ").append(QuantityFormatter.formatNumber(counter.getValue())).append('\n');
+		}
+		for (Map.Entry<String, Long> gauge : metrics.getGauges().entrySet())
+		{
+			text.append(gauge.getKey()).append("\n  ").append(QuantityFormatter.formatNumber(gauge.getValue())).append('\n');
+		}
+
+		int caret = metricsText.getCaretPosition();
+		metricsText.setText(text.toString());
+		metricsText.setCaretPosition(Math.min(caret, metricsText.getDocument().getLength()));
+	}
+
+	private static void appendSummary(StringBuilder text, String name, PipelineMetrics.Summary summary, String format, String unit)
+	{
+		text.append(name).append('\n')
+			.append(String.format("  n %d  p50 " + format + "  p95 " + format + "  max " + format + "%s%n",
+				summary.getCount(), summary.getP50(), summary.getP95(), summary.getMax(), unit));
 	}
 
 
@@ -96,6 +263,7 @@ public class DMMFlipperPanel extends PluginPanel
 	public void updateOfferDisplay()
 	{
 		SwingUtilities.invokeLater(() -> {
+			long started = System.nanoTime();
 			offersPanel.removeAll();
 
 			List<GEOfferTracker.TrackedOffer> offers = geOfferTracker.getActiveOffers();
@@ -117,6 +285,7 @@ public class DMMFlipperPanel extends PluginPanel
 
 			offersPanel.revalidate();
 			offersPanel.repaint();
+			metrics.timer("render offers").record(System.nanoTime() - started);
 		});
 	}
 
@@ -127,8 +296,11 @@ public class DMMFlipperPanel extends PluginPanel
 		panel.setBackground(ColorScheme.DARKER_GRAY_COLOR);
 		panel.setBorder(new EmptyBorder(5, 5, 5, 5));
 
-		ItemInfo itemInfo = priceApiClient.getItemInfo(offer.getItemId());
-		String itemName = itemInfo != null ? itemInfo.getName() : "Item #" + offer.getItemId();
+		String itemName = priceApiClient.getItemName(offer.getItemId());
+		if (itemName == null)
+		{
+			itemName = "Item #" + offer.getItemId();
+		}
 
 		JPanel infoPanel = new JPanel(new GridLayout(4, 1));
 		infoPanel.setBackground(ColorScheme.DARKER_GRAY_COLOR);
@@ -200,11 +372,13 @@ public class DMMFlipperPanel extends PluginPanel
 
 	public void updateProfitLabels()
 	{
+		long started = System.nanoTime();
 		int sessionProfit = flipHistory.getSessionProfit();
 		int totalProfit = flipHistory.getTotalProfit();
 
 		sessionProfitLabel.setText(String.format("Session: %s gp", QuantityFormatter.formatNumber(sessionProfit)));
 		totalProfitLabel.setText(String.format("Total: %s gp", QuantityFormatter.formatNumber(totalProfit)));
+		metrics.timer("render profit labels").record(System.nanoTime() - started);
 	}
 
 	private String truncateName(String name, int maxLength)
@@ -5,7 +5,9 @@ import javax.inject.Inject;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.*;
 import net.runelite.api.events.*;
+import net.runelite.client.callback.ClientThread;
 import net.runelite.client.config.ConfigManager;
+import net.runelite.client.events.ConfigChanged;
 import net.runelite.client.eventbus.Subscribe;
 import net.runelite.client.plugins.Plugin;
 import net.runelite.client.plugins.PluginDescriptor;
@@ -13,6 +15,7 @@ import net.runelite.client.ui.ClientToolbar;
 import net.runelite.client.ui.NavigationButton;
 import net.runelite.client.util.ImageUtil;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
 
 @Slf4j
 @PluginDescriptor(
@@ -28,6 +31,9 @@ public class DMMFlipperPlugin extends Plugin
 	@Inject
 	private DMMFlipperConfig config;
 
+	@Inject
+	private ClientThread clientThread;
+
 	@Inject
 	private ClientToolbar clientToolbar;
 
@@ -43,6 +49,12 @@ public class DMMFlipperPlugin extends Plugin
 	private DMMFlipperPanel panel;
 	private NavigationButton navButton;
 	private OfferExporter offerExporter;
+	// Replaces the offers.json export while running; started and stopped from config changes
+	private volatile LiveServer liveServer;
+
+	// Polling runs while logged in and either the panel is open or offers are in the market
+	private volatile boolean loggedIn;
+	private volatile boolean panelVisible;
 
 	@Override
 	protected void startUp() throws Exception
@@ -79,6 +91,14 @@ public class DMMFlipperPlugin extends Plugin
 		clientToolbar.addNavigation(navButton);
 
 		// Start price updates
+		priceApiClient.setScanParallelism(config.scanParallelism());
+		priceApiClient.setCustomStrategies(config.customStrategies());
+		priceApiClient.setRefreshInterval(config.refreshInterval());
+		priceApiClient.setRecordHistory(config.recordHistory());
+		geOfferTracker.setLotMatching(config.lotMatching());
+		updateLiveServer();
+		loggedIn = client.getGameState() == GameState.LOGGED_IN;
+		updatePolling();
 		priceApiClient.startPriceUpdates();
 	}
 
@@ -88,6 +108,8 @@ public class DMMFlipperPlugin extends Plugin
 		log.info("DMM Flipper stopped!");
 		clientToolbar.removeNavigation(navButton);
 		priceApiClient.stopPriceUpdates();
+		offerExporter.shutdown();
+		stopLiveServer();
 	}
 
 	@Subscribe
@@ -95,13 +117,154 @@ public class DMMFlipperPlugin extends Plugin
 	{
 		// Track GE offers
 		geOfferTracker.updateOffer(event);
+		updatePolling();
 		panel.updateOfferDisplay();
 		panel.updateProfitLabels();
 		
-		// Export offers for webapp
-		if (offerExporter != null)
+		// Push or export offers for webapp
+		LiveServer server = liveServer;
+		if (server != null)
+		{
+			server.offersChanged();
+		}
+		else if (offerExporter != null)
+		{
+			offerExporter.requestExport();
+		}
+	}
+
+	@Subscribe
+	public void onStatChanged(StatChanged event)
+	{
+		// Sent for every skill at login, and again on each level up
+		LiveServer server = liveServer;
+		if (server != null && event.getSkill() == Skill.SMITHING)
+		{
+			server.setSmithingLevel(event.getLevel());
+		}
+	}
+
+	@Subscribe
+	public void onGameStateChanged(GameStateChanged event)
+	{
+		// Loading and hopping are passing states; only a full login or logout moves polling
+		if (event.getGameState() == GameState.LOGGED_IN)
+		{
+			loggedIn = true;
+			updatePolling();
+		}
+		else if (event.getGameState() == GameState.LOGIN_SCREEN)
+		{
+			loggedIn = false;
+			updatePolling();
+		}
+	}
+
+	/**
+	 * Called by the panel when it is shown or hidden in the sidebar.
+	 */
+	void setPanelVisible(boolean visible)
+	{
+		panelVisible = visible;
+		updatePolling();
+	}
+
+	private void updatePolling()
+	{
+		boolean marketActive = geOfferTracker.hasActiveOffers();
+		priceApiClient.setMarketActive(marketActive);
+		// A connected webapp shows prices just like the panel does
+		LiveServer server = liveServer;
+		boolean watched = panelVisible || (server != null && server.getClientCount() > 0);
+		priceApiClient.setPollingPaused(!loggedIn || (!watched && !marketActive));
+	}
+
+	@Subscribe
+	public void onConfigChanged(ConfigChanged event)
+	{
+		if (!"dmmflipper".equals(event.getGroup()))
+		{
+			return;
+		}
+
+		if ("scanParallelism".equals(event.getKey()))
+		{
+			priceApiClient.setScanParallelism(config.scanParallelism());
+		}
+		else if ("customStrategies".equals(event.getKey()))
+		{
+			priceApiClient.setCustomStrategies(config.customStrategies());
+		}
+		else if ("refreshInterval".equals(event.getKey()))
+		{
+			priceApiClient.setRefreshInterval(config.refreshInterval());
+		}
+		else if ("recordHistory".equals(event.getKey()))
+		{
+			priceApiClient.setRecordHistory(config.recordHistory());
+		}
+		else if ("lotMatching".equals(event.getKey()))
+		{
+			geOfferTracker.setLotMatching(config.lotMatching());
+		}
+		else if ("liveServer".equals(event.getKey()) || "liveServerPort".equals(event.getKey()))
+		{
+			stopLiveServer();
+			updateLiveServer();
+			return;
+		}
+
+		// Thresholds and custom strategies are read at scan time; rescan so the webapp sees them now
+		LiveServer server = liveServer;
+		if (server != null)
+		{
+			server.settingsChanged();
+		}
+	}
+
+	/**
+	 * Starts the live server if it is enabled and not running. If the port can't be bound, offers
+	 * keep going to offers.json.
+	 */
+	private void updateLiveServer()
+	{
+		if (!config.liveServer() || liveServer != null)
+		{
+			return;
+		}
+
+		LiveServer server = new LiveServer(priceApiClient, geOfferTracker, config, config.liveServerPort(), this::updatePolling);
+		try
+		{
+			server.start();
+		}
+		catch (IOException e)
+		{
+			log.warn("Could not start the live server on port {}, exporting offers.json instead", config.liveServerPort(), e);
+			server.stop();
+			return;
+		}
+		liveServer = server;
+		// A client may have connected before the server was published
+		updatePolling();
+		log.info("Pushing live updates at {}", server.getAddress());
+
+		// The level is only sent by StatChanged on login and level ups
+		clientThread.invokeLater(() -> {
+			if (client.getLocalPlayer() != null)
+			{
+				server.setSmithingLevel(client.getRealSkillLevel(Skill.SMITHING));
+			}
+		});
+	}
+
+	private void stopLiveServer()
+	{
+		if (liveServer != null)
 		{
-			offerExporter.exportOffers();
+			liveServer.stop();
+			liveServer = null;
+			updatePolling();
 		}
 	}
 
@@ -19,6 +19,15 @@ public class FlipOpportunity
 	private final String trend;
 	private final boolean isReal;
 
+	/**
+	 * Copy of this opportunity with a different price age
+	 */
+	public FlipOpportunity withAgeMinutes(int ageMinutes)
+	{
+		return new FlipOpportunity(itemId, itemName, buyPrice, sellPrice, profit, roi, geTax, limit,
+			ageMinutes, buyVolume, sellVolume, trend, isReal);
+	}
+
 	public int getTotalCost(int quantity)
 	{
 		return buyPrice * quantity;
@@ -0,0 +1,52 @@
+package com.dmmflipper;
+
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Filter and ranking rules of one opportunity list. Every item with fresh enough prices is run
+ * through {@link #getFilters} in order; the ones passing all of them are ranked by
+ * {@link #getScore}, highest first.
+ * <p>
+ * Strategies are run by the same incremental scan as the built-in tabs (see {@link StrategySpec}
+ * for declaring one as text). Implementations must be immutable and implement equals/hashCode
+ * over their settings, so equal strategies share one maintained result set. The functions may be
+ * called from several threads at once and must not depend on anything but the item.
+ */
+public interface FlipStrategy
+{
+	String getName();
+
+	/**
+	 * Items whose buy or sell trade is older than this are never offered
+	 */
+	int getMaxAgeMinutes();
+
+	/**
+	 * Predicates an item must pass, tested in order so cheap and selective ones should come first
+	 */
+	List<Predicate<MarketItem>> getFilters();
+
+	/**
+	 * Ranking score of a qualifying item, higher first
+	 */
+	ToDoubleFunction<MarketItem> getScore();
+
+	/**
+	 * Orders items with equal {@link #getScore}, higher first
+	 */
+	default ToDoubleFunction<MarketItem> getTiebreak()
+	{
+		return item -> 0;
+	}
+
+	/**
+	 * Profit shown for a qualifying item; per item by default
+	 */
+	default ToIntFunction<MarketItem> getProfit()
+	{
+		return MarketItem::getProfit;
+	}
+}
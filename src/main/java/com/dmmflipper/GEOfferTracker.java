@@ -8,49 +8,84 @@ import net.runelite.api.events.GrandExchangeOfferChanged;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Follows the player's GE offers and turns completed ones into flips.
+ * <p>
+ * Offer events arrive on the client thread, while the panel (EDT) and the exporter read the
+ * offers from their own threads. The eight slots are therefore kept as one immutable table of
+ * immutable offers behind an {@link AtomicReference}: each event publishes a new table, and a
+ * reader gets every slot as of one event with a single read, without locking or copying. The
+ * lot books and margin-check state are only touched on the client thread.
+ */
 @Slf4j
 @Singleton
 public class GEOfferTracker
 {
-	@Inject
-	private PriceApiClient priceApiClient;
+	static final int GE_SLOTS = 8;
+
+	private final PriceApiClient priceApiClient;
+	private final FlipHistory flipHistory;
+
+	private final AtomicReference<OfferSlots> offers = new AtomicReference<>(OfferSlots.EMPTY);
+	// Books the tracker looks at at most per fill when letting idle items go
+	private static final int IDLE_BOOKS_PER_FILL = 2;
+
+	// Least recently traded item first, so idle books are found without walking the rest
+	private final LinkedHashMap<Integer, LotBook> lotBooks = new LinkedHashMap<>(16, 0.75f, true);
+	// Most recent completed buy and sell of each item, to spot margin checks
+	private final Map<Integer, TrackedOffer> lastBuys = new HashMap<>();
+	private final Map<Integer, TrackedOffer> lastSells = new HashMap<>();
+	private volatile LotMatching lotMatching = LotMatching.FIFO;
 
 	@Inject
-	private FlipHistory flipHistory;
+	GEOfferTracker(PriceApiClient priceApiClient, FlipHistory flipHistory)
+	{
+		this.priceApiClient = priceApiClient;
+		this.flipHistory = flipHistory;
+	}
 
-	private final Map<Integer, TrackedOffer> activeOffers = new HashMap<>();
-	private final Map<Integer, List<TrackedOffer>> completedBuys = new HashMap<>();
-	private final Map<Integer, List<TrackedOffer>> completedSells = new HashMap<>();
+	/**
+	 * Sets which open lot later fills are matched against; lots already open are kept
+	 */
+	public void setLotMatching(LotMatching lotMatching)
+	{
+		this.lotMatching = lotMatching;
+	}
 
 	public void updateOffer(GrandExchangeOfferChanged event)
 	{
 		GrandExchangeOffer offer = event.getOffer();
 		int slot = event.getSlot();
+		if (slot < 0 || slot >= GE_SLOTS)
+		{
+			return;
+		}
 
 		// Handle completed offers
 		if (offer.getState() == GrandExchangeOfferState.BOUGHT ||
 			offer.getState() == GrandExchangeOfferState.SOLD)
 		{
-			TrackedOffer tracked = activeOffers.remove(slot);
+			TrackedOffer tracked = clear(slot);
 			if (tracked != null)
 			{
-				tracked.setQuantityFilled(offer.getQuantitySold());
+				tracked = tracked.withQuantityFilled(offer.getQuantitySold());
 				
 				// Store completed offer
 				if (offer.getState() == GrandExchangeOfferState.BOUGHT)
 				{
-					completedBuys.computeIfAbsent(offer.getItemId(), k -> new ArrayList<>()).add(tracked);
+					lastBuys.put(offer.getItemId(), tracked);
 					log.debug("Completed buy: {} x{} @ {}gp", offer.getItemId(), tracked.getQuantityFilled(), tracked.getPrice());
 				}
 				else
 				{
-					completedSells.computeIfAbsent(offer.getItemId(), k -> new ArrayList<>()).add(tracked);
+					lastSells.put(offer.getItemId(), tracked);
 					log.debug("Completed sell: {} x{} @ {}gp", offer.getItemId(), tracked.getQuantityFilled(), tracked.getPrice());
-					
-					// Try to match with a buy to create a completed flip
-					matchFlip(offer.getItemId(), tracked);
 				}
+
+				// Match against open lots of the item to record completed flips
+				fill(tracked);
 				
 				// Check if this was a margin check (quantity = 1)
 				if (tracked.getQuantityFilled() == 1)
@@ -65,7 +100,13 @@ public class GEOfferTracker
 		if (offer.getState() == GrandExchangeOfferState.CANCELLED_BUY ||
 			offer.getState() == GrandExchangeOfferState.CANCELLED_SELL)
 		{
-			activeOffers.remove(slot);
+			TrackedOffer tracked = clear(slot);
+
+			// Whatever filled before the cancel was still bought or sold
+			if (tracked != null && offer.getQuantitySold() > 0)
+			{
+				fill(tracked.withQuantityFilled(offer.getQuantitySold()));
+			}
 			return;
 		}
 
@@ -73,16 +114,17 @@ public class GEOfferTracker
 		if (offer.getState() == GrandExchangeOfferState.BUYING ||
 			offer.getState() == GrandExchangeOfferState.SELLING)
 		{
-			TrackedOffer tracked = new TrackedOffer();
-			tracked.setSlot(slot);
-			tracked.setItemId(offer.getItemId());
-			tracked.setQuantity(offer.getTotalQuantity());
-			tracked.setQuantityFilled(offer.getQuantitySold());
-			tracked.setPrice(offer.getPrice());
-			tracked.setBuying(offer.getState() == GrandExchangeOfferState.BUYING);
-			tracked.setTimestamp(System.currentTimeMillis());
+			TrackedOffer tracked = new TrackedOffer(
+				slot,
+				offer.getItemId(),
+				offer.getTotalQuantity(),
+				offer.getQuantitySold(),
+				offer.getPrice(),
+				offer.getState() == GrandExchangeOfferState.BUYING,
+				System.currentTimeMillis()
+			);
 
-			activeOffers.put(slot, tracked);
+			offers.updateAndGet(table -> table.with(slot, tracked));
 			
 			log.debug("Tracking offer: {} x{} @ {}gp", 
 				offer.getItemId(), 
@@ -91,34 +133,71 @@ public class GEOfferTracker
 		}
 	}
 
-	private void matchFlip(int itemId, TrackedOffer sell)
+	private void fill(TrackedOffer offer)
 	{
-		List<TrackedOffer> buys = completedBuys.get(itemId);
-		if (buys == null || buys.isEmpty())
+		int itemId = offer.getItemId();
+		long now = System.currentTimeMillis();
+		dropIdleBooks(now);
+
+		if (offer.isBuying())
 		{
+			lotBooks.computeIfAbsent(itemId, k -> new LotBook()).bought(offer.getPrice(), offer.getQuantityFilled(), now);
 			return;
 		}
 
-		// Match with most recent buy
-		TrackedOffer buy = buys.get(buys.size() - 1);
-		
+		LotBook lots = lotBooks.get(itemId);
+		if (lots == null)
+		{
+			// Nothing bought since tracking began to match the sale against
+			return;
+		}
+		lots.sold(offer.getPrice(), offer.getQuantityFilled(), now, lotMatching,
+			(buyPrice, sellPrice, quantity) -> recordFlip(itemId, buyPrice, sellPrice, quantity));
+		if (lots.isEmpty())
+		{
+			lotBooks.remove(itemId);
+		}
+	}
+
+	/**
+	 * Lets go of the books of items that were kept rather than flipped. A book untouched for
+	 * longer than a lot lives has nothing left, and the least recently traded comes first, so
+	 * looking at a couple per fill keeps up without walking every book.
+	 */
+	private void dropIdleBooks(long now)
+	{
+		Iterator<LotBook> books = lotBooks.values().iterator();
+		for (int i = 0; i < IDLE_BOOKS_PER_FILL && books.hasNext(); i++)
+		{
+			if (!books.next().expire(now))
+			{
+				return;
+			}
+			books.remove();
+		}
+	}
+
+	private void recordFlip(int itemId, int buyPrice, int sellPrice, int quantity)
+	{
 		// Calculate profit
-		int quantity = Math.min(buy.getQuantityFilled(), sell.getQuantityFilled());
-		int revenue = sell.getPrice() * quantity;
-		int cost = buy.getPrice() * quantity;
-		int geTax = Math.min((int)(revenue * 0.01), 5_000_000);
-		int profit = revenue - cost - geTax;
+		long revenue = (long) sellPrice * quantity;
+		long cost = (long) buyPrice * quantity;
+		int geTax = (int) Math.min((long) (revenue * 0.01), 5_000_000);
+		int profit = (int) (revenue - cost - geTax);
 
 		// Get item name
-		ItemInfo itemInfo = priceApiClient.getItemInfo(itemId);
-		String itemName = itemInfo != null ? itemInfo.getName() : "Item #" + itemId;
+		String itemName = priceApiClient.getItemName(itemId);
+		if (itemName == null)
+		{
+			itemName = "Item #" + itemId;
+		}
 
 		// Create completed flip
 		FlipHistory.CompletedFlip flip = new FlipHistory.CompletedFlip(
 			itemId,
 			itemName,
-			buy.getPrice(),
-			sell.getPrice(),
+			buyPrice,
+			sellPrice,
 			quantity,
 			profit,
 			System.currentTimeMillis(),
@@ -126,22 +205,16 @@ public class GEOfferTracker
 		);
 
 		flipHistory.addCompletedFlip(flip);
-		log.info("Completed flip: {} - Profit: {}gp", itemName, profit);
-
-		// Remove matched buy
-		buys.remove(buy);
+		log.info("Completed flip: {} x{} - Profit: {}gp", itemName, quantity, profit);
 	}
 
 	private void checkForMarginCheck(int itemId)
 	{
-		List<TrackedOffer> buys = completedBuys.get(itemId);
-		List<TrackedOffer> sells = completedSells.get(itemId);
+		TrackedOffer lastBuy = lastBuys.get(itemId);
+		TrackedOffer lastSell = lastSells.get(itemId);
 
-		if (buys != null && !buys.isEmpty() && sells != null && !sells.isEmpty())
+		if (lastBuy != null && lastSell != null)
 		{
-			TrackedOffer lastBuy = buys.get(buys.size() - 1);
-			TrackedOffer lastSell = sells.get(sells.size() - 1);
-
 			// If both are quantity 1 and recent, it's likely a margin check
 			if (lastBuy.getQuantityFilled() == 1 && lastSell.getQuantityFilled() == 1)
 			{
@@ -156,20 +229,42 @@ public class GEOfferTracker
 		}
 	}
 
+	/**
+	 * Empties {@code slot}, returning the offer it held
+	 */
+	private TrackedOffer clear(int slot)
+	{
+		return offers.getAndUpdate(table -> table.with(slot, null)).get(slot);
+	}
+
+	/**
+	 * Offers still buying or selling, in slot order, all as of the same event. The list is
+	 * unmodifiable and shared, so reading it allocates nothing.
+	 */
 	public List<TrackedOffer> getActiveOffers()
 	{
-		return new ArrayList<>(activeOffers.values());
+		return offers.get().active;
+	}
+
+	/**
+	 * Whether any GE slot holds an offer that is still buying or selling
+	 */
+	public boolean hasActiveOffers()
+	{
+		return !offers.get().active.isEmpty();
 	}
 
 	public boolean isOfferStale(TrackedOffer offer, int thresholdPercent)
 	{
 		PriceData currentPrice = priceApiClient.getPriceData(offer.getItemId());
-		if (currentPrice == null)
+		int relevantPrice = currentPrice == null ? 0 : offer.isBuying() ? currentPrice.getLow() : currentPrice.getHigh();
+		if (relevantPrice == 0)
 		{
-			return false;
+			// No recent instant trade on that side: compare with the newest 5m average instead.
+			// A cache miss starts the fetch and the next check uses it
+			TimeSeries history = priceApiClient.peekTimeSeries(offer.getItemId(), TimeSeries.Timestep.FIVE_MINUTES);
+			relevantPrice = history == null ? 0 : history.latestAverage(!offer.isBuying());
 		}
-
-		int relevantPrice = offer.isBuying() ? currentPrice.getLow() : currentPrice.getHigh();
 		if (relevantPrice == 0)
 		{
 			return false;
@@ -179,16 +274,65 @@ public class GEOfferTracker
 		return percentDiff > thresholdPercent;
 	}
 
+	/**
+	 * The eight GE slots as of one event. Never modified once published; {@link #with} makes the next table.
+	 */
+	private static final class OfferSlots
+	{
+		static final OfferSlots EMPTY = new OfferSlots(new TrackedOffer[GE_SLOTS]);
+
+		private final TrackedOffer[] bySlot;
+		private final List<TrackedOffer> active;
+
+		private OfferSlots(TrackedOffer[] bySlot)
+		{
+			this.bySlot = bySlot;
+			List<TrackedOffer> active = new ArrayList<>(GE_SLOTS);
+			for (TrackedOffer offer : bySlot)
+			{
+				if (offer != null)
+				{
+					active.add(offer);
+				}
+			}
+			this.active = Collections.unmodifiableList(active);
+		}
+
+		TrackedOffer get(int slot)
+		{
+			return bySlot[slot];
+		}
+
+		OfferSlots with(int slot, TrackedOffer offer)
+		{
+			if (bySlot[slot] == offer)
+			{
+				return this;
+			}
+			TrackedOffer[] next = bySlot.clone();
+			next[slot] = offer;
+			return new OfferSlots(next);
+		}
+	}
+
+	/**
+	 * One offer as last reported by the GE; immutable, so it can be handed to other threads as is
+	 */
 	@Data
 	public static class TrackedOffer
 	{
-		private int slot;
-		private int itemId;
-		private int quantity;
-		private int quantityFilled;
-		private int price;
-		private boolean buying;
-		private long timestamp;
+		private final int slot;
+		private final int itemId;
+		private final int quantity;
+		private final int quantityFilled;
+		private final int price;
+		private final boolean buying;
+		private final long timestamp;
+
+		public TrackedOffer withQuantityFilled(int quantityFilled)
+		{
+			return new TrackedOffer(slot, itemId, quantity, quantityFilled, price, buying, timestamp);
+		}
 
 		public long getInactiveTimeMinutes()
 		{
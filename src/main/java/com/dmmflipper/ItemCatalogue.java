@@ -0,0 +1,291 @@
+package com.dmmflipper;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The /mapping catalogue reduced to what the scans and the panel read on every refresh, held as
+ * columns sorted by item id.
+ * <p>
+ * Ids, buy limits and high alch values are primitive arrays and membership is a bit set. Names
+ * are UTF-8 in one shared byte pool, each distinct name stored once, and are decoded when asked
+ * for. Examine text, icons, low alch and store values are not kept at all: {@link PriceApiClient#getItemInfo}
+ * reads them back from the cached mapping file for the few items the UI asks about.
+ * <p>
+ * Immutable once read; a new catalogue replaces the old one when /mapping changes.
+ */
+public final class ItemCatalogue
+{
+	public static final ItemCatalogue EMPTY = new Builder(0).build();
+
+	private final int[] itemId;
+	private final int[] limit;
+	private final int[] highAlch;
+	private final BitSet members;
+	private final byte[] namePool;
+	private final int[] nameStart;
+	private final short[] nameLength;
+
+	private ItemCatalogue(int[] itemId, int[] limit, int[] highAlch, BitSet members,
+		byte[] namePool, int[] nameStart, short[] nameLength)
+	{
+		this.itemId = itemId;
+		this.limit = limit;
+		this.highAlch = highAlch;
+		this.members = members;
+		this.namePool = namePool;
+		this.nameStart = nameStart;
+		this.nameLength = nameLength;
+	}
+
+	/**
+	 * Streams a /mapping response, keeping only the hot fields
+	 */
+	public static ItemCatalogue read(Reader reader) throws IOException
+	{
+		Builder builder = new Builder(4096);
+		try (JsonReader json = new JsonReader(reader))
+		{
+			json.beginArray();
+			while (json.hasNext())
+			{
+				int id = 0;
+				int itemLimit = 0;
+				int itemHighAlch = 0;
+				boolean itemMembers = false;
+				String name = null;
+
+				json.beginObject();
+				while (json.hasNext())
+				{
+					switch (json.nextName())
+					{
+						case "id":
+							id = json.nextInt();
+							break;
+						case "name":
+							name = json.nextString();
+							break;
+						case "members":
+							itemMembers = json.nextBoolean();
+							break;
+						case "limit":
+							itemLimit = readInt(json);
+							break;
+						case "highalch":
+							itemHighAlch = readInt(json);
+							break;
+						default:
+							json.skipValue();
+					}
+				}
+				json.endObject();
+				builder.add(id, name, itemMembers, itemLimit, itemHighAlch);
+			}
+			json.endArray();
+		}
+		return builder.build();
+	}
+
+	public static ItemCatalogue of(ItemInfo... items)
+	{
+		Builder builder = new Builder(items.length);
+		for (ItemInfo item : items)
+		{
+			builder.add(item.getId(), item.getName(), item.isMembers(), item.getLimit(), item.getHighalch());
+		}
+		return builder.build();
+	}
+
+	public int size()
+	{
+		return itemId.length;
+	}
+
+	/**
+	 * Position of {@code id} in the catalogue, or -1 if it isn't listed
+	 */
+	public int indexOf(int id)
+	{
+		int index = Arrays.binarySearch(itemId, id);
+		return index >= 0 ? index : -1;
+	}
+
+	public boolean contains(int id)
+	{
+		return indexOf(id) >= 0;
+	}
+
+	public int itemId(int index)
+	{
+		return itemId[index];
+	}
+
+	/**
+	 * Buy limit, 0 when the wiki lists none
+	 */
+	public int limit(int index)
+	{
+		return limit[index];
+	}
+
+	public int highAlch(int index)
+	{
+		return highAlch[index];
+	}
+
+	public boolean members(int index)
+	{
+		return members.get(index);
+	}
+
+	/**
+	 * Decodes the name from the pool; callers that need it repeatedly should keep the result
+	 */
+	public String name(int index)
+	{
+		return new String(namePool, nameStart[index], nameLength[index], StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Name of {@code id}, or null if it isn't listed
+	 */
+	public String getName(int id)
+	{
+		int index = indexOf(id);
+		return index >= 0 ? name(index) : null;
+	}
+
+	/**
+	 * The listed fields of one item as an {@link ItemInfo}; examine, icon and values stay unset
+	 */
+	ItemInfo toItemInfo(int index)
+	{
+		ItemInfo info = new ItemInfo();
+		info.setId(itemId[index]);
+		info.setName(name(index));
+		info.setMembers(members.get(index));
+		info.setLimit(limit[index]);
+		info.setHighalch(highAlch[index]);
+		return info;
+	}
+
+	/**
+	 * Approximate bytes held by the columns, for the pipeline metrics
+	 */
+	public long footprintBytes()
+	{
+		return 4L * (itemId.length + limit.length + highAlch.length + nameStart.length)
+			+ 2L * nameLength.length + members.size() / 8 + namePool.length;
+	}
+
+	private static int readInt(JsonReader json) throws IOException
+	{
+		if (json.peek() == JsonToken.NULL)
+		{
+			json.nextNull();
+			return 0;
+		}
+		return json.nextInt();
+	}
+
+	private static final class Builder
+	{
+		private int size;
+		private int[] itemId;
+		private int[] limit;
+		private int[] highAlch;
+		private final BitSet members = new BitSet();
+		private int[] nameStart;
+		private short[] nameLength;
+		private byte[] namePool;
+		private int poolSize;
+		// Offset of every distinct name already in the pool
+		private final Map<String, Integer> interned = new HashMap<>();
+
+		private Builder(int capacity)
+		{
+			itemId = new int[capacity];
+			limit = new int[capacity];
+			highAlch = new int[capacity];
+			nameStart = new int[capacity];
+			nameLength = new short[capacity];
+			namePool = new byte[capacity * 16];
+		}
+
+		private void add(int id, String name, boolean itemMembers, int itemLimit, int itemHighAlch)
+		{
+			if (size == itemId.length)
+			{
+				int capacity = Math.max(16, size * 2);
+				itemId = Arrays.copyOf(itemId, capacity);
+				limit = Arrays.copyOf(limit, capacity);
+				highAlch = Arrays.copyOf(highAlch, capacity);
+				nameStart = Arrays.copyOf(nameStart, capacity);
+				nameLength = Arrays.copyOf(nameLength, capacity);
+			}
+
+			String itemName = name != null ? name : "Item #" + id;
+			byte[] bytes = itemName.getBytes(StandardCharsets.UTF_8);
+			Integer start = interned.get(itemName);
+			if (start == null)
+			{
+				if (poolSize + bytes.length > namePool.length)
+				{
+					namePool = Arrays.copyOf(namePool, Math.max(namePool.length * 2, poolSize + bytes.length));
+				}
+				System.arraycopy(bytes, 0, namePool, poolSize, bytes.length);
+				start = poolSize;
+				poolSize += bytes.length;
+				interned.put(itemName, start);
+			}
+
+			itemId[size] = id;
+			limit[size] = itemLimit;
+			highAlch[size] = itemHighAlch;
+			nameStart[size] = start;
+			nameLength[size] = (short) Math.min(bytes.length, Short.MAX_VALUE);
+			members.set(size, itemMembers);
+			size++;
+		}
+
+		/**
+		 * Sorts the rows by id (the wiki doesn't) and trims every column to size
+		 */
+		private ItemCatalogue build()
+		{
+			Integer[] order = new Integer[size];
+			for (int i = 0; i < size; i++)
+			{
+				order[i] = i;
+			}
+			Arrays.sort(order, (a, b) -> Integer.compare(itemId[a], itemId[b]));
+
+			int[] sortedId = new int[size];
+			int[] sortedLimit = new int[size];
+			int[] sortedHighAlch = new int[size];
+			int[] sortedStart = new int[size];
+			short[] sortedLength = new short[size];
+			BitSet sortedMembers = new BitSet(size);
+			for (int i = 0; i < size; i++)
+			{
+				int row = order[i];
+				sortedId[i] = itemId[row];
+				sortedLimit[i] = limit[row];
+				sortedHighAlch[i] = highAlch[row];
+				sortedStart[i] = nameStart[row];
+				sortedLength[i] = nameLength[row];
+				sortedMembers.set(i, members.get(row));
+			}
+			return new ItemCatalogue(sortedId, sortedLimit, sortedHighAlch, sortedMembers,
+				Arrays.copyOf(namePool, poolSize), sortedStart, sortedLength);
+		}
+	}
+}
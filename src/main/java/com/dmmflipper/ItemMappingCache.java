@@ -0,0 +1,365 @@
+package com.dmmflipper;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Request;
+import okhttp3.Response;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * On-disk copy of the /mapping catalogue plus the ETag/Last-Modified validators it was served with.
+ * Validators are only sent once the cached file has actually been read back, so a 304 always
+ * has a catalogue behind it. The file also backs the fields {@link ItemCatalogue} doesn't keep:
+ * whenever it is loaded or written, where each item's object lies in it is indexed, so one item's
+ * details are a single small read.
+ */
+@Slf4j
+class ItemMappingCache
+{
+	private static final String MAPPING_FILE = "mapping.json";
+	private static final String VALIDATORS_FILE = "mapping.properties";
+
+	private final Path dir;
+	private String etag;
+	private String lastModified;
+	// Byte range of each item's object in the cached file, sorted by item id
+	private int[] indexIds = new int[0];
+	private long[] indexStarts = new long[0];
+	private int[] indexLengths = new int[0];
+
+	ItemMappingCache(File dir)
+	{
+		this.dir = dir.toPath();
+	}
+
+	/**
+	 * Reads the cached catalogue, or returns null if there is none or it can't be read.
+	 */
+	synchronized ItemCatalogue load()
+	{
+		Path mapping = dir.resolve(MAPPING_FILE);
+		if (!Files.isRegularFile(mapping))
+		{
+			return null;
+		}
+
+		try (Reader reader = Files.newBufferedReader(mapping, StandardCharsets.UTF_8))
+		{
+			ItemCatalogue items = ItemCatalogue.read(reader);
+			loadValidators();
+			index(mapping);
+			return items;
+		}
+		catch (IOException | IllegalStateException e)
+		{
+			log.warn("Ignoring unreadable item mapping cache {}", mapping, e);
+			etag = null;
+			lastModified = null;
+			return null;
+		}
+	}
+
+	synchronized void addValidators(Request.Builder request)
+	{
+		if (etag != null)
+		{
+			request.header("If-None-Match", etag);
+		}
+		if (lastModified != null)
+		{
+			request.header("If-Modified-Since", lastModified);
+		}
+	}
+
+	/**
+	 * Writes a 200 response to disk (temp file + atomic rename), remembers its validators
+	 * and returns the parsed catalogue. The body's size is added to {@code bytes}.
+	 */
+	synchronized ItemCatalogue store(Response response, PipelineMetrics.Counter bytes) throws IOException
+	{
+		Files.createDirectories(dir);
+		Path mapping = dir.resolve(MAPPING_FILE);
+		Path tmp = Files.createTempFile(dir, "mapping", ".tmp");
+
+		try
+		{
+			try (InputStream in = PipelineMetrics.counting(response.body().byteStream(), bytes))
+			{
+				Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+			}
+
+			ItemCatalogue items;
+			try (Reader reader = Files.newBufferedReader(tmp, StandardCharsets.UTF_8))
+			{
+				items = ItemCatalogue.read(reader);
+			}
+
+			Files.move(tmp, mapping, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			index(mapping);
+
+			etag = response.header("ETag");
+			lastModified = response.header("Last-Modified");
+			saveValidators();
+
+			return items;
+		}
+		catch (IllegalStateException e)
+		{
+			throw new IOException("Malformed /mapping response", e);
+		}
+		finally
+		{
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/**
+	 * Every field of one item, read back from the cached file; null if the file doesn't list it.
+	 * Reads only that item's bytes, found through the index built when the file was loaded or written.
+	 */
+	synchronized ItemInfo details(int itemId, Gson gson)
+	{
+		int i = Arrays.binarySearch(indexIds, itemId);
+		if (i < 0)
+		{
+			return null;
+		}
+
+		Path mapping = dir.resolve(MAPPING_FILE);
+		ByteBuffer bytes = ByteBuffer.allocate(indexLengths[i]);
+		try (FileChannel channel = FileChannel.open(mapping, StandardOpenOption.READ))
+		{
+			while (bytes.hasRemaining() && channel.read(bytes, indexStarts[i] + bytes.position()) >= 0)
+			{
+			}
+			ItemInfo item = gson.fromJson(new String(bytes.array(), 0, bytes.position(), StandardCharsets.UTF_8), ItemInfo.class);
+			// The file is only replaced together with the index, but it could still have been edited by hand
+			return item != null && item.getId() == itemId ? item : null;
+		}
+		catch (IOException | JsonParseException | IllegalStateException e)
+		{
+			log.warn("Failed to read item {} from {}", itemId, mapping, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Records where each top-level object of the mapping array starts and ends. Braces inside
+	 * strings are skipped; multi-byte UTF-8 never contains the bytes looked for, so bytes are
+	 * scanned directly.
+	 */
+	private void index(Path mapping) throws IOException
+	{
+		int count = 0;
+		int[] ids = new int[4096];
+		long[] starts = new long[4096];
+		int[] lengths = new int[4096];
+
+		byte[] item = new byte[1024];
+		int itemLength = 0;
+		long start = 0;
+		int depth = 0;
+		boolean inString = false;
+		boolean escaped = false;
+		byte[] buffer = new byte[8192];
+		long position = 0;
+		try (InputStream in = Files.newInputStream(mapping))
+		{
+			for (int read = in.read(buffer); read >= 0; read = in.read(buffer))
+			{
+				for (int at = 0; at < read; at++, position++)
+				{
+					byte b = buffer[at];
+					if (depth >= 2 || (depth == 1 && b == '{'))
+					{
+						if (itemLength == item.length)
+						{
+							item = Arrays.copyOf(item, item.length * 2);
+						}
+						item[itemLength++] = b;
+					}
+
+					if (inString)
+					{
+						if (escaped)
+						{
+							escaped = false;
+						}
+						else if (b == '\\')
+						{
+							escaped = true;
+						}
+						else if (b == '"')
+						{
+							inString = false;
+						}
+					}
+					else if (b == '"')
+					{
+						inString = true;
+					}
+					else if (b == '{' || b == '[')
+					{
+						if (depth == 1)
+						{
+							start = position;
+						}
+						depth++;
+					}
+					else if ((b == '}' || b == ']') && --depth == 1)
+					{
+						int id = idOf(item, itemLength);
+						if (id >= 0)
+						{
+							if (count == ids.length)
+							{
+								ids = Arrays.copyOf(ids, count * 2);
+								starts = Arrays.copyOf(starts, count * 2);
+								lengths = Arrays.copyOf(lengths, count * 2);
+							}
+							ids[count] = id;
+							starts[count] = start;
+							lengths[count] = itemLength;
+							count++;
+						}
+						itemLength = 0;
+					}
+				}
+			}
+		}
+
+		// Sort by id, carrying each item's byte range along
+		long[] order = new long[count];
+		for (int i = 0; i < count; i++)
+		{
+			order[i] = (long) ids[i] << 32 | i;
+		}
+		Arrays.sort(order);
+		indexIds = new int[count];
+		indexStarts = new long[count];
+		indexLengths = new int[count];
+		for (int i = 0; i < count; i++)
+		{
+			int from = (int) order[i];
+			indexIds[i] = ids[from];
+			indexStarts[i] = starts[from];
+			indexLengths[i] = lengths[from];
+		}
+	}
+
+	/**
+	 * The "id" of one object of the mapping, or -1 if it has none. Scans the bytes rather than
+	 * parsing the object, as this runs for every item whenever the file is indexed.
+	 */
+	private static int idOf(byte[] item, int length)
+	{
+		int depth = 0;
+		for (int i = 0; i < length; i++)
+		{
+			byte b = item[i];
+			if (b == '"')
+			{
+				int end = i + 1;
+				while (end < length && item[end] != '"')
+				{
+					end += item[end] == '\\' ? 2 : 1;
+				}
+				boolean isId = depth == 1 && end - i == 3 && item[i + 1] == 'i' && item[i + 2] == 'd';
+				i = end;
+				if (!isId)
+				{
+					continue;
+				}
+
+				int at = i + 1;
+				while (at < length && Character.isWhitespace(item[at]))
+				{
+					at++;
+				}
+				if (at == length || item[at] != ':')
+				{
+					continue;
+				}
+				at++;
+				while (at < length && Character.isWhitespace(item[at]))
+				{
+					at++;
+				}
+				int id = 0;
+				int digits = 0;
+				while (at < length && item[at] >= '0' && item[at] <= '9' && digits < 10)
+				{
+					id = id * 10 + item[at++] - '0';
+					digits++;
+				}
+				return digits > 0 && id >= 0 ? id : -1;
+			}
+			else if (b == '{' || b == '[')
+			{
+				depth++;
+			}
+			else if (b == '}' || b == ']')
+			{
+				depth--;
+			}
+		}
+		return -1;
+	}
+
+	private void loadValidators() throws IOException
+	{
+		etag = null;
+		lastModified = null;
+
+		Path file = dir.resolve(VALIDATORS_FILE);
+		if (!Files.isRegularFile(file))
+		{
+			return;
+		}
+
+		Properties props = new Properties();
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+		{
+			props.load(reader);
+		}
+		etag = props.getProperty("etag");
+		lastModified = props.getProperty("lastModified");
+	}
+
+	private void saveValidators()
+	{
+		Properties props = new Properties();
+		if (etag != null)
+		{
+			props.setProperty("etag", etag);
+		}
+		if (lastModified != null)
+		{
+			props.setProperty("lastModified", lastModified);
+		}
+
+		try (Writer writer = Files.newBufferedWriter(dir.resolve(VALIDATORS_FILE), StandardCharsets.UTF_8))
+		{
+			props.store(writer, "Validators for " + MAPPING_FILE);
+		}
+		catch (IOException e)
+		{
+			// The catalogue is still cached; the next check just can't be conditional
+			log.warn("Failed to save item mapping validators", e);
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package com.dmmflipper;
+
+import java.util.Arrays;
+
+/**
+ * Compact item id → slot table shared by consecutive price snapshots.
+ * Item ids are dense small integers, so the lookup is a plain array index.
+ * Slots are only ever appended: an item keeps its slot for the life of the
+ * plugin, which lets snapshots be compared slot by slot. Instances are
+ * immutable; {@link #withItems} returns a grown copy when new ids appear.
+ */
+final class ItemSlots
+{
+	static final ItemSlots EMPTY = new ItemSlots(new int[0], new int[0], 0);
+
+	private static final int NO_SLOT = -1;
+
+	private final int[] slotById;
+	private final int[] itemIds;
+	private final int size;
+
+	private ItemSlots(int[] slotById, int[] itemIds, int size)
+	{
+		this.slotById = slotById;
+		this.itemIds = itemIds;
+		this.size = size;
+	}
+
+	int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return the slot of {@code itemId}, or -1 if it has never been seen
+	 */
+	int slotOf(int itemId)
+	{
+		return itemId >= 0 && itemId < slotById.length ? slotById[itemId] : NO_SLOT;
+	}
+
+	int itemIdAt(int slot)
+	{
+		return itemIds[slot];
+	}
+
+	/**
+	 * Returns a table that also covers every id in {@code feed}; this instance if it already does.
+	 */
+	ItemSlots withItems(PriceFeed feed)
+	{
+		int missing = 0;
+		int maxId = slotById.length - 1;
+		for (int i = 0; i < feed.size(); i++)
+		{
+			int itemId = feed.itemId(i);
+			if (slotOf(itemId) == NO_SLOT)
+			{
+				missing++;
+				maxId = Math.max(maxId, itemId);
+			}
+		}
+
+		if (missing == 0)
+		{
+			return this;
+		}
+
+		int[] nextSlotById = Arrays.copyOf(slotById, maxId + 1);
+		Arrays.fill(nextSlotById, slotById.length, nextSlotById.length, NO_SLOT);
+		int[] nextItemIds = Arrays.copyOf(itemIds, size + missing);
+		int nextSize = size;
+
+		for (int i = 0; i < feed.size(); i++)
+		{
+			int itemId = feed.itemId(i);
+			if (itemId >= 0 && nextSlotById[itemId] == NO_SLOT)
+			{
+				nextSlotById[itemId] = nextSize;
+				nextItemIds[nextSize++] = itemId;
+			}
+		}
+
+		return new ItemSlots(nextSlotById, nextItemIds, nextSize);
+	}
+}
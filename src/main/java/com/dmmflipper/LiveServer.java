@@ -0,0 +1,710 @@
+package com.dmmflipper;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Pushes offers, opportunities, the smithing level and prices to the companion webapp as
+ * Server-Sent Events, in place of it polling offers.json.
+ * <p>
+ * Listens on the loopback interface only. {@code GET /events} opens a stream that starts with a
+ * {@code state} event holding everything, then sends only what changed: {@code offers} (the slots
+ * whose offer changed, null once emptied), {@code opportunities} (per tab, the new or changed rows,
+ * the removed item ids and the new order), {@code customOpportunities} (the same, per custom
+ * strategy from the config, null once a strategy is gone), {@code smithing}, and {@code prices}
+ * (the items that changed since the last snapshot sent). A client that reconnects is sent a fresh {@code state}
+ * instead of the events it missed. {@code GET /state} answers with the same full state as JSON, and
+ * {@code GET /timeseries?id=&timestep=} with one item's price history from {@link PriceApiClient#getTimeSeries}.
+ * <p>
+ * Everything sent is owned by one pusher thread. The client thread and the price executor only ask
+ * it to sync, and requests made while a sync is pending are folded into it. Requests naming a host
+ * other than loopback are refused, so a web page can't reach the server through DNS rebinding, and
+ * only loopback origins may read it cross-origin.
+ */
+@Slf4j
+public class LiveServer
+{
+	static final int OPPORTUNITY_LIMIT = 50;
+	// Also how often opportunities are rescanned without a new snapshot, as their ages move on
+	static final long HEARTBEAT_SECONDS = 15;
+	private static final long RETRY_MILLIS = 2000;
+	private static final Set<String> LOOPBACK_HOSTS = new HashSet<>(Arrays.asList("localhost", "127.0.0.1", "[::1]"));
+	private static final List<String> PRICE_FIELDS = Arrays.asList(
+		"id", "high", "low", "highTime", "lowTime", "highVolume", "lowVolume", "trend");
+	private static final List<String> TIME_SERIES_FIELDS = Arrays.asList(
+		"timestamp", "avgHigh", "avgLow", "highVolume", "lowVolume");
+
+	// Emptied offer slots are sent as null
+	private final Gson gson = new GsonBuilder().serializeNulls().create();
+	private final PriceApiClient priceApiClient;
+	private final GEOfferTracker offerTracker;
+	private final DMMFlipperConfig config;
+	private final int port;
+	private final Runnable clientsChanged;
+	private final ScheduledExecutorService pusher = Executors.newSingleThreadScheduledExecutor();
+	private final AtomicBoolean syncPending = new AtomicBoolean();
+	private final AtomicBoolean rescanRequested = new AtomicBoolean();
+	private final Consumer<PriceSnapshot> snapshotListener = snapshot -> requestSync();
+	private HttpServer server;
+
+	// Read from other threads
+	private volatile int smithingLevel = 1;
+	private volatile int clientCount;
+
+	// What the clients have been sent; only touched by the pusher thread
+	private final List<HttpExchange> clients = new ArrayList<>();
+	private long sequence;
+	private final GEOfferTracker.TrackedOffer[] sentOffers = new GEOfferTracker.TrackedOffer[GEOfferTracker.GE_SLOTS];
+	private int sentSmithingLevel = 1;
+	private PriceSnapshot sentSnapshot = PriceSnapshot.EMPTY;
+	private Map<String, List<FlipOpportunity>> sentOpportunities = Collections.emptyMap();
+	private Map<String, List<FlipOpportunity>> sentCustomOpportunities = Collections.emptyMap();
+
+	/**
+	 * @param clientsChanged run on the pusher thread whenever the number of connected clients changes
+	 */
+	public LiveServer(PriceApiClient priceApiClient, GEOfferTracker offerTracker, DMMFlipperConfig config, int port,
+		Runnable clientsChanged)
+	{
+		this.priceApiClient = priceApiClient;
+		this.offerTracker = offerTracker;
+		this.config = config;
+		this.port = port;
+		this.clientsChanged = clientsChanged;
+	}
+
+	/**
+	 * Binds 127.0.0.1 on the port and starts serving
+	 *
+	 * @throws IOException if the port can't be bound, e.g. because it is in use
+	 */
+	public void start() throws IOException
+	{
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/events", exchange -> handle(exchange, this::connect));
+		server.createContext("/state", exchange -> handle(exchange, this::sendState));
+		server.createContext("/timeseries", exchange -> handle(exchange, this::sendTimeSeries));
+		server.start();
+
+		priceApiClient.addSnapshotListener(snapshotListener);
+		pusher.scheduleWithFixedDelay(this::heartbeat, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+		priceApiClient.getMetrics().gauge("live clients", () -> clientCount);
+	}
+
+	/**
+	 * Ends every stream, then closes the server
+	 */
+	public void stop()
+	{
+		priceApiClient.removeSnapshotListener(snapshotListener);
+		// Closing on the pusher ends each stream cleanly, rather than cutting it off with the server
+		pusher.execute(() -> {
+			clients.forEach(HttpExchange::close);
+			clients.clear();
+			updateClientCount();
+		});
+		pusher.shutdown();
+		try
+		{
+			pusher.awaitTermination(1, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		if (server != null)
+		{
+			server.stop(0);
+		}
+	}
+
+	/**
+	 * How many clients are connected to the event stream
+	 */
+	public int getClientCount()
+	{
+		return clientCount;
+	}
+
+	public String getAddress()
+	{
+		return "http://127.0.0.1:" + port + "/events";
+	}
+
+	/**
+	 * Pushes the offers as they are now. Call when any GE slot changed.
+	 */
+	public void offersChanged()
+	{
+		requestSync();
+	}
+
+	/**
+	 * Call on the client thread whenever the real smithing level is read
+	 */
+	public void setSmithingLevel(int level)
+	{
+		if (smithingLevel != level)
+		{
+			smithingLevel = level;
+			requestSync();
+		}
+	}
+
+	/**
+	 * Rescans opportunities now rather than on the next snapshot or heartbeat. Call when a setting
+	 * they depend on changed, such as the thresholds or the custom strategies.
+	 */
+	public void settingsChanged()
+	{
+		rescanRequested.set(true);
+		requestSync();
+	}
+
+	private void requestSync()
+	{
+		if (!syncPending.compareAndSet(false, true))
+		{
+			priceApiClient.getMetrics().counter("live syncs coalesced").increment();
+			return;
+		}
+
+		try
+		{
+			pusher.execute(() -> {
+				syncPending.set(false);
+				// With nobody connected the next client is synced when it connects
+				if (!clients.isEmpty())
+				{
+					sync(rescanRequested.getAndSet(false));
+				}
+			});
+		}
+		catch (RejectedExecutionException e)
+		{
+			// Stopped
+		}
+	}
+
+	/**
+	 * Checks the request is a loopback GET of exactly the context path, then hands it to the pusher
+	 */
+	private void handle(HttpExchange exchange, Consumer<HttpExchange> action) throws IOException
+	{
+		String origin = exchange.getRequestHeaders().getFirst("Origin");
+		if (!LOOPBACK_HOSTS.contains(hostOf(exchange.getRequestHeaders().getFirst("Host")))
+			|| (origin != null && !isLoopbackOrigin(origin)))
+		{
+			respond(exchange, 403);
+			return;
+		}
+		if (!"GET".equals(exchange.getRequestMethod()))
+		{
+			respond(exchange, 405);
+			return;
+		}
+		if (!exchange.getRequestURI().getPath().equals(exchange.getHttpContext().getPath()))
+		{
+			respond(exchange, 404);
+			return;
+		}
+
+		if (origin != null)
+		{
+			exchange.getResponseHeaders().set("Access-Control-Allow-Origin", origin);
+			exchange.getResponseHeaders().set("Vary", "Origin");
+		}
+		try
+		{
+			pusher.execute(() -> action.accept(exchange));
+		}
+		catch (RejectedExecutionException e)
+		{
+			respond(exchange, 503);
+		}
+	}
+
+	/**
+	 * Host part of a Host header, without the port
+	 */
+	private static String hostOf(String header)
+	{
+		if (header == null)
+		{
+			return "";
+		}
+		int end = header.startsWith("[") ? header.indexOf(']') + 1 : header.indexOf(':');
+		return (end > 0 ? header.substring(0, end) : header).toLowerCase();
+	}
+
+	private static boolean isLoopbackOrigin(String origin)
+	{
+		try
+		{
+			String host = URI.create(origin).getHost();
+			return host != null && LOOPBACK_HOSTS.contains(host.toLowerCase());
+		}
+		catch (IllegalArgumentException e)
+		{
+			return false;
+		}
+	}
+
+	private static void respond(HttpExchange exchange, int status) throws IOException
+	{
+		exchange.sendResponseHeaders(status, -1);
+		exchange.close();
+	}
+
+	/**
+	 * Opens an event stream: brings the other clients up to date, then sends the new one the state they now have
+	 */
+	private void connect(HttpExchange exchange)
+	{
+		try
+		{
+			sync(true);
+
+			exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+			exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+			exchange.sendResponseHeaders(200, 0);
+			OutputStream out = exchange.getResponseBody();
+			out.write(("retry: " + RETRY_MILLIS + "\n\n").getBytes(StandardCharsets.UTF_8));
+			out.write(event(sequence, "state", state()));
+			out.flush();
+
+			clients.add(exchange);
+			updateClientCount();
+			log.debug("Live client connected from {}, {} connected", exchange.getRemoteAddress(), clientCount);
+		}
+		catch (IOException e)
+		{
+			log.debug("Live client went away while connecting", e);
+			exchange.close();
+		}
+	}
+
+	private void sendState(HttpExchange exchange)
+	{
+		try
+		{
+			sync(true);
+
+			byte[] body = gson.toJson(state()).getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+			exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+			exchange.sendResponseHeaders(200, body.length);
+			exchange.getResponseBody().write(body);
+		}
+		catch (IOException e)
+		{
+			log.debug("Failed to send live state", e);
+		}
+		finally
+		{
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Answers {@code /timeseries?id=&timestep=} with one item's history from the price client's
+	 * cache, fetching it first if needed. The pusher only starts the fetch; the answer is written
+	 * when it completes.
+	 */
+	private void sendTimeSeries(HttpExchange exchange)
+	{
+		Map<String, String> query = query(exchange.getRequestURI());
+		int itemId;
+		TimeSeries.Timestep timestep = null;
+		try
+		{
+			itemId = Integer.parseInt(query.getOrDefault("id", ""));
+		}
+		catch (NumberFormatException e)
+		{
+			itemId = -1;
+		}
+		String key = query.getOrDefault("timestep", TimeSeries.Timestep.FIVE_MINUTES.getKey());
+		for (TimeSeries.Timestep step : TimeSeries.Timestep.values())
+		{
+			if (step.getKey().equals(key))
+			{
+				timestep = step;
+			}
+		}
+
+		try
+		{
+			if (itemId <= 0 || timestep == null)
+			{
+				respond(exchange, 400);
+				return;
+			}
+			// Only items the wiki lists, so the route can't be used to send arbitrary requests upstream
+			if (priceApiClient.getItemName(itemId) == null)
+			{
+				respond(exchange, 404);
+				return;
+			}
+		}
+		catch (IOException e)
+		{
+			log.debug("Failed to answer a time series request", e);
+			return;
+		}
+
+		priceApiClient.getTimeSeries(itemId, timestep).whenComplete((series, error) -> {
+			try
+			{
+				if (error != null)
+				{
+					log.debug("Failed to fetch a time series for the webapp", error);
+					respond(exchange, 502);
+					return;
+				}
+
+				byte[] body = gson.toJson(timeSeries(series)).getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+				exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+				exchange.sendResponseHeaders(200, body.length);
+				exchange.getResponseBody().write(body);
+				exchange.close();
+			}
+			catch (IOException e)
+			{
+				log.debug("Failed to send a time series", e);
+				exchange.close();
+			}
+		});
+	}
+
+	/**
+	 * The buckets of {@code series}, oldest first, as rows of {@link #TIME_SERIES_FIELDS}
+	 */
+	private static Map<String, Object> timeSeries(TimeSeries series)
+	{
+		List<long[]> buckets = new ArrayList<>(series.size());
+		for (int i = 0; i < series.size(); i++)
+		{
+			buckets.add(new long[]{series.timestamp(i), series.avgHigh(i), series.avgLow(i),
+				series.highVolume(i), series.lowVolume(i)});
+		}
+
+		Map<String, Object> json = new LinkedHashMap<>();
+		json.put("itemId", series.getItemId());
+		json.put("timestep", series.getTimestep().getKey());
+		json.put("fetchedAt", series.getFetchedAt());
+		json.put("fields", TIME_SERIES_FIELDS);
+		json.put("buckets", buckets);
+		return json;
+	}
+
+	/**
+	 * The parameters of a query string; the last value wins when a name repeats
+	 */
+	private static Map<String, String> query(URI uri)
+	{
+		Map<String, String> params = new HashMap<>();
+		String query = uri.getRawQuery();
+		if (query == null)
+		{
+			return params;
+		}
+		for (String pair : query.split("&"))
+		{
+			int eq = pair.indexOf('=');
+			if (eq > 0)
+			{
+				params.put(pair.substring(0, eq), pair.substring(eq + 1));
+			}
+		}
+		return params;
+	}
+
+	private void heartbeat()
+	{
+		if (clients.isEmpty())
+		{
+			return;
+		}
+
+		sync(true);
+		broadcast(": ping\n\n".getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Compares what is current against what was last sent and broadcasts the differences
+	 *
+	 * @param rescan whether to rescan opportunities even if the snapshot hasn't changed
+	 */
+	private void sync(boolean rescan)
+	{
+		long started = System.nanoTime();
+
+		GEOfferTracker.TrackedOffer[] offers = new GEOfferTracker.TrackedOffer[GEOfferTracker.GE_SLOTS];
+		for (GEOfferTracker.TrackedOffer offer : offerTracker.getActiveOffers())
+		{
+			offers[offer.getSlot()] = offer;
+		}
+		List<Map<String, Object>> changedOffers = new ArrayList<>();
+		for (int slot = 0; slot < offers.length; slot++)
+		{
+			if (!Objects.equals(offers[slot], sentOffers[slot]))
+			{
+				Map<String, Object> change = new LinkedHashMap<>();
+				change.put("slot", slot);
+				change.put("offer", offers[slot] != null ? offerData(offers[slot]) : null);
+				changedOffers.add(change);
+				sentOffers[slot] = offers[slot];
+			}
+		}
+		if (!changedOffers.isEmpty())
+		{
+			broadcast("offers", Collections.singletonMap("changed", changedOffers));
+		}
+
+		int level = smithingLevel;
+		if (level != sentSmithingLevel)
+		{
+			sentSmithingLevel = level;
+			broadcast("smithing", Collections.singletonMap("smithingLevel", level));
+		}
+
+		PriceSnapshot snapshot = priceApiClient.getSnapshot();
+		if (snapshot.getVersion() != sentSnapshot.getVersion())
+		{
+			// Snapshots from one client share their slot table, so the last one sent can be diffed against
+			ChangeSet changes = ChangeSet.between(sentSnapshot, snapshot);
+			Map<String, Object> prices = prices(snapshot, changes.slots());
+			prices.put("fromVersion", sentSnapshot.getVersion());
+			sentSnapshot = snapshot;
+			rescan = true;
+			broadcast("prices", prices);
+		}
+
+		if (rescan)
+		{
+			Map<String, List<FlipOpportunity>> opportunities = tabs(
+				priceApiClient.calculateAllOpportunities(config, OPPORTUNITY_LIMIT));
+			Map<String, Object> changedTabs = opportunityDeltas(sentOpportunities, opportunities);
+			sentOpportunities = opportunities;
+			if (!changedTabs.isEmpty())
+			{
+				broadcast("opportunities", changedTabs);
+			}
+
+			Map<String, List<FlipOpportunity>> custom = priceApiClient.calculateCustomOpportunities(config, OPPORTUNITY_LIMIT);
+			Map<String, Object> changedCustom = opportunityDeltas(sentCustomOpportunities, custom);
+			sentCustomOpportunities = custom;
+			if (!changedCustom.isEmpty())
+			{
+				broadcast("customOpportunities", changedCustom);
+			}
+		}
+
+		priceApiClient.getMetrics().timer("live sync").record(System.nanoTime() - started);
+	}
+
+	/**
+	 * Everything last sent, for a client that is just connecting
+	 */
+	private Map<String, Object> state()
+	{
+		List<Map<String, Object>> offers = new ArrayList<>();
+		for (int slot = 0; slot < sentOffers.length; slot++)
+		{
+			if (sentOffers[slot] != null)
+			{
+				offers.add(offerData(sentOffers[slot]));
+			}
+		}
+
+		BitSet present = new BitSet(sentSnapshot.slotCount());
+		for (int slot = 0; slot < sentSnapshot.slotCount(); slot++)
+		{
+			present.set(slot, sentSnapshot.isPresent(slot));
+		}
+
+		Map<String, Object> state = new LinkedHashMap<>();
+		state.put("smithingLevel", sentSmithingLevel);
+		state.put("offers", offers);
+		state.put("opportunities", sentOpportunities);
+		state.put("customOpportunities", sentCustomOpportunities);
+		state.put("prices", prices(sentSnapshot, present));
+		return state;
+	}
+
+	private Map<String, Object> offerData(GEOfferTracker.TrackedOffer offer)
+	{
+		Map<String, Object> data = new LinkedHashMap<>();
+		data.put("slot", offer.getSlot());
+		data.putAll(OfferExporter.offerData(offer, priceApiClient));
+		return data;
+	}
+
+	/**
+	 * The items of {@code slots} as rows of {@link #PRICE_FIELDS}, and the ids of those no longer listed
+	 */
+	private static Map<String, Object> prices(PriceSnapshot snapshot, BitSet slots)
+	{
+		List<List<Object>> items = new ArrayList<>();
+		List<Integer> removed = new ArrayList<>();
+		for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1))
+		{
+			if (!snapshot.isPresent(slot))
+			{
+				removed.add(snapshot.itemId(slot));
+				continue;
+			}
+			items.add(Arrays.asList(snapshot.itemId(slot), snapshot.high(slot), snapshot.low(slot),
+				snapshot.highTime(slot), snapshot.lowTime(slot), snapshot.highVolume(slot), snapshot.lowVolume(slot),
+				snapshot.trend(slot).getLabel()));
+		}
+
+		Map<String, Object> prices = new LinkedHashMap<>();
+		prices.put("version", snapshot.getVersion());
+		prices.put("fields", PRICE_FIELDS);
+		prices.put("items", items);
+		prices.put("removed", removed);
+		return prices;
+	}
+
+	private static Map<String, List<FlipOpportunity>> tabs(PriceApiClient.TabOpportunities opportunities)
+	{
+		Map<String, List<FlipOpportunity>> tabs = new LinkedHashMap<>();
+		tabs.put("bestMargin", opportunities.getBestMargin());
+		tabs.put("bulk", opportunities.getBulk());
+		tabs.put("activeFlipping", opportunities.getActiveFlipping());
+		tabs.put("overnight", opportunities.getOvernight());
+		return tabs;
+	}
+
+	/**
+	 * Deltas of the lists that changed, keyed like them; a list no longer in {@code after} maps to null
+	 */
+	private static Map<String, Object> opportunityDeltas(Map<String, List<FlipOpportunity>> before,
+		Map<String, List<FlipOpportunity>> after)
+	{
+		Map<String, Object> changed = new LinkedHashMap<>();
+		after.forEach((name, rows) -> {
+			List<FlipOpportunity> sent = before.getOrDefault(name, Collections.emptyList());
+			if (!rows.equals(sent) || !before.containsKey(name))
+			{
+				changed.put(name, opportunityDelta(sent, rows));
+			}
+		});
+		for (String name : before.keySet())
+		{
+			if (!after.containsKey(name))
+			{
+				changed.put(name, null);
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Rows of {@code after} that are new or differ from {@code before}, the items dropped, and the new order
+	 */
+	private static Map<String, Object> opportunityDelta(List<FlipOpportunity> before, List<FlipOpportunity> after)
+	{
+		Map<Integer, FlipOpportunity> previous = new HashMap<>();
+		for (FlipOpportunity opportunity : before)
+		{
+			previous.put(opportunity.getItemId(), opportunity);
+		}
+
+		List<FlipOpportunity> upserted = new ArrayList<>();
+		List<Integer> order = new ArrayList<>(after.size());
+		for (FlipOpportunity opportunity : after)
+		{
+			order.add(opportunity.getItemId());
+			if (!opportunity.equals(previous.remove(opportunity.getItemId())))
+			{
+				upserted.add(opportunity);
+			}
+		}
+
+		Map<String, Object> delta = new LinkedHashMap<>();
+		delta.put("upserted", upserted);
+		delta.put("removed", previous.keySet());
+		delta.put("order", order);
+		return delta;
+	}
+
+	private void broadcast(String name, Object data)
+	{
+		priceApiClient.getMetrics().counter("live events").increment();
+		broadcast(event(++sequence, name, data));
+	}
+
+	/**
+	 * Writes to every client, dropping those whose connection has gone
+	 */
+	private void broadcast(byte[] frame)
+	{
+		for (Iterator<HttpExchange> it = clients.iterator(); it.hasNext(); )
+		{
+			HttpExchange client = it.next();
+			try
+			{
+				OutputStream out = client.getResponseBody();
+				out.write(frame);
+				out.flush();
+			}
+			catch (IOException e)
+			{
+				log.debug("Live client disconnected", e);
+				client.close();
+				it.remove();
+			}
+		}
+		updateClientCount();
+	}
+
+	private void updateClientCount()
+	{
+		if (clientCount != clients.size())
+		{
+			clientCount = clients.size();
+			clientsChanged.run();
+		}
+	}
+
+	/**
+	 * One event in the text/event-stream format; the JSON is compact, so it fits on the one data line
+	 */
+	private byte[] event(long id, String name, Object data)
+	{
+		return ("id: " + id + "\nevent: " + name + "\ndata: " + gson.toJson(data) + "\n\n")
+			.getBytes(StandardCharsets.UTF_8);
+	}
+}
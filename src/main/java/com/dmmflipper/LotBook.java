@@ -0,0 +1,108 @@
+package com.dmmflipper;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Open buy lots of one item, oldest first. A sale is matched against them in {@link LotMatching}
+ * order, splitting a lot when it is only partly used. Sold quantity with no lot left to match is
+ * dropped, since it was bought before tracking began. Lots older than {@link #MAX_LOT_AGE_MILLIS},
+ * and the oldest beyond {@link #MAX_LOTS}, are let go so items that were kept are not matched
+ * against a sale days later. Each lot is added and used up once, so a fill costs the same however
+ * many lots are open; {@link GEOfferTracker} drops idle books a couple at a time for the same reason.
+ */
+final class LotBook
+{
+	static final int MAX_LOTS = 256;
+	static final long MAX_LOT_AGE_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+	/**
+	 * Receives each matched part of a sale
+	 */
+	interface MatchListener
+	{
+		void matched(int buyPrice, int sellPrice, int quantity);
+	}
+
+	private final ArrayDeque<Lot> buys = new ArrayDeque<>();
+
+	/**
+	 * Opens a lot of {@code quantity} items bought at {@code price}
+	 */
+	void bought(int price, int quantity, long timeMillis)
+	{
+		expire(timeMillis);
+		if (quantity <= 0)
+		{
+			return;
+		}
+		if (buys.size() == MAX_LOTS)
+		{
+			buys.pollFirst();
+		}
+		buys.addLast(new Lot(price, quantity, timeMillis));
+	}
+
+	/**
+	 * Matches {@code quantity} items sold at {@code price} against the open lots
+	 */
+	void sold(int price, int quantity, long timeMillis, LotMatching matching, MatchListener listener)
+	{
+		expire(timeMillis);
+		int left = quantity;
+		while (left > 0 && !buys.isEmpty())
+		{
+			Lot lot = matching == LotMatching.FIFO ? buys.peekFirst() : buys.peekLast();
+			int matched = Math.min(left, lot.remaining);
+			listener.matched(lot.price, price, matched);
+
+			left -= matched;
+			lot.remaining -= matched;
+			if (lot.remaining == 0)
+			{
+				if (matching == LotMatching.FIFO)
+				{
+					buys.pollFirst();
+				}
+				else
+				{
+					buys.pollLast();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drops lots opened more than {@link #MAX_LOT_AGE_MILLIS} before {@code timeMillis}
+	 *
+	 * @return whether no lot is left open
+	 */
+	boolean expire(long timeMillis)
+	{
+		// Lots are opened in time order, so the stale ones are all at the front
+		while (!buys.isEmpty() && timeMillis - buys.peekFirst().time > MAX_LOT_AGE_MILLIS)
+		{
+			buys.pollFirst();
+		}
+		return buys.isEmpty();
+	}
+
+	boolean isEmpty()
+	{
+		return buys.isEmpty();
+	}
+
+	private static final class Lot
+	{
+		private final int price;
+		private final long time;
+		private int remaining;
+
+		private Lot(int price, int remaining, long time)
+		{
+			this.price = price;
+			this.remaining = remaining;
+			this.time = time;
+		}
+	}
+}
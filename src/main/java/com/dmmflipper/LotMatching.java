@@ -0,0 +1,26 @@
+package com.dmmflipper;
+
+import lombok.Getter;
+
+/**
+ * Which open buy lot a sale is matched against when several are waiting, see {@link LotBook}
+ */
+public enum LotMatching
+{
+	FIFO("Oldest lot first"),
+	LIFO("Newest lot first");
+
+	@Getter
+	private final String label;
+
+	LotMatching(String label)
+	{
+		this.label = label;
+	}
+
+	@Override
+	public String toString()
+	{
+		return label;
+	}
+}
@@ -0,0 +1,57 @@
+package com.dmmflipper;
+
+/**
+ * One item of the market as seen by a {@link FlipStrategy}: current prices plus the values
+ * derived from them once per snapshot. Instances are reused from item to item during a scan,
+ * so strategies must read what they need and not keep a reference.
+ */
+public interface MarketItem
+{
+	int getItemId();
+
+	String getName();
+
+	boolean isMembers();
+
+	/**
+	 * Instant-buy price to place a buy offer at (the latest low)
+	 */
+	int getBuyPrice();
+
+	/**
+	 * Instant-sell price to place a sell offer at (the latest high)
+	 */
+	int getSellPrice();
+
+	/**
+	 * GE tax on one sale at {@link #getSellPrice}
+	 */
+	int getGeTax();
+
+	/**
+	 * Margin per item after tax
+	 */
+	int getProfit();
+
+	/**
+	 * {@link #getProfit} as a percentage of {@link #getBuyPrice}
+	 */
+	double getRoi();
+
+	/**
+	 * Buy limit, or 1 when the item has none
+	 */
+	int getLimit();
+
+	/**
+	 * Traded volume (buy + sell) from /24h, or from /latest when /24h is unavailable
+	 */
+	int getVolume();
+
+	/**
+	 * GP needed to buy one full buy limit
+	 */
+	long getLimitCost();
+
+	int getHighAlch();
+}
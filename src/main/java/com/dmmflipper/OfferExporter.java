@@ -7,19 +7,37 @@ import net.runelite.api.Client;
 import net.runelite.api.Skill;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Writes the active GE offers to offers.json for the companion webapp.
+ * <p>
+ * {@link #requestExport} only notes what must be read on the client thread and schedules a write
+ * on a background thread {@link #DEBOUNCE_MILLIS} later; requests in between (the burst of slot
+ * events at login, every partial fill) are folded into that one write. The write is skipped when
+ * nothing but the timestamp would change, and goes through a temporary file renamed over the old
+ * one, so the webapp never reads a half-written file.
+ */
 @Slf4j
 public class OfferExporter
 {
+	static final long DEBOUNCE_MILLIS = 250;
+
 	// For container setup - hardcode the WSL path
 	private static final String EXPORT_DIR = "\\\\wsl$\\docker-desktop\\mnt\\docker-desktop-disk\\data\\docker\\volumes\\coder-92acce1f-5a2b-400f-adc3-02bcc0d05833-home\\_data\\.runelite\\dmm-flipper";
 	private static final String EXPORT_FILE = EXPORT_DIR + "\\offers.json";
@@ -34,14 +52,20 @@ public class OfferExporter
 		return System.getProperty("user.home") + "\\.runelite\\dmm-flipper";
 	}
 	
-	private static String getExportFile() {
-		return getExportDir() + "\\offers.json";
-	}
-	
 	private final Gson gson;
 	private final GEOfferTracker offerTracker;
 	private final PriceApiClient priceApiClient;
 	private final Client client;
+	private final Path exportDir;
+	private final Path exportFile;
+	private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor();
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+
+	// Read on the client thread when an export is requested
+	private volatile int smithingLevel = 1;
+
+	// Everything but the timestamp of the last file written; only touched by the writer thread
+	private String lastContent;
 	
 	public OfferExporter(GEOfferTracker offerTracker, PriceApiClient priceApiClient, Client client)
 	{
@@ -49,86 +73,147 @@ public class OfferExporter
 		this.priceApiClient = priceApiClient;
 		this.client = client;
 		this.gson = new GsonBuilder().setPrettyPrinting().create();
+		this.exportDir = Paths.get(getExportDir());
+		this.exportFile = exportDir.resolve("offers.json");
 		
 		// Ensure export directory exists
 		try
 		{
-			Path exportPath = Paths.get(getExportDir());
-			if (!Files.exists(exportPath))
-			{
-				Files.createDirectories(exportPath);
-				log.info("Created export directory: {}", getExportDir());
-			}
+			Files.createDirectories(exportDir);
 		}
 		catch (IOException e)
 		{
 			log.error("Failed to create export directory", e);
 		}
 	}
+
+	/**
+	 * Schedules an export of the current offers. Call on the client thread; no file I/O happens here.
+	 */
+	public void requestExport()
+	{
+		// Default to level 1 if not logged in
+		smithingLevel = client != null && client.getLocalPlayer() != null
+			? client.getRealSkillLevel(Skill.SMITHING)
+			: 1;
+
+		if (scheduled.compareAndSet(false, true))
+		{
+			writer.schedule(this::exportOffers, DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+		}
+		else
+		{
+			priceApiClient.getMetrics().counter("exports coalesced").increment();
+		}
+	}
+
+	/**
+	 * Writes any export still scheduled, then stops the writer thread
+	 */
+	public void shutdown()
+	{
+		// Delayed tasks still run after shutdown()
+		writer.shutdown();
+	}
 	
-	public void exportOffers()
+	private void exportOffers()
 	{
+		// Requests from here on schedule another write, so none are lost
+		scheduled.set(false);
+
+		long started = System.nanoTime();
 		try
 		{
 			List<GEOfferTracker.TrackedOffer> activeOffers = offerTracker.getActiveOffers();
 			
 			// Build export data
-			Map<String, Object> exportData = new HashMap<>();
-			exportData.put("timestamp", System.currentTimeMillis() / 1000);
+			Map<String, Object> exportData = new LinkedHashMap<>();
 			exportData.put("version", "1.0");
-			
-			// Add smithing level if player is logged in
-			if (client != null && client.getLocalPlayer() != null)
-			{
-				int smithingLevel = client.getRealSkillLevel(Skill.SMITHING);
-				exportData.put("smithingLevel", smithingLevel);
-				log.debug("Exporting smithing level: {}", smithingLevel);
-			}
-			else
-			{
-				// Default to level 1 if not logged in
-				exportData.put("smithingLevel", 1);
-			}
+			exportData.put("smithingLevel", smithingLevel);
 			
 			List<Map<String, Object>> offersData = new ArrayList<>();
 			for (GEOfferTracker.TrackedOffer offer : activeOffers)
 			{
-				Map<String, Object> offerData = new HashMap<>();
-				offerData.put("itemId", offer.getItemId());
-				offerData.put("type", offer.isBuying() ? "BUY" : "SELL");
-				offerData.put("price", offer.getPrice());
-				offerData.put("qty", offer.getQuantity());
-				offerData.put("filled", offer.getQuantityFilled());
-				offerData.put("timestamp", offer.getTimestamp() / 1000);
-				
-				// Add item name if available
-				ItemInfo itemInfo = priceApiClient.getItemInfo(offer.getItemId());
-				if (itemInfo != null)
-				{
-					offerData.put("itemName", itemInfo.getName());
-				}
-				
-				offersData.add(offerData);
+				offersData.add(offerData(offer, priceApiClient));
 			}
 			
 			exportData.put("offers", offersData);
-			
-			// Write to file
-			File exportFile = new File(getExportFile());
-			try (FileWriter writer = new FileWriter(exportFile))
+
+			String content = gson.toJson(exportData);
+			if (content.equals(lastContent))
 			{
-				gson.toJson(exportData, writer);
-				log.debug("Exported {} offers to {}", offersData.size(), getExportFile());
+				priceApiClient.getMetrics().counter("exports unchanged").increment();
+				return;
 			}
+
+			exportData.put("timestamp", System.currentTimeMillis() / 1000);
+			write(gson.toJson(exportData));
+			lastContent = content;
+			log.debug("Exported {} offers to {}", offersData.size(), exportFile);
 		}
 		catch (IOException e)
 		{
 			log.error("Failed to export offers", e);
 		}
+		finally
+		{
+			priceApiClient.getMetrics().timer("export offers.json").record(System.nanoTime() - started);
+		}
+	}
+
+	/**
+	 * One offer as the webapp reads it, in offers.json and from the {@link LiveServer}
+	 */
+	static Map<String, Object> offerData(GEOfferTracker.TrackedOffer offer, PriceApiClient priceApiClient)
+	{
+		Map<String, Object> offerData = new LinkedHashMap<>();
+		offerData.put("itemId", offer.getItemId());
+		offerData.put("type", offer.isBuying() ? "BUY" : "SELL");
+		offerData.put("price", offer.getPrice());
+		offerData.put("qty", offer.getQuantity());
+		offerData.put("filled", offer.getQuantityFilled());
+		offerData.put("timestamp", offer.getTimestamp() / 1000);
+
+		// Add item name if available
+		String itemName = priceApiClient.getItemName(offer.getItemId());
+		if (itemName != null)
+		{
+			offerData.put("itemName", itemName);
+		}
+		return offerData;
+	}
+
+	/**
+	 * Replaces the export file in one step, so readers see either the old or the new file
+	 */
+	private void write(String json) throws IOException
+	{
+		Path tmp = Files.createTempFile(exportDir, "offers", ".tmp");
+		try
+		{
+			try (Writer out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8))
+			{
+				out.write(json);
+			}
+
+			try
+			{
+				Files.move(tmp, exportFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException e)
+			{
+				// Some network shares can't rename atomically; a plain replace is still better than writing in place
+				Files.move(tmp, exportFile, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally
+		{
+			Files.deleteIfExists(tmp);
+		}
 	}
 	
 	public String getExportPath()
 	{
-		return getExportFile();
+		return exportFile.toString();
 	}
 }
@@ -0,0 +1,490 @@
+package com.dmmflipper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the ranked results of every strategy in use up to date as snapshots arrive.
+ * <p>
+ * Each new snapshot is diffed against the previous one (reusing the diff the price client made
+ * when it built the snapshot, if the engine saw its predecessor), the shared {@link ScanColumns}
+ * are recomputed for the changed items only, and every registered strategy then
+ * re-evaluates those items in the same pass. Items whose age limit has run out since
+ * are evaluated again too. Each strategy keeps its qualifying items with their scores
+ * computed once at evaluation, and a read ranks only as many as the requested page
+ * needs with a bounded top-K heap. The cost of a scan follows market activity rather
+ * than catalogue size, and refreshing every tab costs one pass rather than one per tab.
+ * Everything is rebuilt from scratch whenever the item catalogue is replaced. Full passes (a
+ * rebuild, a newly registered strategy) only evaluate the items the {@link ScanIndex} leaves
+ * after intersecting each strategy's freshness and range filters.
+ * <p>
+ * With a parallelism above one, passes over many items (full rebuilds, newly registered
+ * strategies, large diffs) split the slots across a bounded fork/join pool. Workers only
+ * evaluate; each strategy's results are then merged into its view on the calling thread.
+ */
+@Slf4j
+final class OpportunityEngine
+{
+	// One per tab and a few custom strategies, plus room for changed filter settings before the least recently used is dropped
+	private static final int MAX_VIEWS = 16;
+
+	// Below this many item evaluations a pass is cheaper than handing it to the pool,
+	// see ScanParallelismBenchmark
+	static final int PARALLEL_THRESHOLD = 16_384;
+
+	// Slots per fork/join leaf task
+	private static final int PARALLEL_GRAIN = 1_024;
+
+	private final Map<FlipStrategy, View> views = new LinkedHashMap<FlipStrategy, View>(16, 0.75f, true)
+	{
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<FlipStrategy, View> eldest)
+		{
+			return size() > MAX_VIEWS;
+		}
+	};
+
+	private final ScanColumns columns = new ScanColumns();
+	private final ScanColumns.Cursor cursor = columns.cursor();
+	private final int parallelThreshold;
+	private PriceSnapshot syncedTo;
+	private ItemCatalogue catalogue;
+	private long syncedAt;
+	private ChangeSet lastChanges = ChangeSet.NONE;
+	// The diff the price client already made for its latest snapshot; read without the lock
+	private volatile Diff published;
+	private ForkJoinPool pool;
+	private int parallelism = 1;
+
+	OpportunityEngine()
+	{
+		this(PARALLEL_THRESHOLD);
+	}
+
+	/**
+	 * @param parallelThreshold fewest item evaluations (items x strategies) worth a parallel pass
+	 */
+	OpportunityEngine(int parallelThreshold)
+	{
+		this.parallelThreshold = parallelThreshold;
+	}
+
+	/**
+	 * Sets how many threads large passes may use; 1 keeps every pass on the calling thread.
+	 */
+	synchronized void setParallelism(int parallelism)
+	{
+		parallelism = Math.max(1, parallelism);
+		if (parallelism == this.parallelism)
+		{
+			return;
+		}
+
+		shutdown();
+		this.parallelism = parallelism;
+		if (parallelism > 1)
+		{
+			pool = new ForkJoinPool(parallelism);
+		}
+		log.debug("Opportunity scan parallelism set to {}", parallelism);
+	}
+
+	synchronized void shutdown()
+	{
+		if (pool != null)
+		{
+			pool.shutdown();
+			pool = null;
+		}
+		parallelism = 1;
+	}
+
+	/**
+	 * Brings every registered strategy up to date with {@code market} and returns the requested
+	 * page of each of {@code strategies} (registering any that are new), best first.
+	 */
+	synchronized List<OpportunityPage> results(List<? extends FlipStrategy> strategies, PriceSnapshot market,
+		ItemCatalogue catalogue, long currentTime, int offset, int limit)
+	{
+		sync(market, catalogue, currentTime);
+
+		View[] requested = new View[strategies.size()];
+		List<View> added = new ArrayList<>();
+		for (int i = 0; i < requested.length; i++)
+		{
+			FlipStrategy strategy = strategies.get(i);
+			requested[i] = views.get(strategy);
+			if (requested[i] == null)
+			{
+				requested[i] = new View(strategy);
+				requested[i].clear(market.slotCount());
+				views.put(strategy, requested[i]);
+				added.add(requested[i]);
+			}
+		}
+
+		// Strategies seen for the first time share one pass over the market
+		if (!added.isEmpty())
+		{
+			evaluate(added, candidates(added, currentTime), currentTime);
+		}
+
+		List<OpportunityPage> results = new ArrayList<>(requested.length);
+		for (View view : requested)
+		{
+			results.add(view.page(offset, limit, currentTime));
+		}
+		return results;
+	}
+
+	/**
+	 * Hands over the diff the price client computed when it built {@code to} on {@code from}, so a
+	 * sync from {@code from} straight to {@code to} reuses it. Takes no lock, so the price executor
+	 * never waits on a scan.
+	 */
+	void offerChanges(PriceSnapshot from, PriceSnapshot to, ChangeSet changes)
+	{
+		published = new Diff(from, to, changes);
+	}
+
+	/**
+	 * The diff of the engine's most recent sync: consecutive snapshots, or every listed item
+	 * after a rebuild
+	 */
+	synchronized ChangeSet getLastChanges()
+	{
+		return lastChanges;
+	}
+
+	private void sync(PriceSnapshot market, ItemCatalogue catalogue, long currentTime)
+	{
+		if (syncedTo == null || catalogue != this.catalogue || currentTime < syncedAt)
+		{
+			// Every slot is evaluated again, but the diff still describes this sync
+			lastChanges = syncedTo == null ? ChangeSet.between(PriceSnapshot.EMPTY, market) : changes(syncedTo, market);
+			columns.rebuild(market, catalogue);
+			for (View view : views.values())
+			{
+				view.clear(market.slotCount());
+			}
+
+			// One pass over the market for all strategies, skipping items none of them can accept
+			evaluate(views.values(), candidates(views.values(), currentTime), currentTime);
+
+			this.catalogue = catalogue;
+			syncedTo = market;
+			syncedAt = currentTime;
+			return;
+		}
+
+		int changed = 0;
+		if (market.getVersion() != syncedTo.getVersion())
+		{
+			lastChanges = changes(syncedTo, market);
+			BitSet slots = lastChanges.slots();
+			columns.update(market, slots);
+
+			for (View view : views.values())
+			{
+				view.ensureCapacity(market.slotCount());
+			}
+			evaluate(views.values(), slots, currentTime);
+
+			changed = lastChanges.size();
+			syncedTo = market;
+		}
+
+		int expired = 0;
+		for (View view : views.values())
+		{
+			expired += view.expire(currentTime);
+		}
+		syncedAt = currentTime;
+
+		if (changed > 0 || expired > 0)
+		{
+			log.debug("Synced {} strategies to snapshot v{}: {} changed, {} expired",
+				views.size(), market.getVersion(), changed, expired);
+		}
+	}
+
+	/**
+	 * The offered diff if it spans exactly {@code from} to {@code to}; otherwise, e.g. when
+	 * versions were skipped, a fresh one
+	 */
+	private ChangeSet changes(PriceSnapshot from, PriceSnapshot to)
+	{
+		Diff diff = published;
+		if (diff != null && diff.from == from && diff.to == to)
+		{
+			return diff.changes;
+		}
+		return ChangeSet.between(from, to);
+	}
+
+	/**
+	 * Evaluates every slot in {@code slots} for every view in one slot-major pass,
+	 * fanning out to the pool when the pass is large enough to pay for it.
+	 */
+	private void evaluate(Collection<View> targets, BitSet slots, long currentTime)
+	{
+		int slotCount = slots.cardinality();
+		if (targets.isEmpty() || slotCount == 0)
+		{
+			return;
+		}
+
+		if (pool == null || (long) slotCount * targets.size() < parallelThreshold)
+		{
+			for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1))
+			{
+				for (View view : targets)
+				{
+					view.evaluate(slot, currentTime);
+				}
+			}
+			return;
+		}
+
+		int[] order = slots.stream().toArray();
+		View[] viewArray = targets.toArray(new View[0]);
+		FlipOpportunity[][] results = new FlipOpportunity[viewArray.length][order.length];
+		pool.invoke(new EvaluateTask(viewArray, order, results, 0, order.length, currentTime));
+
+		// Merge per strategy; views are not thread-safe so this stays on the calling thread
+		for (int v = 0; v < viewArray.length; v++)
+		{
+			FlipOpportunity[] result = results[v];
+			for (int i = 0; i < order.length; i++)
+			{
+				viewArray[v].apply(order[i], result[i]);
+			}
+		}
+	}
+
+	/**
+	 * Items any of {@code targets} may accept, from the scan index. Only full passes use this: a
+	 * diff must also re-evaluate changed items that have just left a view.
+	 */
+	private BitSet candidates(Collection<View> targets, long currentTime)
+	{
+		BitSet slots = new BitSet();
+		for (View view : targets)
+		{
+			slots.or(view.pipeline.candidates(columns.index(), currentTime));
+		}
+		return slots;
+	}
+
+	/**
+	 * Evaluates a range of slots for every view into its own rows of {@code results}.
+	 * Reads the columns only, so leaves can run concurrently.
+	 */
+	private final class EvaluateTask extends RecursiveAction
+	{
+		private final View[] targets;
+		private final int[] slots;
+		private final FlipOpportunity[][] results;
+		private final int from;
+		private final int to;
+		private final long currentTime;
+
+		private EvaluateTask(View[] targets, int[] slots, FlipOpportunity[][] results, int from, int to, long currentTime)
+		{
+			this.targets = targets;
+			this.slots = slots;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+			this.currentTime = currentTime;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to - from <= PARALLEL_GRAIN)
+			{
+				ScanColumns.Cursor item = columns.cursor();
+				for (int i = from; i < to; i++)
+				{
+					for (int v = 0; v < targets.length; v++)
+					{
+						results[v][i] = targets[v].pipeline.evaluate(item.at(slots[i]), currentTime);
+					}
+				}
+				return;
+			}
+
+			int mid = (from + to) >>> 1;
+			invokeAll(new EvaluateTask(targets, slots, results, from, mid, currentTime),
+				new EvaluateTask(targets, slots, results, mid, to, currentTime));
+		}
+	}
+
+	private final class View
+	{
+		private final StrategyPipeline pipeline;
+		private final PriorityQueue<Expiry> expiries = new PriorityQueue<>(Comparator.comparingLong(e -> e.at));
+		private final BitSet members = new BitSet();
+
+		private FlipOpportunity[] bySlot = new FlipOpportunity[0];
+		private double[] score = new double[0];
+		private double[] tiebreak = new double[0];
+		private long[] expiresAt = new long[0];
+
+		// Best-first prefix of the ranking from the last read, valid until membership changes
+		private int[] top = new int[0];
+		private boolean topComplete;
+		private boolean dirty = true;
+
+		View(FlipStrategy strategy)
+		{
+			this.pipeline = new StrategyPipeline(strategy);
+		}
+
+		void clear(int slotCount)
+		{
+			members.clear();
+			expiries.clear();
+			bySlot = new FlipOpportunity[slotCount];
+			score = new double[slotCount];
+			tiebreak = new double[slotCount];
+			expiresAt = new long[slotCount];
+			dirty = true;
+		}
+
+		void evaluate(int slot, long currentTime)
+		{
+			apply(slot, pipeline.evaluate(cursor.at(slot), currentTime));
+		}
+
+		/**
+		 * Records the outcome of evaluating {@code slot}, or its removal when {@code next} is null
+		 */
+		void apply(int slot, FlipOpportunity next)
+		{
+			if (next == null && bySlot[slot] == null)
+			{
+				return;
+			}
+
+			bySlot[slot] = next;
+			expiresAt[slot] = 0;
+			members.set(slot, next != null);
+			dirty = true;
+
+			if (next != null)
+			{
+				// Scored once here; ranking only ever compares these primitives
+				cursor.at(slot);
+				score[slot] = pipeline.score(cursor);
+				tiebreak[slot] = pipeline.tiebreak(cursor);
+				expiresAt[slot] = pipeline.expiresAt(columns, slot);
+				expiries.add(new Expiry(expiresAt[slot], slot));
+			}
+		}
+
+		/**
+		 * Re-evaluates items whose oldest trade has aged past the strategy's limit without a price change
+		 */
+		int expire(long currentTime)
+		{
+			int expired = 0;
+			while (!expiries.isEmpty() && expiries.peek().at <= currentTime)
+			{
+				Expiry expiry = expiries.poll();
+				if (expiresAt[expiry.slot] == expiry.at)
+				{
+					evaluate(expiry.slot, currentTime);
+					expired++;
+				}
+			}
+
+			// Re-evaluated items leave their old expiry behind; drop those once they dominate the queue
+			if (expiries.size() > 2 * members.cardinality() + 64)
+			{
+				expiries.removeIf(e -> expiresAt[e.slot] != e.at);
+			}
+			return expired;
+		}
+
+		void ensureCapacity(int slotCount)
+		{
+			if (bySlot.length < slotCount)
+			{
+				bySlot = Arrays.copyOf(bySlot, slotCount);
+				score = Arrays.copyOf(score, slotCount);
+				tiebreak = Arrays.copyOf(tiebreak, slotCount);
+				expiresAt = Arrays.copyOf(expiresAt, slotCount);
+			}
+		}
+
+		OpportunityPage page(int offset, int limit, long currentTime)
+		{
+			int total = members.cardinality();
+			int from = Math.min(Math.max(offset, 0), total);
+			int to = (int) Math.min((long) from + Math.max(limit, 0), total);
+
+			// Only the first 'to' entries need ranking; reuse the last selection when it covers them
+			if (dirty || (top.length < to && !topComplete))
+			{
+				TopK topK = new TopK(to, score, tiebreak, columns.market());
+				for (int slot = members.nextSetBit(0); slot >= 0; slot = members.nextSetBit(slot + 1))
+				{
+					topK.offer(slot);
+				}
+				top = topK.sorted();
+				topComplete = top.length == total;
+				dirty = false;
+			}
+
+			List<FlipOpportunity> opps = new ArrayList<>(to - from);
+			for (int i = from; i < to; i++)
+			{
+				int slot = top[i];
+				FlipOpportunity opp = bySlot[slot];
+
+				// Ages move with the clock even when prices don't
+				int ageMinutes = columns.ageMinutes(slot, currentTime);
+				opps.add(ageMinutes == opp.getAgeMinutes() ? opp : opp.withAgeMinutes(ageMinutes));
+			}
+			return new OpportunityPage(opps, from, total, columns.market().getVersion());
+		}
+	}
+
+	private static final class Expiry
+	{
+		private final long at;
+		private final int slot;
+
+		private Expiry(long at, int slot)
+		{
+			this.at = at;
+			this.slot = slot;
+		}
+	}
+
+	private static final class Diff
+	{
+		private final PriceSnapshot from;
+		private final PriceSnapshot to;
+		private final ChangeSet changes;
+
+		private Diff(PriceSnapshot from, PriceSnapshot to, ChangeSet changes)
+		{
+			this.from = from;
+			this.to = to;
+			this.changes = changes;
+		}
+	}
+}
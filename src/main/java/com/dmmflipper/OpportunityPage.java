@@ -0,0 +1,24 @@
+package com.dmmflipper;
+
+import java.util.List;
+import lombok.Data;
+
+/**
+ * One page of a ranked opportunity list
+ */
+@Data
+public class OpportunityPage
+{
+	private final List<FlipOpportunity> opportunities;
+	private final int offset;
+	/**
+	 * Number of qualifying opportunities across all pages
+	 */
+	private final int total;
+	private final long snapshotVersion;
+
+	public boolean hasMore()
+	{
+		return offset + opportunities.size() < total;
+	}
+}
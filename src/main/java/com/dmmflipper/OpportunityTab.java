@@ -0,0 +1,96 @@
+package com.dmmflipper;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The opportunity lists shown by the panel, each declared as a {@link StrategySpec} and
+ * compiled against the current config. Tab-specific thresholds are named constants of the
+ * spec and can be overridden through the parameters it is compiled with.
+ */
+public enum OpportunityTab
+{
+	// Strict age filter for Best Margin tab - we want fresh data.
+	// Sort by profit (margin), then by ROI for tiebreaker.
+	// This shows low-volume, high-margin items (endgame gear strategy)
+	BEST_MARGIN("Best Margin: "
+		+ "filter = profit > 0 && profit >= minProfit && roi >= minROI && roi <= maxROI; "
+		+ "filter = limitCost <= budget || buyPrice <= budget; "
+		+ "score = profit; tiebreak = roi"),
+
+	// Relaxed age filter for overnight flips (items trade throughout the day).
+	// High volume requirement - confirms high liquidity (safe, stable flips);
+	// these items trade frequently and have consistent demand.
+	// Sort by overnight flip efficiency score: profit × log(volume) × sqrt(limit)
+	// - profit: absolute GP gain per item
+	// - log(volume): liquidity factor (high volume = safer, more consistent)
+	// - sqrt(limit): buy limit potential (can hit 2-4x per night)
+	// Tiebreaker: total profit potential (profit × limit)
+	BULK("Bulk Volume: minLimit = 1000; minVolume = 50; bulkMinAge = 60; "
+		+ "maxAge = max(maxAge, bulkMinAge); "
+		+ "filter = profit > 0 && profit >= minProfit && roi >= minROI && roi <= maxROI; "
+		+ "filter = limit >= minLimit && volume >= minVolume; "
+		+ "filter = limitCost <= budget || buyPrice <= budget; "
+		+ "score = profit * log(volume + 1) * sqrt(limit); tiebreak = profit * limit"),
+
+	// Active flipping needs VERY recent prices - fresh data = active market = fast turnover.
+	// Focus on cheaper items with confirmed trading activity; even 1gp margin is worth it
+	// with high volume. Sort by margin (profit per item)
+	ACTIVE_FLIPPING("Active Flipping: minMargin = 1; maxPrice = 25000; activeMaxAge = 5; "
+		+ "maxAge = min(maxAge, activeMaxAge); "
+		+ "filter = buyPrice <= maxPrice && volume > 0 && profit >= minMargin; "
+		+ "filter = limitCost <= budget || buyPrice <= budget; "
+		+ "score = profit"),
+
+	// Moderate age filter - overnight flips can use slightly older data.
+	// Must afford at least one buy limit, and high volume (from 24h data) means more
+	// buy limits hit. Estimate the buy limit cycles in 12 hours: high volume items can
+	// hit 2-4, conservatively 2 for most items and 3 for very high volume.
+	// Sorted by total overnight profit potential (profit × limit × cycles)
+	OVERNIGHT("Overnight: minVolume = 100; busyVolume = 500; busyCycles = 3; quietCycles = 2; overnightMinAge = 30; "
+		+ "maxAge = max(maxAge, overnightMinAge); "
+		+ "filter = profit > 0 && profit >= minProfit && roi >= minROI && roi <= maxROI; "
+		+ "filter = limitCost <= budget && volume >= minVolume; "
+		+ "profit = profit * limit * (volume > busyVolume ? busyCycles : quietCycles)");
+
+	private final StrategySpec spec;
+
+	OpportunityTab(String spec)
+	{
+		this.spec = StrategySpec.parse(spec);
+	}
+
+	public StrategySpec getSpec()
+	{
+		return spec;
+	}
+
+	FlipStrategy strategy(DMMFlipperConfig config)
+	{
+		return spec.compile(params(config));
+	}
+
+	FlipStrategy strategy(Map<String, Integer> params)
+	{
+		return spec.compile(params);
+	}
+
+	/**
+	 * Parameters every spec may use, taken from the config
+	 */
+	static Map<String, Integer> params(DMMFlipperConfig config)
+	{
+		return params(config.minProfit(), config.minROI(), config.maxROI(), config.maxAge(), config.budget());
+	}
+
+	static Map<String, Integer> params(int minProfit, int minROI, int maxROI, int maxAge, int budget)
+	{
+		Map<String, Integer> params = new HashMap<>();
+		params.put("minProfit", minProfit);
+		params.put("minROI", minROI);
+		params.put("maxROI", maxROI);
+		params.put("maxAge", maxAge);
+		params.put("budget", budget);
+		return params;
+	}
+}
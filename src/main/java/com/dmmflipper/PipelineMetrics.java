@@ -0,0 +1,289 @@
+package com.dmmflipper;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import lombok.Data;
+
+/**
+ * Named counters, gauges, histograms and timers covering the refresh pipeline from fetch to
+ * render, for telling which stage is slow when the client stutters.
+ * <p>
+ * Metrics are created on first use and live for the session. Recording is lock-free and
+ * allocation-free, so it can sit on the hot paths of every thread; readers get a sorted copy.
+ * Histograms keep counts in log-linear buckets (four per power of two), so percentiles are
+ * within about 12% of the recorded value.
+ */
+public final class PipelineMetrics
+{
+	private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+	public Counter counter(String name)
+	{
+		return counters.computeIfAbsent(name, n -> new Counter());
+	}
+
+	public Histogram histogram(String name)
+	{
+		return histograms.computeIfAbsent(name, n -> new Histogram());
+	}
+
+	public Timer timer(String name)
+	{
+		return timers.computeIfAbsent(name, n -> new Timer());
+	}
+
+	/**
+	 * Registers a value read whenever the metrics are, replacing any gauge of the same name
+	 */
+	public void gauge(String name, LongSupplier value)
+	{
+		gauges.put(name, value);
+	}
+
+	public Map<String, Long> getCounters()
+	{
+		Map<String, Long> values = new TreeMap<>();
+		counters.forEach((name, counter) -> values.put(name, counter.get()));
+		return values;
+	}
+
+	public Map<String, Long> getGauges()
+	{
+		Map<String, Long> values = new TreeMap<>();
+		gauges.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+		return values;
+	}
+
+	public Map<String, Summary> getHistograms()
+	{
+		Map<String, Summary> values = new TreeMap<>();
+		histograms.forEach((name, histogram) -> values.put(name, histogram.summary()));
+		return values;
+	}
+
+	/**
+	 * Timer summaries, in milliseconds
+	 */
+	public Map<String, Summary> getTimers()
+	{
+		Map<String, Summary> values = new TreeMap<>();
+		timers.forEach((name, timer) -> values.put(name, timer.summary()));
+		return values;
+	}
+
+	/**
+	 * Zeroes every counter, histogram and timer; gauges are unaffected
+	 */
+	public void reset()
+	{
+		counters.values().forEach(Counter::reset);
+		histograms.values().forEach(Histogram::reset);
+		timers.values().forEach(timer -> timer.histogram.reset());
+	}
+
+	/**
+	 * {@code in}, adding every byte read from it to {@code bytes}
+	 */
+	static InputStream counting(InputStream in, Counter bytes)
+	{
+		return new FilterInputStream(in)
+		{
+			@Override
+			public int read() throws IOException
+			{
+				int b = super.read();
+				if (b >= 0)
+				{
+					bytes.add(1);
+				}
+				return b;
+			}
+
+			@Override
+			public int read(byte[] buffer, int offset, int length) throws IOException
+			{
+				int read = super.read(buffer, offset, length);
+				if (read > 0)
+				{
+					bytes.add(read);
+				}
+				return read;
+			}
+		};
+	}
+
+	public static final class Counter
+	{
+		private final LongAdder value = new LongAdder();
+
+		public void increment()
+		{
+			value.increment();
+		}
+
+		public void add(long amount)
+		{
+			value.add(amount);
+		}
+
+		public long get()
+		{
+			return value.sum();
+		}
+
+		private void reset()
+		{
+			value.reset();
+		}
+	}
+
+	/**
+	 * Distribution of non-negative values
+	 */
+	public static final class Histogram
+	{
+		private static final int SUB_BUCKET_BITS = 2;
+		private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+		private static final int BUCKETS = SUB_BUCKETS * (64 - SUB_BUCKET_BITS + 1);
+
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+		private final LongAdder count = new LongAdder();
+		private final LongAdder sum = new LongAdder();
+		private final AtomicLong max = new AtomicLong();
+
+		public void record(long value)
+		{
+			long v = Math.max(0, value);
+			buckets.incrementAndGet(bucket(v));
+			count.increment();
+			sum.add(v);
+			max.accumulateAndGet(v, Math::max);
+		}
+
+		public Summary summary()
+		{
+			return summary(1);
+		}
+
+		private Summary summary(double scale)
+		{
+			long n = count.sum();
+			if (n == 0)
+			{
+				return new Summary(0, 0, 0, 0, 0, 0);
+			}
+			return new Summary(n, sum.sum() / (double) n / scale,
+				percentile(n, 0.50) / scale, percentile(n, 0.95) / scale, percentile(n, 0.99) / scale, max.get() / scale);
+		}
+
+		/**
+		 * Upper bound of the bucket holding the value at quantile {@code q}, capped at the max
+		 */
+		private double percentile(long n, double q)
+		{
+			long rank = (long) Math.ceil(q * n);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++)
+			{
+				seen += buckets.get(i);
+				if (seen >= rank)
+				{
+					return Math.min(upperBound(i), max.get());
+				}
+			}
+			return max.get();
+		}
+
+		private void reset()
+		{
+			for (int i = 0; i < BUCKETS; i++)
+			{
+				buckets.set(i, 0);
+			}
+			count.reset();
+			sum.reset();
+			max.set(0);
+		}
+
+		/**
+		 * Values below {@link #SUB_BUCKETS} get a bucket each; above that, each power of two is
+		 * split into {@link #SUB_BUCKETS} equal parts
+		 */
+		private static int bucket(long value)
+		{
+			if (value < SUB_BUCKETS)
+			{
+				return (int) value;
+			}
+			int exponent = 63 - Long.numberOfLeadingZeros(value);
+			int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+			return SUB_BUCKETS * (exponent - SUB_BUCKET_BITS + 1) + sub;
+		}
+
+		private static double upperBound(int bucket)
+		{
+			if (bucket < SUB_BUCKETS)
+			{
+				return bucket;
+			}
+			int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+			int sub = bucket % SUB_BUCKETS;
+			return Math.scalb((double) (SUB_BUCKETS + sub + 1), exponent - SUB_BUCKET_BITS) - 1;
+		}
+	}
+
+	/**
+	 * Histogram of durations, recorded in nanoseconds and summarised in milliseconds
+	 */
+	public static final class Timer
+	{
+		private final Histogram histogram = new Histogram();
+
+		/**
+		 * @return a start time for {@link #stop(long)}
+		 */
+		public long start()
+		{
+			return System.nanoTime();
+		}
+
+		public void stop(long start)
+		{
+			histogram.record(System.nanoTime() - start);
+		}
+
+		public void record(long nanos)
+		{
+			histogram.record(nanos);
+		}
+
+		public Summary summary()
+		{
+			return histogram.summary(TimeUnit.MILLISECONDS.toNanos(1));
+		}
+	}
+
+	@Data
+	public static class Summary
+	{
+		private final long count;
+		private final double mean;
+		private final double p50;
+		private final double p95;
+		private final double p99;
+		private final double max;
+	}
+}
@@ -0,0 +1,239 @@
+package com.dmmflipper;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Polls a set of endpoints, each on its own cadence, from one scheduler thread.
+ * <p>
+ * After every poll the next one is planned from the endpoint's interval: doubled for each poll in
+ * a row that brought nothing new (up to the endpoint's backoff limit), halved while the user has
+ * offers in the market, and spread by up to {@link #JITTER} either way so clients don't poll in
+ * lockstep. While paused nothing is polled; on resume every endpoint that is due goes out at once
+ * and backoff starts over.
+ * <p>
+ * All state is confined to the executor thread; the public methods only post work to it.
+ */
+@Slf4j
+final class PollScheduler
+{
+	static final double JITTER = 0.1;
+
+	// Floor for the halved interval while the market is active
+	static final long MIN_ACTIVE_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(15);
+
+	// Backstop past the client's own request timeouts and retries: a poll that never completed
+	// would otherwise stop its endpoint for good
+	static final long POLL_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+	private final ScheduledExecutorService executor;
+	private final Map<String, Endpoint> endpoints = new LinkedHashMap<>();
+	private boolean running;
+	private boolean paused;
+	private boolean marketActive;
+
+	PollScheduler(ScheduledExecutorService executor)
+	{
+		this.executor = executor;
+	}
+
+	/**
+	 * Adds an endpoint. {@code poll} starts one poll and completes with whether it brought new data.
+	 *
+	 * @param maxBackoff      largest multiple of the interval to back off to; 1 disables backoff
+	 * @param followsActivity whether the endpoint is polled faster while the market is active
+	 */
+	void register(String name, long intervalMillis, int maxBackoff, boolean followsActivity,
+		Supplier<CompletableFuture<Boolean>> poll)
+	{
+		Endpoint endpoint = new Endpoint(name, intervalMillis, maxBackoff, followsActivity, poll);
+		executor.execute(() -> endpoints.put(name, endpoint));
+	}
+
+	/**
+	 * Starts polling. Every endpoint is first due one interval from now, as the caller has just
+	 * loaded everything.
+	 */
+	void start()
+	{
+		executor.execute(() -> {
+			running = true;
+			long now = System.currentTimeMillis();
+			for (Endpoint endpoint : endpoints.values())
+			{
+				endpoint.lastPolled = now;
+				endpoint.backoff = 1;
+				schedule(endpoint);
+			}
+		});
+	}
+
+	void stop()
+	{
+		executor.execute(() -> {
+			running = false;
+			endpoints.values().forEach(Endpoint::cancel);
+		});
+	}
+
+	/**
+	 * Changes an endpoint's interval; the pending poll is moved to match.
+	 */
+	void setInterval(String name, long intervalMillis)
+	{
+		executor.execute(() -> {
+			Endpoint endpoint = endpoints.get(name);
+			if (endpoint != null && endpoint.intervalMillis != intervalMillis)
+			{
+				endpoint.intervalMillis = intervalMillis;
+				schedule(endpoint);
+			}
+		});
+	}
+
+	void setPaused(boolean paused)
+	{
+		executor.execute(() -> {
+			if (this.paused == paused)
+			{
+				return;
+			}
+
+			this.paused = paused;
+			log.debug("Price polling {}", paused ? "paused" : "resumed");
+			for (Endpoint endpoint : endpoints.values())
+			{
+				endpoint.backoff = 1;
+				schedule(endpoint);
+			}
+		});
+	}
+
+	/**
+	 * Whether the user has offers in the market, which speeds up endpoints that follow activity
+	 */
+	void setMarketActive(boolean marketActive)
+	{
+		executor.execute(() -> {
+			if (this.marketActive == marketActive)
+			{
+				return;
+			}
+
+			this.marketActive = marketActive;
+			for (Endpoint endpoint : endpoints.values())
+			{
+				if (endpoint.followsActivity)
+				{
+					endpoint.backoff = 1;
+					schedule(endpoint);
+				}
+			}
+		});
+	}
+
+	/**
+	 * (Re)plans the next poll of {@code endpoint}; overdue polls go out straight away.
+	 */
+	private void schedule(Endpoint endpoint)
+	{
+		endpoint.cancel();
+		if (!running || paused || endpoint.polling)
+		{
+			return;
+		}
+
+		long delay = Math.max(0, endpoint.lastPolled + delayOf(endpoint) - System.currentTimeMillis());
+		endpoint.next = executor.schedule(() -> poll(endpoint), delay, TimeUnit.MILLISECONDS);
+	}
+
+	private long delayOf(Endpoint endpoint)
+	{
+		long interval = endpoint.intervalMillis;
+		if (marketActive && endpoint.followsActivity)
+		{
+			interval = Math.max(MIN_ACTIVE_INTERVAL_MILLIS, interval / 2);
+		}
+		interval *= endpoint.backoff;
+
+		double jitter = 1 + JITTER * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+		return (long) (interval * jitter);
+	}
+
+	private void poll(Endpoint endpoint)
+	{
+		endpoint.next = null;
+		endpoint.polling = true;
+		endpoint.lastPolled = System.currentTimeMillis();
+
+		CompletableFuture<Boolean> result;
+		try
+		{
+			result = endpoint.poll.get().orTimeout(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		}
+		catch (RuntimeException e)
+		{
+			result = new CompletableFuture<>();
+			result.completeExceptionally(e);
+		}
+
+		result.whenCompleteAsync((changed, error) -> {
+			endpoint.polling = false;
+			if (error == null && Boolean.TRUE.equals(changed))
+			{
+				endpoint.backoff = 1;
+			}
+			else
+			{
+				// Failures back off too, so an outage isn't hammered at full rate
+				endpoint.backoff = Math.min(endpoint.backoff * 2, endpoint.maxBackoff);
+			}
+
+			if (error != null)
+			{
+				log.debug("Poll of {} failed, next in {}x interval", endpoint.name, endpoint.backoff, error);
+			}
+			schedule(endpoint);
+		}, executor);
+	}
+
+	private static final class Endpoint
+	{
+		private final String name;
+		private final int maxBackoff;
+		private final boolean followsActivity;
+		private final Supplier<CompletableFuture<Boolean>> poll;
+
+		private long intervalMillis;
+		private int backoff = 1;
+		private long lastPolled;
+		private boolean polling;
+		private ScheduledFuture<?> next;
+
+		private Endpoint(String name, long intervalMillis, int maxBackoff, boolean followsActivity,
+			Supplier<CompletableFuture<Boolean>> poll)
+		{
+			this.name = name;
+			this.intervalMillis = intervalMillis;
+			this.maxBackoff = maxBackoff;
+			this.followsActivity = followsActivity;
+			this.poll = poll;
+		}
+
+		private void cancel()
+		{
+			if (next != null)
+			{
+				next.cancel(false);
+				next = null;
+			}
+		}
+	}
+}
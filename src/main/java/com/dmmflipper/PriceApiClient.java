@@ -1,603 +1,715 @@
 package com.dmmflipper;
 
 import com.google.gson.Gson;
-import com.google.gson.JsonObject;
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.RuneLite;
 import okhttp3.*;
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 @Slf4j
 @Singleton
 public class PriceApiClient
 {
-	private static final String API_BASE = "https://prices.runescape.wiki/api/v1/dmm";
+	private static final String DEFAULT_API_BASE = "https://prices.runescape.wiki/api/v1/dmm";
 	private static final String USER_AGENT = "DMM Flipper RuneLite Plugin";
+	private static final long MAPPING_RECHECK_MINUTES = 60;
+	// /24h is a rolling day of trades and moves far slower than /latest
+	private static final long VOLUME_REFRESH_MINUTES = 5;
+	private static final int LATEST_MAX_BACKOFF = 4;
+	private static final int VOLUME_MAX_BACKOFF = 4;
+	// Bounds on every request, so a hung connection can't hold a refresh open
+	private static final long CONNECT_TIMEOUT_SECONDS = 5;
+	private static final long READ_TIMEOUT_SECONDS = 10;
+	private static final long CALL_TIMEOUT_SECONDS = 20;
+	// Transient failures are retried after 1s and 2s (plus or minus half), then given up on
+	private static final int MAX_ATTEMPTS = 3;
+	private static final long RETRY_BASE_MILLIS = 1000;
+	// How long a stale market keeps the ages it had when prices were last fetched
+	private static final long STALE_GRACE_MILLIS = TimeUnit.MINUTES.toMillis(15);
+	private static final int MAX_ITEM_DETAILS = 64;
 
 	private final OkHttpClient httpClient;
 	private final Gson gson;
+	private final String apiBase;
 	private final ScheduledExecutorService executor;
-
-	private Map<Integer, ItemInfo> itemMapping = new ConcurrentHashMap<>();
-	private Map<Integer, PriceData> latestPrices = new ConcurrentHashMap<>();
+	private final ItemMappingCache mappingCache;
+	private final OpportunityEngine opportunityEngine = new OpportunityEngine();
+	// Written on the executor only, like the cached feeds
+	private final PriceHistory priceHistory = new PriceHistory();
+	private final TimeSeriesCache timeSeriesCache = new TimeSeriesCache(this::fetchTimeSeries);
+	private final PriceHistoryStore historyStore;
+	private volatile boolean recordHistory = true;
+	// Read wherever "now" matters to a snapshot or a scan, so a backtest can run on recorded time
+	private volatile Clock clock = Clock.systemUTC();
+
+	private volatile ItemCatalogue itemCatalogue = ItemCatalogue.EMPTY;
+	// Full records of the few items the UI has asked about, read back from the cached /mapping
+	private final Map<Integer, ItemInfo> itemDetails = new LinkedHashMap<Integer, ItemInfo>(16, 0.75f, true)
+	{
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, ItemInfo> eldest)
+		{
+			return size() > MAX_ITEM_DETAILS;
+		}
+	};
+	private final AtomicReference<PriceSnapshot> snapshot = new AtomicReference<>(PriceSnapshot.EMPTY);
+	private final AtomicLong snapshotVersion = new AtomicLong();
+	private final List<Consumer<PriceSnapshot>> snapshotListeners = new CopyOnWriteArrayList<>();
 	private List<FlipOpportunity> opportunities = new ArrayList<>();
-	private ScheduledFuture<?> updateTask;
+	private volatile List<StrategySpec> customStrategies = Collections.emptyList();
+	private final PollScheduler pollScheduler;
+	private final PipelineMetrics metrics = new PipelineMetrics();
+	private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+	// Outcome of the /latest refreshes, for telling live prices from stale ones
+	private volatile long lastPriceSuccess;
+	private volatile int priceFailures;
+	// Last good response of each feed, reused by refreshes that don't fetch it
+	private PriceFeed latestFeed;
+	private PriceFeed volumeFeed;
+	private CompletableFuture<PriceFeed> latestInFlight;
+	private CompletableFuture<PriceFeed> volumesInFlight;
 
 	@Inject
 	public PriceApiClient(OkHttpClient httpClient, Gson gson)
 	{
-		this.httpClient = httpClient;
+		this(httpClient, gson, DEFAULT_API_BASE, new File(RuneLite.RUNELITE_DIR, "dmm-flipper"));
+	}
+
+	/**
+	 * @param apiBase URL the endpoint paths are appended to, e.g. a local mock of the wiki API
+	 * @param dataDir where the catalogue cache and the price history are kept
+	 */
+	PriceApiClient(OkHttpClient httpClient, Gson gson, String apiBase, File dataDir)
+	{
+		this.httpClient = httpClient.newBuilder()
+			.connectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+			.readTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+			.callTimeout(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+			.build();
 		this.gson = gson;
+		this.apiBase = apiBase;
 		this.executor = Executors.newSingleThreadScheduledExecutor();
+		this.mappingCache = new ItemMappingCache(dataDir);
+		this.historyStore = new PriceHistoryStore(new File(dataDir, "history").toPath());
+		this.pollScheduler = new PollScheduler(executor);
+
+		pollScheduler.register("/latest", TimeUnit.SECONDS.toMillis(60), LATEST_MAX_BACKOFF, true,
+			() -> publishes(refresh(false, true, false)));
+		pollScheduler.register("/24h", TimeUnit.MINUTES.toMillis(VOLUME_REFRESH_MINUTES), VOLUME_MAX_BACKOFF, false,
+			() -> publishes(refresh(false, false, true)));
+		// Time-series buckets close on a fixed clock, so backing off would only skip them
+		pollScheduler.register("/5m", TimeUnit.SECONDS.toMillis(priceHistory.fiveMinute.stepSeconds), 1, false,
+			() -> publishes(ingestTimeSeries("/5m", priceHistory.fiveMinute)));
+		pollScheduler.register("/1h", TimeUnit.SECONDS.toMillis(priceHistory.oneHour.stepSeconds), 1, false,
+			() -> publishes(ingestTimeSeries("/1h", priceHistory.oneHour)));
+		// Re-check the catalogue so items added mid-league show up without a restart
+		pollScheduler.register("/mapping", TimeUnit.MINUTES.toMillis(MAPPING_RECHECK_MINUTES), 1, false,
+			this::revalidateItemMapping);
+
+		metrics.gauge("snapshot age (s)", () -> {
+			PriceSnapshot current = snapshot.get();
+			return current.isEmpty() ? 0 : (clock.millis() - current.getBuiltAt()) / 1000;
+		});
+		metrics.gauge("snapshot items", () -> snapshot.get().size());
+		metrics.gauge("snapshot version", () -> snapshot.get().getVersion());
+		metrics.gauge("failed price refreshes", () -> priceFailures);
+		metrics.gauge("catalogue bytes", () -> itemCatalogue.footprintBytes());
 	}
 
-	public void startPriceUpdates()
+	/**
+	 * Counters, timers and histograms of every stage from fetch to render
+	 */
+	public PipelineMetrics getMetrics()
 	{
-		// Fetch data in background thread
-		executor.execute(() -> {
-			fetchItemMapping();
-			fetchLatestPrices();
-		});
+		return metrics;
+	}
 
-		// Schedule periodic updates (every 60 seconds)
-		updateTask = executor.scheduleAtFixedRate(
-			this::fetchLatestPrices,
-			60,
-			60,
-			TimeUnit.SECONDS
-		);
+	public void startPriceUpdates()
+	{
+		// First load issues /mapping, /latest and /24h together, then seeds the trends
+		refresh(true, true, true).thenRun(this::refreshTrends);
+		pollScheduler.start();
 	}
 
 	public void stopPriceUpdates()
 	{
-		if (updateTask != null)
-		{
-			updateTask.cancel(false);
-		}
+		pollScheduler.stop();
+		opportunityEngine.shutdown();
+		// Appends run on the executor, so close there too
+		executor.execute(historyStore::close);
 	}
 
-	public void fetchItemMapping()
+	/**
+	 * Stops polling for good and lets the executor thread exit once queued work has run
+	 */
+	void shutdown()
 	{
-		Request request = new Request.Builder()
-			.url(API_BASE + "/mapping")
-			.header("User-Agent", USER_AGENT)
-			.build();
+		stopPriceUpdates();
+		executor.shutdown();
+	}
 
-		try (Response response = httpClient.newCall(request).execute())
-		{
-			if (response.isSuccessful() && response.body() != null)
-			{
-				String json = response.body().string();
-				ItemInfo[] items = gson.fromJson(json, ItemInfo[].class);
-				
-				itemMapping.clear();
-				for (ItemInfo item : items)
-				{
-					itemMapping.put(item.getId(), item);
-				}
-				
-				log.info("Loaded {} items", itemMapping.size());
-			}
-		}
-		catch (IOException e)
-		{
-			log.error("Error fetching item mapping", e);
-		}
+	/**
+	 * Whether each refresh is appended to the on-disk price history
+	 */
+	public void setRecordHistory(boolean recordHistory)
+	{
+		this.recordHistory = recordHistory;
 	}
 
-	public void fetchLatestPrices()
+	/**
+	 * Every refresh recorded so far, for range scans over an item's past prices
+	 */
+	public PriceHistoryStore getHistoryStore()
 	{
-		latestPrices.clear();
-		
-		// Fetch price data from latest (most accurate prices)
-		fetchPricesFromEndpoint(API_BASE + "/latest");
-		
-		// Merge volume data from 24h (better volume metrics)
-		mergeVolumeData(API_BASE + "/24h");
-		
-		int highValueCount = 0;
-		for (PriceData pd : latestPrices.values())
-		{
-			if (pd.getHigh() > 1000000)
-			{
-				highValueCount++;
-			}
-		}
-		
-		log.info("Loaded {} items ({} over 1M)", latestPrices.size(), highValueCount);
+		return historyStore;
 	}
 
-	private void mergeVolumeData(String endpoint)
+	/**
+	 * Source of the current time for snapshots and scans; the backtester sets a simulated one
+	 */
+	void setClock(Clock clock)
 	{
-		Request request = new Request.Builder()
-			.url(endpoint)
-			.header("User-Agent", USER_AGENT)
-			.build();
+		this.clock = clock;
+	}
 
-		try (Response response = httpClient.newCall(request).execute())
-		{
-			if (response.isSuccessful() && response.body() != null)
-			{
-				String json = response.body().string();
-				JsonObject root = gson.fromJson(json, JsonObject.class);
-				JsonObject data = root.getAsJsonObject("data");
+	/**
+	 * Publishes {@code next} as if a refresh had produced it, for replaying recorded markets.
+	 * The snapshot must have been built on top of the current one so their slots agree.
+	 */
+	void replay(PriceSnapshot next)
+	{
+		snapshotVersion.set(next.getVersion());
+		publish(next);
+	}
 
-				int merged = 0;
+	/**
+	 * Base interval between /latest polls. The scheduler backs off from it while prices don't
+	 * change and halves it while the user has offers in the market.
+	 */
+	public void setRefreshInterval(int seconds)
+	{
+		pollScheduler.setInterval("/latest", TimeUnit.SECONDS.toMillis(seconds));
+	}
 
-				for (String itemIdStr : data.keySet())
-				{
-					int itemId = Integer.parseInt(itemIdStr);
-					JsonObject priceObj = data.getAsJsonObject(itemIdStr);
-
-					// Only merge volume data into existing entries
-					PriceData existing = latestPrices.get(itemId);
-					if (existing != null)
-					{
-						// Merge volume from 24h data
-						int highVol = priceObj.has("highPriceVolume") && !priceObj.get("highPriceVolume").isJsonNull()
-							? priceObj.get("highPriceVolume").getAsInt() : 0;
-						int lowVol = priceObj.has("lowPriceVolume") && !priceObj.get("lowPriceVolume").isJsonNull()
-							? priceObj.get("lowPriceVolume").getAsInt() : 0;
-
-						existing.setHighVolume(highVol);
-						existing.setLowVolume(lowVol);
-						merged++;
-					}
-				}
+	/**
+	 * Stops polling while nobody is looking at the data; resuming fetches whatever is due at once.
+	 */
+	public void setPollingPaused(boolean paused)
+	{
+		pollScheduler.setPaused(paused);
+	}
+
+	/**
+	 * Whether the user has offers in the market, which makes /latest poll faster
+	 */
+	public void setMarketActive(boolean active)
+	{
+		pollScheduler.setMarketActive(active);
+	}
+
+	/**
+	 * Threads the opportunity scans may use for large passes; 1 scans on the calling thread.
+	 */
+	public void setScanParallelism(int parallelism)
+	{
+		opportunityEngine.setParallelism(parallelism);
+	}
+
+	/**
+	 * Conditionally fetches /mapping against the on-disk cache. Completes with the new catalogue,
+	 * or null when the server answers 304 and the cached one is still current.
+	 */
+	public CompletableFuture<ItemCatalogue> fetchItemMapping()
+	{
+		Request.Builder request = newRequest(apiBase + "/mapping");
+		mappingCache.addValidators(request);
 
-				log.info("Merged volume data from {}: {} items updated", endpoint, merged);
+		return fetchAsync(request.build(), response -> {
+			if (response.code() == 304)
+			{
+				log.debug("Item mapping not modified, keeping cached catalogue");
+				return null;
 			}
-		}
-		catch (Exception e)
+			successfulBody(response);
+			return mappingCache.store(response, metrics.counter("bytes /mapping"));
+		});
+	}
+
+	/**
+	 * Installs the catalogue cached on disk, if any, so startup doesn't wait on /mapping.
+	 */
+	private void loadCachedItemMapping()
+	{
+		ItemCatalogue cached = mappingCache.load();
+		if (cached != null)
 		{
-			log.error("Error merging volume data from " + endpoint, e);
+			installItemMapping(cached);
 		}
 	}
 
-	private void fetchPricesFromEndpoint(String endpoint)
+	private CompletableFuture<Boolean> revalidateItemMapping()
 	{
-		Request request = new Request.Builder()
-			.url(endpoint)
-			.header("User-Agent", USER_AGENT)
-			.build();
-
-		try (Response response = httpClient.newCall(request).execute())
-		{
-			if (response.isSuccessful() && response.body() != null)
+		return fetchItemMapping().handleAsync((items, error) -> {
+			if (error != null)
 			{
-				String json = response.body().string();
-				JsonObject root = gson.fromJson(json, JsonObject.class);
-				JsonObject data = root.getAsJsonObject("data");
-
-				boolean isTimeSeries = endpoint.contains("/5m") || endpoint.contains("/1h");
-				
-				for (String itemIdStr : data.keySet())
-				{
-					int itemId = Integer.parseInt(itemIdStr);
-					JsonObject priceObj = data.getAsJsonObject(itemIdStr);
-					
-					PriceData priceData = new PriceData();
-					
-					if (isTimeSeries)
-					{
-						priceData.setHigh(priceObj.has("avgHighPrice") && !priceObj.get("avgHighPrice").isJsonNull() 
-							? priceObj.get("avgHighPrice").getAsInt() : 0);
-						priceData.setLow(priceObj.has("avgLowPrice") && !priceObj.get("avgLowPrice").isJsonNull() 
-							? priceObj.get("avgLowPrice").getAsInt() : 0);
-						long currentTime = System.currentTimeMillis() / 1000;
-						priceData.setHighTime(currentTime);
-						priceData.setLowTime(currentTime);
-						priceData.setHighVolume(priceObj.has("highPriceVolume") && !priceObj.get("highPriceVolume").isJsonNull() 
-							? priceObj.get("highPriceVolume").getAsInt() : 0);
-						priceData.setLowVolume(priceObj.has("lowPriceVolume") && !priceObj.get("lowPriceVolume").isJsonNull() 
-							? priceObj.get("lowPriceVolume").getAsInt() : 0);
-					}
-					else
-					{
-						priceData.setHigh(priceObj.has("high") && !priceObj.get("high").isJsonNull() 
-							? priceObj.get("high").getAsInt() : 0);
-						priceData.setLow(priceObj.has("low") && !priceObj.get("low").isJsonNull() 
-							? priceObj.get("low").getAsInt() : 0);
-						priceData.setHighTime(priceObj.has("highTime") && !priceObj.get("highTime").isJsonNull() 
-							? priceObj.get("highTime").getAsLong() : 0);
-						priceData.setLowTime(priceObj.has("lowTime") && !priceObj.get("lowTime").isJsonNull() 
-							? priceObj.get("lowTime").getAsLong() : 0);
-						priceData.setHighVolume(priceObj.has("highPriceVolume") && !priceObj.get("highPriceVolume").isJsonNull() 
-							? priceObj.get("highPriceVolume").getAsInt() : 0);
-						priceData.setLowVolume(priceObj.has("lowPriceVolume") && !priceObj.get("lowPriceVolume").isJsonNull() 
-							? priceObj.get("lowPriceVolume").getAsInt() : 0);
-					}
-
-					PriceData existing = latestPrices.get(itemId);
-					if (existing == null)
-					{
-						latestPrices.put(itemId, priceData);
-					}
-					else if (!isTimeSeries)
-					{
-						latestPrices.put(itemId, priceData);
-					}
-				}
+				log.warn("Item mapping re-check failed", error);
 			}
-		}
-		catch (Exception e)
+			else if (items != null)
+			{
+				installItemMapping(items);
+			}
+			return items != null;
+		}, executor);
+	}
+
+	void installItemMapping(ItemCatalogue items)
+	{
+		itemCatalogue = items;
+		synchronized (itemDetails)
 		{
-			log.error("Error fetching prices from " + endpoint, e);
+			itemDetails.clear();
 		}
+
+		log.info("Loaded {} items ({} KB)", items.size(), items.footprintBytes() / 1024);
 	}
 
 	/**
-	 * Best Margin Tab: Optimized for high-ROI, high-margin flips
-	 * Strategy: Focus on items with best profit per item, regardless of volume
-	 * Target: Experienced flippers looking for maximum profit per flip
-	 * Sorting: By absolute profit (margin), then by ROI as tiebreaker
+	 * Starts a refresh of /latest and /24h and completes with the snapshot that is current
+	 * once both responses have been merged. Fetches already in flight are joined.
 	 */
+	public CompletableFuture<PriceSnapshot> fetchLatestPrices()
+	{
+		return refresh(false, true, true);
+	}
+
 	/**
-	 * Best Margin Tab: Optimized for low-volume, high-margin overnight flips
-	 * Strategy: Focus on expensive items with best profit per item (endgame gear, rare items)
-	 * Target: Experienced flippers with large banks (50M+) looking for 3-5% returns
-	 * Sorting: By absolute profit (margin), then by ROI as tiebreaker
-	 * Risk: Higher (less liquidity, price volatility)
-	 * Expected: 1.5-2.5M profit per night on 50M bank (best case)
+	 * Fetches the chosen endpoints and merges them with the last good response of the others.
 	 */
-	public List<FlipOpportunity> calculateOpportunities(int minProfit, int minROI, int maxROI, int maxAgeMinutes, int budget)
+	private synchronized CompletableFuture<PriceSnapshot> refresh(boolean includeMapping, boolean includeLatest, boolean includeVolumes)
 	{
-		List<FlipOpportunity> opps = new ArrayList<>();
-		long currentTime = System.currentTimeMillis() / 1000;
-
-		for (Map.Entry<Integer, PriceData> entry : latestPrices.entrySet())
+		// All requests go out at once on OkHttp's dispatcher; nothing blocks the scheduler thread
+		// The cached catalogue is read first so its validators go out with the /mapping request
+		CompletableFuture<ItemCatalogue> mapping = includeMapping
+			? CompletableFuture.runAsync(this::loadCachedItemMapping, executor).thenCompose(ignored -> fetchItemMapping())
+			: CompletableFuture.completedFuture(null);
+		if (includeLatest && (latestInFlight == null || latestInFlight.isDone()))
+		{
+			latestInFlight = fetchPricesFromEndpoint(apiBase + "/latest");
+		}
+		if (includeVolumes && (volumesInFlight == null || volumesInFlight.isDone()))
 		{
-			int itemId = entry.getKey();
-			PriceData priceData = entry.getValue();
+			volumesInFlight = fetchPricesFromEndpoint(apiBase + "/24h");
+		}
+		CompletableFuture<PriceFeed> latest = includeLatest ? latestInFlight : CompletableFuture.completedFuture(null);
+		CompletableFuture<PriceFeed> volumes = includeVolumes ? volumesInFlight : CompletableFuture.completedFuture(null);
 
-			if (priceData.getHigh() == 0 || priceData.getLow() == 0)
-			{
-				continue;
-			}
+		return CompletableFuture.allOf(mapping, latest, volumes)
+			.handleAsync((ignored, error) -> merge(mapping, includeLatest, latest, includeVolumes, volumes), executor);
+	}
 
-			long buyTime = priceData.getLowTime();
-			long sellTime = priceData.getHighTime();
+	/**
+	 * Join stage: runs once every response has arrived (or failed) and publishes the combined snapshot.
+	 * Runs on the executor thread, which also owns the cached feeds.
+	 */
+	private PriceSnapshot merge(CompletableFuture<ItemCatalogue> mapping,
+		boolean includeLatest, CompletableFuture<PriceFeed> latest,
+		boolean includeVolumes, CompletableFuture<PriceFeed> volumes)
+	{
+		ItemCatalogue items = resultOrNull(mapping, "/mapping");
+		if (items != null)
+		{
+			installItemMapping(items);
+		}
 
-			if (buyTime == 0 || sellTime == 0)
+		// The previous snapshot keeps serving if /latest failed, marked stale until a refresh succeeds
+		PriceFeed prices = includeLatest ? resultOrNull(latest, "/latest") : latestFeed;
+		if (prices == null)
+		{
+			if (includeLatest)
 			{
-				continue;
+				priceFailures++;
+				log.warn("Price refresh failed {} times in a row, serving stale snapshot v{}", priceFailures,
+					snapshot.get().getVersion());
 			}
+			return snapshot.get();
+		}
+		if (includeLatest)
+		{
+			lastPriceSuccess = clock.millis();
+			priceFailures = 0;
+		}
+		latestFeed = prices;
 
-			int buyAgeMinutes = (int) ((currentTime - buyTime) / 60);
-			int sellAgeMinutes = (int) ((currentTime - sellTime) / 60);
-
-			// Strict age filter for Best Margin tab - we want fresh data
-			if (buyAgeMinutes > maxAgeMinutes || sellAgeMinutes > maxAgeMinutes)
-			{
-				continue;
-			}
+		// Merge volume data from 24h (better volume metrics); a failed /24h keeps the previous volumes
+		PriceFeed volumeData = includeVolumes ? resultOrNull(volumes, "/24h") : null;
+		if (volumeData != null)
+		{
+			volumeFeed = volumeData;
+		}
 
-			ItemInfo itemInfo = itemMapping.get(itemId);
-			if (itemInfo == null)
-			{
-				continue;
-			}
+		long started = System.nanoTime();
+		metrics.counter("merges").increment();
+		PriceSnapshot current = snapshot.get();
+		PriceSnapshot next = PriceSnapshot.build(current, prices, volumeFeed,
+			snapshotVersion.get() + 1, clock.millis());
 
-			long latestTime = Math.max(buyTime, sellTime);
-			int ageMinutes = (int) ((currentTime - latestTime) / 60);
+		// An unchanged market isn't republished, so nothing downstream rescans it
+		ChangeSet changes = ChangeSet.between(current, next);
+		if (!current.isEmpty() && changes.size() == 0)
+		{
+			log.debug("Prices unchanged, keeping snapshot v{}", current.getVersion());
+			return current;
+		}
 
-			int buyPrice = priceData.getLow();
-			int sellPrice = priceData.getHigh();
-			int geTax = Math.min((int) (sellPrice * 0.01), 5_000_000);
-			int profit = sellPrice - buyPrice - geTax;
+		snapshotVersion.incrementAndGet();
+		// Offered before publishing, so the first scan of the new snapshot already finds it
+		opportunityEngine.offerChanges(current, next, changes);
+		publish(next);
+		metrics.counter("snapshots published").increment();
+		metrics.histogram("changed items").record(changes.size());
 
-			if (profit <= 0)
+		if (recordHistory)
+		{
+			long appendStarted = System.nanoTime();
+			try
 			{
-				continue;
+				historyStore.append(changes, next);
 			}
-
-			double roi = (profit / (double) buyPrice) * 100;
-
-			if (profit < minProfit || roi < minROI || roi > maxROI)
+			catch (IOException e)
 			{
-				continue;
+				log.warn("Failed to record price history", e);
 			}
+			metrics.timer("history append").record(System.nanoTime() - appendStarted);
+		}
+		metrics.timer("merge").record(System.nanoTime() - started);
 
-			int limit = itemInfo.getLimit() > 0 ? itemInfo.getLimit() : 1;
-			if (buyPrice * limit > budget && buyPrice > budget)
+		int highValueCount = 0;
+		for (int slot = 0; slot < next.slotCount(); slot++)
+		{
+			if (next.high(slot) > 1000000)
 			{
-				continue;
+				highValueCount++;
 			}
-
-			FlipOpportunity opp = new FlipOpportunity(
-				itemId,
-				itemInfo.getName(),
-				buyPrice,
-				sellPrice,
-				profit,
-				roi,
-				geTax,
-				limit,
-				ageMinutes,
-				priceData.getLowVolume(),
-				priceData.getHighVolume(),
-				"unknown",
-				true
-			);
-
-			opps.add(opp);
 		}
 
-		// Sort by profit (margin), then by ROI for tiebreaker
-		// This shows low-volume, high-margin items (endgame gear strategy)
-		opps.sort((a, b) -> {
-			int profitCompare = Integer.compare(b.getProfit(), a.getProfit());
-			if (profitCompare != 0) return profitCompare;
-			return Double.compare(b.getRoi(), a.getRoi());
-		});
-
-		log.info("Found {} best margin opportunities", opps.size());
-
-		this.opportunities = opps;
-		return opps;
+		log.info("Loaded {} items ({} over 1M) into snapshot v{}", next.size(), highValueCount, next.getVersion());
+		return next;
 	}
+
 	/**
-	 * Bulk Volume Tab: Optimized for high-volume items with large buy limits
-	 * Strategy: Focus on total profit potential (margin × limit) with confirmed volume
-	 * Target: Flippers who want to maximize profit per 4-hour cycle
-	 * Sorting: By total profit potential (profit × limit)
-	 * Key filters: High buy limits (1000+), confirmed 24h volume (50+)
-	 */
-	/**
-	 * Bulk Volume Tab: Optimized for high-volume items with large buy limits
-	 * Strategy: Focus on items with high buy limits and good margins
-	 * Target: Flippers who want to maximize profit with high-volume items
-	 * Sorting: By margin (profit per item)
-	 * Key filters: High buy limits (1000+), confirmed 24h volume (50+)
+	 * Fetches /5m and /1h together and completes with the snapshot that is current once both
+	 * have been ingested
 	 */
+	CompletableFuture<PriceSnapshot> refreshTrends()
+	{
+		CompletableFuture<PriceSnapshot> fiveMinute = ingestTimeSeries("/5m", priceHistory.fiveMinute);
+		CompletableFuture<PriceSnapshot> oneHour = ingestTimeSeries("/1h", priceHistory.oneHour);
+		return fiveMinute.thenCombine(oneHour, (ignored, alsoIgnored) -> snapshot.get());
+	}
+
 	/**
-	 * Bulk Volume Tab: Optimized for overnight flipping with high-volume items
-	 * Strategy: Safe, stable, consistent profits with high liquidity items
-	 * Based on: Overnight flipping strategy (6-12 hour holds)
-	 * Target: Beginners and consistent profit seekers (2% return per night)
-	 * Sorting: By efficiency score (profit × volume × limit potential)
-	 * Key filters: High buy limits (1000+), high 24h volume (50+), reasonable margins
-	 * 
-	 * Philosophy: These items trade frequently (high liquidity), have stable prices,
-	 * and allow hitting buy limits 2-4 times per night for compounding profits.
+	 * Fetches one time-series bucket into the price history and publishes the snapshot with the
+	 * updated trends when any item's trend changed.
 	 */
-	public List<FlipOpportunity> calculateBulkOpportunities(int minProfit, int minROI, int maxROI, int maxAgeMinutes, int budget, int minLimit)
+	private CompletableFuture<PriceSnapshot> ingestTimeSeries(String endpoint, PriceHistory.Series series)
 	{
-		List<FlipOpportunity> opps = new ArrayList<>();
-		long currentTime = System.currentTimeMillis() / 1000;
-
-		for (Map.Entry<Integer, PriceData> entry : latestPrices.entrySet())
-		{
-			int itemId = entry.getKey();
-			PriceData priceData = entry.getValue();
-
-			if (priceData.getHigh() == 0 || priceData.getLow() == 0)
+		return fetchPricesFromEndpoint(apiBase + endpoint).handleAsync((feed, error) -> {
+			PriceSnapshot current = snapshot.get();
+			if (error != null)
 			{
-				continue;
+				log.warn("Error fetching {}", endpoint, error);
+				return current;
 			}
 
-			long buyTime = priceData.getLowTime();
-			long sellTime = priceData.getHighTime();
-
-			if (buyTime == 0 || sellTime == 0)
+			long now = clock.millis();
+			long started = System.nanoTime();
+			int changed = priceHistory.append(series, feed, current, now / 1000);
+			metrics.timer("ingest " + endpoint).record(System.nanoTime() - started);
+			if (changed == 0)
 			{
-				continue;
+				return current;
 			}
 
-			int buyAgeMinutes = (int) ((currentTime - buyTime) / 60);
-			int sellAgeMinutes = (int) ((currentTime - sellTime) / 60);
+			PriceSnapshot next = priceHistory.publish(current, snapshotVersion.incrementAndGet(), now);
+			publish(next);
+			log.debug("{} changed the trend of {} items, published snapshot v{}", endpoint, changed, next.getVersion());
+			return next;
+		}, executor);
+	}
 
-			// Relaxed age filter for overnight flips (items trade throughout the day)
-			int bulkMaxAge = Math.max(maxAgeMinutes, 60);
+	/**
+	 * Full price history of one item at {@code timestep}, for drilling into it. Served from a
+	 * bounded cache while no newer bucket can have closed; otherwise fetched on demand, with only a
+	 * few /timeseries requests out at once.
+	 */
+	public CompletableFuture<TimeSeries> getTimeSeries(int itemId, TimeSeries.Timestep timestep)
+	{
+		return timeSeriesCache.get(itemId, timestep, clock.millis());
+	}
 
-			if (buyAgeMinutes > bulkMaxAge || sellAgeMinutes > bulkMaxAge)
-			{
-				continue;
-			}
+	/**
+	 * The cached history of one item, or null after starting a fetch so a later call has it.
+	 * Never blocks, so it can be used from the client and Swing threads.
+	 */
+	public TimeSeries peekTimeSeries(int itemId, TimeSeries.Timestep timestep)
+	{
+		CompletableFuture<TimeSeries> history = getTimeSeries(itemId, timestep);
+		return history.isDone() && !history.isCompletedExceptionally() ? history.join() : null;
+	}
 
-			ItemInfo itemInfo = itemMapping.get(itemId);
-			if (itemInfo == null)
-			{
-				continue;
-			}
+	private CompletableFuture<TimeSeries> fetchTimeSeries(int itemId, TimeSeries.Timestep timestep)
+	{
+		String endpoint = apiBase + "/timeseries?id=" + itemId + "&timestep=" + timestep.getKey();
+		return fetchAsync(endpoint, body -> TimeSeries.read(body, itemId, timestep, clock.millis()));
+	}
 
-			long latestTime = Math.max(buyTime, sellTime);
-			int ageMinutes = (int) ((currentTime - latestTime) / 60);
+	/**
+	 * Completes with whether {@code refresh} published a new snapshot
+	 */
+	private CompletableFuture<Boolean> publishes(CompletableFuture<PriceSnapshot> refresh)
+	{
+		PriceSnapshot before = snapshot.get();
+		return refresh.thenApply(after -> after != before);
+	}
 
-			int buyPrice = priceData.getLow();
-			int sellPrice = priceData.getHigh();
-			int geTax = Math.min((int) (sellPrice * 0.01), 5_000_000);
-			int profit = sellPrice - buyPrice - geTax;
+	private static <T> T resultOrNull(CompletableFuture<T> future, String endpoint)
+	{
+		try
+		{
+			return future.join();
+		}
+		catch (CompletionException | CancellationException e)
+		{
+			log.error("Error fetching " + endpoint, e.getCause() != null ? e.getCause() : e);
+			return null;
+		}
+	}
 
-			if (profit <= 0)
+	private CompletableFuture<PriceFeed> fetchPricesFromEndpoint(String endpoint)
+	{
+		boolean isTimeSeries = endpoint.contains("/5m") || endpoint.contains("/1h");
+
+		return fetchAsync(endpoint, body -> {
+			// Stream straight from the response body into primitive columns, one item at a time
+			PriceFeed feed = PriceFeed.read(body);
+			if (isTimeSeries)
 			{
-				continue;
+				feed.stampTimes(clock.millis() / 1000);
 			}
+			return feed;
+		});
+	}
 
-			double roi = (profit / (double) buyPrice) * 100;
+	private Request.Builder newRequest(String endpoint)
+	{
+		return new Request.Builder()
+			.url(endpoint)
+			.header("User-Agent", USER_AGENT);
+	}
 
-			if (profit < minProfit || roi < minROI || roi > maxROI)
-			{
-				continue;
-			}
+	private <T> CompletableFuture<T> fetchAsync(String endpoint, BodyReader<T> reader)
+	{
+		PipelineMetrics.Counter bytes = metrics.counter("bytes " + endpointName(endpoint));
+		return fetchAsync(newRequest(endpoint).build(), response -> reader.read(new InputStreamReader(
+			PipelineMetrics.counting(successfulBody(response).byteStream(), bytes), StandardCharsets.UTF_8)));
+	}
 
-			int limit = itemInfo.getLimit() > 0 ? itemInfo.getLimit() : 1;
+	/**
+	 * Issues a request through OkHttp's async dispatcher and reads the response on the callback thread.
+	 * Time to the response headers is recorded as the fetch, reading and parsing the body as the parse.
+	 * Transient failures are retried with backoff; while the circuit breaker is open the request
+	 * fails at once without going out.
+	 */
+	private <T> CompletableFuture<T> fetchAsync(Request request, ResponseReader<T> reader)
+	{
+		CompletableFuture<T> future = new CompletableFuture<>();
+		attempt(request, reader, 1, future);
+		return future;
+	}
+
+	private <T> void attempt(Request request, ResponseReader<T> reader, int attempt, CompletableFuture<T> future)
+	{
+		String endpoint = endpointName(request.url().toString());
+		if (!circuitBreaker.tryAcquire(clock.millis()))
+		{
+			metrics.counter("rejected " + endpoint).increment();
+			future.completeExceptionally(new IOException("Wiki API circuit open, not requesting " + endpoint));
+			return;
+		}
 
-			// Filter by minimum limit for bulk/overnight trading
-			if (limit < minLimit)
+		long started = System.nanoTime();
+		httpClient.newCall(request).enqueue(new Callback()
+		{
+			@Override
+			public void onFailure(Call call, IOException e)
 			{
-				continue;
+				failed(e);
 			}
 
-			// High volume requirement - confirms high liquidity (safe, stable flips)
-			// These items trade frequently and have consistent demand
-			int totalVolume = priceData.getLowVolume() + priceData.getHighVolume();
-			if (totalVolume < 50)
+			@Override
+			public void onResponse(Call call, Response response)
 			{
-				continue;
+				long received = System.nanoTime();
+				metrics.timer("fetch " + endpoint).record(received - started);
+				try (Response r = response)
+				{
+					T result = reader.read(r);
+					circuitBreaker.onSuccess();
+					metrics.timer("parse " + endpoint).record(System.nanoTime() - received);
+					future.complete(result);
+				}
+				catch (Exception e)
+				{
+					failed(e);
+				}
 			}
 
-			if (buyPrice * limit > budget && buyPrice > budget)
+			private void failed(Exception e)
 			{
-				continue;
-			}
+				metrics.counter("errors " + endpoint).increment();
+				if (!isTransient(e))
+				{
+					circuitBreaker.onSuccess();
+					future.completeExceptionally(e);
+					return;
+				}
 
-			FlipOpportunity opp = new FlipOpportunity(
-				itemId,
-				itemInfo.getName(),
-				buyPrice,
-				sellPrice,
-				profit,
-				roi,
-				geTax,
-				limit,
-				ageMinutes,
-				priceData.getLowVolume(),
-				priceData.getHighVolume(),
-				"unknown",
-				true
-			);
-
-			opps.add(opp);
-		}
+				circuitBreaker.onFailure(clock.millis());
+				if (attempt >= MAX_ATTEMPTS || circuitBreaker.getState() != CircuitBreaker.State.CLOSED)
+				{
+					future.completeExceptionally(e);
+					return;
+				}
 
-		// Sort by overnight flip efficiency score
-		// Formula: profit × log(volume) × sqrt(limit)
-		// - profit: absolute GP gain per item
-		// - log(volume): liquidity factor (high volume = safer, more consistent)
-		// - sqrt(limit): buy limit potential (can hit 2-4x per night)
-		// This prioritizes items that are safe, liquid, and have good profit potential
-		opps.sort((a, b) -> {
-			int volA = a.getBuyVolume() + a.getSellVolume();
-			int volB = b.getBuyVolume() + b.getSellVolume();
-
-			// Overnight flip efficiency: combines profit, liquidity, and limit potential
-			double efficiencyA = a.getProfit() * Math.log(volA + 1) * Math.sqrt(a.getLimit());
-			double efficiencyB = b.getProfit() * Math.log(volB + 1) * Math.sqrt(b.getLimit());
-
-			int efficiencyCompare = Double.compare(efficiencyB, efficiencyA);
-			if (efficiencyCompare != 0) return efficiencyCompare;
-
-			// Tiebreaker: total profit potential (profit × limit)
-			return Integer.compare(b.getProfit() * b.getLimit(), a.getProfit() * a.getLimit());
+				long delay = (long) (RETRY_BASE_MILLIS * (1L << (attempt - 1)) * (0.5 + ThreadLocalRandom.current().nextDouble()));
+				log.debug("Retrying {} in {}ms after attempt {} failed: {}", endpoint, delay, attempt, e.toString());
+				metrics.counter("retries " + endpoint).increment();
+				try
+				{
+					executor.schedule(() -> attempt(request, reader, attempt + 1, future), delay, TimeUnit.MILLISECONDS);
+				}
+				catch (RejectedExecutionException shutDown)
+				{
+					future.completeExceptionally(e);
+				}
+			}
 		});
-
-		log.info("Found {} bulk/overnight opportunities (min limit: {}, min volume: 50)", opps.size(), minLimit);
-
-		return opps;
 	}
+
 	/**
-	 * Active Flipping Tab: Optimized for fast-turnover, high-frequency trading
-	 * Strategy: Focus on cheap items (<25k) with very recent prices and confirmed volume
-	 * Target: Active traders who want quick flips with minimal wait time
-	 * Sorting: By margin (profit per item)
-	 * Key filters: Max 5min age, must have volume, affordable items
+	 * Failures another attempt may get past: no response, a timeout, a cut-off body, a 429 or a 5xx.
+	 * Other HTTP errors and content the parser rejects outright would fail the same way again.
 	 */
-	public List<FlipOpportunity> calculateActiveFlippingOpportunities(int minProfit, int maxPrice, int maxAgeMinutes, int budget)
+	private static boolean isTransient(Exception e)
 	{
-		List<FlipOpportunity> opps = new ArrayList<>();
-		long currentTime = System.currentTimeMillis() / 1000;
-
-		for (Map.Entry<Integer, PriceData> entry : latestPrices.entrySet())
+		if (e instanceof HttpStatusException)
 		{
-			int itemId = entry.getKey();
-			PriceData priceData = entry.getValue();
-
-			if (priceData.getHigh() == 0 || priceData.getLow() == 0)
-			{
-				continue;
-			}
-
-			long buyTime = priceData.getLowTime();
-			long sellTime = priceData.getHighTime();
-
-			if (buyTime == 0 || sellTime == 0)
-			{
-				continue;
-			}
-
-			int buyAgeMinutes = (int) ((currentTime - buyTime) / 60);
-			int sellAgeMinutes = (int) ((currentTime - sellTime) / 60);
+			int code = ((HttpStatusException) e).code;
+			return code == 429 || code >= 500;
+		}
+		return e instanceof IOException;
+	}
 
-			// Active flipping needs VERY recent prices (max 5 minutes)
-			// Fresh data = active market = fast turnover
-			int activeMaxAge = Math.min(maxAgeMinutes, 5);
+	/**
+	 * Metric name of a request: its path under the API, without the query
+	 */
+	private String endpointName(String url)
+	{
+		String path = url.startsWith(apiBase) ? url.substring(apiBase.length()) : url;
+		int query = path.indexOf('?');
+		return query >= 0 ? path.substring(0, query) : path;
+	}
 
-			if (buyAgeMinutes > activeMaxAge || sellAgeMinutes > activeMaxAge)
-			{
-				continue;
-			}
+	private static ResponseBody successfulBody(Response response) throws IOException
+	{
+		if (!response.isSuccessful() || response.body() == null)
+		{
+			throw new HttpStatusException(response.code(), response.request().url().toString());
+		}
+		return response.body();
+	}
 
-			ItemInfo itemInfo = itemMapping.get(itemId);
-			if (itemInfo == null)
-			{
-				continue;
-			}
+	private static final class HttpStatusException extends IOException
+	{
+		private final int code;
 
-			int buyPrice = priceData.getLow();
-			int sellPrice = priceData.getHigh();
+		private HttpStatusException(int code, String url)
+		{
+			super("HTTP " + code + " from " + url);
+			this.code = code;
+		}
+	}
 
-			// Filter by max price (for active flipping, focus on cheaper items for fast turnover)
-			if (buyPrice > maxPrice)
-			{
-				continue;
-			}
+	@FunctionalInterface
+	private interface BodyReader<T>
+	{
+		T read(Reader body) throws IOException;
+	}
 
-			// Filter out items with no volume data - we need confirmed trading activity
-			int totalVolume = priceData.getLowVolume() + priceData.getHighVolume();
-			if (totalVolume == 0)
-			{
-				continue;
-			}
+	@FunctionalInterface
+	private interface ResponseReader<T>
+	{
+		T read(Response response) throws IOException;
+	}
 
-			int geTax = Math.min((int) (sellPrice * 0.01), 5_000_000);
-			int profit = sellPrice - buyPrice - geTax;
+	/**
+	 * Best Margin Tab ({@link OpportunityTab#BEST_MARGIN}): low-volume, high-margin items such as
+	 * endgame gear, ranked by profit per item with ROI as the tiebreaker
+	 */
+	public List<FlipOpportunity> calculateOpportunities(int minProfit, int minROI, int maxROI, int maxAgeMinutes, int budget)
+	{
+		List<FlipOpportunity> opps = scan(OpportunityTab.BEST_MARGIN.strategy(
+			OpportunityTab.params(minProfit, minROI, maxROI, maxAgeMinutes, budget)));
 
-			// For active flipping, even 1gp margin is worth it with high volume
-			if (profit < minProfit)
-			{
-				continue;
-			}
+		log.debug("Found {} best margin opportunities", opps.size());
 
-			double roi = (profit / (double) buyPrice) * 100;
+		this.opportunities = opps;
+		return opps;
+	}
 
-			int limit = itemInfo.getLimit() > 0 ? itemInfo.getLimit() : 1;
+	/**
+	 * Bulk Volume Tab ({@link OpportunityTab#BULK}): liquid items with buy limits of at least
+	 * {@code minLimit}, ranked by profit × log(volume) × sqrt(limit)
+	 */
+	public List<FlipOpportunity> calculateBulkOpportunities(int minProfit, int minROI, int maxROI, int maxAgeMinutes, int budget, int minLimit)
+	{
+		Map<String, Integer> params = OpportunityTab.params(minProfit, minROI, maxROI, maxAgeMinutes, budget);
+		params.put("minLimit", minLimit);
+		List<FlipOpportunity> opps = scan(OpportunityTab.BULK.strategy(params));
 
-			// Check if affordable
-			if (buyPrice * limit > budget && buyPrice > budget)
-			{
-				continue;
-			}
+		log.debug("Found {} bulk/overnight opportunities (min limit: {}, min volume: 50)", opps.size(), minLimit);
 
-			long latestTime = Math.max(buyTime, sellTime);
-			int ageMinutes = (int) ((currentTime - latestTime) / 60);
-
-			FlipOpportunity opp = new FlipOpportunity(
-				itemId,
-				itemInfo.getName(),
-				buyPrice,
-				sellPrice,
-				profit,
-				roi,
-				geTax,
-				limit,
-				ageMinutes,
-				priceData.getLowVolume(),
-				priceData.getHighVolume(),
-				"unknown",
-				true
-			);
-
-			opps.add(opp);
-		}
+		return opps;
+	}
 
-		// Sort by margin (profit per item)
-		opps.sort((a, b) -> Integer.compare(b.getProfit(), a.getProfit()));
+	/**
+	 * Active Flipping Tab: Optimized for fast-turnover, high-frequency trading
+	 * Strategy: Focus on cheap items (<25k) with very recent prices and confirmed volume
+	 * Target: Active traders who want quick flips with minimal wait time
+	 * Sorting: By margin (profit per item)
+	 * Key filters: Max 5min age, must have volume, affordable items
+	 */
+	public List<FlipOpportunity> calculateActiveFlippingOpportunities(int minProfit, int maxPrice, int maxAgeMinutes, int budget)
+	{
+		Map<String, Integer> params = OpportunityTab.params(minProfit, 0, 0, maxAgeMinutes, budget);
+		params.put("minMargin", minProfit);
+		params.put("maxPrice", maxPrice);
+		List<FlipOpportunity> opps = scan(OpportunityTab.ACTIVE_FLIPPING.strategy(params));
 
-		log.info("Found {} active flipping opportunities", opps.size());
+		log.debug("Found {} active flipping opportunities", opps.size());
 
 		return opps;
 	}
@@ -611,118 +723,208 @@ public class PriceApiClient
 	 */
 	public List<FlipOpportunity> calculateOvernightOpportunities(int minProfit, int minROI, int maxROI, int maxAgeMinutes, int budget)
 	{
-		List<FlipOpportunity> opps = new ArrayList<>();
-		long currentTime = System.currentTimeMillis() / 1000;
+		List<FlipOpportunity> opps = scan(OpportunityTab.OVERNIGHT.strategy(
+			OpportunityTab.params(minProfit, minROI, maxROI, maxAgeMinutes, budget)));
 
-		for (Map.Entry<Integer, PriceData> entry : latestPrices.entrySet())
-		{
-			int itemId = entry.getKey();
-			PriceData priceData = entry.getValue();
+		log.debug("Found {} overnight flipping opportunities (min volume: 100)", opps.size());
 
-			if (priceData.getHigh() == 0 || priceData.getLow() == 0)
-			{
-				continue;
-			}
-
-			long buyTime = priceData.getLowTime();
-			long sellTime = priceData.getHighTime();
+		return opps;
+	}
 
-			if (buyTime == 0 || sellTime == 0)
-			{
-				continue;
-			}
+	/**
+	 * Calls {@code listener} with every snapshot published from now on, on the thread that
+	 * published it; listeners should hand anything slow to their own thread.
+	 */
+	public void addSnapshotListener(Consumer<PriceSnapshot> listener)
+	{
+		snapshotListeners.add(listener);
+	}
 
-			int buyAgeMinutes = (int) ((currentTime - buyTime) / 60);
-			int sellAgeMinutes = (int) ((currentTime - sellTime) / 60);
+	public void removeSnapshotListener(Consumer<PriceSnapshot> listener)
+	{
+		snapshotListeners.remove(listener);
+	}
 
-			// Moderate age filter - overnight flips can use slightly older data
-			int overnightMaxAge = Math.max(maxAgeMinutes, 30);
+	private void publish(PriceSnapshot next)
+	{
+		snapshot.set(next);
+		for (Consumer<PriceSnapshot> listener : snapshotListeners)
+		{
+			listener.accept(next);
+		}
+	}
 
-			if (buyAgeMinutes > overnightMaxAge || sellAgeMinutes > overnightMaxAge)
-			{
-				continue;
-			}
+	/**
+	 * Refreshes all four tabs with one pass over the market, using the panel's tab defaults.
+	 */
+	public TabOpportunities calculateAllOpportunities(DMMFlipperConfig config)
+	{
+		return calculateAllOpportunities(config, Integer.MAX_VALUE);
+	}
 
-			ItemInfo itemInfo = itemMapping.get(itemId);
-			if (itemInfo == null)
-			{
-				continue;
-			}
+	/**
+	 * Refreshes all four tabs with one pass over the market and returns at most the
+	 * {@code limit} best opportunities of each.
+	 */
+	public TabOpportunities calculateAllOpportunities(DMMFlipperConfig config, int limit)
+	{
+		OpportunityTab[] tabs = OpportunityTab.values();
+		List<FlipStrategy> strategies = new ArrayList<>(tabs.length);
+		for (OpportunityTab tab : tabs)
+		{
+			strategies.add(tab.strategy(config));
+		}
 
-			int buyPrice = priceData.getLow();
-			int sellPrice = priceData.getHigh();
-			int geTax = Math.min((int) (sellPrice * 0.01), 5_000_000);
-			int profit = sellPrice - buyPrice - geTax;
+		List<OpportunityPage> pages = scan(strategies, 0, limit);
+		TabOpportunities result = new TabOpportunities(
+			pages.get(OpportunityTab.BEST_MARGIN.ordinal()).getOpportunities(),
+			pages.get(OpportunityTab.BULK.ordinal()).getOpportunities(),
+			pages.get(OpportunityTab.ACTIVE_FLIPPING.ordinal()).getOpportunities(),
+			pages.get(OpportunityTab.OVERNIGHT.ordinal()).getOpportunities());
 
-			if (profit <= 0)
-			{
-				continue;
-			}
+		log.info("Found {} best margin, {} bulk, {} active, {} overnight opportunities",
+			pages.get(0).getTotal(), pages.get(1).getTotal(), pages.get(2).getTotal(), pages.get(3).getTotal());
 
-			double roi = (profit / (double) buyPrice) * 100;
+		this.opportunities = result.getBestMargin();
+		return result;
+	}
 
-			if (profit < minProfit || roi < minROI || roi > maxROI)
-			{
-				continue;
-			}
+	/**
+	 * One page of a tab's ranking, e.g. to load more rows as the panel scrolls.
+	 * Only the first {@code offset + limit} entries are ranked.
+	 */
+	public OpportunityPage getOpportunityPage(OpportunityTab tab, DMMFlipperConfig config, int offset, int limit)
+	{
+		return scan(Collections.singletonList(tab.strategy(config)), offset, limit).get(0);
+	}
 
-			int limit = itemInfo.getLimit() > 0 ? itemInfo.getLimit() : 1;
+	/**
+	 * Compiles the custom strategy specs from the config (one per line, see {@link StrategySpec}).
+	 * Invalid lines are logged and skipped.
+	 */
+	public void setCustomStrategies(String specs)
+	{
+		customStrategies = StrategySpec.parseAll(specs);
+		log.debug("Loaded {} custom strategies", customStrategies.size());
+	}
 
-			// Check if affordable for at least one buy limit
-			if (buyPrice * limit > budget)
+	/**
+	 * Runs every custom strategy from the config in one pass and returns at most the
+	 * {@code limit} best opportunities of each, keyed by strategy name.
+	 */
+	public Map<String, List<FlipOpportunity>> calculateCustomOpportunities(DMMFlipperConfig config, int limit)
+	{
+		Map<String, Integer> params = OpportunityTab.params(config);
+		List<FlipStrategy> strategies = new ArrayList<>();
+		for (StrategySpec spec : customStrategies)
+		{
+			try
 			{
-				continue;
+				strategies.add(spec.compile(params));
 			}
-
-			// Require high volume for overnight flips (from 24h data)
-			// High volume = more likely to hit multiple buy limits
-			int totalVolume = priceData.getLowVolume() + priceData.getHighVolume();
-			if (totalVolume < 100)
+			catch (IllegalArgumentException e)
 			{
-				continue;
+				log.warn("Skipping custom strategy '{}': {}", spec.getName(), e.getMessage());
 			}
+		}
 
-			long latestTime = Math.max(buyTime, sellTime);
-			int ageMinutes = (int) ((currentTime - latestTime) / 60);
-
-			// Estimate number of buy limit cycles in 12 hours (overnight)
-			// High volume items can hit 2-4 buy limits in 12 hours
-			// Conservative estimate: 2 cycles for most items, 3 for very high volume
-			int estimatedCycles = totalVolume > 500 ? 3 : 2;
-
-			// Calculate total overnight profit potential
-			int overnightProfit = profit * limit * estimatedCycles;
-
-			FlipOpportunity opp = new FlipOpportunity(
-				itemId,
-				itemInfo.getName(),
-				buyPrice,
-				sellPrice,
-				overnightProfit,  // Store overnight profit for sorting
-				roi,
-				geTax,
-				limit,
-				ageMinutes,
-				priceData.getLowVolume(),
-				priceData.getHighVolume(),
-				"unknown",
-				true
-			);
-
-			opps.add(opp);
+		Map<String, List<FlipOpportunity>> results = new LinkedHashMap<>();
+		List<OpportunityPage> pages = scan(strategies, 0, limit);
+		for (int i = 0; i < pages.size(); i++)
+		{
+			results.put(strategies.get(i).getName(), pages.get(i).getOpportunities());
 		}
+		return results;
+	}
 
-		// Sort by overnight profit potential (profit × limit × cycles)
-		// This shows items that will make the most GP over 6-12 hours
-		opps.sort((a, b) -> Integer.compare(b.getProfit(), a.getProfit()));
+	/**
+	 * One page of the ranking of any strategy, run by the same incremental scan as the tabs
+	 */
+	public OpportunityPage getOpportunityPage(FlipStrategy strategy, int offset, int limit)
+	{
+		return scan(Collections.singletonList(strategy), offset, limit).get(0);
+	}
 
-		log.info("Found {} overnight flipping opportunities (min volume: 100)", opps.size());
+	private List<FlipOpportunity> scan(FlipStrategy strategy)
+	{
+		return scan(Collections.singletonList(strategy), 0, Integer.MAX_VALUE).get(0).getOpportunities();
+	}
 
-		return opps;
+	/**
+	 * Runs {@code strategies} against the current snapshot in a single pass. Only items that changed
+	 * since the last scan, or that aged out of a strategy, are evaluated again.
+	 */
+	private List<OpportunityPage> scan(List<? extends FlipStrategy> strategies, int offset, int limit)
+	{
+		long started = System.nanoTime();
+		// Pin one snapshot for the whole scan so a refresh can't change the market mid-loop
+		List<OpportunityPage> pages = opportunityEngine.results(strategies, snapshot.get(), itemCatalogue,
+			marketTime() / 1000, offset, limit);
+
+		// Strategies scanned together share one pass, so it's timed as a whole
+		String name = strategies.size() == 1 ? strategies.get(0).getName() : strategies.size() + " strategies";
+		metrics.timer("scan " + name).record(System.nanoTime() - started);
+		for (int i = 0; i < pages.size(); i++)
+		{
+			metrics.histogram("opportunities " + strategies.get(i).getName()).record(pages.get(i).getTotal());
+		}
+		return pages;
+	}
+
+	/**
+	 * The time trade ages are measured at. While prices are stale it stays at the last successful
+	 * fetch, so a network blip doesn't age every item out of the scans; after
+	 * {@link #STALE_GRACE_MILLIS} it moves on again.
+	 */
+	private long marketTime()
+	{
+		long now = clock.millis();
+		if (priceFailures == 0 || lastPriceSuccess == 0)
+		{
+			return now;
+		}
+		return Math.min(now, Math.max(lastPriceSuccess, now - STALE_GRACE_MILLIS));
 	}
 
+	/**
+	 * Whether prices are live, stale or cut off, for showing next to them
+	 */
+	public FeedStatus getFeedStatus()
+	{
+		long now = clock.millis();
+		long success = lastPriceSuccess;
+		CircuitBreaker.State circuit = circuitBreaker.getState();
+
+		FeedState state;
+		if (circuit != CircuitBreaker.State.CLOSED)
+		{
+			state = FeedState.OFFLINE;
+		}
+		else if (success == 0)
+		{
+			state = FeedState.LOADING;
+		}
+		else if (priceFailures > 0)
+		{
+			state = FeedState.STALE;
+		}
+		else
+		{
+			state = FeedState.LIVE;
+		}
 
+		long retryIn = circuit == CircuitBreaker.State.OPEN ? Math.max(0, circuitBreaker.getOpenUntil() - now) : 0;
+		return new FeedStatus(state, success == 0 ? -1 : (now - success) / 1000, priceFailures, retryIn / 1000);
+	}
 
+	/**
+	 * Items that changed between the last two snapshots the opportunity scans have seen, or every
+	 * listed item when the scans were last rebuilt
+	 */
+	public ChangeSet getLastChangeSet()
+	{
+		return opportunityEngine.getLastChanges();
+	}
 
 	public List<FlipOpportunity> getOpportunities()
 	{
@@ -731,11 +933,92 @@ public class PriceApiClient
 
 	public PriceData getPriceData(int itemId)
 	{
-		return latestPrices.get(itemId);
+		return snapshot.get().get(itemId);
+	}
+
+	/**
+	 * The most recently published market snapshot. Never null; empty until the first refresh completes.
+	 */
+	public PriceSnapshot getSnapshot()
+	{
+		return snapshot.get();
+	}
+
+	/**
+	 * The listed items' ids, names, buy limits, high alch values and membership
+	 */
+	public ItemCatalogue getItemCatalogue()
+	{
+		return itemCatalogue;
 	}
 
+	/**
+	 * Name of the item, or null if the catalogue doesn't list it
+	 */
+	public String getItemName(int itemId)
+	{
+		return itemCatalogue.getName(itemId);
+	}
+
+	/**
+	 * Every /mapping field of the item, including examine text and icon, or null if it isn't listed.
+	 * The catalogue doesn't keep those, so the first request for an item reads that item's bytes
+	 * from the cached mapping file; meant for showing one item, not for loops.
+	 */
 	public ItemInfo getItemInfo(int itemId)
 	{
-		return itemMapping.get(itemId);
+		ItemCatalogue catalogue = itemCatalogue;
+		int index = catalogue.indexOf(itemId);
+		if (index < 0)
+		{
+			return null;
+		}
+
+		synchronized (itemDetails)
+		{
+			ItemInfo details = itemDetails.get(itemId);
+			if (details == null)
+			{
+				details = mappingCache.details(itemId, gson);
+				if (details == null)
+				{
+					// A catalogue that didn't come from the cache (a backtest) only has its own fields
+					details = catalogue.toItemInfo(index);
+				}
+				itemDetails.put(itemId, details);
+			}
+			return details;
+		}
+	}
+
+	public enum FeedState
+	{
+		// Nothing fetched yet
+		LOADING,
+		LIVE,
+		// The last /latest refresh failed; the previous prices keep serving
+		STALE,
+		// The circuit breaker has stopped requests to the wiki API for now
+		OFFLINE
+	}
+
+	@Data
+	public static class FeedStatus
+	{
+		private final FeedState state;
+		// Seconds since /latest last succeeded, or -1 if it never has
+		private final long ageSeconds;
+		private final int failedRefreshes;
+		// Seconds until the circuit breaker lets a request through again, while it is open
+		private final long retryInSeconds;
+	}
+
+	@Data
+	public static class TabOpportunities
+	{
+		private final List<FlipOpportunity> bestMargin;
+		private final List<FlipOpportunity> bulk;
+		private final List<FlipOpportunity> activeFlipping;
+		private final List<FlipOpportunity> overnight;
 	}
 }
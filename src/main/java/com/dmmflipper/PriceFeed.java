@@ -0,0 +1,120 @@
+package com.dmmflipper;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * One parsed price response held as parallel primitive arrays (one row per item),
+ * so ingesting a refresh allocates a handful of arrays rather than an object per item.
+ */
+final class PriceFeed
+{
+	private static final int INITIAL_CAPACITY = 4096;
+
+	private int size;
+	private int[] itemId = new int[INITIAL_CAPACITY];
+	private int[] high = new int[INITIAL_CAPACITY];
+	private int[] low = new int[INITIAL_CAPACITY];
+	private long[] highTime = new long[INITIAL_CAPACITY];
+	private long[] lowTime = new long[INITIAL_CAPACITY];
+	private int[] highVolume = new int[INITIAL_CAPACITY];
+	private int[] lowVolume = new int[INITIAL_CAPACITY];
+	private long timestamp;
+
+	static PriceFeed read(Reader reader) throws IOException
+	{
+		PriceFeed feed = new PriceFeed();
+		feed.timestamp = PriceFeedParser.parse(reader, feed::add);
+		return feed;
+	}
+
+	private void add(PriceFeedParser.Row row)
+	{
+		add(row.itemId, row.high, row.low, row.highTime, row.lowTime, row.highVolume, row.lowVolume);
+	}
+
+	/**
+	 * Appends one item's row, e.g. when rebuilding a response from recorded history
+	 */
+	void add(int itemId, int high, int low, long highTime, long lowTime, int highVolume, int lowVolume)
+	{
+		if (size == this.itemId.length)
+		{
+			int capacity = size * 2;
+			this.itemId = Arrays.copyOf(this.itemId, capacity);
+			this.high = Arrays.copyOf(this.high, capacity);
+			this.low = Arrays.copyOf(this.low, capacity);
+			this.highTime = Arrays.copyOf(this.highTime, capacity);
+			this.lowTime = Arrays.copyOf(this.lowTime, capacity);
+			this.highVolume = Arrays.copyOf(this.highVolume, capacity);
+			this.lowVolume = Arrays.copyOf(this.lowVolume, capacity);
+		}
+
+		this.itemId[size] = itemId;
+		this.high[size] = high;
+		this.low[size] = low;
+		this.highTime[size] = highTime;
+		this.lowTime[size] = lowTime;
+		this.highVolume[size] = highVolume;
+		this.lowVolume[size] = lowVolume;
+		size++;
+	}
+
+	/**
+	 * Time-series buckets carry no per-item trade times; stamp every row with the given time instead.
+	 */
+	void stampTimes(long epochSeconds)
+	{
+		Arrays.fill(highTime, 0, size, epochSeconds);
+		Arrays.fill(lowTime, 0, size, epochSeconds);
+	}
+
+	int size()
+	{
+		return size;
+	}
+
+	/**
+	 * The response's top-level "timestamp" (time-series endpoints), or 0
+	 */
+	long timestamp()
+	{
+		return timestamp;
+	}
+
+	int itemId(int row)
+	{
+		return itemId[row];
+	}
+
+	int high(int row)
+	{
+		return high[row];
+	}
+
+	int low(int row)
+	{
+		return low[row];
+	}
+
+	long highTime(int row)
+	{
+		return highTime[row];
+	}
+
+	long lowTime(int row)
+	{
+		return lowTime[row];
+	}
+
+	int highVolume(int row)
+	{
+		return highVolume[row];
+	}
+
+	int lowVolume(int row)
+	{
+		return lowVolume[row];
+	}
+}
@@ -0,0 +1,188 @@
+package com.dmmflipper;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Streaming reader for the wiki price endpoints (/latest, /24h, /5m, /1h, /timeseries).
+ * Walks the response token by token and hands every item to a visitor through
+ * a single reused {@link Row}, so neither the payload String nor a JsonObject
+ * tree is ever held in memory.
+ */
+final class PriceFeedParser
+{
+	private PriceFeedParser()
+	{
+	}
+
+	/**
+	 * Parses a price response and visits each item in the "data" object.
+	 *
+	 * @return the top-level "timestamp" field (time-series endpoints only), or 0 if absent
+	 */
+	static long parse(Reader reader, RowVisitor visitor) throws IOException
+	{
+		long timestamp = 0;
+		Row row = new Row();
+
+		try (JsonReader json = new JsonReader(reader))
+		{
+			json.beginObject();
+			while (json.hasNext())
+			{
+				String name = json.nextName();
+				if ("data".equals(name))
+				{
+					readData(json, row, visitor);
+				}
+				else if ("timestamp".equals(name))
+				{
+					timestamp = readLong(json);
+				}
+				else
+				{
+					json.skipValue();
+				}
+			}
+			json.endObject();
+		}
+
+		return timestamp;
+	}
+
+	/**
+	 * Parses a /timeseries response, visiting its buckets oldest first. Rows carry {@code itemId}
+	 * and the bucket's timestamp in both {@code highTime} and {@code lowTime}.
+	 */
+	static void parseSeries(Reader reader, int itemId, RowVisitor visitor) throws IOException
+	{
+		Row row = new Row();
+
+		try (JsonReader json = new JsonReader(reader))
+		{
+			json.beginObject();
+			while (json.hasNext())
+			{
+				if (!"data".equals(json.nextName()))
+				{
+					json.skipValue();
+					continue;
+				}
+
+				json.beginArray();
+				while (json.hasNext())
+				{
+					row.reset();
+					row.itemId = itemId;
+					readFields(json, row);
+					row.lowTime = row.highTime;
+					visitor.visit(row);
+				}
+				json.endArray();
+			}
+			json.endObject();
+		}
+	}
+
+	private static void readData(JsonReader json, Row row, RowVisitor visitor) throws IOException
+	{
+		json.beginObject();
+		while (json.hasNext())
+		{
+			row.reset();
+			row.itemId = Integer.parseInt(json.nextName());
+			readFields(json, row);
+			visitor.visit(row);
+		}
+		json.endObject();
+	}
+
+	private static void readFields(JsonReader json, Row row) throws IOException
+	{
+		json.beginObject();
+		while (json.hasNext())
+		{
+			switch (json.nextName())
+			{
+				// /latest reports instant prices, /5m /1h /24h /timeseries report averages
+				case "high":
+				case "avgHighPrice":
+					row.high = readInt(json);
+					break;
+				case "low":
+				case "avgLowPrice":
+					row.low = readInt(json);
+					break;
+				case "highTime":
+				case "timestamp":
+					row.highTime = readLong(json);
+					break;
+				case "lowTime":
+					row.lowTime = readLong(json);
+					break;
+				case "highPriceVolume":
+					row.highVolume = readInt(json);
+					break;
+				case "lowPriceVolume":
+					row.lowVolume = readInt(json);
+					break;
+				default:
+					json.skipValue();
+			}
+		}
+		json.endObject();
+	}
+
+	private static int readInt(JsonReader json) throws IOException
+	{
+		if (json.peek() == JsonToken.NULL)
+		{
+			json.nextNull();
+			return 0;
+		}
+		return json.nextInt();
+	}
+
+	private static long readLong(JsonReader json) throws IOException
+	{
+		if (json.peek() == JsonToken.NULL)
+		{
+			json.nextNull();
+			return 0;
+		}
+		return json.nextLong();
+	}
+
+	interface RowVisitor
+	{
+		void visit(Row row);
+	}
+
+	/**
+	 * One item of a price response. The same instance is reused for every item,
+	 * so visitors must copy what they need before returning.
+	 */
+	static final class Row
+	{
+		int itemId;
+		int high;
+		int low;
+		long highTime;
+		long lowTime;
+		int highVolume;
+		int lowVolume;
+
+		private void reset()
+		{
+			itemId = 0;
+			high = 0;
+			low = 0;
+			highTime = 0;
+			lowTime = 0;
+			highVolume = 0;
+			lowVolume = 0;
+		}
+	}
+}
@@ -0,0 +1,332 @@
+package com.dmmflipper;
+
+import java.util.Arrays;
+
+/**
+ * Recent /5m and /1h buckets of every item in fixed-size primitive ring buffers, with each item's
+ * trend, slope and volatility maintained as buckets arrive.
+ * <p>
+ * A series stores its buffers slot-major in flat arrays ({@code slot * capacity + i}), in the slot
+ * numbering of {@link ItemSlots}. Next to them it keeps running sums of the mid price against the
+ * bucket number (Σx, Σy, Σx², Σxy, Σy²), which give a least-squares line through the window:
+ * appending a bucket adds its terms and takes out those of the bucket it overwrites, so an update
+ * is O(1) however long the window. The sums are recomputed from the buffer each time it wraps,
+ * which keeps rounding drift bounded at the same amortised cost.
+ * <p>
+ * An item's trend comes from its /5m window once that holds {@link #MIN_POINTS} buckets, and from
+ * its /1h window until then. Not thread-safe: owned by the price client's executor, and read
+ * through the columns it publishes into each {@link PriceSnapshot}.
+ */
+final class PriceHistory
+{
+	static final int MIN_POINTS = 4;
+
+	// The fitted line has to move the price by this fraction of its mean over the window,
+	// and by more than the scatter around it, to count as rising or falling
+	static final double MIN_TREND_MOVE = 0.01;
+
+	// 3 hours of /5m buckets, one day of /1h buckets
+	final Series fiveMinute = new Series(300, 36);
+	final Series oneHour = new Series(3600, 24);
+
+	private int slotCount;
+	private byte[] trend = new byte[0];
+	private float[] slopePerHour = new float[0];
+	private float[] volatility = new float[0];
+
+	/**
+	 * Appends one time-series response to {@code series}. Items not in {@code market}, buckets
+	 * without trades and buckets already seen are skipped.
+	 *
+	 * @param now epoch seconds, used for the bucket when the response carries no timestamp
+	 * @return how many items changed trend
+	 */
+	int append(Series series, PriceFeed feed, PriceSnapshot market, long now)
+	{
+		ensureCapacity(market.slotCount());
+
+		// The response timestamp is the start of its bucket; without one, take the last complete bucket
+		long bucket = feed.timestamp() > 0 ? feed.timestamp() / series.stepSeconds : now / series.stepSeconds - 1;
+
+		int changed = 0;
+		for (int row = 0; row < feed.size(); row++)
+		{
+			int slot = market.slotOf(feed.itemId(row));
+			if (slot < 0 || !series.append(slot, bucket, feed.high(row), feed.low(row), feed.highVolume(row), feed.lowVolume(row)))
+			{
+				continue;
+			}
+
+			byte before = trend[slot];
+			update(slot);
+			if (trend[slot] != before)
+			{
+				changed++;
+			}
+		}
+		return changed;
+	}
+
+	private void update(int slot)
+	{
+		Series source = fiveMinute.count[slot] >= MIN_POINTS || oneHour.count[slot] < MIN_POINTS ? fiveMinute : oneHour;
+		trend[slot] = (byte) source.trend(slot).ordinal();
+		slopePerHour[slot] = (float) (source.slope(slot) * 3600 / source.stepSeconds);
+		volatility[slot] = (float) source.volatility(slot);
+	}
+
+	/**
+	 * Copy of {@code market} carrying the current trend columns
+	 */
+	PriceSnapshot publish(PriceSnapshot market, long version, long builtAt)
+	{
+		return market.withTrends(Arrays.copyOf(trend, slotCount), Arrays.copyOf(slopePerHour, slotCount),
+			Arrays.copyOf(volatility, slotCount), version, builtAt);
+	}
+
+	private void ensureCapacity(int slots)
+	{
+		if (slots <= slotCount)
+		{
+			return;
+		}
+
+		slotCount = slots;
+		fiveMinute.ensureCapacity(slots);
+		oneHour.ensureCapacity(slots);
+		trend = Arrays.copyOf(trend, slots);
+		slopePerHour = Arrays.copyOf(slopePerHour, slots);
+		volatility = Arrays.copyOf(volatility, slots);
+	}
+
+	/**
+	 * Ring buffers and running regression sums of one timestep
+	 */
+	static final class Series
+	{
+		final long stepSeconds;
+		final int capacity;
+
+		private int[] avgHigh = new int[0];
+		private int[] avgLow = new int[0];
+		private int[] highVolume = new int[0];
+		private int[] lowVolume = new int[0];
+		// Bucket number relative to the slot's origin
+		private int[] x = new int[0];
+
+		private int[] next = new int[0];
+		private int[] count = new int[0];
+		private long[] origin = new long[0];
+		private long[] lastBucket = new long[0];
+
+		private double[] sumX = new double[0];
+		private double[] sumY = new double[0];
+		private double[] sumXX = new double[0];
+		private double[] sumXY = new double[0];
+		private double[] sumYY = new double[0];
+
+		Series(long stepSeconds, int capacity)
+		{
+			this.stepSeconds = stepSeconds;
+			this.capacity = capacity;
+		}
+
+		private void ensureCapacity(int slots)
+		{
+			avgHigh = Arrays.copyOf(avgHigh, slots * capacity);
+			avgLow = Arrays.copyOf(avgLow, slots * capacity);
+			highVolume = Arrays.copyOf(highVolume, slots * capacity);
+			lowVolume = Arrays.copyOf(lowVolume, slots * capacity);
+			x = Arrays.copyOf(x, slots * capacity);
+			next = Arrays.copyOf(next, slots);
+			count = Arrays.copyOf(count, slots);
+			origin = Arrays.copyOf(origin, slots);
+			lastBucket = Arrays.copyOf(lastBucket, slots);
+			sumX = Arrays.copyOf(sumX, slots);
+			sumY = Arrays.copyOf(sumY, slots);
+			sumXX = Arrays.copyOf(sumXX, slots);
+			sumXY = Arrays.copyOf(sumXY, slots);
+			sumYY = Arrays.copyOf(sumYY, slots);
+		}
+
+		/**
+		 * @return false if the bucket was skipped
+		 */
+		private boolean append(int slot, long bucket, int high, int low, int highVol, int lowVol)
+		{
+			double y = mid(high, low);
+			if (bucket <= lastBucket[slot] || y <= 0)
+			{
+				return false;
+			}
+
+			if (count[slot] == 0)
+			{
+				origin[slot] = bucket;
+			}
+			lastBucket[slot] = bucket;
+
+			int i = slot * capacity + next[slot];
+			if (count[slot] == capacity)
+			{
+				// Overwriting the oldest bucket takes its terms out of the sums
+				addTerms(slot, x[i], mid(avgHigh[i], avgLow[i]), -1);
+			}
+			else
+			{
+				count[slot]++;
+			}
+
+			avgHigh[i] = high;
+			avgLow[i] = low;
+			highVolume[i] = highVol;
+			lowVolume[i] = lowVol;
+			x[i] = (int) (bucket - origin[slot]);
+			addTerms(slot, x[i], y, 1);
+
+			next[slot] = (next[slot] + 1) % capacity;
+			if (next[slot] == 0)
+			{
+				rebase(slot);
+			}
+			return true;
+		}
+
+		private void addTerms(int slot, double xi, double yi, int sign)
+		{
+			sumX[slot] += sign * xi;
+			sumY[slot] += sign * yi;
+			sumXX[slot] += sign * xi * xi;
+			sumXY[slot] += sign * xi * yi;
+			sumYY[slot] += sign * yi * yi;
+		}
+
+		/**
+		 * Moves the origin to the oldest bucket and recomputes the sums from the buffer
+		 */
+		private void rebase(int slot)
+		{
+			int base = slot * capacity;
+			int shift = x[base + oldest(slot)];
+			origin[slot] += shift;
+			sumX[slot] = sumY[slot] = sumXX[slot] = sumXY[slot] = sumYY[slot] = 0;
+			for (int i = base; i < base + count[slot]; i++)
+			{
+				x[i] -= shift;
+				addTerms(slot, x[i], mid(avgHigh[i], avgLow[i]), 1);
+			}
+		}
+
+		private int oldest(int slot)
+		{
+			return count[slot] < capacity ? 0 : next[slot];
+		}
+
+		private int newest(int slot)
+		{
+			return (next[slot] + capacity - 1) % capacity;
+		}
+
+		int count(int slot)
+		{
+			return slot < count.length ? count[slot] : 0;
+		}
+
+		/**
+		 * Least-squares slope of the mid price, in GP per bucket
+		 */
+		double slope(int slot)
+		{
+			int n = count[slot];
+			double varX = sumXX[slot] - sumX[slot] * sumX[slot] / n;
+			return n < 2 || varX <= 0 ? 0 : (sumXY[slot] - sumX[slot] * sumY[slot] / n) / varX;
+		}
+
+		/**
+		 * Standard deviation of the mid price around the fitted line, as a fraction of the mean
+		 */
+		double volatility(int slot)
+		{
+			int n = count[slot];
+			if (n < 2)
+			{
+				return 0;
+			}
+			return residual(slot) / (sumY[slot] / n);
+		}
+
+		private double residual(int slot)
+		{
+			int n = count[slot];
+			double covXY = sumXY[slot] - sumX[slot] * sumY[slot] / n;
+			double varY = sumYY[slot] - sumY[slot] * sumY[slot] / n;
+			return Math.sqrt(Math.max(0, varY - slope(slot) * covXY) / n);
+		}
+
+		Trend trend(int slot)
+		{
+			int n = count[slot];
+			if (n < MIN_POINTS)
+			{
+				return Trend.UNKNOWN;
+			}
+
+			int base = slot * capacity;
+			double move = slope(slot) * (x[base + newest(slot)] - x[base + oldest(slot)]);
+			double threshold = Math.max(MIN_TREND_MOVE * sumY[slot] / n, residual(slot));
+			if (move > threshold)
+			{
+				return Trend.RISING;
+			}
+			if (move < -threshold)
+			{
+				return Trend.FALLING;
+			}
+			return Trend.STABLE;
+		}
+
+		/**
+		 * Average buy and sell price of the {@code age}-th newest bucket (0 = newest)
+		 */
+		int avgHigh(int slot, int age)
+		{
+			return avgHigh[index(slot, age)];
+		}
+
+		int avgLow(int slot, int age)
+		{
+			return avgLow[index(slot, age)];
+		}
+
+		int highVolume(int slot, int age)
+		{
+			return highVolume[index(slot, age)];
+		}
+
+		int lowVolume(int slot, int age)
+		{
+			return lowVolume[index(slot, age)];
+		}
+
+		private int index(int slot, int age)
+		{
+			if (age < 0 || age >= count(slot))
+			{
+				throw new IndexOutOfBoundsException("Bucket " + age + " of " + count(slot));
+			}
+			return slot * capacity + (next[slot] + capacity - 1 - age) % capacity;
+		}
+
+		/**
+		 * Mid price of a bucket; one-sided buckets use the side that traded
+		 */
+		private static double mid(int high, int low)
+		{
+			if (high > 0 && low > 0)
+			{
+				return (high + (double) low) / 2;
+			}
+			return Math.max(high, low);
+		}
+	}
+}
@@ -0,0 +1,829 @@
+package com.dmmflipper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only log of every price refresh on disk, read back through memory-mapped segments.
+ * <p>
+ * Each refresh appends one fixed-size record per changed item (item, time, prices, trade times,
+ * volumes) to the active segment, a {@code .log} file covering {@link #SEGMENT_SECONDS} of
+ * wall-clock time in arrival order. When a record falls past its span the segment is sealed:
+ * rewritten as a {@code .seg} file sorted by item then time, so one item's range is a binary
+ * search and a contiguous run of records. Segments older than {@link #COMPACT_AFTER_DAYS} are
+ * merged per day into a {@code .day} file keeping the last record of each item per hour, and files
+ * older than {@link #RETENTION_DAYS} are deleted.
+ * <p>
+ * Readers scan mapped files in place through a {@link Cursor}; nothing but the sort keys of the
+ * segment being sealed is ever loaded onto the heap. Writes, sealing and compaction run on the
+ * caller's thread (the price client's executor); scans may run on any thread.
+ */
+@Slf4j
+public final class PriceHistoryStore
+{
+	static final long SEGMENT_SECONDS = TimeUnit.HOURS.toSeconds(6);
+	static final long DAY_SECONDS = TimeUnit.DAYS.toSeconds(1);
+	static final int COMPACT_AFTER_DAYS = 7;
+	static final int RETENTION_DAYS = 180;
+
+	private static final int MAGIC = 0x444D4D48; // "DMMH"
+	private static final int VERSION = 1;
+	private static final int FLAG_ITEM_SORTED = 1;
+	private static final int FLAG_COMPACTED = 2;
+	private static final int HEADER_SIZE = 16;
+	static final int RECORD_SIZE = 32;
+
+	// Record layout; times are unsigned epoch seconds
+	private static final int ITEM_ID = 0;
+	private static final int TIME = 4;
+	private static final int HIGH = 8;
+	private static final int LOW = 12;
+	private static final int HIGH_TIME = 16;
+	private static final int LOW_TIME = 20;
+	private static final int HIGH_VOLUME = 24;
+	private static final int LOW_VOLUME = 28;
+
+	// Records buffered per write call
+	private static final int WRITE_BATCH = 1024;
+
+	private final Path dir;
+	// Sorted by start; the active segment, if any, is last
+	private final List<Segment> segments = new ArrayList<>();
+	// Replaced files that couldn't be deleted yet (still mapped on Windows), retried on maintenance
+	private final List<Path> retired = new ArrayList<>();
+	private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(RECORD_SIZE * WRITE_BATCH).order(ByteOrder.LITTLE_ENDIAN);
+	private Segment active;
+	private FileChannel activeChannel;
+	private boolean listed;
+	private boolean opened;
+
+	PriceHistoryStore(Path dir)
+	{
+		this.dir = dir;
+	}
+
+	/**
+	 * Called with every record a scan matches. The cursor is only valid during the call.
+	 */
+	@FunctionalInterface
+	public interface RecordVisitor
+	{
+		void visit(Cursor record);
+	}
+
+	/**
+	 * Appends the items in {@code changes}, with their prices in {@code to}, stamped with the time
+	 * {@code to} was built. The first call opens the store and seals anything left from the last run.
+	 */
+	void append(ChangeSet changes, PriceSnapshot to) throws IOException
+	{
+		BitSet changed = changes.slots();
+		long time = to.getBuiltAt() / 1000;
+		open(time);
+		if (active == null || time >= active.end)
+		{
+			roll(time);
+		}
+
+		for (int slot = changed.nextSetBit(0); slot >= 0; slot = changed.nextSetBit(slot + 1))
+		{
+			if (!to.isPresent(slot))
+			{
+				continue;
+			}
+
+			int at = writeBuffer.position();
+			writeBuffer.putInt(at + ITEM_ID, to.itemId(slot));
+			writeBuffer.putInt(at + TIME, (int) time);
+			writeBuffer.putInt(at + HIGH, to.high(slot));
+			writeBuffer.putInt(at + LOW, to.low(slot));
+			writeBuffer.putInt(at + HIGH_TIME, (int) to.highTime(slot));
+			writeBuffer.putInt(at + LOW_TIME, (int) to.lowTime(slot));
+			writeBuffer.putInt(at + HIGH_VOLUME, to.highVolume(slot));
+			writeBuffer.putInt(at + LOW_VOLUME, to.lowVolume(slot));
+			writeBuffer.position(at + RECORD_SIZE);
+			if (!writeBuffer.hasRemaining())
+			{
+				flush();
+			}
+		}
+		flush();
+	}
+
+	/**
+	 * Visits the records of {@code itemId} from {@code fromSecond} to {@code toSecond} inclusive,
+	 * oldest first, straight from the mapped segments.
+	 *
+	 * @return the number of records visited
+	 */
+	public int scan(int itemId, long fromSecond, long toSecond, RecordVisitor visitor) throws IOException
+	{
+		list();
+		int visited = 0;
+		Cursor cursor = new Cursor();
+		for (Segment segment : overlapping(fromSecond, toSecond))
+		{
+			ByteBuffer records = segment.records();
+			int count = records.limit() / RECORD_SIZE;
+			cursor.records = records;
+
+			if (segment.itemSorted)
+			{
+				for (int i = lowerBound(records, count, itemId, fromSecond); i < count; i++)
+				{
+					cursor.offset = i * RECORD_SIZE;
+					if (cursor.getItemId() != itemId || cursor.getTime() > toSecond)
+					{
+						break;
+					}
+					visitor.visit(cursor);
+					visited++;
+				}
+			}
+			else
+			{
+				// Arrival order: find the time range, then pick out the item
+				for (int i = lowerBound(records, count, -1, fromSecond); i < count; i++)
+				{
+					cursor.offset = i * RECORD_SIZE;
+					if (cursor.getTime() > toSecond)
+					{
+						break;
+					}
+					if (cursor.getItemId() == itemId)
+					{
+						visitor.visit(cursor);
+						visited++;
+					}
+				}
+			}
+		}
+		return visited;
+	}
+
+	/**
+	 * Visits every record from {@code fromSecond} to {@code toSecond} inclusive in the order they
+	 * were recorded, all items interleaved, e.g. to rebuild the market refresh by refresh. Sealed
+	 * segments are put back in time order through one sort key per record in range.
+	 *
+	 * @return the number of records visited
+	 */
+	public int replay(long fromSecond, long toSecond, RecordVisitor visitor) throws IOException
+	{
+		list();
+		int visited = 0;
+		Cursor cursor = new Cursor();
+		for (Segment segment : overlapping(fromSecond, toSecond))
+		{
+			ByteBuffer records = segment.records();
+			int count = records.limit() / RECORD_SIZE;
+			cursor.records = records;
+
+			if (!segment.itemSorted)
+			{
+				for (int i = lowerBound(records, count, -1, fromSecond); i < count; i++)
+				{
+					cursor.offset = i * RECORD_SIZE;
+					if (cursor.getTime() > toSecond)
+					{
+						break;
+					}
+					visitor.visit(cursor);
+					visited++;
+				}
+				continue;
+			}
+
+			// Time since the segment start, then the index, which keeps the recorded order within a refresh
+			long[] keys = new long[count];
+			int matched = 0;
+			for (int i = 0; i < count; i++)
+			{
+				long time = Integer.toUnsignedLong(records.getInt(i * RECORD_SIZE + TIME));
+				if (time >= fromSecond && time <= toSecond)
+				{
+					keys[matched++] = (time - segment.start) << 32 | i;
+				}
+			}
+			Arrays.sort(keys, 0, matched);
+
+			for (int k = 0; k < matched; k++)
+			{
+				cursor.offset = (int) keys[k] * RECORD_SIZE;
+				visitor.visit(cursor);
+			}
+			visited += matched;
+		}
+		return visited;
+	}
+
+	/**
+	 * Total bytes of record data on disk
+	 */
+	public synchronized long sizeOnDisk()
+	{
+		long size = 0;
+		for (Segment segment : segments)
+		{
+			size += segment.length;
+		}
+		return size;
+	}
+
+	/**
+	 * Closes the active segment; the next append reopens the store and resumes it
+	 */
+	synchronized void close()
+	{
+		closeActive();
+		segments.clear();
+		listed = false;
+		opened = false;
+	}
+
+	private synchronized List<Segment> overlapping(long fromSecond, long toSecond)
+	{
+		List<Segment> matches = new ArrayList<>();
+		for (Segment segment : segments)
+		{
+			if (segment.start <= toSecond && segment.end > fromSecond)
+			{
+				matches.add(segment);
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * First record not before (itemId, time); with itemId -1 only the time is compared
+	 */
+	private static int lowerBound(ByteBuffer records, int count, int itemId, long time)
+	{
+		int low = 0;
+		int high = count;
+		while (low < high)
+		{
+			int mid = (low + high) >>> 1;
+			int at = mid * RECORD_SIZE;
+			int item = records.getInt(at + ITEM_ID);
+			long recordTime = Integer.toUnsignedLong(records.getInt(at + TIME));
+			boolean before = itemId >= 0 && item != itemId ? item < itemId : recordTime < time;
+			if (before)
+			{
+				low = mid + 1;
+			}
+			else
+			{
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private void flush() throws IOException
+	{
+		writeBuffer.flip();
+		while (writeBuffer.hasRemaining())
+		{
+			activeChannel.write(writeBuffer);
+		}
+		writeBuffer.clear();
+
+		synchronized (this)
+		{
+			active.length = activeChannel.position() - HEADER_SIZE;
+		}
+	}
+
+	/**
+	 * Reads the segment list from disk once, without writing anything, so a store can be scanned
+	 * before (or without) anything being appended to it
+	 */
+	private synchronized void list() throws IOException
+	{
+		if (listed || !Files.isDirectory(dir))
+		{
+			return;
+		}
+		listed = true;
+
+		List<Segment> found = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.{log,seg,day}"))
+		{
+			for (Path file : files)
+			{
+				Segment segment = Segment.read(file);
+				if (segment != null)
+				{
+					found.add(segment);
+				}
+			}
+		}
+		found.sort((a, b) -> Long.compare(a.start, b.start));
+		segments.addAll(found);
+	}
+
+	/**
+	 * Loads the segment list, sealing logs left from an earlier run and resuming the current one
+	 */
+	private void open(long now) throws IOException
+	{
+		if (opened)
+		{
+			return;
+		}
+		opened = true;
+		Files.createDirectories(dir);
+		list();
+
+		List<Segment> found;
+		synchronized (this)
+		{
+			found = new ArrayList<>(segments);
+		}
+
+		for (Segment segment : found)
+		{
+			if (!segment.itemSorted)
+			{
+				if (now < segment.end && active == null)
+				{
+					resume(segment);
+				}
+				else
+				{
+					seal(segment);
+				}
+			}
+		}
+		maintain(now);
+	}
+
+	private void resume(Segment segment) throws IOException
+	{
+		activeChannel = FileChannel.open(segment.path, StandardOpenOption.WRITE);
+		// Drop a record torn by a crash mid-write
+		activeChannel.truncate(HEADER_SIZE + segment.length);
+		activeChannel.position(HEADER_SIZE + segment.length);
+		active = segment;
+		synchronized (this)
+		{
+			segments.remove(segment);
+			segments.add(segment);
+		}
+	}
+
+	/**
+	 * Seals the active segment and starts the one covering {@code time}
+	 */
+	private void roll(long time) throws IOException
+	{
+		if (active != null)
+		{
+			Segment sealed = active;
+			closeActive();
+			seal(sealed);
+			maintain(time);
+		}
+
+		long start = time - Math.floorMod(time, SEGMENT_SECONDS);
+		Path path = dir.resolve(start + ".log");
+		Segment segment = new Segment(path, start, start + SEGMENT_SECONDS, false, false, 0);
+		activeChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		writeHeader(activeChannel, 0);
+		active = segment;
+		synchronized (this)
+		{
+			segments.add(segment);
+		}
+	}
+
+	private void closeActive()
+	{
+		if (activeChannel != null)
+		{
+			try
+			{
+				activeChannel.close();
+			}
+			catch (IOException e)
+			{
+				log.warn("Failed to close {}", active.path, e);
+			}
+			activeChannel = null;
+			active = null;
+		}
+	}
+
+	/**
+	 * Rewrites an arrival-order log sorted by item then time. Only a sort key per record is held
+	 * on the heap: the item id and the record's index, which is already in time order.
+	 */
+	private void seal(Segment segment) throws IOException
+	{
+		ByteBuffer records = segment.records();
+		int count = records.limit() / RECORD_SIZE;
+		long[] keys = new long[count];
+		for (int i = 0; i < count; i++)
+		{
+			keys[i] = (long) records.getInt(i * RECORD_SIZE + ITEM_ID) << 32 | i;
+		}
+		Arrays.sort(keys);
+
+		Path sealedPath = dir.resolve(segment.start + ".seg");
+		Path tmp = Files.createTempFile(dir, "segment", ".tmp");
+		try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE))
+		{
+			writeHeader(out, FLAG_ITEM_SORTED);
+			ByteBuffer batch = ByteBuffer.allocateDirect(RECORD_SIZE * WRITE_BATCH);
+			for (long key : keys)
+			{
+				int from = (int) key * RECORD_SIZE;
+				ByteBuffer record = records.duplicate();
+				record.position(from).limit(from + RECORD_SIZE);
+				batch.put(record);
+				if (!batch.hasRemaining())
+				{
+					writeFully(out, batch);
+				}
+			}
+			writeFully(out, batch);
+			Files.move(tmp, sealedPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally
+		{
+			Files.deleteIfExists(tmp);
+		}
+
+		replace(Arrays.asList(segment), new Segment(sealedPath, segment.start, segment.end, true, false, (long) count * RECORD_SIZE));
+		log.debug("Sealed history segment {} ({} records)", sealedPath.getFileName(), count);
+	}
+
+	/**
+	 * Merges sealed segments older than {@link #COMPACT_AFTER_DAYS} into one hourly file per day
+	 * and drops files past {@link #RETENTION_DAYS}.
+	 */
+	private void maintain(long now) throws IOException
+	{
+		long today = now - Math.floorMod(now, DAY_SECONDS);
+		long compactBefore = today - COMPACT_AFTER_DAYS * DAY_SECONDS;
+		long dropBefore = today - RETENTION_DAYS * DAY_SECONDS;
+
+		List<Segment> candidates;
+		synchronized (this)
+		{
+			candidates = new ArrayList<>(segments);
+		}
+
+		List<Segment> expired = new ArrayList<>();
+		List<Segment> day = new ArrayList<>();
+		for (Segment segment : candidates)
+		{
+			if (segment == active || !segment.itemSorted)
+			{
+				continue;
+			}
+			if (segment.end <= dropBefore)
+			{
+				expired.add(segment);
+				continue;
+			}
+			if (segment.end > compactBefore)
+			{
+				continue;
+			}
+
+			long dayStart = segment.start - Math.floorMod(segment.start, DAY_SECONDS);
+			if (!day.isEmpty() && day.get(0).start - Math.floorMod(day.get(0).start, DAY_SECONDS) != dayStart)
+			{
+				compact(day);
+				day.clear();
+			}
+			day.add(segment);
+		}
+		compact(day);
+
+		if (!expired.isEmpty())
+		{
+			replace(expired, null);
+			log.debug("Dropped {} history files older than {} days", expired.size(), RETENTION_DAYS);
+		}
+
+		synchronized (this)
+		{
+			retired.removeIf(PriceHistoryStore::tryDelete);
+		}
+	}
+
+	/**
+	 * Merges one day's sealed segments, keeping each item's last record per hour. The inputs are
+	 * sorted by item then time and cover consecutive spans, so a k-way merge on the item id
+	 * streams the output in order without buffering it.
+	 */
+	private void compact(List<Segment> day) throws IOException
+	{
+		if (day.isEmpty() || (day.size() == 1 && day.get(0).compacted))
+		{
+			return;
+		}
+
+		long dayStart = day.get(0).start - Math.floorMod(day.get(0).start, DAY_SECONDS);
+		ByteBuffer[] inputs = new ByteBuffer[day.size()];
+		int[] position = new int[day.size()];
+		for (int i = 0; i < inputs.length; i++)
+		{
+			inputs[i] = day.get(i).records();
+		}
+
+		Path dayPath = dir.resolve(dayStart + ".day");
+		Path tmp = Files.createTempFile(dir, "day", ".tmp");
+		long written = 0;
+		try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE))
+		{
+			writeHeader(out, FLAG_ITEM_SORTED | FLAG_COMPACTED);
+			ByteBuffer batch = ByteBuffer.allocateDirect(RECORD_SIZE * WRITE_BATCH);
+			ByteBuffer pending = ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			boolean hasPending = false;
+
+			while (true)
+			{
+				int item = Integer.MAX_VALUE;
+				for (int i = 0; i < inputs.length; i++)
+				{
+					if (position[i] < inputs[i].limit())
+					{
+						item = Math.min(item, inputs[i].getInt(position[i] + ITEM_ID));
+					}
+				}
+				if (item == Integer.MAX_VALUE)
+				{
+					break;
+				}
+
+				// Earlier segments first keeps the item's records in time order
+				for (int i = 0; i < inputs.length; i++)
+				{
+					while (position[i] < inputs[i].limit() && inputs[i].getInt(position[i] + ITEM_ID) == item)
+					{
+						long time = Integer.toUnsignedLong(inputs[i].getInt(position[i] + TIME));
+						boolean sameItem = hasPending && pending.getInt(ITEM_ID) == item;
+						if (sameItem && time < Integer.toUnsignedLong(pending.getInt(TIME)))
+						{
+							// Already covered by a file an interrupted compaction left behind
+							position[i] += RECORD_SIZE;
+							continue;
+						}
+						if (hasPending && (!sameItem || Integer.toUnsignedLong(pending.getInt(TIME)) / 3600 != time / 3600))
+						{
+							batch.put(pending.array());
+							written++;
+							if (!batch.hasRemaining())
+							{
+								writeFully(out, batch);
+							}
+						}
+
+						ByteBuffer record = inputs[i].duplicate();
+						record.position(position[i]).limit(position[i] + RECORD_SIZE);
+						pending.clear();
+						pending.put(record);
+						hasPending = true;
+						position[i] += RECORD_SIZE;
+					}
+				}
+			}
+
+			if (hasPending)
+			{
+				batch.put(pending.array());
+				written++;
+			}
+			writeFully(out, batch);
+			Files.move(tmp, dayPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e)
+		{
+			// Usually the day file is still mapped by a reader (Windows); try again on the next roll
+			log.warn("Failed to compact history for day {}", dayStart, e);
+			return;
+		}
+		finally
+		{
+			Files.deleteIfExists(tmp);
+		}
+
+		List<Segment> replaced = new ArrayList<>(day);
+		replaced.removeIf(segment -> segment.path.equals(dayPath));
+		replace(replaced, new Segment(dayPath, dayStart, dayStart + DAY_SECONDS, true, true, written * RECORD_SIZE));
+		log.debug("Compacted {} history segments into {} ({} records)", day.size(), dayPath.getFileName(), written);
+	}
+
+	/**
+	 * Swaps {@code old} for {@code replacement} (if any) in the segment list and deletes their files
+	 */
+	private synchronized void replace(List<Segment> old, Segment replacement)
+	{
+		segments.removeIf(segment -> segment.path.equals(replacement != null ? replacement.path : null));
+		for (Segment segment : old)
+		{
+			segments.remove(segment);
+			// Drop the mapping so the file can be unmapped and deleted
+			segment.map = null;
+			if (!tryDelete(segment.path))
+			{
+				retired.add(segment.path);
+			}
+		}
+		if (replacement != null)
+		{
+			segments.add(replacement);
+			segments.sort((a, b) -> a == active ? 1 : b == active ? -1 : Long.compare(a.start, b.start));
+		}
+	}
+
+	private static boolean tryDelete(Path path)
+	{
+		try
+		{
+			Files.deleteIfExists(path);
+			return true;
+		}
+		catch (IOException e)
+		{
+			return false;
+		}
+	}
+
+	private static void writeHeader(FileChannel channel, int flags) throws IOException
+	{
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).putInt(VERSION).putInt(flags).putInt(RECORD_SIZE);
+		header.flip();
+		while (header.hasRemaining())
+		{
+			channel.write(header);
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer batch) throws IOException
+	{
+		batch.flip();
+		while (batch.hasRemaining())
+		{
+			channel.write(batch);
+		}
+		batch.clear();
+	}
+
+	/**
+	 * One file: its span, ordering and a lazily created read-only mapping of its records
+	 */
+	private static final class Segment
+	{
+		private final Path path;
+		private final long start;
+		private final long end;
+		private final boolean itemSorted;
+		private final boolean compacted;
+		private volatile long length;
+		private volatile ByteBuffer map;
+
+		private Segment(Path path, long start, long end, boolean itemSorted, boolean compacted, long length)
+		{
+			this.path = path;
+			this.start = start;
+			this.end = end;
+			this.itemSorted = itemSorted;
+			this.compacted = compacted;
+			this.length = length;
+		}
+
+		/**
+		 * Reads the header of {@code file}; returns null for files that aren't history segments
+		 */
+		private static Segment read(Path file) throws IOException
+		{
+			String name = file.getFileName().toString();
+			long start;
+			try
+			{
+				start = Long.parseLong(name.substring(0, name.indexOf('.')));
+			}
+			catch (NumberFormatException e)
+			{
+				return null;
+			}
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			long size;
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+			{
+				size = channel.size();
+				while (header.hasRemaining() && channel.read(header) >= 0)
+				{
+				}
+			}
+			if (size < HEADER_SIZE || header.getInt(0) != MAGIC || header.getInt(4) != VERSION
+				|| header.getInt(12) != RECORD_SIZE)
+			{
+				log.warn("Ignoring unrecognised history file {}", file);
+				return null;
+			}
+
+			int flags = header.getInt(8);
+			long span = (flags & FLAG_COMPACTED) != 0 ? DAY_SECONDS : SEGMENT_SECONDS;
+			long length = (size - HEADER_SIZE) / RECORD_SIZE * RECORD_SIZE;
+			return new Segment(file, start, start + span, (flags & FLAG_ITEM_SORTED) != 0,
+				(flags & FLAG_COMPACTED) != 0, length);
+		}
+
+		/**
+		 * The whole records, mapped read-only. The active log is remapped when it has grown.
+		 */
+		private ByteBuffer records() throws IOException
+		{
+			ByteBuffer mapped = map;
+			long length = this.length;
+			if (mapped == null || mapped.capacity() < length)
+			{
+				try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+				{
+					MappedByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, length);
+					mapped = file.order(ByteOrder.LITTLE_ENDIAN);
+				}
+				map = mapped;
+			}
+
+			// A view per reader: positions aren't shared, and the limit is what was complete at the start
+			ByteBuffer view = mapped.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+			view.limit((int) length);
+			return view;
+		}
+	}
+
+	/**
+	 * One record in a mapped segment, read in place
+	 */
+	public static final class Cursor
+	{
+		private ByteBuffer records;
+		private int offset;
+
+		public int getItemId()
+		{
+			return records.getInt(offset + ITEM_ID);
+		}
+
+		/**
+		 * When the refresh holding this record was published (epoch seconds)
+		 */
+		public long getTime()
+		{
+			return Integer.toUnsignedLong(records.getInt(offset + TIME));
+		}
+
+		public int getHigh()
+		{
+			return records.getInt(offset + HIGH);
+		}
+
+		public int getLow()
+		{
+			return records.getInt(offset + LOW);
+		}
+
+		public long getHighTime()
+		{
+			return Integer.toUnsignedLong(records.getInt(offset + HIGH_TIME));
+		}
+
+		public long getLowTime()
+		{
+			return Integer.toUnsignedLong(records.getInt(offset + LOW_TIME));
+		}
+
+		public int getHighVolume()
+		{
+			return records.getInt(offset + HIGH_VOLUME);
+		}
+
+		public int getLowVolume()
+		{
+			return records.getInt(offset + LOW_VOLUME);
+		}
+	}
+}
@@ -0,0 +1,253 @@
+package com.dmmflipper;
+
+import java.util.BitSet;
+import lombok.Getter;
+
+/**
+ * Immutable view of the market as of one refresh.
+ * A snapshot is fully built (prices and merged volumes) before it is published,
+ * so readers always see a consistent market and never a half-filled map.
+ * <p>
+ * Prices are stored column-wise in primitive arrays indexed by slot (see {@link ItemSlots}),
+ * so scans walk contiguous arrays instead of chasing one object per item. Slots of items
+ * missing from this refresh hold zero prices and times, which every scan already skips.
+ * <p>
+ * Trend columns come from {@link PriceHistory} and are carried over unchanged by price refreshes;
+ * a time-series update publishes a new snapshot that shares the price columns.
+ */
+public final class PriceSnapshot
+{
+	static final PriceSnapshot EMPTY = new PriceSnapshot(0, 0, ItemSlots.EMPTY, 0, new byte[0], new float[0], new float[0]);
+
+	/**
+	 * Increases by one with every published refresh
+	 */
+	@Getter
+	private final long version;
+
+	/**
+	 * When this snapshot finished building (epoch millis)
+	 */
+	@Getter
+	private final long builtAt;
+
+	private final ItemSlots slots;
+	private final BitSet present;
+	private final int[] high;
+	private final int[] low;
+	private final long[] highTime;
+	private final long[] lowTime;
+	private final int[] highVolume;
+	private final int[] lowVolume;
+	private final int size;
+
+	// May be shorter than the slot table; missing slots have no trend yet
+	private final byte[] trend;
+	private final float[] slopePerHour;
+	private final float[] volatility;
+
+	private PriceSnapshot(long version, long builtAt, ItemSlots slots, int size,
+		byte[] trend, float[] slopePerHour, float[] volatility)
+	{
+		this.version = version;
+		this.builtAt = builtAt;
+		this.slots = slots;
+		this.size = size;
+		this.trend = trend;
+		this.slopePerHour = slopePerHour;
+		this.volatility = volatility;
+
+		int slotCount = slots.size();
+		this.present = new BitSet(slotCount);
+		this.high = new int[slotCount];
+		this.low = new int[slotCount];
+		this.highTime = new long[slotCount];
+		this.lowTime = new long[slotCount];
+		this.highVolume = new int[slotCount];
+		this.lowVolume = new int[slotCount];
+	}
+
+	private PriceSnapshot(PriceSnapshot prices, long version, long builtAt,
+		byte[] trend, float[] slopePerHour, float[] volatility)
+	{
+		this.version = version;
+		this.builtAt = builtAt;
+		this.slots = prices.slots;
+		this.size = prices.size;
+		this.present = prices.present;
+		this.high = prices.high;
+		this.low = prices.low;
+		this.highTime = prices.highTime;
+		this.lowTime = prices.lowTime;
+		this.highVolume = prices.highVolume;
+		this.lowVolume = prices.lowVolume;
+		this.trend = trend;
+		this.slopePerHour = slopePerHour;
+		this.volatility = volatility;
+	}
+
+	/**
+	 * Builds the next snapshot from a /latest response, merging volumes from /24h when available.
+	 * The slot table of {@code previous} is reused (and grown if new items appeared).
+	 */
+	static PriceSnapshot build(PriceSnapshot previous, PriceFeed latest, PriceFeed volumes, long version, long builtAt)
+	{
+		ItemSlots slots = previous.slots.withItems(latest);
+		PriceSnapshot next = new PriceSnapshot(version, builtAt, slots, latest.size(),
+			previous.trend, previous.slopePerHour, previous.volatility);
+
+		for (int row = 0; row < latest.size(); row++)
+		{
+			int slot = slots.slotOf(latest.itemId(row));
+			if (slot < 0)
+			{
+				continue;
+			}
+
+			next.present.set(slot);
+			next.high[slot] = latest.high(row);
+			next.low[slot] = latest.low(row);
+			next.highTime[slot] = latest.highTime(row);
+			next.lowTime[slot] = latest.lowTime(row);
+			next.highVolume[slot] = latest.highVolume(row);
+			next.lowVolume[slot] = latest.lowVolume(row);
+		}
+
+		if (volumes != null)
+		{
+			// Only merge volume data into items present in /latest
+			for (int row = 0; row < volumes.size(); row++)
+			{
+				int slot = slots.slotOf(volumes.itemId(row));
+				if (slot >= 0 && next.present.get(slot))
+				{
+					next.highVolume[slot] = volumes.highVolume(row);
+					next.lowVolume[slot] = volumes.lowVolume(row);
+				}
+			}
+		}
+
+		return next;
+	}
+
+	/**
+	 * Copy of this snapshot with new trend columns; the price columns are shared
+	 */
+	PriceSnapshot withTrends(byte[] trend, float[] slopePerHour, float[] volatility, long version, long builtAt)
+	{
+		return new PriceSnapshot(this, version, builtAt, trend, slopePerHour, volatility);
+	}
+
+	/**
+	 * Lightweight copy of one item's prices for callers that want a {@link PriceData}.
+	 *
+	 * @return the item's prices, or null if it is not in this snapshot
+	 */
+	public PriceData get(int itemId)
+	{
+		int slot = slots.slotOf(itemId);
+		if (slot < 0 || !present.get(slot))
+		{
+			return null;
+		}
+
+		PriceData priceData = new PriceData();
+		priceData.setHigh(high[slot]);
+		priceData.setLow(low[slot]);
+		priceData.setHighTime(highTime[slot]);
+		priceData.setLowTime(lowTime[slot]);
+		priceData.setHighVolume(highVolume[slot]);
+		priceData.setLowVolume(lowVolume[slot]);
+		return priceData;
+	}
+
+	/**
+	 * Number of items with prices in this snapshot
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * Number of slots; valid slots are {@code 0 .. slotCount() - 1}
+	 */
+	public int slotCount()
+	{
+		return slots.size();
+	}
+
+	/**
+	 * @return the slot of {@code itemId}, or -1 if it has never been seen
+	 */
+	public int slotOf(int itemId)
+	{
+		return slots.slotOf(itemId);
+	}
+
+	public boolean isPresent(int slot)
+	{
+		return present.get(slot);
+	}
+
+	public int itemId(int slot)
+	{
+		return slots.itemIdAt(slot);
+	}
+
+	public int high(int slot)
+	{
+		return high[slot];
+	}
+
+	public int low(int slot)
+	{
+		return low[slot];
+	}
+
+	public long highTime(int slot)
+	{
+		return highTime[slot];
+	}
+
+	public long lowTime(int slot)
+	{
+		return lowTime[slot];
+	}
+
+	public int highVolume(int slot)
+	{
+		return highVolume[slot];
+	}
+
+	public int lowVolume(int slot)
+	{
+		return lowVolume[slot];
+	}
+
+	public Trend trend(int slot)
+	{
+		return slot < trend.length ? Trend.ofOrdinal(trend[slot]) : Trend.UNKNOWN;
+	}
+
+	/**
+	 * Slope of the fitted mid price in GP per hour, 0 while the trend is unknown
+	 */
+	public float slopePerHour(int slot)
+	{
+		return slot < slopePerHour.length ? slopePerHour[slot] : 0;
+	}
+
+	/**
+	 * Scatter of the mid price around its trend, as a fraction of the price
+	 */
+	public float volatility(int slot)
+	{
+		return slot < volatility.length ? volatility[slot] : 0;
+	}
+}
@@ -0,0 +1,369 @@
+package com.dmmflipper;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Per-item values every strategy needs (catalogue row, tax, profit, ROI, volume, limit,
+ * trade times), derived once per snapshot and shared by all strategies of a scan.
+ * Owned by {@link OpportunityEngine}: recomputed in full when the item catalogue changes,
+ * and only for changed slots when a new snapshot arrives. Strategies read them through a
+ * {@link Cursor}, one per scanning thread. A {@link ScanIndex} over the columns is kept up to
+ * date with them.
+ */
+final class ScanColumns
+{
+	private PriceSnapshot market = PriceSnapshot.EMPTY;
+	private BitSet candidate = new BitSet();
+	private ItemCatalogue catalogue = ItemCatalogue.EMPTY;
+	// Row of each slot's item in the catalogue, -1 when it isn't listed
+	private int[] catalogueIndex = new int[0];
+	private int[] geTax = new int[0];
+	private int[] profit = new int[0];
+	private double[] roi = new double[0];
+	private int[] limit = new int[0];
+	private int[] totalVolume = new int[0];
+	private long[] limitCost = new long[0];
+	private long[] oldestTime = new long[0];
+	private long[] latestTime = new long[0];
+	private final ScanIndex index = new ScanIndex(this);
+
+	void rebuild(PriceSnapshot market, ItemCatalogue catalogue)
+	{
+		this.market = market;
+		this.catalogue = catalogue;
+		candidate = new BitSet(market.slotCount());
+		catalogueIndex = new int[market.slotCount()];
+		geTax = new int[market.slotCount()];
+		profit = new int[market.slotCount()];
+		roi = new double[market.slotCount()];
+		limit = new int[market.slotCount()];
+		totalVolume = new int[market.slotCount()];
+		limitCost = new long[market.slotCount()];
+		oldestTime = new long[market.slotCount()];
+		latestTime = new long[market.slotCount()];
+
+		for (int slot = 0; slot < market.slotCount(); slot++)
+		{
+			compute(slot);
+		}
+		index.rebuild(market.slotCount());
+	}
+
+	/**
+	 * Moves to {@code market}, recomputing only {@code changedSlots}, against the catalogue of the last rebuild
+	 */
+	void update(PriceSnapshot market, BitSet changedSlots)
+	{
+		this.market = market;
+		if (catalogueIndex.length < market.slotCount())
+		{
+			int slotCount = market.slotCount();
+			catalogueIndex = Arrays.copyOf(catalogueIndex, slotCount);
+			geTax = Arrays.copyOf(geTax, slotCount);
+			profit = Arrays.copyOf(profit, slotCount);
+			roi = Arrays.copyOf(roi, slotCount);
+			limit = Arrays.copyOf(limit, slotCount);
+			totalVolume = Arrays.copyOf(totalVolume, slotCount);
+			limitCost = Arrays.copyOf(limitCost, slotCount);
+			oldestTime = Arrays.copyOf(oldestTime, slotCount);
+			latestTime = Arrays.copyOf(latestTime, slotCount);
+		}
+
+		for (int slot = changedSlots.nextSetBit(0); slot >= 0; slot = changedSlots.nextSetBit(slot + 1))
+		{
+			compute(slot);
+		}
+		index.update(changedSlots);
+	}
+
+	private void compute(int slot)
+	{
+		int buyPrice = market.low(slot);
+		int sellPrice = market.high(slot);
+		long buyTime = market.lowTime(slot);
+		long sellTime = market.highTime(slot);
+		int index = market.isPresent(slot) ? catalogue.indexOf(market.itemId(slot)) : -1;
+
+		catalogueIndex[slot] = index;
+		oldestTime[slot] = Math.min(buyTime, sellTime);
+		latestTime[slot] = Math.max(buyTime, sellTime);
+		totalVolume[slot] = market.lowVolume(slot) + market.highVolume(slot);
+
+		// Every strategy needs both prices, both trade times and a known item
+		boolean valid = index >= 0 && buyPrice != 0 && sellPrice != 0 && buyTime != 0 && sellTime != 0;
+		candidate.set(slot, valid);
+		if (!valid)
+		{
+			return;
+		}
+
+		geTax[slot] = Math.min((int) (sellPrice * 0.01), 5_000_000);
+		profit[slot] = sellPrice - buyPrice - geTax[slot];
+		roi[slot] = (profit[slot] / (double) buyPrice) * 100;
+		limit[slot] = catalogue.limit(index) > 0 ? catalogue.limit(index) : 1;
+		limitCost[slot] = (long) buyPrice * limit[slot];
+	}
+
+	PriceSnapshot market()
+	{
+		return market;
+	}
+
+	ScanIndex index()
+	{
+		return index;
+	}
+
+	/**
+	 * True if the item has both prices, both trade times and a catalogue row; only these are scanned
+	 */
+	boolean isCandidate(int slot)
+	{
+		return candidate.get(slot);
+	}
+
+	/**
+	 * True if the item has prices, trade times and item info, and both trades are at most {@code maxAge} minutes old
+	 */
+	boolean isFresh(int slot, long currentTime, int maxAge)
+	{
+		if (!candidate.get(slot))
+		{
+			return false;
+		}
+
+		int buyAgeMinutes = (int) ((currentTime - market.lowTime(slot)) / 60);
+		int sellAgeMinutes = (int) ((currentTime - market.highTime(slot)) / 60);
+
+		return buyAgeMinutes <= maxAge && sellAgeMinutes <= maxAge;
+	}
+
+	/**
+	 * Epoch second from which the item no longer passes a {@code maxAge} freshness check
+	 */
+	long freshUntil(int slot, int maxAge)
+	{
+		return oldestTime[slot] + (maxAge + 1) * 60L;
+	}
+
+	/**
+	 * Epoch second of the older of the item's two trades
+	 */
+	long oldestTime(int slot)
+	{
+		return oldestTime[slot];
+	}
+
+	int ageMinutes(int slot, long currentTime)
+	{
+		return (int) ((currentTime - latestTime[slot]) / 60);
+	}
+
+	int buyPrice(int slot)
+	{
+		return market.low(slot);
+	}
+
+	int sellPrice(int slot)
+	{
+		return market.high(slot);
+	}
+
+	int geTax(int slot)
+	{
+		return geTax[slot];
+	}
+
+	int profit(int slot)
+	{
+		return profit[slot];
+	}
+
+	double roi(int slot)
+	{
+		return roi[slot];
+	}
+
+	/**
+	 * Buy limit, or 1 when the item has none
+	 */
+	int limit(int slot)
+	{
+		return limit[slot];
+	}
+
+	int totalVolume(int slot)
+	{
+		return totalVolume[slot];
+	}
+
+	/**
+	 * GP needed to buy one full buy limit
+	 */
+	long limitCost(int slot)
+	{
+		return limitCost[slot];
+	}
+
+	boolean members(int slot)
+	{
+		return catalogue.members(catalogueIndex[slot]);
+	}
+
+	/**
+	 * The item's name, decoded from the catalogue
+	 */
+	String name(int slot)
+	{
+		return catalogue.name(catalogueIndex[slot]);
+	}
+
+	FlipOpportunity toOpportunity(int slot, int profit, long currentTime)
+	{
+		return new FlipOpportunity(
+			market.itemId(slot),
+			name(slot),
+			market.low(slot),
+			market.high(slot),
+			profit,
+			roi[slot],
+			geTax[slot],
+			limit[slot],
+			ageMinutes(slot, currentTime),
+			market.lowVolume(slot),
+			market.highVolume(slot),
+			market.trend(slot).getLabel(),
+			true
+		);
+	}
+
+	Cursor cursor()
+	{
+		return new Cursor();
+	}
+
+	/**
+	 * Reusable {@link MarketItem} view of one slot at a time
+	 */
+	final class Cursor implements MarketItem
+	{
+		private int slot;
+
+		Cursor at(int slot)
+		{
+			this.slot = slot;
+			return this;
+		}
+
+		int slot()
+		{
+			return slot;
+		}
+
+		ScanColumns columns()
+		{
+			return ScanColumns.this;
+		}
+
+		/**
+		 * {@code field} read straight from the columns, for fused range filters
+		 */
+		double value(StrategyExpressions.ItemField field)
+		{
+			switch (field)
+			{
+				case BUY_PRICE:
+					return market.low(slot);
+				case SELL_PRICE:
+					return market.high(slot);
+				case TAX:
+					return geTax[slot];
+				case PROFIT:
+					return profit[slot];
+				case ROI:
+					return roi[slot];
+				case LIMIT:
+					return limit[slot];
+				case VOLUME:
+					return totalVolume[slot];
+				case LIMIT_COST:
+					return limitCost[slot];
+				default:
+					return field.of(this);
+			}
+		}
+
+		@Override
+		public int getItemId()
+		{
+			return market.itemId(slot);
+		}
+
+		@Override
+		public String getName()
+		{
+			return name(slot);
+		}
+
+		@Override
+		public boolean isMembers()
+		{
+			return catalogue.members(catalogueIndex[slot]);
+		}
+
+		@Override
+		public int getBuyPrice()
+		{
+			return market.low(slot);
+		}
+
+		@Override
+		public int getSellPrice()
+		{
+			return market.high(slot);
+		}
+
+		@Override
+		public int getGeTax()
+		{
+			return geTax[slot];
+		}
+
+		@Override
+		public int getProfit()
+		{
+			return profit[slot];
+		}
+
+		@Override
+		public double getRoi()
+		{
+			return roi[slot];
+		}
+
+		@Override
+		public int getLimit()
+		{
+			return limit[slot];
+		}
+
+		@Override
+		public int getVolume()
+		{
+			return totalVolume[slot];
+		}
+
+		@Override
+		public long getLimitCost()
+		{
+			return limitCost[slot];
+		}
+
+		@Override
+		public int getHighAlch()
+		{
+			return catalogue.highAlch(catalogueIndex[slot]);
+		}
+	}
+}
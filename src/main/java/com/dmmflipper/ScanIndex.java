@@ -0,0 +1,407 @@
+package com.dmmflipper;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Secondary indexes over the {@link ScanColumns}, updated with them as snapshots arrive, so a full
+ * pass can narrow a strategy to the items it could accept before running any per-item check.
+ * <p>
+ * Volume and buy limit are kept as bit sets of the items at or above each of a few fixed tiers, and
+ * membership as one more bit set; those filters become word-wise ANDs. Buy price, limit cost and
+ * oldest trade time are kept as sorted (value, slot) columns, so ranges such as {@code buyPrice <=
+ * maxPrice} and the freshness cut-off (which moves with the clock) are a binary search. A range that
+ * matches more items than are still in play is checked against those items instead, so a narrow
+ * query only touches its candidates.
+ * <p>
+ * Only items with both prices, both trade times and a catalogue row are indexed. Results are
+ * supersets: a tier may admit items just under a threshold, so every candidate is still run
+ * through {@link StrategyPipeline#evaluate}.
+ */
+final class ScanIndex
+{
+	private static final int[] VOLUME_TIERS = {1, 10, 50, 100, 500, 1_000, 10_000, 100_000};
+	private static final int[] LIMIT_TIERS = {10, 100, 1_000, 10_000};
+
+	private final ScanColumns columns;
+	private final BitSet members = new BitSet();
+	// volumeAtLeast[t] holds the items with a volume of at least VOLUME_TIERS[t]
+	private final BitSet[] volumeAtLeast = tiers(VOLUME_TIERS.length);
+	private final BitSet[] limitAtLeast = tiers(LIMIT_TIERS.length);
+	// Number of tiers each slot is in, so an update only touches the bits that change
+	private byte[] volumeTier = new byte[0];
+	private byte[] limitTier = new byte[0];
+	private final SortedColumn oldestTime = new SortedColumn();
+	private final SortedColumn buyPrice = new SortedColumn();
+	private final SortedColumn limitCost = new SortedColumn();
+
+	ScanIndex(ScanColumns columns)
+	{
+		this.columns = columns;
+	}
+
+	private static BitSet[] tiers(int count)
+	{
+		BitSet[] tiers = new BitSet[count];
+		for (int t = 0; t < count; t++)
+		{
+			tiers[t] = new BitSet();
+		}
+		return tiers;
+	}
+
+	/**
+	 * Re-indexes every slot. Values that didn't change keep their place, so after a catalogue
+	 * reload (same prices, new rows) this is a pass over the columns without any sorting.
+	 */
+	void rebuild(int slotCount)
+	{
+		// Slots beyond the new market, left by a larger one
+		for (int slot = slotCount; slot < volumeTier.length; slot++)
+		{
+			index(slot, false);
+		}
+
+		BitSet slots = new BitSet(slotCount);
+		slots.set(0, slotCount);
+		update(slots);
+	}
+
+	/**
+	 * Re-indexes {@code changedSlots} from the columns, which must already hold their new values
+	 */
+	void update(BitSet changedSlots)
+	{
+		for (int slot = changedSlots.nextSetBit(0); slot >= 0; slot = changedSlots.nextSetBit(slot + 1))
+		{
+			index(slot, columns.isCandidate(slot));
+		}
+
+		oldestTime.commit();
+		buyPrice.commit();
+		limitCost.commit();
+	}
+
+	private void index(int slot, boolean valid)
+	{
+		if (slot >= volumeTier.length)
+		{
+			int capacity = Math.max(slot + 1, volumeTier.length * 2);
+			volumeTier = Arrays.copyOf(volumeTier, capacity);
+			limitTier = Arrays.copyOf(limitTier, capacity);
+		}
+
+		members.set(slot, valid && columns.members(slot));
+		volumeTier[slot] = moveTier(volumeAtLeast, VOLUME_TIERS, slot, volumeTier[slot], valid ? columns.totalVolume(slot) : -1);
+		limitTier[slot] = moveTier(limitAtLeast, LIMIT_TIERS, slot, limitTier[slot], valid ? columns.limit(slot) : -1);
+
+		if (valid)
+		{
+			oldestTime.put(slot, columns.oldestTime(slot));
+			buyPrice.put(slot, columns.buyPrice(slot));
+			limitCost.put(slot, columns.limitCost(slot));
+		}
+		else
+		{
+			oldestTime.remove(slot);
+			buyPrice.remove(slot);
+			limitCost.remove(slot);
+		}
+	}
+
+	/**
+	 * Moves {@code slot} from the tiers it was in to those {@code value} reaches
+	 *
+	 * @return the number of tiers it is in now
+	 */
+	private static byte moveTier(BitSet[] atLeast, int[] tiers, int slot, byte was, int value)
+	{
+		byte now = 0;
+		while (now < tiers.length && value >= tiers[now])
+		{
+			now++;
+		}
+		for (int t = now; t < was; t++)
+		{
+			atLeast[t].clear(slot);
+		}
+		for (int t = was; t < now; t++)
+		{
+			atLeast[t].set(slot);
+		}
+		return now;
+	}
+
+	/**
+	 * Exactly the items passing {@link ScanColumns#isFresh} at {@code currentTime}
+	 */
+	BitSet fresh(long currentTime, int maxAge)
+	{
+		// An age of maxAge minutes still passes, so the oldest trade may be up to (maxAge + 1) * 60 - 1 seconds old
+		BitSet slots = new BitSet();
+		oldestTime.select(slots, Math.max(0, currentTime - (maxAge + 1) * 60L + 1), SortedColumn.MAX_KEY);
+		return slots;
+	}
+
+	/**
+	 * Removes from {@code slots} items whose {@code field} is known to be outside [min, max].
+	 *
+	 * @return false, leaving {@code slots} alone, when {@code field} isn't indexed
+	 */
+	boolean narrow(BitSet slots, StrategyExpressions.ItemField field, double min, double max)
+	{
+		switch (field)
+		{
+			case BUY_PRICE:
+				narrow(slots, buyPrice, field, min, max);
+				return true;
+			case LIMIT_COST:
+				narrow(slots, limitCost, field, min, max);
+				return true;
+			case VOLUME:
+				narrow(slots, volumeAtLeast, VOLUME_TIERS, min, max);
+				return true;
+			case LIMIT:
+				narrow(slots, limitAtLeast, LIMIT_TIERS, min, max);
+				return true;
+			case MEMBERS:
+				// 1 for members items, 0 for the rest
+				if (min > 1 || max < 1)
+				{
+					slots.andNot(members);
+				}
+				if (min > 0 || max < 0)
+				{
+					slots.and(members);
+				}
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Narrows {@code slots} to items in at least one of the ranges {@code from .. to - 1}, for an {@code ||} filter.
+	 *
+	 * @return false, leaving {@code slots} alone, when one of the fields isn't indexed
+	 */
+	boolean narrowAny(BitSet slots, StrategyExpressions.ItemField[] fields, double[] min, double[] max, int from, int to)
+	{
+		BitSet any = new BitSet();
+		for (int j = from; j < to; j++)
+		{
+			BitSet alternative = (BitSet) slots.clone();
+			if (!narrow(alternative, fields[j], min[j], max[j]))
+			{
+				return false;
+			}
+			any.or(alternative);
+		}
+		slots.and(any);
+		return true;
+	}
+
+	private void narrow(BitSet slots, BitSet[] atLeast, int[] tiers, double min, double max)
+	{
+		// Values are whole numbers, so value >= min is value >= ceil(min)
+		double lowest = Math.ceil(min);
+		for (int t = tiers.length - 1; t >= 0; t--)
+		{
+			if (tiers[t] <= lowest)
+			{
+				slots.and(atLeast[t]);
+				break;
+			}
+		}
+		for (int t = 0; t < tiers.length; t++)
+		{
+			if (tiers[t] > max)
+			{
+				slots.andNot(atLeast[t]);
+				break;
+			}
+		}
+	}
+
+	private void narrow(BitSet slots, SortedColumn column, StrategyExpressions.ItemField field, double min, double max)
+	{
+		if (max < min || max < 0)
+		{
+			slots.clear();
+			return;
+		}
+
+		long low = min <= 0 ? 0 : (long) Math.min(Math.ceil(min), SortedColumn.MAX_KEY);
+		long high = (long) Math.min(Math.floor(max), SortedColumn.MAX_KEY);
+		int from = column.lowerBound(low);
+		int to = column.lowerBound(high + 1);
+
+		if (to - from <= slots.cardinality())
+		{
+			BitSet inRange = new BitSet();
+			column.select(inRange, from, to);
+			slots.and(inRange);
+			return;
+		}
+
+		// Fewer items left than in the range: check those against the columns instead
+		ScanColumns.Cursor item = columns.cursor();
+		for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1))
+		{
+			double value = item.at(slot).value(field);
+			if (value < min || value > max)
+			{
+				slots.clear(slot);
+			}
+		}
+	}
+
+	/**
+	 * Indexed slots ordered by a non-negative value, each entry packing the value above the slot so
+	 * a plain sort orders them. Changes are collected with {@link #put} and {@link #remove} and
+	 * merged in by {@link #commit}; a slot put with the value it already has costs nothing.
+	 */
+	private static final class SortedColumn
+	{
+		private static final int SLOT_BITS = 20;
+		private static final long SLOT_MASK = (1L << SLOT_BITS) - 1;
+		private static final long ABSENT = -1;
+		// Larger values (only ever limit costs beyond any budget) are clamped, which keeps ranges supersets
+		static final long MAX_KEY = (1L << (63 - SLOT_BITS)) - 1;
+
+		private long[] entries = new long[0];
+		private int size;
+		// Current entry of each slot, ABSENT when it isn't indexed
+		private long[] entryOf = new long[0];
+		// Slots whose entry in 'entries' is out of date, and the new entries to merge in
+		private final BitSet moved = new BitSet();
+		private long[] pending = new long[64];
+		private int pendingSize;
+		// Merge target, swapped with entries on each commit
+		private long[] spare = new long[0];
+
+		void put(int slot, long value)
+		{
+			long entry = Math.min(Math.max(value, 0), MAX_KEY) << SLOT_BITS | slot;
+			if (entryOf(slot) == entry)
+			{
+				return;
+			}
+
+			remove(slot);
+			entryOf[slot] = entry;
+			if (pendingSize == pending.length)
+			{
+				pending = Arrays.copyOf(pending, pending.length * 2);
+			}
+			pending[pendingSize++] = entry;
+		}
+
+		void remove(int slot)
+		{
+			if (entryOf(slot) != ABSENT)
+			{
+				moved.set(slot);
+				entryOf[slot] = ABSENT;
+			}
+		}
+
+		private long entryOf(int slot)
+		{
+			if (slot >= entryOf.length)
+			{
+				int length = entryOf.length;
+				entryOf = Arrays.copyOf(entryOf, Math.max(slot + 1, length * 2));
+				Arrays.fill(entryOf, length, entryOf.length, ABSENT);
+			}
+			return entryOf[slot];
+		}
+
+		/**
+		 * Drops the out of date entries and merges in the new ones
+		 */
+		void commit()
+		{
+			if (pendingSize == 0 && moved.isEmpty())
+			{
+				return;
+			}
+
+			Arrays.sort(pending, 0, pendingSize);
+			if (spare.length < size + pendingSize)
+			{
+				spare = new long[Math.max(size + pendingSize, spare.length * 2)];
+			}
+
+			int n = 0;
+			int i = 0;
+			int j = 0;
+			while (i < size || j < pendingSize)
+			{
+				if (i < size && moved.get((int) (entries[i] & SLOT_MASK)))
+				{
+					i++;
+				}
+				else if (j == pendingSize || (i < size && entries[i] < pending[j]))
+				{
+					spare[n++] = entries[i++];
+				}
+				else
+				{
+					spare[n++] = pending[j++];
+				}
+			}
+
+			long[] merged = spare;
+			spare = entries;
+			entries = merged;
+			size = n;
+			pendingSize = 0;
+			moved.clear();
+		}
+
+		/**
+		 * Position of the first entry with a value of at least {@code value}
+		 */
+		int lowerBound(long value)
+		{
+			if (value > MAX_KEY)
+			{
+				return size;
+			}
+
+			long key = value << SLOT_BITS;
+			int low = 0;
+			int high = size;
+			while (low < high)
+			{
+				int mid = (low + high) >>> 1;
+				if (entries[mid] < key)
+				{
+					low = mid + 1;
+				}
+				else
+				{
+					high = mid;
+				}
+			}
+			return low;
+		}
+
+		void select(BitSet slots, long minValue, long maxValue)
+		{
+			select(slots, lowerBound(minValue), lowerBound(maxValue + 1));
+		}
+
+		/**
+		 * Sets the slots of entries {@code from .. to - 1}
+		 */
+		void select(BitSet slots, int from, int to)
+		{
+			for (int i = from; i < to; i++)
+			{
+				slots.set((int) (entries[i] & SLOT_MASK));
+			}
+		}
+	}
+}
@@ -0,0 +1,909 @@
+package com.dmmflipper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Parser and compiler for the expressions in a {@link StrategySpec}.
+ * <p>
+ * Parsing yields a small tree. Binding replaces parameter names with their values and folds every
+ * constant subtree, and compiling turns what is left into nested lambdas over {@link MarketItem},
+ * with comparisons against a constant specialised, so nothing is looked up or interpreted per item.
+ * Numbers are doubles; comparisons, {@code &&}, {@code ||} and {@code !} give 1 or 0 and any
+ * non-zero value is true.
+ */
+final class StrategyExpressions
+{
+	/**
+	 * Item values an expression can refer to by name
+	 */
+	enum ItemField
+	{
+		ITEM_ID("itemId", MarketItem::getItemId),
+		MEMBERS("members", item -> item.isMembers() ? 1 : 0),
+		BUY_PRICE("buyPrice", MarketItem::getBuyPrice),
+		SELL_PRICE("sellPrice", MarketItem::getSellPrice),
+		TAX("tax", MarketItem::getGeTax),
+		PROFIT("profit", MarketItem::getProfit),
+		ROI("roi", MarketItem::getRoi),
+		LIMIT("limit", MarketItem::getLimit),
+		VOLUME("volume", MarketItem::getVolume),
+		LIMIT_COST("limitCost", MarketItem::getLimitCost),
+		HIGH_ALCH("highAlch", MarketItem::getHighAlch);
+
+		private final String key;
+		private final ToDoubleFunction<MarketItem> getter;
+
+		ItemField(String key, ToDoubleFunction<MarketItem> getter)
+		{
+			this.key = key;
+			this.getter = getter;
+		}
+
+		double of(MarketItem item)
+		{
+			return getter.applyAsDouble(item);
+		}
+	}
+
+	static final Map<String, ItemField> FIELDS;
+
+	static
+	{
+		Map<String, ItemField> fields = new HashMap<>();
+		for (ItemField field : ItemField.values())
+		{
+			fields.put(field.key, field);
+		}
+		FIELDS = Collections.unmodifiableMap(fields);
+	}
+
+	/**
+	 * A {@code field op constant} filter as the closed interval of values that pass.
+	 * {@link StrategyPipeline} checks these straight against the scan columns instead of calling them.
+	 */
+	static final class FieldRange implements Predicate<MarketItem>
+	{
+		final ItemField field;
+		final double min;
+		final double max;
+
+		FieldRange(ItemField field, double min, double max)
+		{
+			this.field = field;
+			this.min = min;
+			this.max = max;
+		}
+
+		@Override
+		public boolean test(MarketItem item)
+		{
+			double value = field.of(item);
+			return value >= min && value <= max;
+		}
+	}
+
+	/**
+	 * An expression that is just an item value, which {@link StrategyPipeline} reads straight from the columns
+	 */
+	static final class FieldValue implements ToDoubleFunction<MarketItem>, ToIntFunction<MarketItem>
+	{
+		final ItemField field;
+
+		FieldValue(ItemField field)
+		{
+			this.field = field;
+		}
+
+		@Override
+		public double applyAsDouble(MarketItem item)
+		{
+			// Scans always pass a cursor, which reads the column without going through the getter
+			return item instanceof ScanColumns.Cursor ? ((ScanColumns.Cursor) item).value(field) : field.of(item);
+		}
+
+		@Override
+		public int applyAsInt(MarketItem item)
+		{
+			return (int) applyAsDouble(item);
+		}
+	}
+
+	/**
+	 * A filter passing when any of its {@link FieldRange}s does, e.g. {@code limitCost <= budget || buyPrice <= budget}
+	 */
+	static final class AnyRange implements Predicate<MarketItem>
+	{
+		final FieldRange[] ranges;
+
+		AnyRange(FieldRange[] ranges)
+		{
+			this.ranges = ranges;
+		}
+
+		@Override
+		public boolean test(MarketItem item)
+		{
+			for (FieldRange range : ranges)
+			{
+				if (range.test(item))
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	private StrategyExpressions()
+	{
+	}
+
+	/**
+	 * @throws IllegalArgumentException if {@code source} is not a valid expression
+	 */
+	static Node parse(String source)
+	{
+		Parser parser = new Parser(source);
+		Node node = parser.conditional();
+		parser.expectEnd();
+		return node;
+	}
+
+	abstract static class Node
+	{
+		/**
+		 * This tree with parameters replaced by their values and constant subtrees folded
+		 *
+		 * @throws IllegalArgumentException if a name is neither an item value nor in {@code params}
+		 */
+		abstract Node bind(Map<String, Double> params);
+
+		abstract ToDoubleFunction<MarketItem> compile();
+
+		Predicate<MarketItem> compilePredicate()
+		{
+			ToDoubleFunction<MarketItem> value = compile();
+			return item -> value.applyAsDouble(item) != 0;
+		}
+
+		/**
+		 * The operands of a top-level chain of {@code &&}, so each can become its own filter
+		 */
+		List<Node> conjuncts()
+		{
+			return Collections.singletonList(this);
+		}
+
+		boolean isConstant()
+		{
+			return false;
+		}
+
+		/**
+		 * Value of a bound expression that doesn't depend on the item
+		 *
+		 * @throws IllegalArgumentException if it does
+		 */
+		double constantValue(String what)
+		{
+			throw new IllegalArgumentException(what + " must not depend on the item");
+		}
+	}
+
+	private static final class Constant extends Node
+	{
+		private final double value;
+
+		private Constant(double value)
+		{
+			this.value = value;
+		}
+
+		@Override
+		Node bind(Map<String, Double> params)
+		{
+			return this;
+		}
+
+		@Override
+		ToDoubleFunction<MarketItem> compile()
+		{
+			return item -> value;
+		}
+
+		@Override
+		Predicate<MarketItem> compilePredicate()
+		{
+			boolean result = value != 0;
+			return item -> result;
+		}
+
+		@Override
+		boolean isConstant()
+		{
+			return true;
+		}
+
+		@Override
+		double constantValue(String what)
+		{
+			return value;
+		}
+	}
+
+	private static final class Name extends Node
+	{
+		private final String name;
+
+		private Name(String name)
+		{
+			this.name = name;
+		}
+
+		@Override
+		Node bind(Map<String, Double> params)
+		{
+			// Parameters win so specs can't be broken by a future item value of the same name
+			Double param = params.get(name);
+			if (param != null)
+			{
+				return new Constant(param);
+			}
+			if (FIELDS.containsKey(name))
+			{
+				return new Field(FIELDS.get(name));
+			}
+			throw new IllegalArgumentException("Unknown name '" + name + "'");
+		}
+
+		@Override
+		ToDoubleFunction<MarketItem> compile()
+		{
+			throw new IllegalStateException("'" + name + "' is not bound");
+		}
+	}
+
+	private static final class Field extends Node
+	{
+		private final ItemField field;
+
+		private Field(ItemField field)
+		{
+			this.field = field;
+		}
+
+		@Override
+		Node bind(Map<String, Double> params)
+		{
+			return this;
+		}
+
+		@Override
+		ToDoubleFunction<MarketItem> compile()
+		{
+			return new FieldValue(field);
+		}
+	}
+
+	private static final class Unary extends Node
+	{
+		private final char op;
+		private final Node operand;
+
+		private Unary(char op, Node operand)
+		{
+			this.op = op;
+			this.operand = operand;
+		}
+
+		@Override
+		Node bind(Map<String, Double> params)
+		{
+			Unary bound = new Unary(op, operand.bind(params));
+			return bound.operand.isConstant() ? new Constant(bound.compile().applyAsDouble(null)) : bound;
+		}
+
+		@Override
+		ToDoubleFunction<MarketItem> compile()
+		{
+			ToDoubleFunction<MarketItem> a = operand.compile();
+			if (op == '-')
+			{
+				return item -> -a.applyAsDouble(item);
+			}
+			Predicate<MarketItem> p = operand.compilePredicate();
+			return item -> p.test(item) ? 0 : 1;
+		}
+
+		@Override
+		Predicate<MarketItem> compilePredicate()
+		{
+			if (op == '!')
+			{
+				return operand.compilePredicate().negate();
+			}
+			return super.compilePredicate();
+		}
+	}
+
+	private static final class Binary extends Node
+	{
+		private final String op;
+		private final Node left;
+		private final Node right;
+
+		private Binary(String op, Node left, Node right)
+		{
+			this.op = op;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		Node bind(Map<String, Double> params)
+		{
+			Binary bound = new Binary(op, left.bind(params), right.bind(params));
+			if (bound.left.isConstant() && bound.right.isConstant())
+			{
+				return new Constant(bound.compile().applyAsDouble(null));
+			}
+			return bound;
+		}
+
+		@Override
+		List<Node> conjuncts()
+		{
+			if (!op.equals("&&"))
+			{
+				return super.conjuncts();
+			}
+			List<Node> conjuncts = new ArrayList<>(left.conjuncts());
+			conjuncts.addAll(right.conjuncts());
+			return conjuncts;
+		}
+
+		@Override
+		ToDoubleFunction<MarketItem> compile()
+		{
+			if (isLogical() || isComparison())
+			{
+				Predicate<MarketItem> p = compilePredicate();
+				return item -> p.test(item) ? 1 : 0;
+			}
+
+			ToDoubleFunction<MarketItem> a = left.compile();
+			if (right.isConstant())
+			{
+				double c = right.constantValue(op);
+				switch (op)
+				{
+					case "+":
+						return item -> a.applyAsDouble(item) + c;
+					case "-":
+						return item -> a.applyAsDouble(item) - c;
+					case "*":
+						return item -> a.applyAsDouble(item) * c;
+					case "/":
+						return item -> a.applyAsDouble(item) / c;
+					default:
+						throw new IllegalStateException("Unknown operator " + op);
+				}
+			}
+
+			ToDoubleFunction<MarketItem> b = right.compile();
+			switch (op)
+			{
+				case "+":
+					return item -> a.applyAsDouble(item) + b.applyAsDouble(item);
+				case "-":
+					return item -> a.applyAsDouble(item) - b.applyAsDouble(item);
+				case "*":
+					return item -> a.applyAsDouble(item) * b.applyAsDouble(item);
+				case "/":
+					return item -> a.applyAsDouble(item) / b.applyAsDouble(item);
+				default:
+					throw new IllegalStateException("Unknown operator " + op);
+			}
+		}
+
+		@Override
+		Predicate<MarketItem> compilePredicate()
+		{
+			if (op.equals("&&"))
+			{
+				return left.compilePredicate().and(right.compilePredicate());
+			}
+			if (op.equals("||"))
+			{
+				Predicate<MarketItem> a = left.compilePredicate();
+				Predicate<MarketItem> b = right.compilePredicate();
+				List<FieldRange> ranges = new ArrayList<>();
+				if (addRanges(a, ranges) && addRanges(b, ranges))
+				{
+					return new AnyRange(ranges.toArray(new FieldRange[0]));
+				}
+				return a.or(b);
+			}
+			if (!isComparison())
+			{
+				return super.compilePredicate();
+			}
+
+			FieldRange range = range();
+			if (range != null)
+			{
+				return range;
+			}
+
+			ToDoubleFunction<MarketItem> a = left.compile();
+			if (right.isConstant())
+			{
+				// The common filter shape, e.g. volume >= 50
+				double c = right.constantValue(op);
+				switch (op)
+				{
+					case "<":
+						return item -> a.applyAsDouble(item) < c;
+					case "<=":
+						return item -> a.applyAsDouble(item) <= c;
+					case ">":
+						return item -> a.applyAsDouble(item) > c;
+					case ">=":
+						return item -> a.applyAsDouble(item) >= c;
+					case "==":
+						return item -> a.applyAsDouble(item) == c;
+					default:
+						return item -> a.applyAsDouble(item) != c;
+				}
+			}
+
+			ToDoubleFunction<MarketItem> b = right.compile();
+			switch (op)
+			{
+				case "<":
+					return item -> a.applyAsDouble(item) < b.applyAsDouble(item);
+				case "<=":
+					return item -> a.applyAsDouble(item) <= b.applyAsDouble(item);
+				case ">":
+					return item -> a.applyAsDouble(item) > b.applyAsDouble(item);
+				case ">=":
+					return item -> a.applyAsDouble(item) >= b.applyAsDouble(item);
+				case "==":
+					return item -> a.applyAsDouble(item) == b.applyAsDouble(item);
+				default:
+					return item -> a.applyAsDouble(item) != b.applyAsDouble(item);
+			}
+		}
+
+		private static boolean addRanges(Predicate<MarketItem> predicate, List<FieldRange> ranges)
+		{
+			if (predicate instanceof FieldRange)
+			{
+				ranges.add((FieldRange) predicate);
+				return true;
+			}
+			if (predicate instanceof AnyRange)
+			{
+				Collections.addAll(ranges, ((AnyRange) predicate).ranges);
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * This comparison as an interval if it compares an item value with a constant, else null
+		 */
+		private FieldRange range()
+		{
+			String cmp = op;
+			Node field = left;
+			Node constant = right;
+			if (left.isConstant() && right instanceof Field)
+			{
+				// 50 <= volume is volume >= 50
+				field = right;
+				constant = left;
+				cmp = cmp.replace('<', '#').replace('>', '<').replace('#', '>');
+			}
+			if (!(field instanceof Field) || !constant.isConstant() || cmp.equals("!="))
+			{
+				return null;
+			}
+
+			ItemField f = ((Field) field).field;
+			double c = constant.constantValue(cmp);
+			switch (cmp)
+			{
+				case "<":
+					return new FieldRange(f, Double.NEGATIVE_INFINITY, Math.nextDown(c));
+				case "<=":
+					return new FieldRange(f, Double.NEGATIVE_INFINITY, c);
+				case ">":
+					return new FieldRange(f, Math.nextUp(c), Double.POSITIVE_INFINITY);
+				case ">=":
+					return new FieldRange(f, c, Double.POSITIVE_INFINITY);
+				default:
+					return new FieldRange(f, c, c);
+			}
+		}
+
+		private boolean isLogical()
+		{
+			return op.equals("&&") || op.equals("||");
+		}
+
+		private boolean isComparison()
+		{
+			switch (op)
+			{
+				case "<":
+				case "<=":
+				case ">":
+				case ">=":
+				case "==":
+				case "!=":
+					return true;
+				default:
+					return false;
+			}
+		}
+	}
+
+	private static final class Conditional extends Node
+	{
+		private final Node condition;
+		private final Node then;
+		private final Node otherwise;
+
+		private Conditional(Node condition, Node then, Node otherwise)
+		{
+			this.condition = condition;
+			this.then = then;
+			this.otherwise = otherwise;
+		}
+
+		@Override
+		Node bind(Map<String, Double> params)
+		{
+			Node c = condition.bind(params);
+			if (c.isConstant())
+			{
+				return c.constantValue("condition") != 0 ? then.bind(params) : otherwise.bind(params);
+			}
+			return new Conditional(c, then.bind(params), otherwise.bind(params));
+		}
+
+		@Override
+		ToDoubleFunction<MarketItem> compile()
+		{
+			Predicate<MarketItem> c = condition.compilePredicate();
+			ToDoubleFunction<MarketItem> a = then.compile();
+			ToDoubleFunction<MarketItem> b = otherwise.compile();
+			return item -> c.test(item) ? a.applyAsDouble(item) : b.applyAsDouble(item);
+		}
+	}
+
+	private static final class Call extends Node
+	{
+		private final String function;
+		private final List<Node> args;
+
+		private Call(String function, List<Node> args)
+		{
+			this.function = function;
+			this.args = args;
+		}
+
+		@Override
+		Node bind(Map<String, Double> params)
+		{
+			List<Node> bound = new ArrayList<>(args.size());
+			boolean constant = true;
+			for (Node arg : args)
+			{
+				Node b = arg.bind(params);
+				bound.add(b);
+				constant &= b.isConstant();
+			}
+
+			Call call = new Call(function, bound);
+			return constant ? new Constant(call.compile().applyAsDouble(null)) : call;
+		}
+
+		@Override
+		ToDoubleFunction<MarketItem> compile()
+		{
+			ToDoubleFunction<MarketItem> a = args.get(0).compile();
+			switch (function)
+			{
+				case "log":
+					return item -> Math.log(a.applyAsDouble(item));
+				case "sqrt":
+					return item -> Math.sqrt(a.applyAsDouble(item));
+				case "abs":
+					return item -> Math.abs(a.applyAsDouble(item));
+				case "min":
+				{
+					ToDoubleFunction<MarketItem> b = args.get(1).compile();
+					return item -> Math.min(a.applyAsDouble(item), b.applyAsDouble(item));
+				}
+				case "max":
+				{
+					ToDoubleFunction<MarketItem> b = args.get(1).compile();
+					return item -> Math.max(a.applyAsDouble(item), b.applyAsDouble(item));
+				}
+				default:
+					throw new IllegalStateException("Unknown function " + function);
+			}
+		}
+
+		static int arity(String function)
+		{
+			switch (function)
+			{
+				case "log":
+				case "sqrt":
+				case "abs":
+					return 1;
+				case "min":
+				case "max":
+					return 2;
+				default:
+					return -1;
+			}
+		}
+	}
+
+	/**
+	 * Recursive descent over: conditional := or ('?' conditional ':' conditional)?,
+	 * or := and ('||' and)*, and := comparison ('&&' comparison)*,
+	 * comparison := sum (('<' | '<=' | '>' | '>=' | '==' | '!=') sum)?,
+	 * sum := product (('+' | '-') product)*, product := unary (('*' | '/') unary)*,
+	 * unary := ('-' | '!') unary | number | name | name '(' args ')' | '(' conditional ')'
+	 */
+	private static final class Parser
+	{
+		private final String source;
+		private int pos;
+
+		private Parser(String source)
+		{
+			this.source = source;
+		}
+
+		Node conditional()
+		{
+			Node condition = or();
+			if (!accept("?"))
+			{
+				return condition;
+			}
+			Node then = conditional();
+			expect(":");
+			return new Conditional(condition, then, conditional());
+		}
+
+		private Node or()
+		{
+			Node node = and();
+			while (accept("||"))
+			{
+				node = new Binary("||", node, and());
+			}
+			return node;
+		}
+
+		private Node and()
+		{
+			Node node = comparison();
+			while (accept("&&"))
+			{
+				node = new Binary("&&", node, comparison());
+			}
+			return node;
+		}
+
+		private Node comparison()
+		{
+			Node node = sum();
+			for (String op : new String[]{"<=", ">=", "==", "!=", "<", ">"})
+			{
+				if (accept(op))
+				{
+					return new Binary(op, node, sum());
+				}
+			}
+			return node;
+		}
+
+		private Node sum()
+		{
+			Node node = product();
+			while (true)
+			{
+				if (accept("+"))
+				{
+					node = new Binary("+", node, product());
+				}
+				else if (accept("-"))
+				{
+					node = new Binary("-", node, product());
+				}
+				else
+				{
+					return node;
+				}
+			}
+		}
+
+		private Node product()
+		{
+			Node node = unary();
+			while (true)
+			{
+				if (accept("*"))
+				{
+					node = new Binary("*", node, unary());
+				}
+				else if (accept("/"))
+				{
+					node = new Binary("/", node, unary());
+				}
+				else
+				{
+					return node;
+				}
+			}
+		}
+
+		private Node unary()
+		{
+			if (accept("-"))
+			{
+				return new Unary('-', unary());
+			}
+			if (peek() == '!' && !source.startsWith("!=", pos))
+			{
+				pos++;
+				return new Unary('!', unary());
+			}
+			if (accept("("))
+			{
+				Node node = conditional();
+				expect(")");
+				return node;
+			}
+
+			char c = peek();
+			if (Character.isDigit(c) || c == '.')
+			{
+				return number();
+			}
+			if (Character.isLetter(c))
+			{
+				String name = name();
+				if (!accept("("))
+				{
+					return new Name(name);
+				}
+				return call(name);
+			}
+			throw error(c == 0 ? "Unexpected end of expression" : "Unexpected '" + c + "'");
+		}
+
+		private Node call(String function)
+		{
+			int arity = Call.arity(function);
+			if (arity < 0)
+			{
+				throw error("Unknown function '" + function + "'");
+			}
+
+			List<Node> args = new ArrayList<>(arity);
+			args.add(conditional());
+			while (accept(","))
+			{
+				args.add(conditional());
+			}
+			expect(")");
+
+			if (args.size() != arity)
+			{
+				throw error(function + " takes " + arity + " argument" + (arity == 1 ? "" : "s"));
+			}
+			return new Call(function, args);
+		}
+
+		private Node number()
+		{
+			int start = pos;
+			while (pos < source.length()
+				&& (Character.isDigit(source.charAt(pos)) || source.charAt(pos) == '.' || source.charAt(pos) == '_'))
+			{
+				pos++;
+			}
+
+			String digits = source.substring(start, pos).replace("_", "");
+			try
+			{
+				return new Constant(Double.parseDouble(digits));
+			}
+			catch (NumberFormatException e)
+			{
+				pos = start;
+				throw error("Bad number '" + digits + "'");
+			}
+		}
+
+		private String name()
+		{
+			int start = pos;
+			while (pos < source.length() && Character.isLetterOrDigit(source.charAt(pos)))
+			{
+				pos++;
+			}
+			return source.substring(start, pos);
+		}
+
+		private char peek()
+		{
+			skipSpaces();
+			return pos < source.length() ? source.charAt(pos) : 0;
+		}
+
+		private boolean accept(String token)
+		{
+			skipSpaces();
+			if (!source.startsWith(token, pos))
+			{
+				return false;
+			}
+
+			// Don't take '<' from '<=', '|' from '||' and so on
+			if (token.length() == 1 && pos + 1 < source.length() && "=|&".indexOf(source.charAt(pos + 1)) >= 0
+				&& "<>=!|&".indexOf(token.charAt(0)) >= 0)
+			{
+				return false;
+			}
+
+			pos += token.length();
+			return true;
+		}
+
+		private void expect(String token)
+		{
+			if (!accept(token))
+			{
+				throw error("Expected '" + token + "'");
+			}
+		}
+
+		void expectEnd()
+		{
+			if (peek() != 0)
+			{
+				throw error("Unexpected '" + source.charAt(pos) + "'");
+			}
+		}
+
+		private void skipSpaces()
+		{
+			while (pos < source.length() && Character.isWhitespace(source.charAt(pos)))
+			{
+				pos++;
+			}
+		}
+
+		private IllegalArgumentException error(String message)
+		{
+			return new IllegalArgumentException(message + " at column " + (pos + 1) + " of '" + source + "'");
+		}
+	}
+}
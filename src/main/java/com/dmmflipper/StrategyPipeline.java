@@ -0,0 +1,212 @@
+package com.dmmflipper;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * A {@link FlipStrategy} unpacked once for the scan loop: freshness check, then the filters, then
+ * the opportunity, with the score and tiebreak read back when it is ranked.
+ * <p>
+ * Filters compiled from a {@link StrategySpec} that compare an item value with a constant are
+ * fused into one interval per value and checked straight against the scan columns in a single
+ * loop, ahead of the remaining filters; {@code ||} chains of such comparisons are checked the same
+ * way, as are a profit, score or tiebreak that is just an item value. The built-in tabs are made
+ * entirely of these. The same ranges narrow a full pass through the {@link ScanIndex} before any
+ * item is evaluated.
+ */
+final class StrategyPipeline
+{
+	private final int maxAgeMinutes;
+	private final StrategyExpressions.ItemField[] rangeFields;
+	private final double[] rangeMin;
+	private final double[] rangeMax;
+	// Alternatives of the i-th || filter are at anyFrom[i] .. anyFrom[i + 1] - 1
+	private final int[] anyFrom;
+	private final StrategyExpressions.ItemField[] anyFields;
+	private final double[] anyMin;
+	private final double[] anyMax;
+	private final Predicate<MarketItem>[] filters;
+	private final ToDoubleFunction<MarketItem> score;
+	private final ToDoubleFunction<MarketItem> tiebreak;
+	private final ToIntFunction<MarketItem> profit;
+
+	// Set when the function is just an item value, which is then read from the columns
+	private final StrategyExpressions.ItemField scoreField;
+	private final StrategyExpressions.ItemField tiebreakField;
+	private final StrategyExpressions.ItemField profitField;
+
+	@SuppressWarnings("unchecked")
+	StrategyPipeline(FlipStrategy strategy)
+	{
+		// Intersect the ranges on each value, keeping the order values were first filtered on
+		Map<StrategyExpressions.ItemField, double[]> ranges = new EnumMap<>(StrategyExpressions.ItemField.class);
+		List<StrategyExpressions.ItemField> order = new ArrayList<>();
+		List<StrategyExpressions.FieldRange[]> any = new ArrayList<>();
+		List<Predicate<MarketItem>> rest = new ArrayList<>();
+		for (Predicate<MarketItem> filter : strategy.getFilters())
+		{
+			if (filter instanceof StrategyExpressions.AnyRange)
+			{
+				any.add(((StrategyExpressions.AnyRange) filter).ranges);
+				continue;
+			}
+			if (!(filter instanceof StrategyExpressions.FieldRange))
+			{
+				rest.add(filter);
+				continue;
+			}
+
+			StrategyExpressions.FieldRange range = (StrategyExpressions.FieldRange) filter;
+			double[] bounds = ranges.get(range.field);
+			if (bounds == null)
+			{
+				ranges.put(range.field, new double[]{range.min, range.max});
+				order.add(range.field);
+			}
+			else
+			{
+				bounds[0] = Math.max(bounds[0], range.min);
+				bounds[1] = Math.min(bounds[1], range.max);
+			}
+		}
+
+		this.rangeFields = order.toArray(new StrategyExpressions.ItemField[0]);
+		this.rangeMin = new double[rangeFields.length];
+		this.rangeMax = new double[rangeFields.length];
+		for (int i = 0; i < rangeFields.length; i++)
+		{
+			rangeMin[i] = ranges.get(rangeFields[i])[0];
+			rangeMax[i] = ranges.get(rangeFields[i])[1];
+		}
+
+		this.maxAgeMinutes = strategy.getMaxAgeMinutes();
+		this.anyFrom = new int[any.size() + 1];
+		for (int i = 0; i < any.size(); i++)
+		{
+			anyFrom[i + 1] = anyFrom[i] + any.get(i).length;
+		}
+		this.anyFields = new StrategyExpressions.ItemField[anyFrom[any.size()]];
+		this.anyMin = new double[anyFields.length];
+		this.anyMax = new double[anyFields.length];
+		for (int i = 0, j = 0; i < any.size(); i++)
+		{
+			for (StrategyExpressions.FieldRange range : any.get(i))
+			{
+				anyFields[j] = range.field;
+				anyMin[j] = range.min;
+				anyMax[j] = range.max;
+				j++;
+			}
+		}
+		this.filters = rest.toArray(new Predicate[0]);
+		this.score = strategy.getScore();
+		this.tiebreak = strategy.getTiebreak();
+		this.profit = strategy.getProfit();
+		this.scoreField = fieldOf(score);
+		this.tiebreakField = fieldOf(tiebreak);
+		this.profitField = fieldOf(profit);
+	}
+
+	private static StrategyExpressions.ItemField fieldOf(Object function)
+	{
+		return function instanceof StrategyExpressions.FieldValue ? ((StrategyExpressions.FieldValue) function).field : null;
+	}
+
+	/**
+	 * @return the opportunity for the item under {@code item}, or null if it doesn't qualify
+	 */
+	FlipOpportunity evaluate(ScanColumns.Cursor item, long currentTime)
+	{
+		ScanColumns columns = item.columns();
+		int slot = item.slot();
+		if (!columns.isFresh(slot, currentTime, maxAgeMinutes))
+		{
+			return null;
+		}
+
+		for (int i = 0; i < rangeFields.length; i++)
+		{
+			double value = item.value(rangeFields[i]);
+			if (value < rangeMin[i] || value > rangeMax[i])
+			{
+				return null;
+			}
+		}
+
+		for (int i = 0; i + 1 < anyFrom.length; i++)
+		{
+			if (!inAny(item, anyFrom[i], anyFrom[i + 1]))
+			{
+				return null;
+			}
+		}
+
+		for (Predicate<MarketItem> filter : filters)
+		{
+			if (!filter.test(item))
+			{
+				return null;
+			}
+		}
+
+		int shownProfit = profitField != null ? (int) item.value(profitField) : profit.applyAsInt(item);
+		return columns.toOpportunity(slot, shownProfit, currentTime);
+	}
+
+	/**
+	 * Items that may qualify at {@code currentTime}, as far as the index can tell: the fresh ones,
+	 * narrowed by every range and {@code ||} filter on an indexed value. Items outside it would be
+	 * rejected by {@link #evaluate}, so a full pass can skip them.
+	 */
+	BitSet candidates(ScanIndex index, long currentTime)
+	{
+		BitSet slots = index.fresh(currentTime, maxAgeMinutes);
+		for (int i = 0; i < rangeFields.length && !slots.isEmpty(); i++)
+		{
+			index.narrow(slots, rangeFields[i], rangeMin[i], rangeMax[i]);
+		}
+		for (int i = 0; i + 1 < anyFrom.length && !slots.isEmpty(); i++)
+		{
+			index.narrowAny(slots, anyFields, anyMin, anyMax, anyFrom[i], anyFrom[i + 1]);
+		}
+		return slots;
+	}
+
+	private boolean inAny(ScanColumns.Cursor item, int from, int to)
+	{
+		for (int j = from; j < to; j++)
+		{
+			double value = item.value(anyFields[j]);
+			if (value >= anyMin[j] && value <= anyMax[j])
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Epoch second from which the item in {@code slot} is too old to qualify,
+	 * assuming its prices don't change in the meantime.
+	 */
+	long expiresAt(ScanColumns columns, int slot)
+	{
+		return columns.freshUntil(slot, maxAgeMinutes);
+	}
+
+	double score(ScanColumns.Cursor item)
+	{
+		return scoreField != null ? item.value(scoreField) : score.applyAsDouble(item);
+	}
+
+	double tiebreak(ScanColumns.Cursor item)
+	{
+		return tiebreakField != null ? item.value(tiebreakField) : tiebreak.applyAsDouble(item);
+	}
+}
@@ -0,0 +1,305 @@
+package com.dmmflipper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A {@link FlipStrategy} written as text, one per line:
+ * <pre>
+ * Cheap Movers: minVolume = 200; filter = buyPrice &lt;= 50000 &amp;&amp; volume &gt;= minVolume; score = profit * log(volume + 1)
+ * </pre>
+ * After the name come {@code key = expression} clauses separated by {@code ;}:
+ * <ul>
+ * <li>{@code filter} - a condition items must meet; may be repeated, and each operand of a
+ * top-level {@code &&} becomes its own filter, tested in the order written</li>
+ * <li>{@code maxAge} - freshness limit in minutes, defaults to the {@code maxAge} parameter</li>
+ * <li>{@code profit} - profit shown per item, defaults to {@code profit}</li>
+ * <li>{@code score} - ranking score, defaults to the shown profit</li>
+ * <li>{@code tiebreak} - orders equal scores, defaults to 0</li>
+ * <li>any other name defines a named constant with a default value, which the parameters passed
+ * to {@link #compile} override</li>
+ * </ul>
+ * Expressions use the item values {@code itemId, members, buyPrice, sellPrice, tax, profit, roi,
+ * limit, volume, limitCost, highAlch}, parameters, numbers, {@code + - * /}, comparisons,
+ * {@code && || !}, {@code c ? a : b} and {@code min, max, log, sqrt, abs}.
+ * <p>
+ * A spec is parsed once; {@link #compile} binds it to parameter values (the config), folds
+ * constants and returns a strategy made of plain lambdas, so items are never interpreted.
+ */
+@Slf4j
+public final class StrategySpec
+{
+	private static final Pattern CLAUSE = Pattern.compile("\\s*([A-Za-z][A-Za-z0-9]*)\\s*=(?!=)(.*)", Pattern.DOTALL);
+
+	@Getter
+	private final String name;
+
+	@Getter
+	private final String source;
+
+	// Named constants in the order written, each may use the ones before it
+	private final Map<String, StrategyExpressions.Node> defaults = new LinkedHashMap<>();
+	private final List<StrategyExpressions.Node> filters = new ArrayList<>();
+	private StrategyExpressions.Node maxAge;
+	private StrategyExpressions.Node profit;
+	private StrategyExpressions.Node score;
+	private StrategyExpressions.Node tiebreak;
+
+	private Compiled lastCompiled;
+
+	private StrategySpec(String name, String source)
+	{
+		this.name = name;
+		this.source = source;
+	}
+
+	/**
+	 * @throws IllegalArgumentException if {@code line} is not a valid spec
+	 */
+	public static StrategySpec parse(String line)
+	{
+		int colon = line.indexOf(':');
+		if (colon <= 0 || line.substring(0, colon).trim().isEmpty())
+		{
+			throw new IllegalArgumentException("Expected 'Name: key = expression; ...' but got '" + line + "'");
+		}
+
+		StrategySpec spec = new StrategySpec(line.substring(0, colon).trim(), line.trim());
+		for (String clause : line.substring(colon + 1).split(";"))
+		{
+			if (clause.trim().isEmpty())
+			{
+				continue;
+			}
+
+			Matcher m = CLAUSE.matcher(clause);
+			if (!m.matches())
+			{
+				throw new IllegalArgumentException("Expected 'key = expression' but got '" + clause.trim() + "'");
+			}
+			spec.add(m.group(1), StrategyExpressions.parse(m.group(2)));
+		}
+
+		if (spec.maxAge == null)
+		{
+			spec.maxAge = StrategyExpressions.parse("maxAge");
+		}
+		if (spec.profit == null)
+		{
+			spec.profit = StrategyExpressions.parse("profit");
+		}
+		if (spec.score == null)
+		{
+			spec.score = spec.profit;
+		}
+		if (spec.tiebreak == null)
+		{
+			spec.tiebreak = StrategyExpressions.parse("0");
+		}
+		return spec;
+	}
+
+	/**
+	 * Parses one spec per line, skipping blank lines and lines starting with {@code #}.
+	 * Invalid lines are logged and left out.
+	 */
+	public static List<StrategySpec> parseAll(String text)
+	{
+		List<StrategySpec> specs = new ArrayList<>();
+		if (text == null)
+		{
+			return specs;
+		}
+
+		for (String line : text.split("\\R"))
+		{
+			if (line.trim().isEmpty() || line.trim().startsWith("#"))
+			{
+				continue;
+			}
+
+			try
+			{
+				specs.add(parse(line));
+			}
+			catch (IllegalArgumentException e)
+			{
+				log.warn("Ignoring strategy spec: {}", e.getMessage());
+			}
+		}
+		return specs;
+	}
+
+	private void add(String key, StrategyExpressions.Node node)
+	{
+		switch (key)
+		{
+			case "filter":
+				filters.add(node);
+				break;
+			case "maxAge":
+				maxAge = node;
+				break;
+			case "profit":
+				profit = node;
+				break;
+			case "score":
+				score = node;
+				break;
+			case "tiebreak":
+				tiebreak = node;
+				break;
+			default:
+				if (StrategyExpressions.FIELDS.containsKey(key))
+				{
+					throw new IllegalArgumentException("'" + key + "' is an item value and can't be redefined");
+				}
+				defaults.put(key, node);
+				break;
+		}
+	}
+
+	/**
+	 * Binds this spec to {@code params} (which override its named constants) and compiles it.
+	 * Compiling again with equal parameters returns the same strategy.
+	 *
+	 * @throws IllegalArgumentException if an expression uses an unknown name, or {@code maxAge}
+	 *                                  or a named constant depends on the item
+	 */
+	public synchronized FlipStrategy compile(Map<String, ? extends Number> params)
+	{
+		Map<String, Double> bound = new HashMap<>();
+		params.forEach((k, v) -> bound.put(k, v.doubleValue()));
+
+		if (lastCompiled != null && lastCompiled.params.equals(bound))
+		{
+			return lastCompiled;
+		}
+
+		Map<String, Double> values = new HashMap<>(bound);
+		for (Map.Entry<String, StrategyExpressions.Node> constant : defaults.entrySet())
+		{
+			if (!bound.containsKey(constant.getKey()))
+			{
+				values.put(constant.getKey(), constant.getValue().bind(values).constantValue(constant.getKey()));
+			}
+		}
+
+		List<Predicate<MarketItem>> predicates = new ArrayList<>();
+		for (StrategyExpressions.Node filter : filters)
+		{
+			for (StrategyExpressions.Node conjunct : filter.bind(values).conjuncts())
+			{
+				// Conditions that are always true cost nothing per item
+				if (conjunct.isConstant() && conjunct.constantValue("filter") != 0)
+				{
+					continue;
+				}
+				predicates.add(conjunct.compilePredicate());
+			}
+		}
+
+		ToDoubleFunction<MarketItem> profitValue = profit.bind(values).compile();
+		ToIntFunction<MarketItem> profitInt = profitValue instanceof StrategyExpressions.FieldValue
+			? (StrategyExpressions.FieldValue) profitValue
+			: item -> (int) profitValue.applyAsDouble(item);
+		lastCompiled = new Compiled(this, bound,
+			(int) maxAge.bind(values).constantValue("maxAge"),
+			Collections.unmodifiableList(predicates),
+			score.bind(values).compile(),
+			tiebreak.bind(values).compile(),
+			profitInt);
+		return lastCompiled;
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		return o instanceof StrategySpec && source.equals(((StrategySpec) o).source);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return source.hashCode();
+	}
+
+	@Override
+	public String toString()
+	{
+		return source;
+	}
+
+	/**
+	 * A spec bound to one set of parameters; equal to any other compile of the same spec and parameters
+	 */
+	private static final class Compiled implements FlipStrategy
+	{
+		private final StrategySpec spec;
+		private final Map<String, Double> params;
+		@Getter
+		private final int maxAgeMinutes;
+		@Getter
+		private final List<Predicate<MarketItem>> filters;
+		@Getter
+		private final ToDoubleFunction<MarketItem> score;
+		@Getter
+		private final ToDoubleFunction<MarketItem> tiebreak;
+		@Getter
+		private final ToIntFunction<MarketItem> profit;
+
+		private Compiled(StrategySpec spec, Map<String, Double> params, int maxAgeMinutes,
+			List<Predicate<MarketItem>> filters, ToDoubleFunction<MarketItem> score,
+			ToDoubleFunction<MarketItem> tiebreak, ToIntFunction<MarketItem> profit)
+		{
+			this.spec = spec;
+			this.params = params;
+			this.maxAgeMinutes = maxAgeMinutes;
+			this.filters = filters;
+			this.score = score;
+			this.tiebreak = tiebreak;
+			this.profit = profit;
+		}
+
+		@Override
+		public String getName()
+		{
+			return spec.getName();
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof Compiled))
+			{
+				return false;
+			}
+			Compiled other = (Compiled) o;
+			return spec.equals(other.spec) && params.equals(other.params);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return Objects.hash(spec, params);
+		}
+
+		@Override
+		public String toString()
+		{
+			return spec.getName() + " " + params;
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package com.dmmflipper;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import lombok.Getter;
+
+/**
+ * One item's price history from /timeseries, oldest bucket first, held as primitive columns.
+ * Immutable; a bucket without trades on one side has 0 for that side's price.
+ */
+public final class TimeSeries
+{
+	/**
+	 * Bucket sizes the /timeseries endpoint serves
+	 */
+	public enum Timestep
+	{
+		FIVE_MINUTES("5m", 300),
+		ONE_HOUR("1h", 3600),
+		SIX_HOURS("6h", 6 * 3600),
+		ONE_DAY("24h", 24 * 3600);
+
+		@Getter
+		private final String key;
+
+		@Getter
+		private final long seconds;
+
+		Timestep(String key, long seconds)
+		{
+			this.key = key;
+			this.seconds = seconds;
+		}
+	}
+
+	@Getter
+	private final int itemId;
+
+	@Getter
+	private final Timestep timestep;
+
+	/**
+	 * When the response was received (epoch millis)
+	 */
+	@Getter
+	private final long fetchedAt;
+
+	private int size;
+	private long[] timestamp = new long[64];
+	private int[] avgHigh = new int[64];
+	private int[] avgLow = new int[64];
+	private int[] highVolume = new int[64];
+	private int[] lowVolume = new int[64];
+
+	private TimeSeries(int itemId, Timestep timestep, long fetchedAt)
+	{
+		this.itemId = itemId;
+		this.timestep = timestep;
+		this.fetchedAt = fetchedAt;
+	}
+
+	static TimeSeries read(Reader reader, int itemId, Timestep timestep, long fetchedAt) throws IOException
+	{
+		TimeSeries series = new TimeSeries(itemId, timestep, fetchedAt);
+		PriceFeedParser.parseSeries(reader, itemId, series::add);
+
+		// Cached series are weighed by bucket count, so don't keep the growth slack
+		series.timestamp = Arrays.copyOf(series.timestamp, series.size);
+		series.avgHigh = Arrays.copyOf(series.avgHigh, series.size);
+		series.avgLow = Arrays.copyOf(series.avgLow, series.size);
+		series.highVolume = Arrays.copyOf(series.highVolume, series.size);
+		series.lowVolume = Arrays.copyOf(series.lowVolume, series.size);
+		return series;
+	}
+
+	private void add(PriceFeedParser.Row row)
+	{
+		if (size == timestamp.length)
+		{
+			int capacity = size * 2;
+			timestamp = Arrays.copyOf(timestamp, capacity);
+			avgHigh = Arrays.copyOf(avgHigh, capacity);
+			avgLow = Arrays.copyOf(avgLow, capacity);
+			highVolume = Arrays.copyOf(highVolume, capacity);
+			lowVolume = Arrays.copyOf(lowVolume, capacity);
+		}
+
+		timestamp[size] = row.highTime;
+		avgHigh[size] = row.high;
+		avgLow[size] = row.low;
+		highVolume[size] = row.highVolume;
+		lowVolume[size] = row.lowVolume;
+		size++;
+	}
+
+	/**
+	 * Number of buckets
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Start of bucket {@code i} (epoch seconds)
+	 */
+	public long timestamp(int i)
+	{
+		return timestamp[i];
+	}
+
+	public int avgHigh(int i)
+	{
+		return avgHigh[i];
+	}
+
+	public int avgLow(int i)
+	{
+		return avgLow[i];
+	}
+
+	public int highVolume(int i)
+	{
+		return highVolume[i];
+	}
+
+	public int lowVolume(int i)
+	{
+		return lowVolume[i];
+	}
+
+	/**
+	 * Average sell (high) or buy (low) price of the newest bucket that traded on that side
+	 *
+	 * @return the price, or 0 if no bucket did
+	 */
+	public int latestAverage(boolean high)
+	{
+		for (int i = size - 1; i >= 0; i--)
+		{
+			int price = high ? avgHigh[i] : avgLow[i];
+			if (price > 0)
+			{
+				return price;
+			}
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,214 @@
+package com.dmmflipper;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * LRU cache of /timeseries responses keyed by item and timestep, bounded by the total number of
+ * buckets held and by age: a series is refetched once a newer bucket than its own can have closed.
+ * <p>
+ * Loads of the same key are joined, at most {@link #MAX_CONCURRENT_FETCHES} requests are out at
+ * once, and waiting loads are started newest first so the item looked at last comes back first.
+ * Only {@link #MAX_QUEUED} loads wait; older ones are cancelled, so clicking through many items
+ * leaves neither the cache nor the queue growing.
+ */
+@Slf4j
+final class TimeSeriesCache
+{
+	// Roughly 1.2 MB of columns; a full /timeseries response is 365 buckets
+	static final int MAX_BUCKETS = 50_000;
+	static final int MAX_CONCURRENT_FETCHES = 2;
+	static final int MAX_QUEUED = 16;
+
+	@FunctionalInterface
+	interface Loader
+	{
+		CompletableFuture<TimeSeries> load(int itemId, TimeSeries.Timestep timestep);
+	}
+
+	private final Loader loader;
+	private final LinkedHashMap<Long, TimeSeries> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private final Map<Long, CompletableFuture<TimeSeries>> inFlight = new HashMap<>();
+	private final Deque<Pending> queued = new ArrayDeque<>();
+	private int running;
+	private int buckets;
+
+	TimeSeriesCache(Loader loader)
+	{
+		this.loader = loader;
+	}
+
+	/**
+	 * The cached series if it is still current, otherwise a load (joining one already pending).
+	 */
+	CompletableFuture<TimeSeries> get(int itemId, TimeSeries.Timestep timestep, long now)
+	{
+		long key = key(itemId, timestep);
+		CompletableFuture<TimeSeries> future;
+		synchronized (this)
+		{
+			TimeSeries cached = getIfPresent(key, now);
+			if (cached != null)
+			{
+				return CompletableFuture.completedFuture(cached);
+			}
+
+			future = inFlight.get(key);
+			if (future != null)
+			{
+				return future;
+			}
+
+			future = new CompletableFuture<>();
+			inFlight.put(key, future);
+			queued.addLast(new Pending(key, itemId, timestep, future));
+			if (queued.size() > MAX_QUEUED)
+			{
+				Pending dropped = queued.removeFirst();
+				inFlight.remove(dropped.key);
+				dropped.future.completeExceptionally(new CancellationException("Superseded by newer requests"));
+			}
+		}
+
+		startQueued();
+		return future;
+	}
+
+	/**
+	 * The cached series if it is still current; never loads
+	 */
+	synchronized TimeSeries getIfPresent(int itemId, TimeSeries.Timestep timestep, long now)
+	{
+		return getIfPresent(key(itemId, timestep), now);
+	}
+
+	synchronized void clear()
+	{
+		entries.clear();
+		buckets = 0;
+	}
+
+	/**
+	 * Number of buckets held across all cached series
+	 */
+	synchronized int bucketCount()
+	{
+		return buckets;
+	}
+
+	private TimeSeries getIfPresent(long key, long now)
+	{
+		TimeSeries series = entries.get(key);
+		if (series != null && now - series.getFetchedAt() >= series.getTimestep().getSeconds() * 1000)
+		{
+			remove(key);
+			return null;
+		}
+		return series;
+	}
+
+	private void startQueued()
+	{
+		while (true)
+		{
+			Pending next;
+			synchronized (this)
+			{
+				if (running >= MAX_CONCURRENT_FETCHES || queued.isEmpty())
+				{
+					return;
+				}
+				next = queued.removeLast();
+				running++;
+			}
+
+			CompletableFuture<TimeSeries> load;
+			try
+			{
+				load = loader.load(next.itemId, next.timestep);
+			}
+			catch (RuntimeException e)
+			{
+				load = new CompletableFuture<>();
+				load.completeExceptionally(e);
+			}
+			load.whenComplete((series, error) -> finish(next, series, error));
+		}
+	}
+
+	private void finish(Pending pending, TimeSeries series, Throwable error)
+	{
+		synchronized (this)
+		{
+			running--;
+			inFlight.remove(pending.key);
+			if (series != null)
+			{
+				put(pending.key, series);
+			}
+		}
+
+		if (error != null)
+		{
+			log.debug("Time series of item {} ({}) failed", pending.itemId, pending.timestep.getKey(), error);
+			pending.future.completeExceptionally(error);
+		}
+		else
+		{
+			pending.future.complete(series);
+		}
+		startQueued();
+	}
+
+	private void put(long key, TimeSeries series)
+	{
+		remove(key);
+		entries.put(key, series);
+		buckets += series.size();
+
+		// Least recently used first; the series just added always stays
+		Iterator<Map.Entry<Long, TimeSeries>> eldest = entries.entrySet().iterator();
+		while (buckets > MAX_BUCKETS && entries.size() > 1)
+		{
+			buckets -= eldest.next().getValue().size();
+			eldest.remove();
+		}
+	}
+
+	private void remove(long key)
+	{
+		TimeSeries removed = entries.remove(key);
+		if (removed != null)
+		{
+			buckets -= removed.size();
+		}
+	}
+
+	private static long key(int itemId, TimeSeries.Timestep timestep)
+	{
+		return ((long) itemId << 8) | timestep.ordinal();
+	}
+
+	private static final class Pending
+	{
+		private final long key;
+		private final int itemId;
+		private final TimeSeries.Timestep timestep;
+		private final CompletableFuture<TimeSeries> future;
+
+		private Pending(long key, int itemId, TimeSeries.Timestep timestep, CompletableFuture<TimeSeries> future)
+		{
+			this.key = key;
+			this.itemId = itemId;
+			this.timestep = timestep;
+			this.future = future;
+		}
+	}
+}
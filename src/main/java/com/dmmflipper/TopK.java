@@ -0,0 +1,116 @@
+package com.dmmflipper;
+
+/**
+ * Bounded selection of the {@code k} best slots by precomputed score, then tiebreak,
+ * then lowest item id. A min-heap of size k keeps the worst retained slot at the root,
+ * so selecting from n candidates costs O(n log k) primitive comparisons.
+ */
+final class TopK
+{
+	private final double[] score;
+	private final double[] tiebreak;
+	private final PriceSnapshot market;
+	private final int[] heap;
+	private int size;
+
+	TopK(int k, double[] score, double[] tiebreak, PriceSnapshot market)
+	{
+		this.score = score;
+		this.tiebreak = tiebreak;
+		this.market = market;
+		this.heap = new int[Math.max(k, 0)];
+	}
+
+	void offer(int slot)
+	{
+		if (heap.length == 0)
+		{
+			return;
+		}
+
+		if (size < heap.length)
+		{
+			heap[size] = slot;
+			siftUp(size++);
+		}
+		else if (better(slot, heap[0]))
+		{
+			heap[0] = slot;
+			siftDown(0);
+		}
+	}
+
+	/**
+	 * Drains the heap into an array ordered best first
+	 */
+	int[] sorted()
+	{
+		int[] result = new int[size];
+		while (size > 0)
+		{
+			result[size - 1] = heap[0];
+			heap[0] = heap[--size];
+			siftDown(0);
+		}
+		return result;
+	}
+
+	/**
+	 * True if slot {@code a} ranks ahead of slot {@code b}
+	 */
+	boolean better(int a, int b)
+	{
+		if (score[a] != score[b])
+		{
+			return score[a] > score[b];
+		}
+		if (tiebreak[a] != tiebreak[b])
+		{
+			return tiebreak[a] > tiebreak[b];
+		}
+		return market.itemId(a) < market.itemId(b);
+	}
+
+	private void siftUp(int i)
+	{
+		int slot = heap[i];
+		while (i > 0)
+		{
+			int parent = (i - 1) >>> 1;
+			if (!better(heap[parent], slot))
+			{
+				break;
+			}
+			heap[i] = heap[parent];
+			i = parent;
+		}
+		heap[i] = slot;
+	}
+
+	private void siftDown(int i)
+	{
+		if (size == 0)
+		{
+			return;
+		}
+
+		int slot = heap[i];
+		int half = size >>> 1;
+		while (i < half)
+		{
+			int child = 2 * i + 1;
+			int right = child + 1;
+			if (right < size && better(heap[child], heap[right]))
+			{
+				child = right;
+			}
+			if (!better(slot, heap[child]))
+			{
+				break;
+			}
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = slot;
+	}
+}
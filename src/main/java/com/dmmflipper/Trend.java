@@ -0,0 +1,30 @@
+package com.dmmflipper;
+
+import lombok.Getter;
+
+/**
+ * Direction of an item's mid price over its recent time-series buckets, see {@link PriceHistory}
+ */
+public enum Trend
+{
+	// First so that zeroed trend columns read as unknown
+	UNKNOWN("unknown"),
+	RISING("rising"),
+	FALLING("falling"),
+	STABLE("stable");
+
+	private static final Trend[] VALUES = values();
+
+	@Getter
+	private final String label;
+
+	Trend(String label)
+	{
+		this.label = label;
+	}
+
+	static Trend ofOrdinal(int ordinal)
+	{
+		return VALUES[ordinal];
+	}
+}
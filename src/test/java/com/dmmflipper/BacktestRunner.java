@@ -0,0 +1,112 @@
+package com.dmmflipper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import net.runelite.client.RuneLite;
+
+/**
+ * Sweeps maxAge and minROI (and, for the overnight tab, its buy limit cycle estimates) over a
+ * recorded market and prints one {@link Backtester} report per setting.
+ * <p>
+ * Arguments: the recorded market, either a price history directory or a directory of saved
+ * {@code latest-<epochSeconds>.json} responses (empty or absent: the plugin's own history), then
+ * optionally the tab to test and how many days back to start. The catalogue is the plugin's cached
+ * mapping. The replays keep their files in a temporary directory, so the plugin's own are only read.
+ */
+public class BacktestRunner
+{
+	private static final int[] MAX_AGES = {5, 15, 30, 60};
+	private static final int[] MIN_ROIS = {1, 3, 5};
+	// busyCycles, quietCycles
+	private static final int[][] CYCLES = {{2, 1}, {3, 2}, {4, 3}};
+
+	public static void main(String[] args) throws Exception
+	{
+		File pluginDir = new File(RuneLite.RUNELITE_DIR, "dmm-flipper");
+		Path source = args.length > 0 && !args[0].isEmpty() ? Paths.get(args[0]) : new File(pluginDir, "history").toPath();
+		OpportunityTab tab = args.length > 1 ? OpportunityTab.valueOf(args[1]) : OpportunityTab.BEST_MARGIN;
+		int days = args.length > 2 ? Integer.parseInt(args[2]) : 7;
+
+		ItemCatalogue mapping = new ItemMappingCache(pluginDir).load();
+		if (mapping == null)
+		{
+			System.err.println("No cached item mapping in " + pluginDir + "; run the plugin once first");
+			return;
+		}
+
+		Path dataDir = Files.createTempDirectory("dmm-flipper-backtest");
+		try
+		{
+			sweep(mapping, source, tab, days, dataDir);
+		}
+		finally
+		{
+			delete(dataDir);
+		}
+	}
+
+	private static void sweep(ItemCatalogue mapping, Path source, OpportunityTab tab, int days, Path dataDir) throws IOException
+	{
+		System.out.printf("%-16s %6s %6s %10s %8s %14s %14s %14s %10s%n",
+			"tab", "maxAge", "minROI", "cycles", "flips", "profit", "peak capital", "avg capital", "snaps/s");
+
+		int[][] cycles = tab == OpportunityTab.OVERNIGHT ? CYCLES : new int[][]{null};
+		for (int maxAge : MAX_AGES)
+		{
+			for (int minROI : MIN_ROIS)
+			{
+				for (int[] cycle : cycles)
+				{
+					Backtester.Settings settings = new Backtester.Settings();
+					settings.setTab(tab);
+					settings.setMaxAge(maxAge);
+					settings.setMinROI(minROI);
+					if (cycle != null)
+					{
+						settings.getOverrides().put("busyCycles", cycle[0]);
+						settings.getOverrides().put("quietCycles", cycle[1]);
+					}
+
+					Backtester.Report report = run(new Backtester(mapping, settings, dataDir), source, days);
+					System.out.printf("%-16s %6d %6d %10s %,8d %,14d %,14d %,14.0f %,10.0f%n",
+						tab, maxAge, minROI, cycle != null ? cycle[0] + "/" + cycle[1] : "-",
+						report.getFlips(), report.getRealizedProfit(), report.getPeakCapitalInUse(),
+						report.getAverageCapitalInUse(), report.getSnapshotsPerSecond());
+				}
+			}
+		}
+	}
+
+	private static Backtester.Report run(Backtester backtester, Path source, int days) throws IOException
+	{
+		if (hasResponses(source))
+		{
+			return backtester.replay(source);
+		}
+
+		long now = System.currentTimeMillis() / 1000;
+		return backtester.replay(new PriceHistoryStore(source), now - days * PriceHistoryStore.DAY_SECONDS, now);
+	}
+
+	private static boolean hasResponses(Path dir) throws IOException
+	{
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "latest-*.json"))
+		{
+			return files.iterator().hasNext();
+		}
+	}
+
+	private static void delete(Path dir) throws IOException
+	{
+		try (Stream<Path> files = Files.walk(dir))
+		{
+			files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+}
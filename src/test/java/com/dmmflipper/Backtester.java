@@ -0,0 +1,539 @@
+package com.dmmflipper;
+
+import com.google.gson.Gson;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.OkHttpClient;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays recorded markets through the same scans the panel uses, as fast as the snapshots can be
+ * rebuilt, and simulates flipping the top of one tab's ranking against the recorded trades.
+ * <p>
+ * Snapshots come from the on-disk {@link PriceHistoryStore} or from saved /latest (and /24h)
+ * responses. Each is published into a private {@link PriceApiClient} whose clock is set to the
+ * snapshot's time, so trade ages and the incremental engine see recorded time rather than wall
+ * time, and is then ranked by the tab's calculate method. A buy offer fills at its price while the
+ * market's low is at or below it, a sell offer while the high is at or above it, each at
+ * {@link Settings#getFillShare()} of that side's recorded 24h volume per elapsed second. One run
+ * per instance; not thread-safe.
+ */
+@Slf4j
+public class Backtester
+{
+	private static final long DAY_SECONDS = TimeUnit.DAYS.toSeconds(1);
+	private static final long BUY_LIMIT_WINDOW_SECONDS = TimeUnit.HOURS.toSeconds(4);
+	private static final int MAX_GE_TAX = 5_000_000;
+
+	/**
+	 * Strategy parameters and simulation knobs of one run
+	 */
+	@Data
+	public static class Settings
+	{
+		private OpportunityTab tab = OpportunityTab.BEST_MARGIN;
+		private int minProfit = 100;
+		private int minROI = 3;
+		private int maxROI = 200;
+		private int maxAge = 15;
+		// Starting cash, and the budget the scans rank against
+		private int budget = 1_000_000;
+		private int minLimit = 1000;
+		private int maxPrice = 25000;
+		// Spec constants to override, e.g. busyCycles of the overnight tab
+		private Map<String, Integer> overrides = new HashMap<>();
+		private int geSlots = 8;
+		// Share of each side's recorded trade volume that reaches our offers
+		private double fillShare = 0.1;
+		// How deep into each ranking free slots are filled from
+		private int candidates = 20;
+		private int buyTimeoutMinutes = 60;
+		// Items still unsold after this long are dumped at the market's low
+		private int sellTimeoutMinutes = 720;
+	}
+
+	/**
+	 * Outcome of a run. Capital in use is cash in buy offers plus the cost of unsold items.
+	 */
+	@Data
+	public static class Report
+	{
+		private final int snapshots;
+		private final long wallMillis;
+		private final long simulatedSeconds;
+		private final int flips;
+		private final long itemsSold;
+		private final long realizedProfit;
+		private final long taxPaid;
+		private final long startingCash;
+		private final long finalCash;
+		private final long capitalInUse;
+		private final long peakCapitalInUse;
+		private final double averageCapitalInUse;
+
+		public double getSnapshotsPerSecond()
+		{
+			return wallMillis > 0 ? snapshots * 1000.0 / wallMillis : 0;
+		}
+
+		/**
+		 * Realized profit as a percentage of the starting cash
+		 */
+		public double getReturnPercent()
+		{
+			return startingCash > 0 ? realizedProfit * 100.0 / startingCash : 0;
+		}
+	}
+
+	private final Settings settings;
+	private final PriceApiClient client;
+	private final SimulatedClock clock = new SimulatedClock();
+	private final List<Offer> offers = new ArrayList<>();
+	// Item id -> {window start, quantity ordered in the window}
+	private final Map<Integer, long[]> buyLimits = new HashMap<>();
+
+	private long version;
+	private int snapshots;
+	private long firstTime = -1;
+	private long lastTime = -1;
+	private long cash;
+	private int flips;
+	private long itemsSold;
+	private long realizedProfit;
+	private long taxPaid;
+	private long peakCapital;
+	private double capitalSeconds;
+
+	/**
+	 * @param dataDir where the replay's client keeps its files, apart from the plugin's own; it never fetches
+	 */
+	public Backtester(ItemCatalogue mapping, Settings settings, Path dataDir)
+	{
+		this.settings = settings;
+		this.cash = settings.getBudget();
+		this.client = new PriceApiClient(new OkHttpClient(), new Gson(), "http://127.0.0.1:9", dataDir.toFile());
+		client.setClock(clock);
+		client.setRecordHistory(false);
+		client.setScanParallelism(1);
+		client.installItemMapping(mapping);
+	}
+
+	/**
+	 * Replays the store's refreshes from {@code fromSecond} to {@code toSecond}. The store only
+	 * holds items that changed, so everything recorded before {@code fromSecond} is applied first
+	 * (without scanning) to rebuild the market as it stood.
+	 */
+	public Report replay(PriceHistoryStore store, long fromSecond, long toSecond) throws IOException
+	{
+		long start = System.currentTimeMillis();
+		MarketState market = new MarketState();
+		store.replay(0, toSecond, record -> {
+			long time = record.getTime();
+			if (market.time >= 0 && time != market.time && market.time >= fromSecond)
+			{
+				step(market.build(), market.time);
+			}
+			market.time = time;
+			market.apply(record);
+		});
+		if (market.time >= fromSecond)
+		{
+			step(market.build(), market.time);
+		}
+		return report(System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * Replays saved API responses: {@code latest-<epochSeconds>.json} files, each merged with the
+	 * newest {@code 24h-<epochSeconds>.json} saved at or before it, if any.
+	 */
+	public Report replay(Path responses) throws IOException
+	{
+		TreeMap<Long, Path> latest = new TreeMap<>();
+		TreeMap<Long, Path> volumes = new TreeMap<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(responses, "*.json"))
+		{
+			for (Path file : files)
+			{
+				String name = file.getFileName().toString();
+				if (name.startsWith("latest-"))
+				{
+					latest.put(epochSecond(name, "latest-"), file);
+				}
+				else if (name.startsWith("24h-"))
+				{
+					volumes.put(epochSecond(name, "24h-"), file);
+				}
+			}
+		}
+
+		long start = System.currentTimeMillis();
+		Path volumePath = null;
+		PriceFeed volumeFeed = null;
+		for (Map.Entry<Long, Path> entry : latest.entrySet())
+		{
+			Map.Entry<Long, Path> newestVolumes = volumes.floorEntry(entry.getKey());
+			if (newestVolumes != null && !newestVolumes.getValue().equals(volumePath))
+			{
+				volumePath = newestVolumes.getValue();
+				volumeFeed = read(volumePath);
+			}
+
+			PriceFeed prices = read(entry.getValue());
+			step(PriceSnapshot.build(client.getSnapshot(), prices, volumeFeed, ++version, entry.getKey() * 1000), entry.getKey());
+		}
+		return report(System.currentTimeMillis() - start);
+	}
+
+	private static PriceFeed read(Path file) throws IOException
+	{
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+		{
+			return PriceFeed.read(reader);
+		}
+	}
+
+	private static long epochSecond(String fileName, String prefix)
+	{
+		try
+		{
+			return Long.parseLong(fileName.substring(prefix.length(), fileName.length() - ".json".length()));
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IllegalArgumentException("Expected " + prefix + "<epochSeconds>.json, got " + fileName, e);
+		}
+	}
+
+	/**
+	 * Moves the clock to {@code now}, fills and expires the open offers against {@code market},
+	 * then ranks it and fills free slots from the top of the ranking.
+	 */
+	private void step(PriceSnapshot market, long now)
+	{
+		long elapsed = lastTime >= 0 ? Math.max(0, now - lastTime) : 0;
+		long capital = capitalInUse();
+		capitalSeconds += (double) capital * elapsed;
+		if (firstTime < 0)
+		{
+			firstTime = now;
+		}
+		lastTime = now;
+		snapshots++;
+
+		clock.millis = now * 1000;
+		client.replay(market);
+
+		Iterator<Offer> open = offers.iterator();
+		while (open.hasNext())
+		{
+			if (advance(open.next(), market, now, elapsed))
+			{
+				open.remove();
+			}
+		}
+
+		List<FlipOpportunity> ranking = rank();
+		for (int i = 0; i < ranking.size() && i < settings.getCandidates() && offers.size() < settings.getGeSlots(); i++)
+		{
+			place(ranking.get(i), now);
+		}
+
+		peakCapital = Math.max(peakCapital, capitalInUse());
+	}
+
+	/**
+	 * Fills one offer for the time since the last snapshot
+	 *
+	 * @return true once the offer's slot is free again
+	 */
+	private boolean advance(Offer offer, PriceSnapshot market, long now, long elapsed)
+	{
+		int slot = market.slotOf(offer.itemId);
+		boolean present = slot >= 0 && market.isPresent(slot);
+
+		if (!offer.selling)
+		{
+			if (present && market.low(slot) > 0 && market.low(slot) <= offer.buyPrice)
+			{
+				offer.filled += take(offer, market.lowVolume(slot), elapsed);
+			}
+			if (offer.filled < offer.quantity && now - offer.placedAt < TimeUnit.MINUTES.toSeconds(settings.getBuyTimeoutMinutes()))
+			{
+				return false;
+			}
+
+			// Complete or timed out: the unfilled part is refunded and what was bought is listed
+			int unfilled = offer.quantity - offer.filled;
+			cash += (long) unfilled * offer.buyPrice;
+			long[] window = buyLimits.get(offer.itemId);
+			if (window != null)
+			{
+				window[1] -= unfilled;
+			}
+			if (offer.filled == 0)
+			{
+				return true;
+			}
+			offer.selling = true;
+			offer.quantity = offer.filled;
+			offer.filled = 0;
+			offer.placedAt = now;
+			offer.carry = 0;
+			return false;
+		}
+
+		if (present && market.high(slot) >= offer.sellPrice)
+		{
+			sell(offer, take(offer, market.highVolume(slot), elapsed), offer.sellPrice);
+		}
+		if (offer.filled < offer.quantity && present && market.low(slot) > 0
+			&& now - offer.placedAt >= TimeUnit.MINUTES.toSeconds(settings.getSellTimeoutMinutes()))
+		{
+			sell(offer, offer.quantity - offer.filled, market.low(slot));
+		}
+		if (offer.filled < offer.quantity)
+		{
+			return false;
+		}
+		flips++;
+		return true;
+	}
+
+	/**
+	 * Our share of {@code volume24h} over {@code elapsed} seconds, carrying the fraction to the next snapshot
+	 */
+	private int take(Offer offer, int volume24h, long elapsed)
+	{
+		offer.carry += settings.getFillShare() * volume24h * elapsed / DAY_SECONDS;
+		int quantity = (int) Math.min(offer.quantity - offer.filled, Math.floor(offer.carry));
+		offer.carry -= quantity;
+		return quantity;
+	}
+
+	private void sell(Offer offer, int quantity, int price)
+	{
+		long tax = (long) Math.min((int) (price * 0.01), MAX_GE_TAX) * quantity;
+		long revenue = (long) price * quantity;
+		cash += revenue - tax;
+		realizedProfit += revenue - tax - (long) offer.buyPrice * quantity;
+		taxPaid += tax;
+		itemsSold += quantity;
+		offer.filled += quantity;
+	}
+
+	private void place(FlipOpportunity opportunity, long now)
+	{
+		int price = opportunity.getBuyPrice();
+		if (price <= 0 || hasOffer(opportunity.getItemId()))
+		{
+			return;
+		}
+
+		ItemCatalogue catalogue = client.getItemCatalogue();
+		int index = catalogue.indexOf(opportunity.getItemId());
+		int limit = index >= 0 && catalogue.limit(index) > 0 ? catalogue.limit(index) : 1;
+		long[] window = buyLimits.get(opportunity.getItemId());
+		if (window == null || now - window[0] >= BUY_LIMIT_WINDOW_SECONDS)
+		{
+			window = new long[]{now, 0};
+			buyLimits.put(opportunity.getItemId(), window);
+		}
+
+		int quantity = (int) Math.min(limit - window[1], cash / price);
+		if (quantity <= 0)
+		{
+			return;
+		}
+
+		window[1] += quantity;
+		cash -= (long) quantity * price;
+		offers.add(new Offer(opportunity.getItemId(), price, opportunity.getSellPrice(), quantity, now));
+	}
+
+	private boolean hasOffer(int itemId)
+	{
+		for (Offer offer : offers)
+		{
+			if (offer.itemId == itemId)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The tab's ranking of the current snapshot, through the same method the panel calls.
+	 * Overridden spec constants aren't arguments of those methods, so such runs compile the spec.
+	 */
+	private List<FlipOpportunity> rank()
+	{
+		Settings s = settings;
+		if (!s.getOverrides().isEmpty())
+		{
+			Map<String, Integer> params = OpportunityTab.params(s.getMinProfit(), s.getMinROI(), s.getMaxROI(), s.getMaxAge(), s.getBudget());
+			params.put("minLimit", s.getMinLimit());
+			params.put("maxPrice", s.getMaxPrice());
+			if (s.getTab() == OpportunityTab.ACTIVE_FLIPPING)
+			{
+				params.put("minMargin", s.getMinProfit());
+			}
+			params.putAll(s.getOverrides());
+			return client.getOpportunityPage(s.getTab().strategy(params), 0, s.getCandidates()).getOpportunities();
+		}
+
+		switch (s.getTab())
+		{
+			case BULK:
+				return client.calculateBulkOpportunities(s.getMinProfit(), s.getMinROI(), s.getMaxROI(), s.getMaxAge(), s.getBudget(), s.getMinLimit());
+			case ACTIVE_FLIPPING:
+				return client.calculateActiveFlippingOpportunities(s.getMinProfit(), s.getMaxPrice(), s.getMaxAge(), s.getBudget());
+			case OVERNIGHT:
+				return client.calculateOvernightOpportunities(s.getMinProfit(), s.getMinROI(), s.getMaxROI(), s.getMaxAge(), s.getBudget());
+			default:
+				return client.calculateOpportunities(s.getMinProfit(), s.getMinROI(), s.getMaxROI(), s.getMaxAge(), s.getBudget());
+		}
+	}
+
+	private long capitalInUse()
+	{
+		// Cash only leaves through offers and comes back with sales, so the difference is what's tied up
+		return settings.getBudget() + realizedProfit - cash;
+	}
+
+	private Report report(long wallMillis)
+	{
+		// One run per instance, so the client's executor can go
+		client.shutdown();
+		long simulated = firstTime >= 0 ? lastTime - firstTime : 0;
+		Report report = new Report(snapshots, wallMillis, simulated, flips, itemsSold, realizedProfit, taxPaid,
+			settings.getBudget(), cash, capitalInUse(), peakCapital, simulated > 0 ? capitalSeconds / simulated : 0);
+		log.debug("Backtest of {}: {}", settings.getTab(), report);
+		return report;
+	}
+
+	/**
+	 * Latest recorded row of every item, indexed by item id, rebuilt into a snapshot on each refresh
+	 */
+	private final class MarketState
+	{
+		private long time = -1;
+		private boolean[] known = new boolean[0];
+		private int[] high = new int[0];
+		private int[] low = new int[0];
+		private long[] highTime = new long[0];
+		private long[] lowTime = new long[0];
+		private int[] highVolume = new int[0];
+		private int[] lowVolume = new int[0];
+
+		private void apply(PriceHistoryStore.Cursor record)
+		{
+			int id = record.getItemId();
+			if (id >= known.length)
+			{
+				int capacity = Math.max(id + 1, known.length * 2);
+				known = Arrays.copyOf(known, capacity);
+				high = Arrays.copyOf(high, capacity);
+				low = Arrays.copyOf(low, capacity);
+				highTime = Arrays.copyOf(highTime, capacity);
+				lowTime = Arrays.copyOf(lowTime, capacity);
+				highVolume = Arrays.copyOf(highVolume, capacity);
+				lowVolume = Arrays.copyOf(lowVolume, capacity);
+			}
+
+			known[id] = true;
+			high[id] = record.getHigh();
+			low[id] = record.getLow();
+			highTime[id] = record.getHighTime();
+			lowTime[id] = record.getLowTime();
+			highVolume[id] = record.getHighVolume();
+			lowVolume[id] = record.getLowVolume();
+		}
+
+		private PriceSnapshot build()
+		{
+			PriceFeed feed = new PriceFeed();
+			for (int id = 0; id < known.length; id++)
+			{
+				if (known[id])
+				{
+					feed.add(id, high[id], low[id], highTime[id], lowTime[id], highVolume[id], lowVolume[id]);
+				}
+			}
+			return PriceSnapshot.build(client.getSnapshot(), feed, null, ++version, time * 1000);
+		}
+	}
+
+	private static final class Offer
+	{
+		private final int itemId;
+		private final int buyPrice;
+		private final int sellPrice;
+		private int quantity;
+		// Bought while buying, sold while selling
+		private int filled;
+		private boolean selling;
+		private long placedAt;
+		// Fractional fill carried between snapshots
+		private double carry;
+
+		private Offer(int itemId, int buyPrice, int sellPrice, int quantity, long placedAt)
+		{
+			this.itemId = itemId;
+			this.buyPrice = buyPrice;
+			this.sellPrice = sellPrice;
+			this.quantity = quantity;
+			this.placedAt = placedAt;
+		}
+	}
+
+	/**
+	 * Clock the replay moves to each snapshot's time
+	 */
+	private static final class SimulatedClock extends Clock
+	{
+		private volatile long millis;
+
+		@Override
+		public long millis()
+		{
+			return millis;
+		}
+
+		@Override
+		public Instant instant()
+		{
+			return Instant.ofEpochMilli(millis);
+		}
+
+		@Override
+		public ZoneId getZone()
+		{
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone)
+		{
+			return Clock.fixed(instant(), zone);
+		}
+	}
+}
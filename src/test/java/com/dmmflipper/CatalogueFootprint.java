@@ -0,0 +1,144 @@
+package com.dmmflipper;
+
+import com.google.gson.Gson;
+import java.io.File;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import net.runelite.client.RuneLite;
+
+/**
+ * Measures the steady-state heap held by the item catalogue: the {@link ItemInfo} map the client
+ * used to keep against the {@link ItemCatalogue} it keeps now. Several copies of each are held at
+ * once and the heap is compared after full collections, so the per-copy figure is stable.
+ * <p>
+ * Argument: a /mapping file (default: the plugin's cached one, else a synthetic catalogue of the
+ * same shape).
+ */
+public class CatalogueFootprint
+{
+	private static final int COPIES = 20;
+
+	public static void main(String[] args) throws Exception
+	{
+		Path file = args.length > 0 && !args[0].isEmpty()
+			? Paths.get(args[0])
+			: new File(RuneLite.RUNELITE_DIR, "dmm-flipper/mapping.json").toPath();
+		String json = Files.isRegularFile(file)
+			? new String(Files.readAllBytes(file), StandardCharsets.UTF_8)
+			: syntheticMapping(4500);
+		Gson gson = new Gson();
+
+		ItemCatalogue catalogue = ItemCatalogue.read(new StringReader(json));
+		System.out.printf("%s: %,d items, %,d bytes of JSON%n",
+			Files.isRegularFile(file) ? file : "synthetic catalogue", catalogue.size(), json.length());
+
+		long objects = measure(() -> {
+			Map<Integer, ItemInfo> mapping = new ConcurrentHashMap<>();
+			for (ItemInfo item : gson.fromJson(json, ItemInfo[].class))
+			{
+				mapping.put(item.getId(), item);
+			}
+			return mapping;
+		});
+		long columns = measure(() -> {
+			try
+			{
+				return ItemCatalogue.read(new StringReader(json));
+			}
+			catch (Exception e)
+			{
+				throw new IllegalStateException(e);
+			}
+		});
+
+		System.out.printf("%-28s %12s %12s%n", "", "bytes", "bytes/item");
+		System.out.printf("%-28s %,12d %12.1f%n", "Map<Integer, ItemInfo>", objects, objects / (double) catalogue.size());
+		System.out.printf("%-28s %,12d %12.1f%n", "ItemCatalogue", columns, columns / (double) catalogue.size());
+		System.out.printf("%-28s %,12d %12.1f%n", "ItemCatalogue (estimate)", catalogue.footprintBytes(),
+			catalogue.footprintBytes() / (double) catalogue.size());
+		System.out.printf("Reduction: %.1fx%n", objects / (double) columns);
+	}
+
+	/**
+	 * Heap retained per instance made by {@code factory}
+	 */
+	private static long measure(Supplier<Object> factory)
+	{
+		// Once to load classes and warm up, so they aren't counted
+		factory.get();
+
+		long before = usedAfterGc();
+		Object[] held = new Object[COPIES];
+		for (int i = 0; i < COPIES; i++)
+		{
+			held[i] = factory.get();
+		}
+		long after = usedAfterGc();
+
+		if (held[COPIES - 1] == null)
+		{
+			throw new IllegalStateException();
+		}
+		return (after - before) / COPIES;
+	}
+
+	private static long usedAfterGc()
+	{
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 4; i++)
+		{
+			System.gc();
+			try
+			{
+				Thread.sleep(50);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * Field lengths like the wiki's: two-to-four word names, a sentence of examine text, an icon file
+	 */
+	private static String syntheticMapping(int items)
+	{
+		String[] words = {"Rune", "Dragon", "Adamant", "Mithril", "platebody", "scimitar", "arrow", "potion(4)",
+			"Super", "defence", "Ancient", "staff", "bolts", "(e)", "Blessed", "d'hide", "chaps", "shield"};
+		Random random = new Random(items);
+		StringBuilder json = new StringBuilder(items * 200).append('[');
+		for (int id = 1; id <= items; id++)
+		{
+			StringBuilder name = new StringBuilder();
+			int length = 2 + random.nextInt(3);
+			for (int w = 0; w < length; w++)
+			{
+				name.append(w > 0 ? " " : "").append(words[random.nextInt(words.length)]);
+			}
+
+			if (id > 1)
+			{
+				json.append(',');
+			}
+			json.append("{\"examine\":\"A ").append(name.toString().toLowerCase()).append(" of some renown, useful to adventurers.\"")
+				.append(",\"id\":").append(id)
+				.append(",\"members\":").append(random.nextBoolean())
+				.append(",\"lowalch\":").append(random.nextInt(50_000))
+				.append(",\"limit\":").append(random.nextInt(25_000))
+				.append(",\"value\":").append(random.nextInt(100_000))
+				.append(",\"highalch\":").append(random.nextInt(75_000))
+				.append(",\"icon\":\"").append(name).append(".png\"")
+				.append(",\"name\":\"").append(name).append("\"}");
+		}
+		return json.append(']').toString();
+	}
+}
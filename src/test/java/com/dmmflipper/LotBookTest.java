@@ -0,0 +1,184 @@
+package com.dmmflipper;
+
+import com.google.gson.Gson;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import net.runelite.api.GrandExchangeOffer;
+import net.runelite.api.GrandExchangeOfferState;
+import net.runelite.api.events.GrandExchangeOfferChanged;
+import okhttp3.OkHttpClient;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class LotBookTest
+{
+	private static final long NOW = 1_700_000_000_000L;
+	private static final int ITEM_ID = 4151;
+
+	private final List<int[]> matches = new ArrayList<>();
+	private final LotBook.MatchListener listener = (buyPrice, sellPrice, quantity) -> matches.add(new int[]{buyPrice, sellPrice, quantity});
+
+	@Test
+	public void partialSalesSplitLots()
+	{
+		LotBook book = new LotBook();
+		book.bought(100, 10, NOW);
+		book.bought(110, 10, NOW + 1);
+
+		book.sold(150, 4, NOW + 2, LotMatching.FIFO, listener);
+		book.sold(150, 10, NOW + 3, LotMatching.FIFO, listener);
+		assertMatches(new int[][]{{100, 150, 4}, {100, 150, 6}, {110, 150, 4}});
+
+		book.sold(160, 6, NOW + 4, LotMatching.FIFO, listener);
+		assertEquals(110, matches.get(3)[0]);
+		assertEquals(6, matches.get(3)[2]);
+		assertTrue(book.isEmpty());
+	}
+
+	@Test
+	public void fifoAndLifoTakeOppositeEnds()
+	{
+		LotBook fifo = new LotBook();
+		LotBook lifo = new LotBook();
+		for (int i = 0; i < 3; i++)
+		{
+			fifo.bought(100 + i, 5, NOW + i);
+			lifo.bought(100 + i, 5, NOW + i);
+		}
+
+		fifo.sold(200, 7, NOW + 10, LotMatching.FIFO, listener);
+		assertMatches(new int[][]{{100, 200, 5}, {101, 200, 2}});
+
+		matches.clear();
+		lifo.sold(200, 7, NOW + 10, LotMatching.LIFO, listener);
+		assertMatches(new int[][]{{102, 200, 5}, {101, 200, 2}});
+	}
+
+	@Test
+	public void saleWithoutABuyIsDropped()
+	{
+		LotBook book = new LotBook();
+		book.sold(200, 10, NOW, LotMatching.FIFO, listener);
+		// The earlier sale must not be matched against a later buy
+		book.bought(100, 10, NOW + 1);
+		assertTrue(matches.isEmpty());
+
+		book.sold(150, 15, NOW + 2, LotMatching.FIFO, listener);
+		assertMatches(new int[][]{{100, 150, 10}});
+		assertTrue(book.isEmpty());
+	}
+
+	@Test
+	public void staleAndExcessLotsAreLetGo()
+	{
+		LotBook book = new LotBook();
+		book.bought(100, 1, NOW);
+		book.bought(101, 1, NOW + LotBook.MAX_LOT_AGE_MILLIS);
+		book.sold(150, 2, NOW + LotBook.MAX_LOT_AGE_MILLIS + 1, LotMatching.FIFO, listener);
+		assertMatches(new int[][]{{101, 150, 1}});
+
+		matches.clear();
+		for (int i = 0; i <= LotBook.MAX_LOTS; i++)
+		{
+			book.bought(i, 1, NOW);
+		}
+		book.sold(150, LotBook.MAX_LOTS + 1, NOW, LotMatching.FIFO, listener);
+		assertEquals(LotBook.MAX_LOTS, matches.size());
+		assertEquals(1, matches.get(0)[0]);
+		assertTrue(book.expire(NOW));
+	}
+
+	@Test
+	public void cancelledPartFillIsMatched() throws Exception
+	{
+		File dataDir = Files.createTempDirectory("lotbook").toFile();
+		PriceApiClient priceApiClient = new PriceApiClient(new OkHttpClient(), new Gson(), "http://127.0.0.1:9/", dataDir);
+		try
+		{
+			FlipHistory flipHistory = new FlipHistory();
+			GEOfferTracker tracker = new GEOfferTracker(priceApiClient, flipHistory);
+
+			// A buy of 100 cancelled after 40 filled, then all 100 of a later sale offer filled
+			tracker.updateOffer(event(0, GrandExchangeOfferState.BUYING, 100, 0, 1_000));
+			tracker.updateOffer(event(0, GrandExchangeOfferState.BUYING, 100, 40, 1_000));
+			tracker.updateOffer(event(0, GrandExchangeOfferState.CANCELLED_BUY, 100, 40, 1_000));
+			tracker.updateOffer(event(1, GrandExchangeOfferState.SELLING, 100, 0, 1_200));
+			tracker.updateOffer(event(1, GrandExchangeOfferState.SOLD, 100, 100, 1_200));
+
+			List<FlipHistory.CompletedFlip> flips = flipHistory.getFlipsForItem(ITEM_ID);
+			assertEquals(1, flips.size());
+			assertEquals(1_000, flips.get(0).getBuyPrice());
+			assertEquals(1_200, flips.get(0).getSellPrice());
+			assertEquals(40, flips.get(0).getQuantity());
+
+			// A sale cancelled part-filled with nothing bought records nothing
+			tracker.updateOffer(event(2, GrandExchangeOfferState.SELLING, 10, 0, 1_300));
+			tracker.updateOffer(event(2, GrandExchangeOfferState.CANCELLED_SELL, 10, 5, 1_300));
+			assertEquals(1, flipHistory.getFlipsForItem(ITEM_ID).size());
+		}
+		finally
+		{
+			priceApiClient.shutdown();
+		}
+	}
+
+	private void assertMatches(int[][] expected)
+	{
+		assertEquals(expected.length, matches.size());
+		for (int i = 0; i < expected.length; i++)
+		{
+			for (int j = 0; j < 3; j++)
+			{
+				assertEquals("match " + i, expected[i][j], matches.get(i)[j]);
+			}
+		}
+	}
+
+	private static GrandExchangeOfferChanged event(int slot, GrandExchangeOfferState state, int total, int sold, int price)
+	{
+		GrandExchangeOfferChanged event = new GrandExchangeOfferChanged();
+		event.setSlot(slot);
+		event.setOffer(new GrandExchangeOffer()
+		{
+			@Override
+			public int getQuantitySold()
+			{
+				return sold;
+			}
+
+			@Override
+			public int getItemId()
+			{
+				return ITEM_ID;
+			}
+
+			@Override
+			public int getTotalQuantity()
+			{
+				return total;
+			}
+
+			@Override
+			public int getPrice()
+			{
+				return price;
+			}
+
+			@Override
+			public int getSpent()
+			{
+				return sold * price;
+			}
+
+			@Override
+			public GrandExchangeOfferState getState()
+			{
+				return state;
+			}
+		});
+		return event;
+	}
+}
@@ -0,0 +1,432 @@
+package com.dmmflipper;
+
+import com.google.gson.Gson;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import lombok.Data;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+
+/**
+ * Local stand-in for the wiki prices API, serving /latest, /24h, /5m, /1h and /mapping from a
+ * MockWebServer so the fetch pipeline can run offline, fast or as badly as needed.
+ * <p>
+ * The market is either the payloads saved by {@code gradlew recordPayloads}, repeated under fresh
+ * ids until it has {@link Settings#items} entries (or cut down to that), or a seeded synthetic
+ * one. Every /latest response moves {@link Settings#changedFraction} of the prices so each refresh
+ * has something to publish. /mapping carries an ETag and answers 304 when it is sent back.
+ * <p>
+ * Faults are drawn per request: an HTTP error, a body cut short behind a matching Content-Length
+ * (malformed JSON), or the connection dropped partway through the body. Latency delays the
+ * headers; {@link Settings#bytesPerSecond} throttles the body.
+ */
+final class MockPriceApi implements Closeable
+{
+	private static final String BASE_PATH = "/api/v1/dmm";
+	private static final int[] LIMITS = {8, 40, 70, 100, 125, 500, 1000, 2000, 6000, 10000, 13000, 18000, 25000};
+	private static final int[] ERROR_CODES = {429, 500, 502, 503, 504};
+
+	@Data
+	static class Settings
+	{
+		private int items = 4000;
+		// Directory holding latest.json, 24h.json, mapping.json and optionally 5m.json; null for synthetic
+		private Path recorded;
+		private double changedFraction = 0.01;
+
+		private long latencyMillis;
+		// Latency is drawn uniformly from latencyMillis plus or minus this
+		private long latencyJitterMillis;
+		// 0 sends the body as fast as the socket allows
+		private int bytesPerSecond;
+
+		private double errorRate;
+		private double truncateRate;
+		private double disconnectRate;
+	}
+
+	private final Settings settings;
+	private final MockWebServer server = new MockWebServer();
+	private final PipelineMetrics metrics = new PipelineMetrics();
+	private final Random random = new Random(42);
+
+	// Current /latest, moved a little by every request
+	private final int[] itemId;
+	private final int[] high;
+	private final int[] low;
+	private final long[] highTime;
+	private final long[] lowTime;
+	private final PriceFeed volumes;
+	private final PriceFeed fiveMinute;
+	private final PriceFeed oneHour;
+	private final byte[] mapping;
+	private final String mappingTag;
+
+	MockPriceApi(Settings settings) throws IOException
+	{
+		this.settings = settings;
+
+		PriceFeed latest;
+		ItemInfo[] items;
+		if (settings.getRecorded() != null)
+		{
+			Path dir = settings.getRecorded();
+			latest = resize(readFeed(dir.resolve("latest.json")), settings.getItems());
+			volumes = resize(readFeed(dir.resolve("24h.json")), settings.getItems());
+			fiveMinute = Files.isRegularFile(dir.resolve("5m.json"))
+				? resize(readFeed(dir.resolve("5m.json")), settings.getItems())
+				: scaledVolumes(volumes, 288);
+			items = resize(readMapping(dir.resolve("mapping.json")), settings.getItems());
+		}
+		else
+		{
+			latest = syntheticLatest(settings.getItems());
+			volumes = syntheticVolumes(settings.getItems());
+			fiveMinute = scaledVolumes(volumes, 288);
+			items = syntheticMapping(settings.getItems());
+		}
+
+		oneHour = scaledVolumes(volumes, 24);
+
+		int size = latest.size();
+		itemId = new int[size];
+		high = new int[size];
+		low = new int[size];
+		highTime = new long[size];
+		lowTime = new long[size];
+		for (int row = 0; row < size; row++)
+		{
+			itemId[row] = latest.itemId(row);
+			high[row] = latest.high(row);
+			low[row] = latest.low(row);
+			highTime[row] = latest.highTime(row);
+			lowTime[row] = latest.lowTime(row);
+		}
+
+		mapping = new Gson().toJson(items).getBytes(StandardCharsets.UTF_8);
+		mappingTag = "\"mapping-" + items.length + "-" + Arrays.hashCode(mapping) + "\"";
+
+		server.setDispatcher(new Dispatcher()
+		{
+			@Override
+			public MockResponse dispatch(RecordedRequest request)
+			{
+				return respond(request);
+			}
+		});
+	}
+
+	void start() throws IOException
+	{
+		server.start();
+	}
+
+	/**
+	 * Base URL to hand to {@link PriceApiClient} in place of the wiki's
+	 */
+	String baseUrl()
+	{
+		String url = server.url(BASE_PATH).toString();
+		return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+	}
+
+	/**
+	 * Requests served per endpoint and faults injected per kind
+	 */
+	PipelineMetrics getMetrics()
+	{
+		return metrics;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		server.shutdown();
+	}
+
+	/**
+	 * Called concurrently from the server's connection threads; the delays are applied after it
+	 * returns, so holding the lock doesn't serialise them.
+	 */
+	private synchronized MockResponse respond(RecordedRequest request)
+	{
+		String path = request.getPath();
+		String endpoint = path.startsWith(BASE_PATH) ? path.substring(BASE_PATH.length()) : path;
+		int query = endpoint.indexOf('?');
+		if (query >= 0)
+		{
+			endpoint = endpoint.substring(0, query);
+		}
+		metrics.counter("requests " + endpoint).increment();
+
+		MockResponse response = new MockResponse();
+		long latency = settings.getLatencyMillis() + (settings.getLatencyJitterMillis() == 0 ? 0
+			: (long) ((random.nextDouble() * 2 - 1) * settings.getLatencyJitterMillis()));
+		response.setHeadersDelay(Math.max(0, latency), TimeUnit.MILLISECONDS);
+
+		double fault = random.nextDouble();
+		if (fault < settings.getErrorRate())
+		{
+			int code = ERROR_CODES[random.nextInt(ERROR_CODES.length)];
+			metrics.counter("injected " + code).increment();
+			return response.setResponseCode(code);
+		}
+
+		byte[] body;
+		switch (endpoint)
+		{
+			case "/latest":
+				body = latest();
+				break;
+			case "/24h":
+				body = averages(volumes, 0);
+				break;
+			case "/5m":
+				body = averages(fiveMinute, nowSeconds() / 300 * 300);
+				break;
+			case "/1h":
+				body = averages(oneHour, nowSeconds() / 3600 * 3600);
+				break;
+			case "/mapping":
+				if (mappingTag.equals(request.getHeader("If-None-Match")))
+				{
+					metrics.counter("not modified /mapping").increment();
+					return response.setResponseCode(304).setHeader("ETag", mappingTag);
+				}
+				response.setHeader("ETag", mappingTag);
+				body = mapping;
+				break;
+			default:
+				return response.setResponseCode(404);
+		}
+
+		fault -= settings.getErrorRate();
+		if (fault < settings.getTruncateRate())
+		{
+			metrics.counter("injected truncation").increment();
+			body = Arrays.copyOf(body, 1 + random.nextInt(body.length - 1));
+		}
+		else if (fault < settings.getTruncateRate() + settings.getDisconnectRate())
+		{
+			metrics.counter("injected disconnect").increment();
+			response.setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY);
+		}
+
+		if (settings.getBytesPerSecond() > 0)
+		{
+			// In tenths of a second so small bodies aren't held back a whole second
+			response.throttleBody(Math.max(1, settings.getBytesPerSecond() / 10), 100, TimeUnit.MILLISECONDS);
+		}
+		response.setHeader("Content-Type", "application/json");
+		return response.setBody(new Buffer().write(body));
+	}
+
+	private byte[] latest()
+	{
+		long now = nowSeconds();
+		int moves = (int) Math.round(itemId.length * settings.getChangedFraction());
+		for (int i = 0; i < moves; i++)
+		{
+			int row = random.nextInt(itemId.length);
+			if (random.nextBoolean())
+			{
+				high[row] = Math.max(1, high[row] + random.nextInt(11) - 5);
+				highTime[row] = now;
+			}
+			else
+			{
+				low[row] = Math.max(1, low[row] + random.nextInt(11) - 5);
+				lowTime[row] = now;
+			}
+		}
+
+		StringBuilder json = new StringBuilder(itemId.length * 96).append("{\"data\":{");
+		for (int row = 0; row < itemId.length; row++)
+		{
+			if (row > 0)
+			{
+				json.append(',');
+			}
+			json.append('"').append(itemId[row]).append("\":{\"high\":").append(high[row])
+				.append(",\"highTime\":").append(highTime[row])
+				.append(",\"low\":").append(low[row])
+				.append(",\"lowTime\":").append(lowTime[row]).append('}');
+		}
+		return json.append("}}").toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * A /24h-style body, or /5m and /1h when {@code timestamp} is set
+	 */
+	private static byte[] averages(PriceFeed feed, long timestamp)
+	{
+		StringBuilder json = new StringBuilder(feed.size() * 112).append("{\"data\":{");
+		for (int row = 0; row < feed.size(); row++)
+		{
+			if (row > 0)
+			{
+				json.append(',');
+			}
+			json.append('"').append(feed.itemId(row)).append("\":{\"avgHighPrice\":").append(feed.high(row))
+				.append(",\"highPriceVolume\":").append(feed.highVolume(row))
+				.append(",\"avgLowPrice\":").append(feed.low(row))
+				.append(",\"lowPriceVolume\":").append(feed.lowVolume(row)).append('}');
+		}
+		json.append('}');
+		if (timestamp > 0)
+		{
+			json.append(",\"timestamp\":").append(timestamp);
+		}
+		return json.append('}').toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static long nowSeconds()
+	{
+		return System.currentTimeMillis() / 1000;
+	}
+
+	private static PriceFeed readFeed(Path file) throws IOException
+	{
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+		{
+			return PriceFeed.read(reader);
+		}
+	}
+
+	private static ItemInfo[] readMapping(Path file) throws IOException
+	{
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+		{
+			return new Gson().fromJson(reader, ItemInfo[].class);
+		}
+	}
+
+	/**
+	 * The first {@code items} rows of {@code feed}, repeated under ids past the recorded ones if
+	 * it has fewer
+	 */
+	private static PriceFeed resize(PriceFeed feed, int items)
+	{
+		int stride = 1;
+		for (int row = 0; row < feed.size(); row++)
+		{
+			stride = Math.max(stride, feed.itemId(row) + 1);
+		}
+
+		PriceFeed resized = new PriceFeed();
+		for (int i = 0; i < items && feed.size() > 0; i++)
+		{
+			int row = i % feed.size();
+			resized.add(feed.itemId(row) + i / feed.size() * stride, feed.high(row), feed.low(row),
+				feed.highTime(row), feed.lowTime(row), feed.highVolume(row), feed.lowVolume(row));
+		}
+		return resized;
+	}
+
+	private static ItemInfo[] resize(ItemInfo[] catalogue, int items)
+	{
+		int stride = 1;
+		for (ItemInfo item : catalogue)
+		{
+			stride = Math.max(stride, item.getId() + 1);
+		}
+
+		// The catalogue is matched to /latest by id, so it repeats on the same stride
+		int copies = catalogue.length == 0 ? 0 : (items + catalogue.length - 1) / catalogue.length;
+		ItemInfo[] resized = new ItemInfo[catalogue.length * copies];
+		for (int i = 0; i < resized.length; i++)
+		{
+			ItemInfo source = catalogue[i % catalogue.length];
+			ItemInfo copy = new ItemInfo();
+			copy.setId(source.getId() + i / catalogue.length * stride);
+			copy.setName(i < catalogue.length ? source.getName() : source.getName() + " #" + (i / catalogue.length + 1));
+			copy.setExamine(source.getExamine());
+			copy.setMembers(source.isMembers());
+			copy.setLowalch(source.getLowalch());
+			copy.setHighalch(source.getHighalch());
+			copy.setLimit(source.getLimit());
+			copy.setValue(source.getValue());
+			copy.setIcon(source.getIcon());
+			resized[i] = copy;
+		}
+		return resized;
+	}
+
+	/**
+	 * {@code feed}'s average prices with its volumes divided by {@code buckets}, for a shorter window
+	 */
+	private static PriceFeed scaledVolumes(PriceFeed feed, int buckets)
+	{
+		PriceFeed scaled = new PriceFeed();
+		for (int row = 0; row < feed.size(); row++)
+		{
+			scaled.add(feed.itemId(row), feed.high(row), feed.low(row), 0, 0,
+				feed.highVolume(row) / buckets, feed.lowVolume(row) / buckets);
+		}
+		return scaled;
+	}
+
+	/**
+	 * Log-uniform prices from 10 GP to 100M GP, margins of -1% to 8%, trades up to an hour old
+	 */
+	private static PriceFeed syntheticLatest(int items)
+	{
+		Random random = new Random(items);
+		long now = nowSeconds();
+		PriceFeed feed = new PriceFeed();
+		for (int id = 1; id <= items; id++)
+		{
+			int low = price(random);
+			int high = (int) Math.min(Integer.MAX_VALUE, low * (0.99 + random.nextDouble() * 0.09));
+			feed.add(id, high, low, now - random.nextInt(3600), now - random.nextInt(3600), 0, 0);
+		}
+		return feed;
+	}
+
+	private static PriceFeed syntheticVolumes(int items)
+	{
+		Random random = new Random(-items);
+		PriceFeed feed = new PriceFeed();
+		for (int id = 1; id <= items; id++)
+		{
+			int avgLow = price(random);
+			feed.add(id, avgLow + avgLow / 20, avgLow, 0, 0, random.nextInt(50_000), random.nextInt(50_000));
+		}
+		return feed;
+	}
+
+	private static ItemInfo[] syntheticMapping(int items)
+	{
+		Random random = new Random(items * 31L);
+		ItemInfo[] catalogue = new ItemInfo[items];
+		for (int id = 1; id <= items; id++)
+		{
+			ItemInfo item = new ItemInfo();
+			item.setId(id);
+			item.setName("Item " + id);
+			item.setExamine("Synthetic item " + id + ".");
+			item.setMembers(random.nextBoolean());
+			item.setLimit(LIMITS[random.nextInt(LIMITS.length)]);
+			item.setValue(random.nextInt(100_000));
+			item.setIcon("Item " + id + ".png");
+			catalogue[id - 1] = item;
+		}
+		return catalogue;
+	}
+
+	private static int price(Random random)
+	{
+		return (int) Math.pow(10, 1 + random.nextDouble() * 7);
+	}
+}
@@ -0,0 +1,197 @@
+package com.dmmflipper;
+
+import com.google.gson.Gson;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import okhttp3.OkHttpClient;
+
+/**
+ * Drives refresh cycles through {@link PriceApiClient} against a {@link MockPriceApi} under healthy,
+ * slow, flaky, and slow and flaky upstream conditions, and reports throughput and latency.
+ * <p>
+ * A cycle is what the poller does most: a /latest and /24h refresh. Every fifth cycle also
+ * ingests /5m and /1h, and every sixtieth re-checks /mapping. Cycles run back to back, one at a
+ * time, as they do in the plugin. A failed fetch must leave the previous snapshot serving, so after
+ * each scenario the client is checked to still hold the full market.
+ * <p>
+ * Arguments: cycles per scenario (default 2000), items in the market (default 4000), and optionally
+ * a directory of recorded payloads to serve instead of a synthetic market.
+ */
+public class PriceApiLoadTest
+{
+	private static final int TREND_EVERY = 5;
+	private static final int MAPPING_EVERY = 60;
+
+	public static void main(String[] args) throws Exception
+	{
+		int cycles = args.length > 0 && !args[0].isEmpty() ? Integer.parseInt(args[0]) : 2000;
+		int items = args.length > 1 && !args[1].isEmpty() ? Integer.parseInt(args[1]) : 4000;
+		Path recorded = args.length > 2 && !args[2].isEmpty() ? Paths.get(args[2]) : null;
+
+		System.out.printf("%-16s %7s %8s %9s %9s %9s %9s %10s %8s%n",
+			"scenario", "cycles", "cycles/s", "p50 ms", "p95 ms", "p99 ms", "max ms", "published", "failed");
+
+		run("healthy", settings(items, recorded), cycles);
+
+		MockPriceApi.Settings slow = settings(items, recorded);
+		slow.setLatencyMillis(50);
+		slow.setLatencyJitterMillis(25);
+		slow.setBytesPerSecond(16 << 20);
+		run("slow", slow, cycles);
+
+		MockPriceApi.Settings flaky = settings(items, recorded);
+		flaky.setErrorRate(0.10);
+		flaky.setTruncateRate(0.05);
+		flaky.setDisconnectRate(0.02);
+		run("flaky", flaky, cycles);
+
+		MockPriceApi.Settings both = settings(items, recorded);
+		both.setLatencyMillis(50);
+		both.setLatencyJitterMillis(25);
+		both.setBytesPerSecond(16 << 20);
+		both.setErrorRate(0.10);
+		both.setTruncateRate(0.05);
+		both.setDisconnectRate(0.02);
+		run("slow and flaky", both, cycles);
+	}
+
+	private static MockPriceApi.Settings settings(int items, Path recorded)
+	{
+		MockPriceApi.Settings settings = new MockPriceApi.Settings();
+		settings.setItems(items);
+		settings.setRecorded(recorded);
+		return settings;
+	}
+
+	private static void run(String scenario, MockPriceApi.Settings settings, int cycles) throws Exception
+	{
+		Path dataDir = Files.createTempDirectory("dmm-flipper-load");
+		OkHttpClient http = new OkHttpClient.Builder()
+			.connectTimeout(2, TimeUnit.SECONDS)
+			.readTimeout(5, TimeUnit.SECONDS)
+			.callTimeout(10, TimeUnit.SECONDS)
+			.build();
+
+		try (MockPriceApi api = new MockPriceApi(settings))
+		{
+			api.start();
+			PriceApiClient client = new PriceApiClient(http, new Gson(), api.baseUrl(), dataDir.toFile());
+			client.setRecordHistory(false);
+			try
+			{
+				// Faults apply from the first request, so the initial load is retried until it lands
+				ItemCatalogue mapping = null;
+				while (mapping == null)
+				{
+					mapping = client.fetchItemMapping().handle((items, error) -> items).join();
+				}
+				client.installItemMapping(mapping);
+				while (client.getSnapshot().isEmpty())
+				{
+					client.fetchLatestPrices().join();
+				}
+
+				PipelineMetrics.Timer cycleTimer = new PipelineMetrics().timer("cycle");
+				int published = 0;
+				long started = System.nanoTime();
+				for (int cycle = 1; cycle <= cycles; cycle++)
+				{
+					long before = client.getSnapshot().getVersion();
+					long cycleStarted = cycleTimer.start();
+					if (cycle % MAPPING_EVERY == 0)
+					{
+						// A 304 (or a failure) leaves the installed catalogue alone
+						client.fetchItemMapping().handle((catalogue, error) -> catalogue).join();
+					}
+					if (cycle % TREND_EVERY == 0)
+					{
+						client.refreshTrends().join();
+					}
+					client.fetchLatestPrices().join();
+					cycleTimer.stop(cycleStarted);
+
+					if (client.getSnapshot().getVersion() != before)
+					{
+						published++;
+					}
+				}
+				double seconds = (System.nanoTime() - started) / 1e9;
+
+				PipelineMetrics.Summary latency = cycleTimer.summary();
+				long failed = client.getMetrics().getCounters().entrySet().stream()
+					.filter(counter -> counter.getKey().startsWith("errors "))
+					.mapToLong(Map.Entry::getValue)
+					.sum();
+				System.out.printf("%-16s %7d %8.1f %9.1f %9.1f %9.1f %9.1f %9.1f%% %8d%n",
+					scenario, cycles, cycles / seconds, latency.getP50(), latency.getP95(), latency.getP99(),
+					latency.getMax(), published * 100.0 / cycles, failed);
+
+				int served = client.getSnapshot().size();
+				if (served != settings.getItems())
+				{
+					System.out.printf("  !! snapshot holds %d of %d items after the run%n", served, settings.getItems());
+				}
+				printDetail(client.getMetrics(), api.getMetrics());
+			}
+			finally
+			{
+				client.shutdown();
+			}
+		}
+		finally
+		{
+			http.dispatcher().executorService().shutdown();
+			http.connectionPool().evictAll();
+			delete(dataDir);
+		}
+	}
+
+	/**
+	 * Per-endpoint fetch and parse times and errors seen by the client, and the faults the server injected
+	 */
+	private static void printDetail(PipelineMetrics client, PipelineMetrics server)
+	{
+		for (Map.Entry<String, PipelineMetrics.Summary> timer : client.getTimers().entrySet())
+		{
+			if (timer.getKey().startsWith("fetch ") || timer.getKey().startsWith("parse "))
+			{
+				PipelineMetrics.Summary summary = timer.getValue();
+				System.out.printf("  %-18s n %-6d p50 %7.1f  p95 %7.1f  max %7.1f ms%n",
+					timer.getKey(), summary.getCount(), summary.getP50(), summary.getP95(), summary.getMax());
+			}
+		}
+
+		StringBuilder counts = new StringBuilder();
+		client.getCounters().forEach((name, value) -> {
+			if (name.startsWith("errors "))
+			{
+				counts.append(String.format("  %s %d", name, value));
+			}
+		});
+		server.getCounters().forEach((name, value) -> {
+			if (name.startsWith("injected ") || name.startsWith("not modified "))
+			{
+				counts.append(String.format("  %s %d", name, value));
+			}
+		});
+		if (counts.length() > 0)
+		{
+			System.out.println(counts);
+		}
+	}
+
+	private static void delete(Path dir) throws IOException
+	{
+		try (Stream<Path> files = Files.walk(dir))
+		{
+			files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+}
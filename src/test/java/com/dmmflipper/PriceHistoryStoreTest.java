@@ -0,0 +1,220 @@
+package com.dmmflipper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Writes refreshes through {@link PriceHistoryStore#append}, lets segments seal and compact as
+ * time moves on, and reads them back from disk
+ */
+public class PriceHistoryStoreTest
+{
+	private static final int[] ITEMS = {1, 2, 3};
+	// Midnight UTC, so segments and days line up with the refreshes below
+	private static final long TODAY = 1_700_006_400L;
+	private static final long OLD_DAY = TODAY - 10 * PriceHistoryStore.DAY_SECONDS;
+	private static final long REFRESH_SECONDS = 1200;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void roundTripThroughSealAndCompaction() throws IOException
+	{
+		Path dir = folder.getRoot().toPath();
+		PriceHistoryStore store = new PriceHistoryStore(dir);
+		Recorder recorder = new Recorder(store);
+		// A whole day, three refreshes an hour, then seven hours of today
+		for (int k = 0; k < 72; k++)
+		{
+			recorder.refresh(OLD_DAY + k * REFRESH_SECONDS, k);
+		}
+		for (int k = 0; k < 21; k++)
+		{
+			recorder.refresh(TODAY + k * REFRESH_SECONDS, 100 + k);
+		}
+
+		assertEquals(fileNames(OLD_DAY + ".day", TODAY + ".seg", (TODAY + PriceHistoryStore.SEGMENT_SECONDS) + ".log"), files(dir));
+
+		// Compacted: the last refresh of each hour
+		List<long[]> old = scan(store, 2, OLD_DAY, TODAY - 1);
+		assertEquals(24, old.size());
+		for (int hour = 0; hour < 24; hour++)
+		{
+			assertRecord(old.get(hour), 2, OLD_DAY + hour * 3600 + 2 * REFRESH_SECONDS, 3 * hour + 2);
+		}
+
+		// Sealed, then still in the log, every refresh in order
+		List<long[]> recent = scan(store, 2, TODAY, TODAY + PriceHistoryStore.DAY_SECONDS);
+		assertEquals(21, recent.size());
+		for (int k = 0; k < 21; k++)
+		{
+			assertRecord(recent.get(k), 2, TODAY + k * REFRESH_SECONDS, 100 + k);
+		}
+		assertEquals(4, scan(store, 3, TODAY + 5 * 3600, TODAY + 6 * 3600).size());
+
+		// Replay puts every item back in recorded order
+		List<long[]> replayed = new ArrayList<>();
+		assertEquals(3 * 24 + 3 * 21, store.replay(OLD_DAY, TODAY + PriceHistoryStore.DAY_SECONDS, record -> replayed.add(fields(record))));
+		for (int i = 0; i < replayed.size(); i++)
+		{
+			assertEquals(ITEMS[i % ITEMS.length], replayed.get(i)[0]);
+			if (i > 0)
+			{
+				assertTrue(replayed.get(i)[1] >= replayed.get(i - 1)[1]);
+			}
+		}
+		store.close();
+	}
+
+	@Test
+	public void reopenResumesTheLogAndDropsATornRecord() throws IOException
+	{
+		Path dir = folder.getRoot().toPath();
+		PriceHistoryStore store = new PriceHistoryStore(dir);
+		Recorder recorder = new Recorder(store);
+		for (int k = 0; k < 3; k++)
+		{
+			recorder.refresh(TODAY + k * REFRESH_SECONDS, k);
+		}
+		store.close();
+
+		// A crash partway through a record
+		try (FileChannel log = FileChannel.open(dir.resolve(TODAY + ".log"), StandardOpenOption.APPEND))
+		{
+			log.write(ByteBuffer.wrap(new byte[PriceHistoryStore.RECORD_SIZE / 2]));
+		}
+
+		PriceHistoryStore reopened = new PriceHistoryStore(dir);
+		// Reading alone writes nothing, so the torn half is still there and skipped
+		assertEquals(3, scan(reopened, 1, TODAY, TODAY + PriceHistoryStore.DAY_SECONDS).size());
+
+		recorder = new Recorder(reopened, recorder);
+		recorder.refresh(TODAY + 3 * REFRESH_SECONDS, 3);
+		assertEquals(fileNames(TODAY + ".log"), files(dir));
+		List<long[]> records = scan(reopened, 1, TODAY, TODAY + PriceHistoryStore.DAY_SECONDS);
+		assertEquals(4, records.size());
+		for (int k = 0; k < 4; k++)
+		{
+			assertRecord(records.get(k), 1, TODAY + k * REFRESH_SECONDS, k);
+		}
+
+		// Starting after the log's span seals it
+		reopened.close();
+		PriceHistoryStore later = new PriceHistoryStore(dir);
+		new Recorder(later, recorder).refresh(TODAY + PriceHistoryStore.SEGMENT_SECONDS, 4);
+		assertEquals(fileNames(TODAY + ".seg", (TODAY + PriceHistoryStore.SEGMENT_SECONDS) + ".log"), files(dir));
+		assertEquals(5, scan(later, 1, TODAY, TODAY + PriceHistoryStore.DAY_SECONDS).size());
+		later.close();
+	}
+
+	@Test
+	public void filesPastRetentionAreDropped() throws IOException
+	{
+		Path dir = folder.getRoot().toPath();
+		PriceHistoryStore store = new PriceHistoryStore(dir);
+		Recorder recorder = new Recorder(store);
+		recorder.refresh(OLD_DAY, 0);
+		recorder.refresh(OLD_DAY + PriceHistoryStore.RETENTION_DAYS * PriceHistoryStore.DAY_SECONDS, 1);
+		recorder.refresh(OLD_DAY + (PriceHistoryStore.RETENTION_DAYS + 1) * PriceHistoryStore.DAY_SECONDS, 2);
+
+		assertEquals(0, scan(store, 1, OLD_DAY, OLD_DAY + PriceHistoryStore.DAY_SECONDS).size());
+		assertEquals(2, scan(store, 1, OLD_DAY, Long.MAX_VALUE >>> 1).size());
+		store.close();
+	}
+
+	private static List<long[]> scan(PriceHistoryStore store, int itemId, long from, long to) throws IOException
+	{
+		List<long[]> records = new ArrayList<>();
+		store.scan(itemId, from, to, record -> records.add(fields(record)));
+		return records;
+	}
+
+	private static long[] fields(PriceHistoryStore.Cursor record)
+	{
+		return new long[]{record.getItemId(), record.getTime(), record.getHigh(), record.getLow(),
+			record.getHighTime(), record.getLowTime(), record.getHighVolume(), record.getLowVolume()};
+	}
+
+	private static void assertRecord(long[] record, int itemId, long time, int k)
+	{
+		long[] expected = {itemId, time, high(itemId, k), high(itemId, k) - 50, time - 5, time - 10, 10 * itemId + k, k};
+		for (int i = 0; i < expected.length; i++)
+		{
+			assertEquals("field " + i + " at " + time, expected[i], record[i]);
+		}
+	}
+
+	private static int high(int itemId, int k)
+	{
+		return 1000 * itemId + k;
+	}
+
+	private static Set<String> files(Path dir) throws IOException
+	{
+		Set<String> names = new TreeSet<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir))
+		{
+			files.forEach(file -> names.add(file.getFileName().toString()));
+		}
+		return names;
+	}
+
+	private static Set<String> fileNames(String... names)
+	{
+		Set<String> set = new TreeSet<>();
+		for (String name : names)
+		{
+			set.add(name);
+		}
+		return set;
+	}
+
+	/**
+	 * Builds each refresh on the previous snapshot, as the price client does, and appends what changed
+	 */
+	private static final class Recorder
+	{
+		private final PriceHistoryStore store;
+		private PriceSnapshot snapshot = PriceSnapshot.EMPTY;
+		private long version;
+
+		Recorder(PriceHistoryStore store)
+		{
+			this.store = store;
+		}
+
+		Recorder(PriceHistoryStore store, Recorder previous)
+		{
+			this.store = store;
+			this.snapshot = previous.snapshot;
+			this.version = previous.version;
+		}
+
+		void refresh(long time, int k) throws IOException
+		{
+			PriceFeed latest = new PriceFeed();
+			for (int itemId : ITEMS)
+			{
+				latest.add(itemId, high(itemId, k), high(itemId, k) - 50, time - 5, time - 10, 10 * itemId + k, k);
+			}
+			PriceSnapshot next = PriceSnapshot.build(snapshot, latest, null, ++version, time * 1000);
+			store.append(ChangeSet.between(snapshot, next), next);
+			snapshot = next;
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package com.dmmflipper;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compares the old String + JsonObject parse of /latest against the streaming
+ * {@link PriceFeedParser}. Pass a recorded /latest response as the first argument,
+ * otherwise a synthetic 4k item payload in the wiki format is used.
+ */
+public class PriceParseComparison
+{
+	private static final int WARMUP = 50;
+	private static final int ITERATIONS = 200;
+
+	public static void main(String[] args) throws Exception
+	{
+		String payload = args.length > 0
+			? new String(Files.readAllBytes(Paths.get(args[0])), StandardCharsets.UTF_8)
+			: syntheticLatest(4_000);
+
+		Gson gson = new Gson();
+		System.out.printf("Payload: %,d chars%n", payload.length());
+
+		for (int i = 0; i < WARMUP; i++)
+		{
+			parseTree(gson, payload);
+			parseStreaming(payload);
+		}
+
+		report("tree (before)", () -> parseTree(gson, payload));
+		report("streaming (after)", () -> parseStreaming(payload));
+	}
+
+	private static Map<Integer, PriceData> parseTree(Gson gson, String json)
+	{
+		Map<Integer, PriceData> prices = new HashMap<>();
+		JsonObject data = gson.fromJson(json, JsonObject.class).getAsJsonObject("data");
+		for (String itemIdStr : data.keySet())
+		{
+			JsonObject priceObj = data.getAsJsonObject(itemIdStr);
+			PriceData priceData = new PriceData();
+			priceData.setHigh(priceObj.has("high") && !priceObj.get("high").isJsonNull()
+				? priceObj.get("high").getAsInt() : 0);
+			priceData.setLow(priceObj.has("low") && !priceObj.get("low").isJsonNull()
+				? priceObj.get("low").getAsInt() : 0);
+			priceData.setHighTime(priceObj.has("highTime") && !priceObj.get("highTime").isJsonNull()
+				? priceObj.get("highTime").getAsLong() : 0);
+			priceData.setLowTime(priceObj.has("lowTime") && !priceObj.get("lowTime").isJsonNull()
+				? priceObj.get("lowTime").getAsLong() : 0);
+			prices.put(Integer.parseInt(itemIdStr), priceData);
+		}
+		return prices;
+	}
+
+	private static PriceFeed parseStreaming(String json)
+	{
+		try
+		{
+			return PriceFeed.read(new StringReader(json));
+		}
+		catch (IOException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void report(String label, Runnable parse)
+	{
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+
+		long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++)
+		{
+			parse.run();
+		}
+		long elapsed = System.nanoTime() - start;
+		long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+		System.out.printf("%-18s %8.3f ms/parse %10.1f KB/parse%n",
+			label, elapsed / 1e6 / ITERATIONS, allocated / 1024.0 / ITERATIONS);
+	}
+
+	static String syntheticLatest(int items)
+	{
+		long now = System.currentTimeMillis() / 1000;
+		StringBuilder sb = new StringBuilder(items * 80).append("{\"data\":{");
+		for (int id = 1; id <= items; id++)
+		{
+			if (id > 1)
+			{
+				sb.append(',');
+			}
+			int low = 50 + (id * 7919) % 2_000_000;
+			sb.append('"').append(id).append("\":{\"high\":").append(low + low / 20)
+				.append(",\"highTime\":").append(now - id % 3600)
+				.append(",\"low\":").append(low)
+				.append(",\"lowTime\":").append(id % 11 == 0 ? "null" : String.valueOf(now - id % 1800))
+				.append('}');
+		}
+		return sb.append("}}").toString();
+	}
+}
@@ -0,0 +1,176 @@
+package com.dmmflipper;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * The index may admit items a strategy then rejects, but must never leave out one it accepts.
+ * Items are generated with volumes, limits, prices and trade ages on and either side of the
+ * index tiers and the strategies' thresholds.
+ */
+public class ScanIndexTest
+{
+	private static final long NOW = 1_700_000_000L;
+	private static final int ITEMS = 4000;
+	private static final int[] VOLUMES = {0, 1, 2, 9, 10, 11, 49, 50, 51, 99, 100, 101, 499, 500, 501, 999, 1000, 1001,
+		9999, 10_000, 10_001, 99_999, 100_000, 100_001};
+	private static final int[] LIMITS = {0, 1, 9, 10, 11, 99, 100, 101, 999, 1000, 1001, 9999, 10_000, 10_001};
+	private static final int[] BUY_PRICES = {1, 99, 100, 101, 24_999, 25_000, 25_001, 999_999, 1_000_000, 1_000_001, 50_000_000};
+	private static final int[] MARGINS = {-10, 0, 1, 2, 50, 1000, 100_000};
+	private static final int[] AGE_SECONDS = {0, 59, 60, 299, 300, 359, 360, 899, 900, 959, 960, 3600, 3659, 3660, 86_400};
+
+	private static final String[] SPECS = {
+		"Volume band: filter = volume >= 50 && volume <= 500",
+		"Volume above: filter = volume > 100",
+		"Volume below: filter = volume < 10",
+		"Limit band: filter = limit >= 1000 && limit < 10000",
+		"Limit exact: filter = limit == 100",
+		"Price: maxAge = 5; filter = buyPrice <= 25000 && limitCost <= 1000000",
+		"Price above: filter = buyPrice > 24999.5",
+		"Any: filter = limitCost <= budget || buyPrice <= budget",
+		"Any mixed: filter = volume >= 10000 || limit <= 10",
+		"Members: filter = members == 1 && volume >= 10",
+		"Free: maxAge = 60; filter = members == 0",
+		"Empty: filter = volume > 100 && volume < 50",
+	};
+
+	@Test
+	public void candidatesAreASupersetOfEvaluate()
+	{
+		Market market = new Market(new Random(1));
+		ScanColumns columns = new ScanColumns();
+		columns.rebuild(market.snapshot(PriceSnapshot.EMPTY, 1), market.catalogue());
+		assertSuperset(columns);
+
+		// Incremental updates move items between tiers and sorted positions
+		Random random = new Random(2);
+		for (int version = 2; version <= 5; version++)
+		{
+			PriceSnapshot before = columns.market();
+			market.reroll(random, ITEMS / 10);
+			PriceSnapshot after = market.snapshot(before, version);
+			columns.update(after, ChangeSet.between(before, after).slots());
+			assertSuperset(columns);
+		}
+	}
+
+	@Test
+	public void freshIsExact()
+	{
+		Market market = new Market(new Random(3));
+		ScanColumns columns = new ScanColumns();
+		columns.rebuild(market.snapshot(PriceSnapshot.EMPTY, 1), market.catalogue());
+
+		for (int maxAge : new int[]{0, 1, 5, 15, 60})
+		{
+			BitSet fresh = columns.index().fresh(NOW, maxAge);
+			for (int slot = 0; slot < columns.market().slotCount(); slot++)
+			{
+				assertEquals("slot " + slot + " maxAge " + maxAge, columns.isFresh(slot, NOW, maxAge), fresh.get(slot));
+			}
+		}
+	}
+
+	private static void assertSuperset(ScanColumns columns)
+	{
+		List<FlipStrategy> strategies = new ArrayList<>();
+		Map<String, Integer> params = OpportunityTab.params(100, 3, 200, 15, 1_000_000);
+		for (String spec : SPECS)
+		{
+			strategies.add(StrategySpec.parse(spec).compile(params));
+		}
+		for (OpportunityTab tab : OpportunityTab.values())
+		{
+			strategies.add(tab.strategy(params));
+		}
+
+		ScanColumns.Cursor item = columns.cursor();
+		int accepted = 0;
+		for (FlipStrategy strategy : strategies)
+		{
+			StrategyPipeline pipeline = new StrategyPipeline(strategy);
+			BitSet candidates = pipeline.candidates(columns.index(), NOW);
+			for (int slot = 0; slot < columns.market().slotCount(); slot++)
+			{
+				if (pipeline.evaluate(item.at(slot), NOW) != null)
+				{
+					accepted++;
+					assertTrue(strategy.getName() + " left out slot " + slot, candidates.get(slot));
+				}
+			}
+		}
+		assertTrue("no item passed any strategy", accepted > 0);
+	}
+
+	/**
+	 * Items whose every value is drawn from the boundary lists above
+	 */
+	private static final class Market
+	{
+		private final int[] buyPrice = new int[ITEMS];
+		private final int[] margin = new int[ITEMS];
+		private final long[] buyTime = new long[ITEMS];
+		private final long[] sellTime = new long[ITEMS];
+		private final int[] volume = new int[ITEMS];
+		private final ItemInfo[] items = new ItemInfo[ITEMS];
+
+		Market(Random random)
+		{
+			for (int i = 0; i < ITEMS; i++)
+			{
+				ItemInfo info = new ItemInfo();
+				info.setId(i + 1);
+				info.setName("Item " + (i + 1));
+				info.setLimit(pick(random, LIMITS));
+				info.setMembers(random.nextBoolean());
+				items[i] = info;
+				roll(random, i);
+			}
+		}
+
+		void reroll(Random random, int count)
+		{
+			for (int n = 0; n < count; n++)
+			{
+				roll(random, random.nextInt(ITEMS));
+			}
+		}
+
+		private void roll(Random random, int i)
+		{
+			buyPrice[i] = pick(random, BUY_PRICES);
+			margin[i] = pick(random, MARGINS);
+			buyTime[i] = NOW - pick(random, AGE_SECONDS);
+			sellTime[i] = NOW - pick(random, AGE_SECONDS);
+			volume[i] = pick(random, VOLUMES);
+		}
+
+		ItemCatalogue catalogue()
+		{
+			return ItemCatalogue.of(items);
+		}
+
+		PriceSnapshot snapshot(PriceSnapshot previous, long version)
+		{
+			PriceFeed latest = new PriceFeed();
+			for (int i = 0; i < ITEMS; i++)
+			{
+				int sellPrice = Math.max(1, buyPrice[i] + margin[i]);
+				// Split so the total lands exactly on the drawn value
+				latest.add(i + 1, sellPrice, buyPrice[i], sellTime[i], buyTime[i], volume[i] / 2, volume[i] - volume[i] / 2);
+			}
+			return PriceSnapshot.build(previous, latest, null, version, NOW * 1000);
+		}
+
+		private static int pick(Random random, int[] values)
+		{
+			return values[random.nextInt(values.length)];
+		}
+	}
+}
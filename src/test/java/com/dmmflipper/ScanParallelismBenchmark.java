@@ -0,0 +1,125 @@
+package com.dmmflipper;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Times a full opportunity pass (what a mapping reload or a newly shown tab costs) sequentially
+ * and on fork/join pools of several sizes, across catalogue sizes and strategy counts.
+ * Pools are forced on for every pass so the table shows where parallelism starts to pay off;
+ * {@link OpportunityEngine#PARALLEL_THRESHOLD} should sit at about that point.
+ */
+public class ScanParallelismBenchmark
+{
+	private static final int[] ITEM_COUNTS = {1_000, 4_000, 16_000, 40_000};
+	private static final int[] STRATEGY_COUNTS = {1, 4, 16};
+	private static final int[] PARALLELISM = {1, 2, 4, 8};
+	private static final int WARMUP = 20;
+	private static final int ITERATIONS = 50;
+
+	public static void main(String[] args) throws Exception
+	{
+		System.out.printf("%8s %10s %12s %12s%n", "items", "strategies", "parallelism", "ms/pass");
+
+		for (int items : ITEM_COUNTS)
+		{
+			PriceSnapshot market = syntheticMarket(items);
+			ItemCatalogue mapping = syntheticMapping(items);
+
+			for (int strategies : STRATEGY_COUNTS)
+			{
+				List<FlipStrategy> batch = strategies(strategies);
+				for (int parallelism : PARALLELISM)
+				{
+					double ms = time(market, mapping, batch, parallelism);
+					System.out.printf("%,8d %10d %12d %12.3f%n", items, strategies, parallelism, ms);
+				}
+			}
+		}
+	}
+
+	private static double time(PriceSnapshot market, ItemCatalogue mapping,
+		List<FlipStrategy> strategies, int parallelism)
+	{
+		long now = System.currentTimeMillis() / 1000;
+
+		// Alternating between two equal catalogue instances makes every call a full rebuild
+		List<ItemCatalogue> mappings = new ArrayList<>();
+		mappings.add(mapping);
+		mappings.add(syntheticMapping(mapping.size()));
+
+		OpportunityEngine engine = new OpportunityEngine(0);
+		engine.setParallelism(parallelism);
+		try
+		{
+			for (int i = 0; i < WARMUP; i++)
+			{
+				engine.results(strategies, market, mappings.get(i & 1), now, 0, 50);
+			}
+
+			long start = System.nanoTime();
+			for (int i = 0; i < ITERATIONS; i++)
+			{
+				engine.results(strategies, market, mappings.get(i & 1), now, 0, 50);
+			}
+			return (System.nanoTime() - start) / 1e6 / ITERATIONS;
+		}
+		finally
+		{
+			engine.shutdown();
+		}
+	}
+
+	/**
+	 * Distinct filter settings of every tab, so each one is a separate view
+	 */
+	private static List<FlipStrategy> strategies(int count)
+	{
+		List<FlipStrategy> strategies = new ArrayList<>(count);
+		for (int i = 0; i < count; i++)
+		{
+			OpportunityTab tab = OpportunityTab.values()[i % 4];
+			strategies.add(tab.strategy(OpportunityTab.params(50 + 25 * (i / 4), 3, 200, 15, 1_000_000)));
+		}
+		return strategies;
+	}
+
+	static PriceSnapshot syntheticMarket(int items) throws IOException
+	{
+		PriceFeed latest = PriceFeed.read(new StringReader(PriceParseComparison.syntheticLatest(items)));
+		PriceFeed volumes = PriceFeed.read(new StringReader(syntheticVolumes(items)));
+		return PriceSnapshot.build(PriceSnapshot.EMPTY, latest, volumes, 1, System.currentTimeMillis());
+	}
+
+	private static String syntheticVolumes(int items)
+	{
+		StringBuilder sb = new StringBuilder(items * 48).append("{\"data\":{");
+		for (int id = 1; id <= items; id++)
+		{
+			if (id > 1)
+			{
+				sb.append(',');
+			}
+			sb.append('"').append(id).append("\":{\"highPriceVolume\":").append((id * 31) % 2_000)
+				.append(",\"lowPriceVolume\":").append((id * 17) % 1_500)
+				.append('}');
+		}
+		return sb.append("}}").toString();
+	}
+
+	static ItemCatalogue syntheticMapping(int items)
+	{
+		ItemInfo[] mapping = new ItemInfo[items];
+		for (int id = 1; id <= items; id++)
+		{
+			ItemInfo info = new ItemInfo();
+			info.setId(id);
+			info.setName("Item " + id);
+			info.setLimit(id % 5 == 0 ? 10_000 : 100 + id % 900);
+			mapping[id - 1] = info;
+		}
+		return ItemCatalogue.of(mapping);
+	}
+}
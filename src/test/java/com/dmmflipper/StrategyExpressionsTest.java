@@ -0,0 +1,287 @@
+package com.dmmflipper;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+public class StrategyExpressionsTest
+{
+	@Test
+	public void arithmeticPrecedence()
+	{
+		assertEquals(7, eval("1 + 2 * 3"), 0);
+		assertEquals(9, eval("(1 + 2) * 3"), 0);
+		assertEquals(3, eval("10 - 4 - 3"), 0);
+		assertEquals(1, eval("8 / 4 / 2"), 0);
+		assertEquals(-6, eval("-2 * 3"), 0);
+		assertEquals(5, eval("-(2 - 7)"), 0);
+	}
+
+	@Test
+	public void comparisonsBindTighterThanLogic()
+	{
+		assertEquals(1, eval("1 + 1 > 1 && 2 * 2 == 4"), 0);
+		// && binds tighter than ||
+		assertEquals(1, eval("1 || 0 && 0"), 0);
+		assertEquals(1, eval("0 && 1 || 1"), 0);
+		assertEquals(0, eval("(1 || 0) && 0"), 0);
+		// ! applies to the operand next to it only
+		assertEquals(2, eval("!0 + 1"), 0);
+		assertEquals(0, eval("!(0 + 1)"), 0);
+	}
+
+	@Test
+	public void conditionalIsLowestAndRightAssociative()
+	{
+		assertEquals(5, eval("2 > 1 ? 5 : 6"), 0);
+		assertEquals(3, eval("0 ? 1 : 0 ? 2 : 3"), 0);
+		assertEquals(2, eval("0 ? 1 : 1 ? 2 : 3"), 0);
+		assertEquals(11, eval("1 ? 10 + 1 : 20"), 0);
+	}
+
+	@Test
+	public void functionsAndItemValues()
+	{
+		TestItem item = new TestItem();
+		item.buyPrice = 900;
+		item.volume = 99;
+		assertEquals(900, eval("max(buyPrice, 100)", item), 0);
+		assertEquals(2, eval("log(volume + 1) / log(10)", item), 1e-9);
+		assertEquals(30, eval("sqrt(buyPrice)", item), 0);
+		assertEquals(1, eval("buyPrice <= budget", item), 0);
+	}
+
+	@Test
+	public void andFiltersSplitIntoRanges()
+	{
+		FlipStrategy strategy = compile("T: filter = profit > 0 && roi >= 5 && volume >= minVolume; minVolume = 50");
+		List<Predicate<MarketItem>> filters = strategy.getFilters();
+		assertEquals(3, filters.size());
+		for (Predicate<MarketItem> filter : filters)
+		{
+			assertTrue(filter instanceof StrategyExpressions.FieldRange);
+		}
+
+		TestItem item = new TestItem();
+		item.profit = 10;
+		item.roi = 5;
+		item.volume = 50;
+		assertTrue(passes(strategy, item));
+		item.volume = 49;
+		assertFalse(passes(strategy, item));
+		item.volume = 50;
+		item.profit = 0;
+		assertFalse(passes(strategy, item));
+	}
+
+	@Test
+	public void orFilterPassesOnAnyAlternative()
+	{
+		FlipStrategy strategy = compile("T: filter = limitCost <= budget || buyPrice <= budget");
+		assertEquals(1, strategy.getFilters().size());
+		assertTrue(strategy.getFilters().get(0) instanceof StrategyExpressions.AnyRange);
+
+		TestItem item = new TestItem();
+		item.buyPrice = 500;
+		item.limitCost = 5_000;
+		assertTrue(passes(strategy, item));
+		item.limitCost = 5_000_000;
+		assertTrue(passes(strategy, item));
+		item.buyPrice = 2_000_000;
+		assertFalse(passes(strategy, item));
+	}
+
+	@Test
+	public void mixedFiltersEvaluateLikeTheExpression()
+	{
+		FlipStrategy strategy = compile("T: filter = (buyPrice < 100 || buyPrice > 1000) && members == 0 || volume > 500");
+		TestItem item = new TestItem();
+		for (int buyPrice : new int[]{50, 500, 5000})
+		{
+			for (boolean members : new boolean[]{false, true})
+			{
+				for (int volume : new int[]{10, 1000})
+				{
+					item.buyPrice = buyPrice;
+					item.members = members;
+					item.volume = volume;
+					boolean expected = (buyPrice < 100 || buyPrice > 1000) && !members || volume > 500;
+					assertEquals(buyPrice + " " + members + " " + volume, expected, passes(strategy, item));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void badExpressionsAreRejected()
+	{
+		for (String source : new String[]{"", "1 +", "buyPrice >", "(1", "1)", "1 2", "max(1)", "sqrt(1, 2)",
+			"unknown(1)", "1 ? 2", "&& 1", "1 # 2", "buyPrice = 1"})
+		{
+			try
+			{
+				StrategyExpressions.parse(source);
+				fail("Parsed '" + source + "'");
+			}
+			catch (IllegalArgumentException e)
+			{
+				// Expected
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unknownNameFailsToBind()
+	{
+		StrategyExpressions.parse("mystery > 1").bind(Collections.emptyMap());
+	}
+
+	@Test
+	public void badSpecsAreRejectedOrSkipped()
+	{
+		for (String line : new String[]{"no colon here", ": filter = 1", "T: filter", "T: profit = buyPrice +",
+			"T: buyPrice = 5", "T: maxAge = buyPrice"})
+		{
+			try
+			{
+				compile(line);
+				fail("Compiled '" + line + "'");
+			}
+			catch (IllegalArgumentException e)
+			{
+				// Expected
+			}
+		}
+
+		List<StrategySpec> specs = StrategySpec.parseAll("Good: score = profit\nBad: filter = (\n# comment\n\nAlso Good: filter = roi > 1");
+		assertEquals(2, specs.size());
+		assertEquals("Good", specs.get(0).getName());
+		assertEquals("Also Good", specs.get(1).getName());
+	}
+
+	private static Map<String, Double> params()
+	{
+		Map<String, Double> params = new HashMap<>();
+		params.put("budget", 1_000_000.0);
+		params.put("maxAge", 15.0);
+		return params;
+	}
+
+	private static double eval(String source)
+	{
+		return eval(source, new TestItem());
+	}
+
+	private static double eval(String source, MarketItem item)
+	{
+		return StrategyExpressions.parse(source).bind(params()).compile().applyAsDouble(item);
+	}
+
+	private static FlipStrategy compile(String spec)
+	{
+		return StrategySpec.parse(spec).compile(params());
+	}
+
+	private static boolean passes(FlipStrategy strategy, MarketItem item)
+	{
+		for (Predicate<MarketItem> filter : strategy.getFilters())
+		{
+			if (!filter.test(item))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static final class TestItem implements MarketItem
+	{
+		int buyPrice;
+		int sellPrice;
+		int profit;
+		double roi;
+		int limit = 1;
+		int volume;
+		long limitCost;
+		boolean members;
+
+		@Override
+		public int getItemId()
+		{
+			return 1;
+		}
+
+		@Override
+		public String getName()
+		{
+			return "Test item";
+		}
+
+		@Override
+		public boolean isMembers()
+		{
+			return members;
+		}
+
+		@Override
+		public int getBuyPrice()
+		{
+			return buyPrice;
+		}
+
+		@Override
+		public int getSellPrice()
+		{
+			return sellPrice;
+		}
+
+		@Override
+		public int getGeTax()
+		{
+			return 0;
+		}
+
+		@Override
+		public int getProfit()
+		{
+			return profit;
+		}
+
+		@Override
+		public double getRoi()
+		{
+			return roi;
+		}
+
+		@Override
+		public int getLimit()
+		{
+			return limit;
+		}
+
+		@Override
+		public int getVolume()
+		{
+			return volume;
+		}
+
+		@Override
+		public long getLimitCost()
+		{
+			return limitCost;
+		}
+
+		@Override
+		public int getHighAlch()
+		{
+			return 0;
+		}
+	}
+}